@@ -17,6 +17,7 @@ package com.cskefu.cc;
 import com.cskefu.cc.basic.Constants;
 import com.cskefu.cc.basic.MainContext;
 import com.cskefu.cc.config.AppCtxRefreshEventListener;
+import com.cskefu.cc.config.NodeIdEnvironmentListener;
 import com.cskefu.cc.util.SystemEnvHelper;
 import com.cskefu.cc.util.mobile.MobileNumberUtils;
 import jakarta.servlet.MultipartConfigElement;
@@ -99,6 +100,7 @@ public class Application {
                     .build();
             app.setBannerMode(Banner.Mode.CONSOLE);
             app.setAddCommandLineProperties(false);
+            app.addListeners(new NodeIdEnvironmentListener());
             app.addListeners(new AppCtxRefreshEventListener());
             
             MainContext.setApplicationContext(app.run(args));
@@ -24,9 +24,11 @@ import com.cskefu.cc.cache.RedisKey;
 import com.cskefu.cc.exception.CSKefuException;
 import com.cskefu.cc.model.*;
 import com.cskefu.cc.peer.PeerSyncIM;
+import com.cskefu.cc.peer.im.ChatMessageWriter;
 import com.cskefu.cc.persistence.repository.*;
 import com.cskefu.cc.proxy.AgentStatusProxy;
 import com.cskefu.cc.proxy.AgentUserProxy;
+import com.cskefu.cc.schedule.AgentUserTimeoutTask;
 import com.cskefu.cc.socketio.client.NettyClients;
 import com.cskefu.cc.socketio.message.Message;
 import com.cskefu.cc.util.HashMapUtils;
@@ -38,10 +40,7 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.context.annotation.Lazy;
 import org.springframework.stereotype.Component;
 
-import java.util.Date;
-import java.util.HashMap;
-import java.util.Map;
-import java.util.Objects;
+import java.util.*;
 
 @Component
 public class ACDAgentService {
@@ -73,7 +72,7 @@ public class ACDAgentService {
     private AgentServiceRepository agentServiceRes;
 
     @Autowired
-    private AgentUserTaskRepository agentUserTaskRes;
+    private ChatMessageWriter chatMessageWriter;
 
     @Autowired
     private AgentStatusRepository agentStatusRes;
@@ -87,6 +86,10 @@ public class ACDAgentService {
     @Autowired
     private AgentUserProxy agentUserProxy;
 
+    @Autowired
+    @Lazy
+    private AgentUserTimeoutTask agentUserTimeoutTask;
+
 
     /**
      * ACD结果通知
@@ -162,8 +165,8 @@ public class ACDAgentService {
     public void assignVisitors(String agentno) {
         logger.info("[assignVisitors] agentno {}", agentno);
         // 获得目标坐席的状态
-        AgentStatus agentStatus = SerializeUtil.deserialize(
-                redisCommand.getHashKV(RedisKey.getAgentStatusReadyHashKey(), agentno));
+        AgentStatus agentStatus = SerializeUtil.decode(
+                redisCommand.getHashBytes(RedisKey.getAgentStatusReadyHashKey(), agentno));
 
         if (agentStatus == null) {
             logger.warn("[assignVisitors] can not find AgentStatus for agentno {}", agentno);
@@ -180,67 +183,60 @@ public class ACDAgentService {
             return;
         }
 
-        // 获得所有待服务访客的列表
-        final Map<String, AgentUser> pendingAgentUsers = cache.getAgentUsersInQue();
+        // 各技能组本次还可以分配的数量：不超过坐席在该技能组的最大接待数，也不超过单次批量分配数(initMaxuser)
+        // 没有技能组的访客使用空字符串
+        final Map<String, Integer> capacity = new HashMap<>();
+        final List<String> skills = new ArrayList<>();
+        skills.add("");
+        if (agentStatus.getSkills() != null) {
+            skills.addAll(agentStatus.getSkills().keySet());
+        }
+        int agentLimit = 0;
+        for (final String skill : skills) {
+            agentLimit += capacity.computeIfAbsent(skill, k -> getCapacity(agentStatus, k));
+        }
 
-        // 本次批量分配访客数目
-        Map<String, Integer> assigned = new HashMap<>();
-        int currentAssigned = cache.getInservAgentUsersSizeByAgentno(
-                agentStatus.getAgentno());
+        // 只获得该坐席可以接待的访客：指定了该坐席的访客，以及坐席技能组中、没有技能组的未指定坐席的访客
+        final List<AgentUser> pendingAgentUsers = cache.findInqueAgentUsersForAgent(agentno, agentLimit, capacity);
 
         logger.info(
-                "[assignVisitors] agentno {}, name {}, current assigned {}, batch size in queue {}",
-                agentStatus.getAgentno(),
-                agentStatus.getUsername(), currentAssigned, pendingAgentUsers.size());
-
-        for (Map.Entry<String, AgentUser> entry : pendingAgentUsers.entrySet()) {
-            AgentUser agentUser = entry.getValue();
-            boolean process = false;
-
-            if ((StringUtils.equals(agentUser.getAgentno(), agentno))) {
-                // 待服务的访客指定了该坐席
-                process = true;
-            } else if (agentStatus != null &&
-                    agentStatus.getSkills() != null &&
-                    agentStatus.getSkills().size() > 0) {
-                // 目标坐席有状态，并且坐席属于某技能组
-                if ((StringUtils.isBlank(agentUser.getAgentno()) &&
-                        StringUtils.isBlank(agentUser.getSkill()))) {
-                    // 待服务的访客还没有指定坐席，并且也没有绑定技能组
-                    process = true;
-                } else if (StringUtils.isBlank(agentUser.getAgentno()) &&
-                        agentStatus.getSkills().containsKey(agentUser.getSkill())) {
-                    // 待服务的访客还没有指定坐席，并且指定的技能组和该坐席的技能组一致
-                    process = true;
-                }
-            } else if (StringUtils.isBlank(agentUser.getAgentno()) &&
-                    StringUtils.isBlank(agentUser.getSkill())) {
-                // 目标坐席没有状态，或该目标坐席有状态但是没有属于任何一个技能组
-                // 待服务访客没有指定坐席，并且没有指定技能组
-                process = true;
-            }
+                "[assignVisitors] agentno {}, name {}, capacity {}, batch size in queue {}",
+                agentStatus.getAgentno(), agentStatus.getUsername(), capacity, pendingAgentUsers.size());
 
-            if (!process) {
+        for (final AgentUser agentUser : pendingAgentUsers) {
+            final String skill = StringUtils.defaultString(agentUser.getSkill());
+            final int remaining = capacity.computeIfAbsent(skill, k -> getCapacity(agentStatus, k));
+            if (remaining <= 0) {
+                logger.info(
+                        "[assignVisitors] agentno {} reach the max users limit or batch assign limit of skill {}",
+                        agentno, skill);
                 continue;
             }
 
-            // 坐席未达到最大咨询访客数量，并且单次批量分配小于坐席就绪时分配最大访客数量(initMaxuser)
-            final SessionConfig sessionConfig = acdPolicyService.initSessionConfig(agentUser.getSkill());
-            if ((ACDServiceRouter.getAcdPolicyService().getAgentUsersBySkill(agentStatus, agentUser.getSkill()) < sessionConfig.getMaxuser()) && (assigned.getOrDefault(agentUser.getSkill(), 0) < sessionConfig.getInitmaxuser())) {
-                assigned.merge(agentUser.getSkill(), 1, Integer::sum);
-                pickupAgentUserInQueue(agentUser, agentStatus);
-            } else {
-                logger.info(
-                        "[assignVisitors] agentno {} reach the max users limit {}/{} or batch assign limit {}/{}",
-                        agentno,
-                        (currentAssigned + assigned.getOrDefault(agentUser.getSkill(), 0)),
-                        sessionConfig.getMaxuser(), assigned, sessionConfig.getInitmaxuser());
-                break;
+            // 先从排队队列中取出，其它坐席同时分配时只有一个能取出成功
+            if (!cache.deleteAgentUserInqueByAgentUserId(agentUser.getUserid())) {
+                logger.info("[assignVisitors] agent user {} is taken by others", agentUser.getUserid());
+                continue;
             }
+            capacity.put(skill, remaining - 1);
+            pickupAgentUserInQueue(agentUser, agentStatus);
         }
         agentStatusProxy.broadcastAgentsStatus("agent", "success", agentno);
     }
 
+    /**
+     * 坐席在技能组中还可以分配的访客数量
+     *
+     * @param agentStatus
+     * @param skill
+     * @return
+     */
+    private int getCapacity(final AgentStatus agentStatus, final String skill) {
+        final SessionConfig sessionConfig = acdPolicyService.initSessionConfig(StringUtils.defaultIfBlank(skill, null));
+        return Math.max(0, Math.min(sessionConfig.getInitmaxuser(),
+                sessionConfig.getMaxuser() - acdPolicyService.getAgentUsersBySkill(agentStatus, skill)));
+    }
+
     /**
      * 从队列中选择访客进行会话
      *
@@ -299,6 +295,9 @@ public class ACDAgentService {
      */
     public void finishAgentService(final AgentUser agentUser) {
         if (agentUser != null) {
+            // 取消排队、回复超时的定时器
+            agentUserTimeoutTask.cancel(agentUser);
+
             /**
              * 设置AgentUser
              */
@@ -339,7 +338,7 @@ public class ACDAgentService {
                     service.setSessiontimes(System.currentTimeMillis() - service.getServicetime().getTime());
                 }
 
-                final AgentUserTask agentUserTask = agentUserTaskRes.findById(agentUser.getId()).orElse(null);
+                final AgentUserTask agentUserTask = chatMessageWriter.findAgentUserTask(agentUser.getId()).orElse(null);
                 if (agentUserTask != null) {
                     service.setAgentreplyinterval(agentUserTask.getAgentreplyinterval());
                     service.setAgentreplytime(agentUserTask.getAgentreplytime());
@@ -630,6 +629,11 @@ public class ACDAgentService {
          */
         agentUserRes.save(agentUser);
 
+        // 分配到坐席，开始计算访客回复超时
+        if (!finished && agentStatus != null) {
+            agentUserTimeoutTask.serviceStarted(agentUser);
+        }
+
         /**
          * 更新OnlineUser对象，变更为服务中，不可邀请
          */
@@ -0,0 +1,147 @@
+/*
+ * Copyright (C) 2023 Beijing Huaxia Chunsong Technology Co., Ltd.
+ * <https://www.chatopera.com>, Licensed under the Chunsong Public
+ * License, Version 1.0  (the "License"), https://docs.cskefu.com/licenses/v1.html
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cskefu.cc.acd;
+
+import com.cskefu.cc.cache.RedisKey;
+import com.cskefu.cc.cache.SnapshotRegistry;
+import com.cskefu.cc.cache.VersionedSnapshot;
+import com.cskefu.cc.model.Channel;
+import com.cskefu.cc.model.Organ;
+import com.cskefu.cc.model.SessionConfig;
+import com.cskefu.cc.persistence.repository.ChannelRepository;
+import com.cskefu.cc.persistence.repository.OrganRepository;
+import com.cskefu.cc.persistence.repository.SessionConfigRepository;
+import com.cskefu.cc.util.SerializeUtil;
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.*;
+
+/**
+ * 坐席分配使用的配置的本地快照：各部门的会话配置、渠道所属部门；部门树见 OrganCache
+ * <p>
+ * 部门、渠道、会话配置写入数据库后快照失效，见 VersionedSnapshot。
+ * <p>
+ * 会话配置保存的是编码后的数据，每次读取都解码出新的对象，调用方可以修改返回的对象。
+ */
+@Component
+public class ACDConfigCache {
+
+    private final static Logger logger = LoggerFactory.getLogger(ACDConfigCache.class);
+
+    @Value("${cskefu.acd.config.check-interval:5000}")
+    private long checkInterval;
+
+    @Autowired
+    private SessionConfigRepository sessionConfigRes;
+
+    @Autowired
+    private OrganRepository organRes;
+
+    @Autowired
+    private ChannelRepository channelRes;
+
+    @Autowired
+    private SnapshotRegistry snapshotRegistry;
+
+    private VersionedSnapshot<Snapshot> snapshot;
+
+    @PostConstruct
+    public void setup() {
+        snapshot = snapshotRegistry.register("acdconfig", RedisKey.getACDConfigVersionKey(), checkInterval,
+                this::load, OrganRepository.class, ChannelRepository.class, SessionConfigRepository.class);
+    }
+
+    /**
+     * 获得部门的会话配置，部门没有配置时使用上级部门的配置
+     *
+     * @param organid
+     * @return 没有配置时返回默认配置
+     */
+    public SessionConfig findSessionConfig(final String organid) {
+        final byte[] data = organid != null ? snapshot.get().sessionConfigs.get(organid) : null;
+        return data != null ? SerializeUtil.decode(data) : new SessionConfig();
+    }
+
+    /**
+     * 获得全部会话配置
+     *
+     * @return
+     */
+    public List<SessionConfig> findSessionConfigList() {
+        final List<SessionConfig> result = new ArrayList<>();
+        for (final byte[] data : snapshot.get().sessionConfigList) {
+            result.add(SerializeUtil.decode(data));
+        }
+        return result;
+    }
+
+    /**
+     * 获得渠道所属的部门
+     *
+     * @param snsid
+     * @return
+     */
+    public String findOrganBySnsid(final String snsid) {
+        return snsid != null ? snapshot.get().channelOrgans.get(snsid) : null;
+    }
+
+    private Snapshot load() {
+        final List<Organ> organs = organRes.findAll();
+        final List<SessionConfig> sessionConfigList = sessionConfigRes.findAll();
+        final List<Channel> channels = channelRes.findAll();
+        logger.info("[load] organs {}, session configs {}, channels {}", organs.size(), sessionConfigList.size(),
+                channels.size());
+        return new Snapshot(organs, sessionConfigList, channels);
+    }
+
+    private static final class Snapshot {
+        private final Map<String, byte[]> sessionConfigs;
+        private final List<byte[]> sessionConfigList;
+        private final Map<String, String> channelOrgans;
+
+        private Snapshot(final List<Organ> organs, final List<SessionConfig> sessionConfigList,
+                         final List<Channel> channels) {
+            final List<byte[]> list = new ArrayList<>();
+            final Map<String, byte[]> bySkill = new HashMap<>();
+            for (final SessionConfig sessionConfig : sessionConfigList) {
+                final byte[] data = SerializeUtil.encode(sessionConfig);
+                list.add(data);
+                if (sessionConfig.getSkill() != null) {
+                    bySkill.put(sessionConfig.getSkill(), data);
+                }
+            }
+            this.sessionConfigList = Collections.unmodifiableList(list);
+
+            // 部门没有配置时使用上级部门的配置
+            final Map<String, byte[]> configs = new HashMap<>(bySkill);
+            for (final Organ organ : organs) {
+                if (!configs.containsKey(organ.getId()) && organ.getParent() != null &&
+                        bySkill.containsKey(organ.getParent())) {
+                    configs.put(organ.getId(), bySkill.get(organ.getParent()));
+                }
+            }
+            this.sessionConfigs = Collections.unmodifiableMap(configs);
+
+            final Map<String, String> channelOrgans = new HashMap<>();
+            for (final Channel channel : channels) {
+                if (channel.getSnsid() != null && channel.getOrgan() != null) {
+                    channelOrgans.put(channel.getSnsid(), channel.getOrgan());
+                }
+            }
+            this.channelOrgans = Collections.unmodifiableMap(channelOrgans);
+        }
+    }
+}
@@ -14,12 +14,11 @@
 
 package com.cskefu.cc.acd;
 
-import com.cskefu.cc.basic.MainContext;
 import com.cskefu.cc.basic.MainUtils;
 import com.cskefu.cc.cache.Cache;
+import com.cskefu.cc.cache.OrganCache;
 import com.cskefu.cc.model.*;
 import com.cskefu.cc.persistence.repository.*;
-import com.cskefu.cc.proxy.OrganProxy;
 import com.cskefu.cc.util.HashMapUtils;
 import com.cskefu.cc.util.WebIMReport;
 import org.apache.commons.lang3.StringUtils;
@@ -27,10 +26,8 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
-import org.springframework.util.CollectionUtils;
 
 import java.util.*;
-import java.util.stream.Collectors;
 
 /**
  * 坐席自动分配策略集
@@ -45,71 +42,30 @@ public class ACDPolicyService {
     @Autowired
     private UserRepository userRes;
 
-    @Autowired
-    private SessionConfigRepository sessionConfigRes;
-
     @Autowired
     private PassportWebIMUserRepository onlineUserRes;
 
     @Autowired
-    private AgentUserRepository agentUserRes;
-
-    @Autowired
-    private ChannelRepository snsAccountRes;
+    private ACDConfigCache acdConfigCache;
 
     @Autowired
-    private OrganProxy organProxy;
-
-    @Autowired
-    private OrganRepository organRepository;
+    private OrganCache organCache;
     /**
      * 载入坐席 ACD策略配置
      *
      * @return
      */
-    @SuppressWarnings("unchecked")
     public List<SessionConfig> initSessionConfigList() {
-        List<SessionConfig> sessionConfigList;
-        if ((sessionConfigList = cache.findOneSessionConfigList()) == null) {
-            sessionConfigList = sessionConfigRes.findAll();
-            if (sessionConfigList != null && sessionConfigList.size() > 0) {
-                cache.putSessionConfigList(sessionConfigList);
-            }
-        }
-        return sessionConfigList;
+        return acdConfigCache.findSessionConfigList();
     }
 
     /**
-     * 载入坐席 ACD策略配置
+     * 载入坐席 ACD策略配置，部门没有配置时使用上级部门的配置
      *
      * @return
      */
     public SessionConfig initSessionConfig(String organid) {
-        SessionConfig sessionConfig;
-        if ((sessionConfig = cache.findOneSessionConfig(organid)) == null) {
-            sessionConfig = sessionConfigRes.findBySkill(organid);
-            if (sessionConfig == null) {
-                List<Organ> list = organRepository.findAll();
-                if (CollectionUtils.isEmpty(list)) {
-                    return new SessionConfig();
-                } else {
-                    Map<String, String> map = list.stream().collect(Collectors.toMap(item -> item.getId(), item -> item.getParent()));
-                    List<SessionConfig> configList = sessionConfigRes.findAll();
-                    if (CollectionUtils.isEmpty(configList)) {
-                        return new SessionConfig();
-                    } else {
-                        Map<String, SessionConfig> skillMap = configList.stream().collect(Collectors.toMap(item -> item.getSkill(), item -> item));
-                        if (map.get(organid) == null || skillMap.get(map.get(organid)) == null) {
-                            return new SessionConfig();
-                        }
-                        return skillMap.get(map.get(organid));
-                    }
-                }
-            } else {
-                cache.putSessionConfig(sessionConfig, organid);
-            }
-        }
-        return sessionConfig;
+        return acdConfigCache.findSessionConfig(organid);
     }
 
     /**
@@ -160,10 +116,10 @@ public class ACDPolicyService {
                 agentUser.getAgentno(), agentUser.getSkill(), agentUser.getUserid()
         );
         List<AgentStatus> agentStatuses = new ArrayList<>();
-        Map<String, AgentStatus> map = cache.findAllReadyAgentStatus();
 
         // DEBUG
-        if (map.size() > 0) {
+        if (logger.isDebugEnabled()) {
+            Map<String, AgentStatus> map = cache.findAllReadyAgentStatus();
             StringBuffer sb = new StringBuffer();
             sb.append("[filterOutAvailableAgentStatus] ready agents online: \n");
             for (final Map.Entry<String, AgentStatus> f : map.entrySet()) {
@@ -174,28 +130,22 @@ public class ACDPolicyService {
                                 f.getValue().getStatus(), f.getValue().isBusy(),
                                 HashMapUtils.concatKeys(f.getValue().getSkills(), "|")));
             }
-            logger.info(sb.toString());
-        } else {
-            logger.info("[filterOutAvailableAgentStatus] None ready agent found.");
+            logger.debug(sb.toString());
         }
 
         if (agentUser != null && StringUtils.isNotBlank(agentUser.getAgentno())) {
             User user = userRes.findById(agentUser.getAgentno()).orElse(null);
             if (user != null && !user.isSuperadmin()) {
                 // 用户不为空，并且不是超级管理员
-                // 指定坐席
-                for (final Map.Entry<String, AgentStatus> entry : map.entrySet()) {
-                    // 被指定的坐席，不检查是否忙，是否达到最大接待数量
-                    if (StringUtils.equals(
-                            entry.getValue().getAgentno(), agentUser.getAgentno())) {
-                        agentStatuses.add(entry.getValue());
-                        logger.info(
-                                "[filterOutAvailableAgentStatus] <Agent> find ready agent {}, name {}, status {}, service {}/{}",
-                                entry.getValue().getAgentno(), entry.getValue().getUsername(), entry.getValue().getStatus(),
-                                entry.getValue().getUsers(),
-                                entry.getValue().getMaxusers());
-                        break;
-                    }
+                // 指定坐席，不检查是否忙，是否达到最大接待数量
+                final AgentStatus agentStatus = cache.findOneReadyAgentStatusByAgentno(agentUser.getAgentno());
+                if (agentStatus != null) {
+                    agentStatuses.add(agentStatus);
+                    logger.info(
+                            "[filterOutAvailableAgentStatus] <Agent> find ready agent {}, name {}, status {}, service {}/{}",
+                            agentStatus.getAgentno(), agentStatus.getUsername(), agentStatus.getStatus(),
+                            agentStatus.getUsers(),
+                            agentStatus.getMaxusers());
                 }
             }
         }
@@ -213,28 +163,28 @@ public class ACDPolicyService {
          * 指定坐席未查询到就绪的
          */
         if (StringUtils.isNotBlank(agentUser.getSkill())) {
-            // 指定技能组
-            for (final Map.Entry<String, AgentStatus> entry : map.entrySet()) {
-                if ((!entry.getValue().isBusy()) &&
-                        (getAgentUsersBySkill(entry.getValue(), agentUser.getSkill()) < sessionConfig.getMaxuser()) &&
-                        (entry.getValue().getSkills() != null &&
-                                entry.getValue().getSkills().containsKey(agentUser.getSkill()))) {
+            // 指定技能组，只查找该技能组的就绪坐席，服务中的访客数量来自坐席负载计数
+            final Map<String, Integer> loads = cache.getInservAgentUsersSizeBySkill(agentUser.getSkill());
+            for (final AgentStatus candidate : cache.findReadyAgentStatusBySkills(
+                    Collections.singleton(agentUser.getSkill())).values()) {
+                if ((!candidate.isBusy()) &&
+                        (loads.getOrDefault(candidate.getAgentno(), 0) < sessionConfig.getMaxuser())) {
                     logger.info(
                             "[filterOutAvailableAgentStatus] <Skill#{}> find ready agent {}, name {}, status {}, service {}/{}, skills {}",
                             agentUser.getSkill(),
-                            entry.getValue().getAgentno(), entry.getValue().getUsername(), entry.getValue().getStatus(),
-                            entry.getValue().getUsers(),
-                            entry.getValue().getMaxusers(),
-                            HashMapUtils.concatKeys(entry.getValue().getSkills(), "|"));
-                    agentStatuses.add(entry.getValue());
+                            candidate.getAgentno(), candidate.getUsername(), candidate.getStatus(),
+                            candidate.getUsers(),
+                            candidate.getMaxusers(),
+                            HashMapUtils.concatKeys(candidate.getSkills(), "|"));
+                    agentStatuses.add(candidate);
                 } else {
                     logger.info(
                             "[filterOutAvailableAgentStatus] <Skill#{}> skip ready agent {}, name {}, status {}, service {}/{}, skills {}",
                             agentUser.getSkill(),
-                            entry.getValue().getAgentno(), entry.getValue().getUsername(), entry.getValue().getStatus(),
-                            entry.getValue().getUsers(),
-                            entry.getValue().getMaxusers(),
-                            HashMapUtils.concatKeys(entry.getValue().getSkills(), "|"));
+                            candidate.getAgentno(), candidate.getUsername(), candidate.getStatus(),
+                            candidate.getUsers(),
+                            candidate.getMaxusers(),
+                            HashMapUtils.concatKeys(candidate.getSkills(), "|"));
                 }
             }
             // 如果绑定了技能组，立即返回该技能组的人
@@ -248,30 +198,26 @@ public class ACDPolicyService {
              *
              * TODO 指定技能组无用户，停止分配
              */
-            Channel channel = snsAccountRes.findBySnsid(agentUser.getAppid()).get();
-            Map<String, Organ> allOrgan = organProxy.findAllOrganByParentId(channel.getOrgan());
-//            allOrgan.keySet().retainAll
-
-            // 对于该租户的所有客服
-            for (final Map.Entry<String, AgentStatus> entry : map.entrySet()) {
-                Set<String> agentSkills = entry.getValue().getSkills().keySet();
-                agentSkills.retainAll(allOrgan.keySet());
+            final Set<String> allOrgan = organCache.findSubtree(
+                    acdConfigCache.findOrganBySnsid(agentUser.getAppid()));
 
-                if ((!entry.getValue().isBusy()) && (entry.getValue().getUsers() < sessionConfig.getMaxuser()) && agentSkills.size() > 0) {
-                    agentStatuses.add(entry.getValue());
+            // 对于该租户的所有客服，只查找技能组属于渠道所在部门的就绪坐席
+            for (final AgentStatus candidate : cache.findReadyAgentStatusBySkills(allOrgan).values()) {
+                if ((!candidate.isBusy()) && (candidate.getUsers() < sessionConfig.getMaxuser())) {
+                    agentStatuses.add(candidate);
                     logger.info(
                             "[filterOutAvailableAgentStatus] <Redundance> find ready agent {}, agentname {}, status {}, service {}/{}, skills {}",
-                            entry.getValue().getAgentno(), entry.getValue().getUsername(), entry.getValue().getStatus(),
-                            entry.getValue().getUsers(),
-                            entry.getValue().getMaxusers(),
-                            HashMapUtils.concatKeys(entry.getValue().getSkills(), "|"));
+                            candidate.getAgentno(), candidate.getUsername(), candidate.getStatus(),
+                            candidate.getUsers(),
+                            candidate.getMaxusers(),
+                            HashMapUtils.concatKeys(candidate.getSkills(), "|"));
                 } else {
                     logger.info(
                             "[filterOutAvailableAgentStatus] <Redundance> skip ready agent {}, name {}, status {}, service {}/{}, skills {}",
-                            entry.getValue().getAgentno(), entry.getValue().getUsername(), entry.getValue().getStatus(),
-                            entry.getValue().getUsers(),
-                            entry.getValue().getMaxusers(),
-                            HashMapUtils.concatKeys(entry.getValue().getSkills(), "|"));
+                            candidate.getAgentno(), candidate.getUsername(), candidate.getStatus(),
+                            candidate.getUsers(),
+                            candidate.getMaxusers(),
+                            HashMapUtils.concatKeys(candidate.getSkills(), "|"));
                 }
             }
         }
@@ -408,8 +354,15 @@ public class ACDPolicyService {
         return agentStatus;
     }
 
+    /**
+     * 获得坐席在技能组中服务中的访客数量
+     *
+     * @param agentStatus
+     * @param skill
+     * @return
+     */
     public int getAgentUsersBySkill(AgentStatus agentStatus, String skill) {
-        return agentUserRes.countByAgentnoAndStatusAndSkill(agentStatus.getAgentno(), MainContext.AgentUserStatusEnum.INSERVICE.toString(), skill);
+        return cache.getInservAgentUsersSizeByAgentnoAndSkill(agentStatus.getAgentno(), skill);
     }
 
 }
\ No newline at end of file
@@ -15,15 +15,11 @@
 package com.cskefu.cc.acd;
 
 import com.cskefu.cc.cache.Cache;
-import com.cskefu.cc.model.AgentUser;
-import org.apache.commons.lang3.StringUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 
-import java.util.Map;
-
 @Component
 public class ACDQueueService {
     private final static Logger logger = LoggerFactory.getLogger(ACDQueueService.class);
@@ -32,28 +28,28 @@ public class ACDQueueService {
     @Autowired
     private Cache cache;
 
-    @SuppressWarnings("unchecked")
+    /**
+     * 获得排队的访客数量
+     *
+     * @param agent 不为空时只统计指定了该坐席的访客
+     * @param skill 不为空时只统计该技能组的访客，优先于坐席
+     * @return
+     */
     public int getQueueIndex(String agent, String skill) {
-        int queneUsers = 0;
-        Map<String, AgentUser> map = cache.getAgentUsersInQue();
+        return cache.getInqueAgentUsersSize(agent, skill);
+    }
 
-        for (final Map.Entry<String, AgentUser> entry : map.entrySet()) {
-            if (StringUtils.isNotBlank(skill)) {
-                if (StringUtils.equals(entry.getValue().getSkill(), skill)) {
-                    queneUsers++;
-                }
-                continue;
-            } else {
-                if (StringUtils.isNotBlank(agent)) {
-                    if (StringUtils.equals(entry.getValue().getAgentno(), agent)) {
-                        queneUsers++;
-                    }
-                    continue;
-                } else {
-                    queneUsers++;
-                }
-            }
-        }
-        return queneUsers;
+    /**
+     * 获得访客的排队位置
+     *
+     * @param userid
+     * @param agent
+     * @param skill
+     * @return 访客在队列中时返回位置，从 1 开始；不在队列中时返回队列长度
+     */
+    public int getQueueIndex(String userid, String agent, String skill) {
+        final int[] position = cache.findInqueAgentUserPosition(userid, agent, skill);
+        logger.debug("[getQueueIndex] userid {}, position {}, size {}", userid, position[0], position[1]);
+        return position[0] > 0 ? position[0] : position[1];
     }
 }
@@ -17,8 +17,6 @@ import com.cskefu.cc.basic.MainContext;
 import com.cskefu.cc.basic.MainUtils;
 import com.cskefu.cc.cache.Cache;
 import com.cskefu.cc.model.AgentReport;
-import com.cskefu.cc.model.AgentStatus;
-import com.cskefu.cc.model.Organ;
 import com.cskefu.cc.model.WorkMonitor;
 import com.cskefu.cc.persistence.repository.AgentServiceRepository;
 import com.cskefu.cc.persistence.repository.AgentUserRepository;
@@ -32,7 +30,7 @@ import org.springframework.stereotype.Component;
 
 import java.util.Date;
 import java.util.List;
-import java.util.Map;
+import java.util.Set;
 
 @Component
 public class ACDWorkMonitor {
@@ -75,43 +73,20 @@ public class ACDWorkMonitor {
          */
         AgentReport report = new AgentReport();
 
-        Map<String, AgentStatus> readys = cache.getAgentStatusReady();
-
-        int readyNum = 0;
-        int busyNum = 0;
-
-        for (Map.Entry<String, AgentStatus> entry : readys.entrySet()) {
-            if (organ == null) {
-                readyNum++;
-                if (entry.getValue().isBusy()) {
-                    busyNum++;
-                }
-                continue;
-            }
-
-            if (entry.getValue().getSkills() != null &&
-                    entry.getValue().getSkills().containsKey(organ)) {
-                readyNum++;
-                if (entry.getValue().isBusy()) {
-                    busyNum++;
-                }
-
-            }
-        }
-        report.setAgents(readyNum);
-        report.setBusy(busyNum);
+        // 坐席状态本地缓存的每个快照只统计一次
+        final int[] readys = cache.countAgentStatusReady(organ);
+        report.setAgents(readys[0]);
+        report.setBusy(readys[1]);
 
         /**
          * 统计当前服务中的用户数量
          */
 
         if (organ != null) {
-            Organ currentOrgan = new Organ();
-            currentOrgan.setId(organ);
-            Map<String, Organ> organs = organProxy.findAllOrganByParent(currentOrgan);
+            Set<String> organs = organProxy.findAllOrganIdsByParentId(organ);
 
-            report.setUsers(agentServiceRes.countByStatusAndAgentskillIn(MainContext.AgentUserStatusEnum.INSERVICE.toString(), organs.keySet()));
-            report.setInquene(agentUserRes.countByStatusAndSkillIn(MainContext.AgentUserStatusEnum.INQUENE.toString(), organs.keySet()));
+            report.setUsers(agentServiceRes.countByStatusAndAgentskillIn(MainContext.AgentUserStatusEnum.INSERVICE.toString(), organs));
+            report.setInquene(agentUserRes.countByStatusAndSkillIn(MainContext.AgentUserStatusEnum.INQUENE.toString(), organs));
         } else {
             // 服务中
             report.setUsers(cache.getInservAgentUsersSize());
@@ -119,8 +94,7 @@ public class ACDWorkMonitor {
             report.setInquene(cache.getInqueAgentUsersSize());
         }
 
-        // DEBUG
-        logger.info(
+        logger.debug(
                 "[getAgentReport] organ {}, agents {}, busy {}, users {}, inqueue {}", organ,
                 report.getAgents(), report.getBusy(), report.getUsers(), report.getInquene()
         );
@@ -27,6 +27,7 @@ import com.cskefu.cc.persistence.repository.ContactsRepository;
 import com.cskefu.cc.persistence.repository.AgentUserContactsRepository;
 import com.cskefu.cc.proxy.AgentStatusProxy;
 import com.cskefu.cc.proxy.AgentUserProxy;
+import com.cskefu.cc.schedule.AgentUserTimeoutTask;
 import com.chatopera.compose4j.Functional;
 import com.chatopera.compose4j.Middleware;
 import com.cskefu.cc.proxy.LicenseProxy;
@@ -61,6 +62,9 @@ public class ACDVisBodyParserMw implements Middleware<ACDComposeContext> {
     @Autowired
     private ACDQueueService acdQueueService;
 
+    @Autowired
+    private AgentUserTimeoutTask agentUserTimeoutTask;
+
     @Autowired
     private ACDMessageHelper acdMessageHelper;
 
@@ -180,9 +184,10 @@ public class ACDVisBodyParserMw implements Middleware<ACDComposeContext> {
                             ctx.getAgentUser().getId());
                     break;
                 case INQUENE:
-                    // 处理结果：进入排队队列
+                    // 处理结果：进入排队队列，开始计算排队超时
+                    agentUserTimeoutTask.enqueue(ctx.getAgentUser());
                     ctx.getAgentService().setQueneindex(
-                            acdQueueService.getQueueIndex(
+                            acdQueueService.getQueueIndex(ctx.getAgentUser().getUserid(),
                                     ctx.getAgentUser().getAgentno(), ctx.getAgentUser().getSkill()));
 
                     if (ctx.getAgentService().getQueneindex() > 0) {
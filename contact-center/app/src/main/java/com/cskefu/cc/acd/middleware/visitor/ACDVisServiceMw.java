@@ -51,6 +51,7 @@ public class ACDVisServiceMw implements Middleware<ACDComposeContext> {
                 case INQUENE:
                     logger.info("[apply] agent user is in queue");
                     int queueIndex = acdQueueService.getQueueIndex(
+                            ctx.getAgentUser().getUserid(),
                             ctx.getAgentUser().getAgentno(),
                             ctx.getOrganid());
                     ctx.setMessage(
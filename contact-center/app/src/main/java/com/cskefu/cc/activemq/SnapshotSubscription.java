@@ -0,0 +1,43 @@
+/*
+ * Copyright (C) 2023 Beijing Huaxia Chunsong Technology Co., Ltd.
+ * <https://www.chatopera.com>, Licensed under the Chunsong Public
+ * License, Version 1.0  (the "License"), https://docs.cskefu.com/licenses/v1.html
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cskefu.cc.activemq;
+
+import com.cskefu.cc.basic.Constants;
+import com.cskefu.cc.cache.SnapshotRegistry;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jms.annotation.JmsListener;
+import org.springframework.stereotype.Component;
+
+/**
+ * 本地快照版本变更通知：坐席状态、坐席分配配置、部门、用户授权、系统词典、系统设置
+ */
+@Component
+public class SnapshotSubscription {
+    private final static Logger logger = LoggerFactory.getLogger(SnapshotSubscription.class);
+
+    @Autowired
+    private SnapshotRegistry snapshotRegistry;
+
+    @JmsListener(destination = Constants.MQ_TOPIC_SNAPSHOT_CHANGED, containerFactory = "jmsListenerContainerTopic")
+    public void onMessage(final String payload) {
+        logger.debug("[onMessage] payload {}", payload);
+        try {
+            final JsonObject json = new JsonParser().parse(payload).getAsJsonObject();
+            snapshotRegistry.invalidate(json.get("name").getAsString(), json.get("version").getAsLong());
+        } catch (Exception e) {
+            logger.warn("[onMessage] error", e);
+        }
+    }
+}
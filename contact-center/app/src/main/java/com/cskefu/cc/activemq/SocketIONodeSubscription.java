@@ -0,0 +1,151 @@
+/*
+ * Copyright (C) 2023 Beijing Huaxia Chunsong Technology Co., Ltd.
+ * <https://www.chatopera.com>, Licensed under the Chunsong Public
+ * License, Version 1.0  (the "License"), https://docs.cskefu.com/licenses/v1.html
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cskefu.cc.activemq;
+
+import com.cskefu.cc.basic.Constants;
+import com.cskefu.cc.cache.Cache;
+import com.cskefu.cc.socketio.client.NettyClients;
+import com.cskefu.cc.util.SerializeUtil;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import org.apache.commons.lang3.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jms.annotation.JmsListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.io.Serializable;
+import java.util.List;
+
+/**
+ * 发送到指定节点的SocketIO消息
+ * <p>
+ * 访客、坐席建立连接时在 Redis 中记录连接所在的节点，各节点定时更新心跳。
+ * 本节点没有目标连接时，消息只发送到连接所在存活节点的队列；
+ * 找不到连接所在节点时，由调用方继续使用 Topic 广播。
+ */
+@Component
+public class SocketIONodeSubscription {
+
+    private final static Logger logger = LoggerFactory.getLogger(SocketIONodeSubscription.class);
+
+    public final static String TYPE_IM = "im";
+    public final static String TYPE_AGENT = "agent";
+
+    // 心跳间隔，超过三个间隔没有心跳的节点视为离线
+    private final static long HEARTBEAT_INTERVAL = 10000;
+    // 连接记录的过期时间，长连接超过该时间后退回到广播
+    private final static long CONNECTION_TTL = 24 * 60 * 60;
+
+    @Value("${application.node.id}")
+    private String appNodeId;
+
+    @Autowired
+    private Cache cache;
+
+    @Autowired
+    private BrokerPublisher brokerPublisher;
+
+    /**
+     * 连接建立
+     *
+     * @param type
+     * @param id
+     */
+    public void connected(final String type, final String id) {
+        try {
+            cache.putSocketIOConnection(type, id, appNodeId, CONNECTION_TTL);
+        } catch (Exception e) {
+            logger.warn("[connected] type {}, id {}", type, id, e);
+        }
+    }
+
+    /**
+     * 本节点上该访客或坐席的连接都已断开
+     *
+     * @param type
+     * @param id
+     */
+    public void disconnected(final String type, final String id) {
+        try {
+            cache.deleteSocketIOConnection(type, id, appNodeId);
+        } catch (Exception e) {
+            logger.warn("[disconnected] type {}, id {}", type, id, e);
+        }
+    }
+
+    /**
+     * 发送消息到连接所在的节点
+     *
+     * @param type
+     * @param id
+     * @param event
+     * @param data
+     * @return 没有找到连接所在的其它节点时返回false
+     */
+    public boolean publish(final String type, final String id, final String event, final Serializable data) {
+        final List<String> nodes;
+        try {
+            nodes = cache.findSocketIONodes(type, id, System.currentTimeMillis() - 3 * HEARTBEAT_INTERVAL);
+        } catch (Exception e) {
+            logger.warn("[publish] fail to find nodes of type {}, id {}", type, id, e);
+            return false;
+        }
+        // 连接所在节点就是本节点时，该连接已经不在，交由广播处理
+        nodes.remove(appNodeId);
+        if (nodes.isEmpty()) {
+            return false;
+        }
+
+        JsonObject payload = new JsonObject();
+        payload.addProperty("type", type);
+        payload.addProperty("event", event);
+        payload.addProperty("id", id);
+        payload.addProperty("data", SerializeUtil.serialize(data));
+        payload.addProperty("node", appNodeId);
+        for (final String node : nodes) {
+            brokerPublisher.send(Constants.INSTANT_MESSAGING_MQ_QUEUE_NODE + node, payload.toString(), false);
+        }
+        return true;
+    }
+
+    @Scheduled(fixedDelay = HEARTBEAT_INTERVAL)
+    public void heartbeat() {
+        try {
+            cache.putSocketIONodeHeartbeat(appNodeId);
+        } catch (Exception e) {
+            logger.warn("[heartbeat] error", e);
+        }
+    }
+
+    @JmsListener(destination = Constants.INSTANT_MESSAGING_MQ_QUEUE_NODE + "${application.node.id}", containerFactory = "jmsListenerContainerQueue")
+    public void onMessage(final String payload) {
+        logger.debug("[onMessage] payload {}", payload);
+        try {
+            JsonParser parser = new JsonParser();
+            JsonObject j = parser.parse(payload).getAsJsonObject();
+            final String id = j.get("id").getAsString();
+            final String event = j.get("event").getAsString();
+            final Object data = SerializeUtil.deserialize(j.get("data").getAsString());
+
+            if (StringUtils.equals(j.get("type").getAsString(), TYPE_AGENT)) {
+                NettyClients.getInstance().sendAgentEventMessage(id, event, data);
+            } else {
+                NettyClients.getInstance().publishIMEventMessage(id, event, data);
+            }
+        } catch (Exception e) {
+            logger.error("onMessage", e);
+        }
+    }
+}
@@ -0,0 +1,52 @@
+/*
+ * Copyright (C) 2023 Beijing Huaxia Chunsong Technology Co., Ltd.
+ * <https://www.chatopera.com>, Licensed under the Chunsong Public
+ * License, Version 1.0  (the "License"), https://docs.cskefu.com/licenses/v1.html
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cskefu.cc.aspect;
+
+import com.cskefu.cc.model.AgentService;
+import com.cskefu.cc.schedule.AgentServiceRollupTask;
+import org.aspectj.lang.JoinPoint;
+import org.aspectj.lang.annotation.AfterReturning;
+import org.aspectj.lang.annotation.Aspect;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.stereotype.Component;
+
+/**
+ * 服务记录写入数据库后，记录需要重新汇总报表的时段
+ */
+@Aspect
+@Component
+public class AgentServiceRollupAspect {
+    private final static Logger logger = LoggerFactory.getLogger(AgentServiceRollupAspect.class);
+
+    @Autowired
+    @Lazy
+    private AgentServiceRollupTask agentServiceRollupTask;
+
+    @AfterReturning("execution(* com.cskefu.cc.persistence.repository.AgentServiceRepository.save*(..)) || " +
+            "execution(* com.cskefu.cc.persistence.repository.AgentServiceRepository.delete*(..))")
+    public void afterChange(final JoinPoint joinPoint) {
+        final Object arg = joinPoint.getArgs().length > 0 ? joinPoint.getArgs()[0] : null;
+        if (arg instanceof AgentService) {
+            agentServiceRollupTask.changed((AgentService) arg);
+        } else if (arg instanceof Iterable) {
+            for (final Object item : (Iterable<?>) arg) {
+                if (item instanceof AgentService) {
+                    agentServiceRollupTask.changed((AgentService) item);
+                }
+            }
+        } else {
+            logger.debug("[afterChange] ignore {}", joinPoint.getSignature().toShortString());
+        }
+    }
+}
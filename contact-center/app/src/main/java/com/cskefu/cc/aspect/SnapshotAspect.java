@@ -0,0 +1,37 @@
+/*
+ * Copyright (C) 2023 Beijing Huaxia Chunsong Technology Co., Ltd.
+ * <https://www.chatopera.com>, Licensed under the Chunsong Public
+ * License, Version 1.0  (the "License"), https://docs.cskefu.com/licenses/v1.html
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cskefu.cc.aspect;
+
+import com.cskefu.cc.cache.SnapshotRegistry;
+import org.aspectj.lang.JoinPoint;
+import org.aspectj.lang.annotation.AfterReturning;
+import org.aspectj.lang.annotation.Aspect;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.stereotype.Component;
+
+/**
+ * Repository 写入数据库后，通知以它为数据来源的本地快照更新
+ */
+@Aspect
+@Component
+public class SnapshotAspect {
+
+    @Autowired
+    @Lazy
+    private SnapshotRegistry snapshotRegistry;
+
+    @AfterReturning("execution(* com.cskefu.cc.persistence.repository.*.save*(..)) || " +
+            "execution(* com.cskefu.cc.persistence.repository.*.delete*(..))")
+    public void afterChange(final JoinPoint joinPoint) {
+        snapshotRegistry.changed(joinPoint.getThis());
+    }
+}
@@ -29,6 +29,8 @@ public class Constants {
      */
     public static final String USER_SESSION_NAME = "user";
     public static final String ORGAN_SESSION_NAME = "organ";
+    public static final String USER_AUTH_STAMP_SESSION_NAME = "user_auth_stamp";
+    public static final String USER_REF_SESSION_NAME = "user_ref";
     public static final String GUEST_USER = "guest";
     public static final String IM_USER_SESSION_NAME = "im_user";
     public static final String CSKEFU_SYSTEM_DIC = "com.dic.system.template";
@@ -115,6 +117,8 @@ public class Constants {
     // freeswitch 通知消息
     public final static String INSTANT_MESSAGING_MQ_QUEUE_PBX = "pbx.*.events";
     public final static String INSTANT_MESSAGING_MQ_TOPIC_ONLINEUSER = "cskefu.webim.onlineuser";
+    // 发送到指定节点的SocketIO消息，队列名后缀为节点ID
+    public final static String INSTANT_MESSAGING_MQ_QUEUE_NODE = "cskefu.webim.node.";
     public final static String WEBIM_SOCKETIO_AGENT_DISCONNECT = "cskefu.socketio.agent.disconnect";
     // 黑名单
     public final static String WEBIM_SOCKETIO_ONLINE_USER_BLACKLIST = "cskefu.im.onlineuser.blacklist";
@@ -141,6 +145,9 @@ public class Constants {
     // web session single sign on
     public final static String MQ_TOPIC_WEB_SESSION_SSO = "cskefu.agent.session.retired";
 
+    // 本地快照的版本变更，通知各节点的同名快照失效
+    public final static String MQ_TOPIC_SNAPSHOT_CHANGED = "cskefu.snapshot.changed";
+
     /**
      * Attachment File Type
      */
@@ -17,6 +17,8 @@ package com.cskefu.cc.basic;
 
 import com.cskefu.cc.cache.Cache;
 import com.cskefu.cc.cache.RedisCommand;
+import com.cskefu.cc.cache.SysDicCache;
+import com.cskefu.cc.cache.SystemConfigCache;
 import com.cskefu.cc.peer.PeerSyncIM;
 import com.cskefu.cc.util.DateConverter;
 import com.cskefu.cc.util.SystemEnvHelper;
@@ -48,6 +50,10 @@ public class MainContext {
 
     private static Cache cache;
 
+    private static SysDicCache sysDicCache;
+
+    private static SystemConfigCache systemConfigCache;
+
     private static PeerSyncIM peerSyncIM;
 
     static {
@@ -1080,6 +1086,30 @@ public class MainContext {
         return cache;
     }
 
+    /**
+     * 系统词典快照
+     *
+     * @return
+     */
+    public final static SysDicCache getSysDicCache() {
+        if (sysDicCache == null) {
+            sysDicCache = getContext().getBean(SysDicCache.class);
+        }
+        return sysDicCache;
+    }
+
+    /**
+     * 系统设置快照
+     *
+     * @return
+     */
+    public final static SystemConfigCache getSystemConfigCache() {
+        if (systemConfigCache == null) {
+            systemConfigCache = getContext().getBean(SystemConfigCache.class);
+        }
+        return systemConfigCache;
+    }
+
     public final static PeerSyncIM getPeerSyncIM() {
         if (peerSyncIM == null) {
             peerSyncIM = getContext().getBean(PeerSyncIM.class);
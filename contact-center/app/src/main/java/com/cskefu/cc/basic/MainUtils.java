@@ -335,8 +335,17 @@ public class MainUtils {
     }
 
     public static BrowserClient parseClient(HttpServletRequest request) {
+        return parseClient(request.getHeader("User-Agent"));
+    }
+
+    /**
+     * 根据 User-Agent 解析操作系统和浏览器
+     *
+     * @param browserDetails
+     * @return
+     */
+    public static BrowserClient parseClient(final String browserDetails) {
         BrowserClient client = new BrowserClient();
-        String browserDetails = request.getHeader("User-Agent");
         String userAgent = browserDetails;
         String user = userAgent.toLowerCase();
         String os = "";
@@ -761,7 +770,7 @@ public class MainUtils {
 
     public static String processEmoti(String message) {
         Pattern pattern = Pattern.compile("\\[([\\d]*?)\\]");
-        SystemConfig systemConfig = MainContext.getCache().findOneSystemById("systemConfig");
+        SystemConfig systemConfig = getSystemConfig();
 
         Matcher matcher = pattern.matcher(message);
         StringBuffer strb = new StringBuffer();
@@ -836,15 +845,7 @@ public class MainUtils {
      * @return
      */
     public static SystemConfig getSystemConfig() {
-        SystemConfig systemConfig = MainContext.getCache().findOneSystemById("systemConfig");
-        if (systemConfig == null) {
-            SystemConfigRepository systemConfigRes = MainContext.getContext().getBean(SystemConfigRepository.class);
-            List<SystemConfig> systemConfigs = systemConfigRes.findAll();
-            if (systemConfigs.size() > 0) {
-                systemConfig = systemConfigs.get(0);
-            }
-        }
-        return systemConfig;
+        return MainContext.getSystemConfigCache().get();
     }
 
     /**
@@ -11,10 +11,33 @@
  */
 package com.cskefu.cc.basic;
 
+import com.cskefu.cc.interceptor.RequestLogWriter;
+import com.cskefu.cc.peer.im.ChatMessageWriter;
+import com.cskefu.cc.peer.im.UserHistoryWriter;
 import jakarta.annotation.PreDestroy;
 
 public class TerminateBean {
+
+    private final ChatMessageWriter chatMessageWriter;
+
+    private final RequestLogWriter requestLogWriter;
+
+    private final UserHistoryWriter userHistoryWriter;
+
+    public TerminateBean(final ChatMessageWriter chatMessageWriter, final RequestLogWriter requestLogWriter,
+                         final UserHistoryWriter userHistoryWriter) {
+        this.chatMessageWriter = chatMessageWriter;
+        this.requestLogWriter = requestLogWriter;
+        this.userHistoryWriter = userHistoryWriter;
+    }
+
     @PreDestroy
     public void onDestroy() throws Exception {
+        // 写入队列中还未保存的对话消息
+        chatMessageWriter.shutdown();
+        // 写入队列中还未保存的访问记录
+        requestLogWriter.shutdown();
+        // 写入队列中还未保存的浏览记录
+        userHistoryWriter.shutdown();
     }
 }
@@ -0,0 +1,210 @@
+/*
+ * Copyright (C) 2023 Beijing Huaxia Chunsong Technology Co., Ltd.
+ * <https://www.chatopera.com>, Licensed under the Chunsong Public
+ * License, Version 1.0  (the "License"), https://docs.cskefu.com/licenses/v1.html
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cskefu.cc.cache;
+
+import com.cskefu.cc.model.AgentStatus;
+import com.cskefu.cc.util.SerializeUtil;
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.*;
+
+/**
+ * 坐席状态的本地缓存
+ * <p>
+ * 保存就绪、未就绪坐席状态 Hash 的快照，见 VersionedSnapshot；版本号在更新坐席状态的脚本中加一，
+ * 变更的节点再广播新的版本号。
+ * <p>
+ * 快照中保存的是编码后的数据，每次读取都解码出新的对象，调用方可以修改返回的坐席状态。
+ * 按技能组查询时使用快照内的技能组索引，只解码该技能组的坐席；就绪、繁忙坐席数量在建立索引时一并统计。
+ */
+@Component
+public class AgentStatusNearCache {
+
+    private final static Logger logger = LoggerFactory.getLogger(AgentStatusNearCache.class);
+
+    @Value("${cskefu.acd.agentstatus.nearcache.check-interval:2000}")
+    private long checkInterval;
+
+    @Autowired
+    private RedisCommand redisCommand;
+
+    @Autowired
+    private SnapshotRegistry snapshotRegistry;
+
+    private VersionedSnapshot<Snapshot> snapshot;
+
+    @PostConstruct
+    public void setup() {
+        snapshot = snapshotRegistry.register("agentstatus", RedisKey.getAgentStatusVersionKey(), checkInterval,
+                this::load);
+    }
+
+    /**
+     * 获得就绪的坐席状态
+     *
+     * @return
+     */
+    public Map<String, AgentStatus> findAllReady() {
+        return decode(snapshot.get().ready);
+    }
+
+    /**
+     * 获得具有任一技能组的就绪坐席状态，只解码符合条件的坐席
+     *
+     * @param skills
+     * @return
+     */
+    public Map<String, AgentStatus> findReadyBySkills(final Collection<String> skills) {
+        final Snapshot current = snapshot.get();
+        final Map<String, List<String>> index = current.index().readyBySkill;
+        final Map<String, AgentStatus> result = new HashMap<>();
+        for (final String skill : skills) {
+            for (final String agentno : index.getOrDefault(skill, Collections.emptyList())) {
+                if (!result.containsKey(agentno)) {
+                    final AgentStatus agentStatus = SerializeUtil.decode(current.ready.get(agentno));
+                    if (agentStatus != null) {
+                        result.put(agentno, agentStatus);
+                    }
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * 获得就绪的坐席状态
+     *
+     * @param agentno
+     * @return 坐席不是就绪时返回null
+     */
+    public AgentStatus findReady(final String agentno) {
+        final byte[] data = snapshot.get().ready.get(agentno);
+        return data == null ? null : SerializeUtil.decode(data);
+    }
+
+    /**
+     * 获得就绪和未就绪的坐席状态
+     *
+     * @return
+     */
+    public Map<String, AgentStatus> findAll() {
+        final Snapshot current = snapshot.get();
+        final Map<String, AgentStatus> result = decode(current.ready);
+        result.putAll(decode(current.notReady));
+        return result;
+    }
+
+    /**
+     * 获得就绪的坐席数量
+     *
+     * @return
+     */
+    public int getReadySize() {
+        return snapshot.get().ready.size();
+    }
+
+    /**
+     * 统计就绪坐席和其中繁忙坐席的数量，每个快照只统计一次
+     *
+     * @param skill 技能组，为null时统计所有就绪坐席
+     * @return {就绪数量, 繁忙数量}
+     */
+    public int[] countReady(final String skill) {
+        final Snapshot current = snapshot.get();
+        if (skill == null) {
+            return new int[]{current.ready.size(), current.index().busy};
+        }
+        final Index index = current.index();
+        return new int[]{index.readyBySkill.getOrDefault(skill, Collections.emptyList()).size(),
+                index.busyBySkill.getOrDefault(skill, 0)};
+    }
+
+    /**
+     * 坐席状态已经在 Redis 中更新，通知所有节点新的版本号
+     *
+     * @param version 更新坐席状态时在 Redis 中增加的版本号
+     */
+    public void changed(final long version) {
+        snapshot.changed(version);
+    }
+
+    private Snapshot load() {
+        final Map<String, byte[]> ready = redisCommand.getHashAsBytes(RedisKey.getAgentStatusReadyHashKey());
+        final Map<String, byte[]> notReady = redisCommand.getHashAsBytes(RedisKey.getAgentStatusNotReadyHashKey());
+        logger.debug("[load] ready {}, not ready {}", ready.size(), notReady.size());
+        return new Snapshot(ready, notReady);
+    }
+
+    private static Map<String, AgentStatus> decode(final Map<String, byte[]> map) {
+        final Map<String, AgentStatus> result = new HashMap<>();
+        for (final Map.Entry<String, byte[]> entry : map.entrySet()) {
+            final AgentStatus agentStatus = SerializeUtil.decode(entry.getValue());
+            if (agentStatus != null) {
+                result.put(entry.getKey(), agentStatus);
+            }
+        }
+        return result;
+    }
+
+    private static final class Snapshot {
+        private final Map<String, byte[]> ready;
+        private final Map<String, byte[]> notReady;
+        // 技能组索引和繁忙坐席统计，首次使用时建立
+        private volatile Index index;
+
+        private Snapshot(final Map<String, byte[]> ready, final Map<String, byte[]> notReady) {
+            this.ready = Collections.unmodifiableMap(ready);
+            this.notReady = Collections.unmodifiableMap(notReady);
+        }
+
+        private Index index() {
+            Index current = index;
+            if (current == null) {
+                current = new Index(ready);
+                index = current;
+            }
+            return current;
+        }
+    }
+
+    private static final class Index {
+        // 技能组 -> 就绪坐席
+        private final Map<String, List<String>> readyBySkill = new HashMap<>();
+        // 技能组 -> 繁忙的就绪坐席数量
+        private final Map<String, Integer> busyBySkill = new HashMap<>();
+        private int busy;
+
+        private Index(final Map<String, byte[]> ready) {
+            for (final Map.Entry<String, byte[]> entry : ready.entrySet()) {
+                final AgentStatus agentStatus = SerializeUtil.decode(entry.getValue());
+                if (agentStatus == null) {
+                    continue;
+                }
+                if (agentStatus.isBusy()) {
+                    busy++;
+                }
+                if (agentStatus.getSkills() != null) {
+                    for (final String skill : agentStatus.getSkills().keySet()) {
+                        readyBySkill.computeIfAbsent(skill, k -> new ArrayList<>()).add(entry.getKey());
+                        if (agentStatus.isBusy()) {
+                            busyBySkill.merge(skill, 1, Integer::sum);
+                        }
+                    }
+                }
+            }
+        }
+    }
+}
@@ -24,10 +24,13 @@ import com.cskefu.cc.util.freeswitch.model.CallCenterAgent;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.redis.core.script.RedisScript;
 import org.springframework.stereotype.Component;
 import org.apache.commons.lang3.StringUtils;
+import org.apache.commons.lang3.math.NumberUtils;
 
 import java.io.Serializable;
+import java.nio.charset.StandardCharsets;
 import java.util.*;
 
 @Component
@@ -35,6 +38,9 @@ public class Cache {
 
     final static private Logger logger = LoggerFactory.getLogger(Cache.class);
 
+    // 索引被并发修改时重新执行脚本的最大次数
+    final static private int INDEX_RETRIES = 10;
+
     @Autowired
     private PassportWebIMUserRepository onlineUserRes;
 
@@ -44,14 +50,16 @@ public class Cache {
     @Autowired
     private RedisCommand redisCommand;
 
+    @Autowired
+    private AgentStatusNearCache agentStatusNearCache;
+
     /**
      * 获得就绪的坐席列表
      *
      * @return
      */
     public Map<String, AgentStatus> getAgentStatusReady() {
-        Map<String, String> agentStatuses = redisCommand.getHash(RedisKey.getAgentStatusReadyHashKey());
-        return convertFromStringToAgentStatus(agentStatuses);
+        return agentStatusNearCache.findAllReady();
     }
 
     /**
@@ -61,18 +69,12 @@ public class Cache {
      * @return
      */
     public Optional<AgentUser> findOneAgentUserByUserId(final String userId) {
-        if (redisCommand.hasHashKV(RedisKey.getAgentUserInQueHashKey(), userId)) {
-            // 排队等待中
-            return Optional.ofNullable((AgentUser) SerializeUtil.deserialize(
-                    redisCommand.getHashKV(RedisKey.getAgentUserInQueHashKey(), userId)));
-        } else if (redisCommand.hasHashKV(RedisKey.getAgentUserInServHashKey(), userId)) {
-            // 服务中
-            return Optional.ofNullable((AgentUser) SerializeUtil.deserialize(
-                    redisCommand.getHashKV(RedisKey.getAgentUserInServHashKey(), userId)));
-        } else if (redisCommand.hasHashKV(RedisKey.getAgentUserEndHashKey(), userId)) {
-            // 已经结束
-            return Optional.ofNullable((AgentUser) SerializeUtil.deserialize(
-                    redisCommand.getHashKV(RedisKey.getAgentUserEndHashKey(), userId)));
+        // 依次查找排队等待中、服务中、已经结束
+        final byte[] val = redisCommand.eval(RedisScripts.HGET_FIRST, Arrays.asList(
+                RedisKey.getAgentUserInQueHashKey(), RedisKey.getAgentUserInServHashKey(),
+                RedisKey.getAgentUserEndHashKey()), raw(userId));
+        if (val != null) {
+            return Optional.ofNullable((AgentUser) SerializeUtil.decode(val));
         } else {
             // 缓存中没有找到，继续到数据库查找
             return agentUserRes.findOneByUserid(userId);
@@ -86,10 +88,10 @@ public class Cache {
      * @return
      */
     public Map<String, AgentUser> getAgentUsersInQue() {
-        Map<String, String> agentUsers = redisCommand.getHash(RedisKey.getAgentUserInQueHashKey());
+        Map<String, byte[]> agentUsers = redisCommand.getHashAsBytes(RedisKey.getAgentUserInQueHashKey());
         Map<String, AgentUser> map = new HashMap<>();
-        for (final Map.Entry<String, String> entry : agentUsers.entrySet()) {
-            final AgentUser obj = SerializeUtil.deserialize(entry.getValue());
+        for (final Map.Entry<String, byte[]> entry : agentUsers.entrySet()) {
+            final AgentUser obj = SerializeUtil.decode(entry.getValue());
             map.put(obj.getId(), obj);
         }
         return map;
@@ -102,7 +104,9 @@ public class Cache {
      * @param userid
      */
     public void deleteAgentUserInservByAgentUserId(final String userid) {
-        redisCommand.delHashKV(RedisKey.getAgentUserInServHashKey(), userid);
+        // 删除和减少坐席负载在脚本中完成，并发删除时只减少一次
+        evalIndexed(RedisScripts.AGENT_USER_INSERV_DELETE, userid, false, true, Arrays.asList(
+                RedisKey.getAgentUserInServHashKey(), RedisKey.getAgentLoadIndexHashKey()), raw(userid));
     }
 
 
@@ -110,9 +114,13 @@ public class Cache {
      * 将访客ID从排队队列中删除
      *
      * @param userid
+     * @return 访客在排队队列中并被删除时返回true，并发分配时只有一个坐席能删除成功
      */
-    public void deleteAgentUserInqueByAgentUserId(final String userid) {
-        redisCommand.delHashKV(RedisKey.getAgentUserInQueHashKey(), userid);
+    public boolean deleteAgentUserInqueByAgentUserId(final String userid) {
+        final Long deleted = evalIndexed(RedisScripts.AGENT_USER_DEQUEUE, userid, true, false, Arrays.asList(
+                RedisKey.getAgentUserInQueHashKey(), RedisKey.getAgentUserQueueZSetKey(),
+                RedisKey.getAgentUserQueueIndexHashKey()), raw(userid));
+        return deleted != null && deleted > 0;
     }
 
     /**
@@ -122,17 +130,17 @@ public class Cache {
      * @return
      */
     public AgentStatus findOneAgentStatusByAgentno(final String agentno) {
-        String status = getAgentStatusStatus(agentno);
-        logger.debug("[findOneAgentStatusByAgentnoAndOrig] agentno {}, status {}", agentno, status);
-
         // 缓存中没有该坐席状态，该坐席目前是离线的
-        if (StringUtils.equals(status, MainContext.AgentStatusEnum.OFFLINE.toString())) {
+        final byte[] val = redisCommand.eval(RedisScripts.HGET_FIRST, Arrays.asList(
+                RedisKey.getAgentStatusReadyHashKey(), RedisKey.getAgentStatusNotReadyHashKey()), raw(agentno));
+        if (val == null) {
+            logger.debug("[findOneAgentStatusByAgentno] agentno {} is offline", agentno);
             return null;
         }
 
-        String val = redisCommand.getHashKV(RedisKey.getAgentStatusHashKeyByStatusStr(status), agentno);
-        AgentStatus result = SerializeUtil.deserialize(val);
-        logger.debug("[findOneAgentStatusByAgentnoAndOrig] result: username {}", result.getUsername());
+        AgentStatus result = SerializeUtil.decode(val);
+        logger.debug("[findOneAgentStatusByAgentno] agentno {}, status {}", agentno,
+                result != null ? result.getStatus() : null);
         return result;
     }
 
@@ -142,33 +150,12 @@ public class Cache {
      * @param agentStatus
      */
     public void putAgentStatus(AgentStatus agentStatus) {
-        String pre = getAgentStatusStatus(agentStatus.getAgentno()); // 坐席前状态
-
-        if (StringUtils.equals(pre, MainContext.AgentStatusEnum.OFFLINE.toString())) {
-            // 之前不存在，新建缓存
-            if ((!StringUtils.equals(agentStatus.getStatus(), MainContext.AgentStatusEnum.OFFLINE.toString()))) {
-                redisCommand.setHashKV(
-                        RedisKey.getAgentStatusHashKeyByStatusStr(agentStatus.getStatus()),
-                        agentStatus.getAgentno(), SerializeUtil.serialize(agentStatus));
-            }
-            return;
-        } else {
-            // 之前存在，与将要更新的状态一致
-            if (StringUtils.equals(pre, agentStatus.getStatus())) {
-                redisCommand.setHashKV(
-                        RedisKey.getAgentStatusHashKeyByStatusStr(pre), agentStatus.getAgentno(),
-                        SerializeUtil.serialize(agentStatus));
-                return;
-            } else {
-                // 之前存在，而且与新状态不一致
-                redisCommand.delHashKV(RedisKey.getAgentStatusHashKeyByStatusStr(pre), agentStatus.getAgentno());
-                if (!StringUtils.equals(agentStatus.getStatus(), MainContext.AgentStatusEnum.OFFLINE.toString())) {
-                    redisCommand.setHashKV(
-                            RedisKey.getAgentStatusHashKeyByStatusStr(agentStatus.getStatus()),
-                            agentStatus.getAgentno(), SerializeUtil.serialize(agentStatus));
-                }
-            }
-        }
+        // 离线的坐席只从缓存中删除
+        final boolean online = !StringUtils.equals(
+                agentStatus.getStatus(), MainContext.AgentStatusEnum.OFFLINE.toString());
+        moveAgentStatus(agentStatus.getAgentno(),
+                RedisKey.getAgentStatusHashKeyByStatusStr(agentStatus.getStatus()),
+                online ? SerializeUtil.encode(agentStatus) : null);
     }
 
     /**
@@ -177,39 +164,37 @@ public class Cache {
      * @return
      */
     public Map<String, AgentStatus> findAllReadyAgentStatus() {
-        List<String> keys = new ArrayList<>();
-        keys.add(RedisKey.getAgentStatusReadyHashKey());
-
-        Map<String, String> map = redisCommand.getAllMembersInMultiHash(keys);
-        return convertFromStringToAgentStatus(map);
+        return agentStatusNearCache.findAllReady();
     }
 
     /**
-     * 获得一个租户的所有坐席状态
+     * 获得具有任一技能组的就绪坐席状态
      *
+     * @param skills
      * @return
      */
-    public Map<String, AgentStatus> findAllAgentStatus() {
-        List<String> keys = new ArrayList<>();
-        // TODO 增加支持更多状态
-        keys.add(RedisKey.getAgentStatusReadyHashKey());
-        keys.add(RedisKey.getAgentStatusNotReadyHashKey());
-
-        Map<String, String> map = redisCommand.getAllMembersInMultiHash(keys);
-        return convertFromStringToAgentStatus(map);
+    public Map<String, AgentStatus> findReadyAgentStatusBySkills(final Collection<String> skills) {
+        return agentStatusNearCache.findReadyBySkills(skills);
     }
 
+    /**
+     * 获得就绪的坐席状态，坐席不是就绪时返回null
+     *
+     * @param agentno
+     * @return
+     */
+    public AgentStatus findOneReadyAgentStatusByAgentno(final String agentno) {
+        return agentStatusNearCache.findReady(agentno);
+    }
 
     /**
-     * Inline方法
+     * 获得一个租户的所有坐席状态
+     *
+     * @return
      */
-    private static Map<String, AgentStatus> convertFromStringToAgentStatus(final Map<String, String> map) {
-        Map<String, AgentStatus> result = new HashMap<>();
-        for (Map.Entry<String, String> entry : map.entrySet()) {
-            AgentStatus obj = SerializeUtil.deserialize(entry.getValue());
-            result.put(entry.getKey(), obj);
-        }
-        return result;
+    public Map<String, AgentStatus> findAllAgentStatus() {
+        // TODO 增加支持更多状态
+        return agentStatusNearCache.findAll();
     }
 
 
@@ -219,27 +204,24 @@ public class Cache {
      * @param agentno
      */
     public void deleteAgentStatusByAgentno(final String agentno) {
-        String status = getAgentStatusStatus(agentno);
-        if (!StringUtils.equals(MainContext.AgentStatusEnum.OFFLINE.toString(), status)) {
-            redisCommand.delHashKV(RedisKey.getAgentStatusHashKeyByStatusStr(status), agentno);
-        }
+        moveAgentStatus(agentno, RedisKey.getAgentStatusHashKeyByStatusStr(
+                MainContext.AgentStatusEnum.OFFLINE.toString()), null);
     }
 
     /**
-     * 获得一个坐席的状态 agentStatus.status
-     * 只返回大类状态
+     * 将坐席状态从就绪、未就绪的 Hash 中移到新状态的 Hash，有变化时通知本地缓存
      *
      * @param agentno
-     * @return
+     * @param hashKey 新状态的 Hash
+     * @param val     编码后的坐席状态，为null时只删除
      */
-    private String getAgentStatusStatus(final String agentno) {
-        // 首先判断这个坐席的状态是READY还是BUSY，再去更新
-        if (redisCommand.hasHashKV(RedisKey.getAgentStatusReadyHashKey(), agentno)) {
-            return MainContext.AgentStatusEnum.READY.toString();
-        } else if (redisCommand.hasHashKV(RedisKey.getAgentStatusNotReadyHashKey(), agentno)) {
-            return MainContext.AgentStatusEnum.NOTREADY.toString();
-        } else {
-            return MainContext.AgentStatusEnum.OFFLINE.toString();
+    private void moveAgentStatus(final String agentno, final String hashKey, final byte[] val) {
+        final Long version = redisCommand.eval(RedisScripts.AGENT_STATUS_PUT, Arrays.asList(
+                        RedisKey.getAgentStatusReadyHashKey(), RedisKey.getAgentStatusNotReadyHashKey(),
+                        hashKey, RedisKey.getAgentStatusVersionKey()),
+                raw(agentno), raw(val != null ? "1" : "0"), val != null ? val : new byte[0]);
+        if (version != null && version > 0) {
+            agentStatusNearCache.changed(version);
         }
     }
 
@@ -274,7 +256,17 @@ public class Cache {
      * @return
      */
     public int getAgentStatusReadySize() {
-        return Math.toIntExact(redisCommand.getHashSize(RedisKey.getAgentStatusReadyHashKey()));
+        return agentStatusNearCache.getReadySize();
+    }
+
+    /**
+     * 统计就绪坐席和其中繁忙坐席的数量
+     *
+     * @param skill 技能组，为null时统计所有就绪坐席
+     * @return {就绪数量, 繁忙数量}
+     */
+    public int[] countAgentStatusReady(final String skill) {
+        return agentStatusNearCache.countReady(skill);
     }
 
 
@@ -293,30 +285,11 @@ public class Cache {
      */
     @AgentUserAspect.LinkAgentUser
     public void putAgentUser(AgentUser agentUser) {
-        if (redisCommand.hasHashKV(RedisKey.getAgentUserInServHashKey(), agentUser.getUserid())) {
-            // 服务中
-            if (!StringUtils.equals(
-                    agentUser.getStatus(),
-                    MainContext.AgentUserStatusEnum.INSERVICE.toString())) {
-                // 删除旧记录
-                redisCommand.delHashKV(RedisKey.getAgentUserInServHashKey(), agentUser.getUserid());
-            }
-        } else if (redisCommand.hasHashKV(RedisKey.getAgentUserInQueHashKey(), agentUser.getUserid())) {
-            // 等待服务
-            if (!StringUtils.equals(
-                    agentUser.getStatus(),
-                    MainContext.AgentUserStatusEnum.INQUENE.toString())) {
-                // 删除旧记录
-                redisCommand.delHashKV(RedisKey.getAgentUserInQueHashKey(), agentUser.getUserid());
-            }
-        }
-
-        // 更新新记录，忽略状态为END的agentUser，已结束的服务不加入缓存
-        if (!StringUtils.equals(agentUser.getStatus(), MainContext.AgentUserStatusEnum.END.toString())) {
-            redisCommand.setHashKV(
-                    RedisKey.getAgentUserHashKeyByStatusStr(agentUser.getStatus()), agentUser.getUserid(),
-                    SerializeUtil.serialize(agentUser));
-        }
+        // 在排队、服务中的 Hash 之间移动并写入新记录，同时更新坐席负载；
+        // 忽略状态为END的agentUser，已结束的服务不加入缓存
+        final boolean cached = !StringUtils.equals(
+                agentUser.getStatus(), MainContext.AgentUserStatusEnum.END.toString());
+        evalPutAgentUser(agentUser, cached, System.currentTimeMillis());
     }
 
 
@@ -374,38 +347,447 @@ public class Cache {
      */
     @AgentUserAspect.LinkAgentUser
     public void deleteAgentUserByUserId(final AgentUser agentUser) {
-        if (redisCommand.hasHashKV(RedisKey.getAgentUserInQueHashKey(), agentUser.getUserid())) {
-            // 排队等待中
-            redisCommand.delHashKV(RedisKey.getAgentUserInQueHashKey(), agentUser.getUserid());
-        } else if (redisCommand.hasHashKV(RedisKey.getAgentUserInServHashKey(), agentUser.getUserid())) {
-            redisCommand.delHashKV(RedisKey.getAgentUserInServHashKey(), agentUser.getUserid());
-        } else if (redisCommand.hasHashKV(RedisKey.getAgentUserEndHashKey(), agentUser.getUserid())) {
-            redisCommand.delHashKV(RedisKey.getAgentUserEndHashKey(), agentUser.getUserid());
+        evalIndexed(RedisScripts.AGENT_USER_DELETE, agentUser.getUserid(), true, true, Arrays.asList(
+                        RedisKey.getAgentUserInQueHashKey(), RedisKey.getAgentUserInServHashKey(),
+                        RedisKey.getAgentUserEndHashKey(), RedisKey.getAgentUserQueueZSetKey(),
+                        RedisKey.getAgentUserQueueIndexHashKey(), RedisKey.getAgentLoadIndexHashKey()),
+                raw(agentUser.getUserid()));
+    }
+
+    private Long evalPutAgentUser(final AgentUser agentUser, final boolean cached, final long queuetime) {
+        // 服务中的访客计入坐席在技能组中的负载，未指定技能组的计入 "_"
+        final String skill = StringUtils.defaultIfBlank(agentUser.getSkill(), "_");
+        final String loadAgentno = StringUtils.equals(agentUser.getStatus(),
+                MainContext.AgentUserStatusEnum.INSERVICE.toString()) ?
+                StringUtils.defaultString(agentUser.getAgentno()) : "";
+        return evalIndexed(RedisScripts.AGENT_USER_PUT, agentUser.getUserid(), true, true, Arrays.asList(
+                        RedisKey.getAgentUserInQueHashKey(), RedisKey.getAgentUserInServHashKey(),
+                        RedisKey.getAgentUserHashKeyByStatusStr(agentUser.getStatus()),
+                        RedisKey.getAgentUserQueueZSetKey(), RedisKey.getAgentUserQueueIndexHashKey(),
+                        RedisKey.getAgentUserQueueZSetKeyBySkill(agentUser.getSkill()),
+                        RedisKey.getAgentUserQueueZSetKeyByAgentno(agentUser.getAgentno()),
+                        RedisKey.getAgentLoadIndexHashKey(), RedisKey.getAgentLoadHashKeyBySkill(skill),
+                        RedisKey.getAgentLoadSkillsSetKey()),
+                raw(agentUser.getUserid()), raw(cached ? "1" : "0"),
+                cached ? SerializeUtil.encode(agentUser) : new byte[0], raw(String.valueOf(queuetime)),
+                raw(loadAgentno), raw(skill));
+    }
+
+    /**
+     * 执行修改排队索引、负载索引的脚本
+     * 索引中记录的技能组、坐席排队 ZSet 和技能组负载 Hash 也由脚本修改，需要先读取索引，作为 KEYS 传入；
+     * 读取之后索引被并发修改时脚本不做修改并返回 -1，重新读取索引后再次执行
+     *
+     * @param script
+     * @param userid
+     * @param queue  是否读取排队索引
+     * @param load   是否读取负载索引
+     * @param keys   脚本固定的 KEYS，之后依次追加排队索引、负载索引中记录的 KEY
+     * @param args   脚本固定的 ARGV，之后依次追加读取到的排队索引、负载索引记录
+     * @return 脚本的返回值
+     */
+    private Long evalIndexed(final RedisScript<Long> script, final String userid, final boolean queue,
+                             final boolean load, final List<String> keys, final byte[]... args) {
+        for (int i = 0; ; i++) {
+            final List<String> indexedKeys = new ArrayList<>(keys);
+            final List<byte[]> indexedArgs = new ArrayList<>(Arrays.asList(args));
+            if (queue) {
+                final String queued = StringUtils.defaultString(
+                        redisCommand.getHashKV(RedisKey.getAgentUserQueueIndexHashKey(), userid));
+                Collections.addAll(indexedKeys, StringUtils.split(queued, '\n'));
+                indexedArgs.add(raw(queued));
+            }
+            if (load) {
+                final String loaded = StringUtils.defaultString(
+                        redisCommand.getHashKV(RedisKey.getAgentLoadIndexHashKey(), userid));
+                if (!loaded.isEmpty()) {
+                    indexedKeys.add(StringUtils.substringBefore(loaded, "\n"));
+                }
+                indexedArgs.add(raw(loaded));
+            }
+
+            final Long result = redisCommand.eval(script, indexedKeys, indexedArgs.toArray(new byte[0][]));
+            if (result == null || result >= 0) {
+                return result;
+            }
+            if (i >= INDEX_RETRIES) {
+                logger.warn("[evalIndexed] index of user {} keeps changing, give up after {} retries", userid, i);
+                return result;
+            }
+        }
+    }
+
+    /***************************
+     * 排队位置相关
+     * 排队中的访客按入队时间记录在全部、技能组、坐席三类 ZSet 中，随 AgentUser 进入、离开排队状态在脚本中原子更新，
+     * 查询排队位置和队列长度时不需要读取排队中的全部访客
+     ***************************/
+
+    /**
+     * 获得排队的访客数量
+     *
+     * @param agentno 不为空时只统计指定了该坐席的访客
+     * @param skill   不为空时只统计该技能组的访客，优先于坐席
+     * @return
+     */
+    public int getInqueAgentUsersSize(final String agentno, final String skill) {
+        return findInqueAgentUserPosition(null, agentno, skill)[1];
+    }
+
+    /**
+     * 获得访客的排队位置和队列长度，统计范围同 getInqueAgentUsersSize
+     *
+     * @param userid
+     * @param agentno
+     * @param skill
+     * @return {位置, 长度}，位置从 1 开始，访客不在队列中时为 0
+     */
+    public int[] findInqueAgentUserPosition(final String userid, final String agentno, final String skill) {
+        final String key;
+        if (StringUtils.isNotBlank(skill)) {
+            key = RedisKey.getAgentUserQueueZSetKeyBySkill(skill);
+        } else if (StringUtils.isNotBlank(agentno)) {
+            key = RedisKey.getAgentUserQueueZSetKeyByAgentno(agentno);
         } else {
-            // TODO 考虑是否有其他状态保存
+            key = RedisKey.getAgentUserQueueZSetKey();
+        }
+        final List<?> result = redisCommand.eval(RedisScripts.QUEUE_POSITION, Collections.singletonList(key),
+                raw(StringUtils.defaultString(userid)));
+        return new int[]{((Number) result.get(0)).intValue(), ((Number) result.get(1)).intValue()};
+    }
+
+    /**
+     * 获得坐席可以接待的排队访客，按入队时间排序
+     * 包括指定了该坐席的访客，以及技能组中没有指定坐席的访客
+     *
+     * @param agentno
+     * @param agentLimit  指定了该坐席的访客最多返回的数量
+     * @param skillLimits 技能组 -> 最多返回的数量，空字符串代表没有技能组的访客
+     * @return
+     */
+    @SuppressWarnings("unchecked")
+    public List<AgentUser> findInqueAgentUsersForAgent(final String agentno, final int agentLimit,
+                                                       final Map<String, Integer> skillLimits) {
+        final List<String> keys = new ArrayList<>();
+        final List<byte[]> args = new ArrayList<>();
+        keys.add(RedisKey.getAgentUserInQueHashKey());
+        keys.add(RedisKey.getAgentUserQueueZSetKeyByAgentno(null));
+        keys.add(RedisKey.getAgentUserQueueZSetKeyByAgentno(agentno));
+        args.add(raw(String.valueOf(agentLimit)));
+        for (final Map.Entry<String, Integer> entry : skillLimits.entrySet()) {
+            if (entry.getValue() > 0) {
+                keys.add(RedisKey.getAgentUserQueueZSetKeyBySkill(entry.getKey()));
+                args.add(raw(String.valueOf(entry.getValue())));
+            }
+        }
+
+        final List<byte[]> values = redisCommand.eval(RedisScripts.QUEUE_PENDING, keys, args.toArray(new byte[0][]));
+        final List<AgentUser> result = new ArrayList<>();
+        final Map<String, Double> scores = new HashMap<>();
+        if (values != null) {
+            for (int i = 0; i + 2 < values.size(); i += 3) {
+                final AgentUser agentUser = SerializeUtil.decode(values.get(i + 2));
+                if (agentUser != null) {
+                    scores.put(agentUser.getUserid(),
+                            NumberUtils.toDouble(new String(values.get(i + 1), StandardCharsets.UTF_8)));
+                    result.add(agentUser);
+                }
+            }
+        }
+        // 合并各队列，先入队的先分配
+        result.sort(Comparator.comparing(p -> scores.get(p.getUserid())));
+        return result;
+    }
+
+    /**
+     * 根据排队中的访客重建排队位置索引
+     */
+    public void rebuildAgentUserQueue() {
+        for (final String keys : redisCommand.getHash(RedisKey.getAgentUserQueueIndexHashKey()).values()) {
+            for (final String key : StringUtils.split(keys, '\n')) {
+                redisCommand.delete(key);
+            }
+        }
+        redisCommand.delete(RedisKey.getAgentUserQueueIndexHashKey());
+        redisCommand.delete(RedisKey.getAgentUserQueueZSetKey());
+
+        final List<AgentUser> queued = new ArrayList<>(getAgentUsersInQue().values());
+        // 以等待开始的时间作为入队时间，保持原来的先后顺序
+        for (final AgentUser agentUser : queued) {
+            final Date start = agentUser.getWaittingtimestart() != null ?
+                    agentUser.getWaittingtimestart() : agentUser.getCreatetime();
+            agentUser.setStatus(MainContext.AgentUserStatusEnum.INQUENE.toString());
+            evalPutAgentUser(agentUser, true, start != null ? start.getTime() : System.currentTimeMillis());
+        }
+        logger.info("[rebuildAgentUserQueue] queued {}", queued.size());
+    }
+
+    /***************************
+     * 会话超时定时器相关
+     * 定时器以 类型:userid 为成员、到期时间为分值记录在 ZSet 中，重复设置时覆盖到期时间
+     ***************************/
+
+    /**
+     * 设置定时器
+     *
+     * @param type
+     * @param userid
+     * @param deadline 到期时间
+     */
+    public void putAgentUserTimeout(final String type, final String userid, final long deadline) {
+        redisCommand.addZSetVal(RedisKey.getAgentUserTimeoutZSetKey(), type + ":" + userid, deadline);
+    }
+
+    /**
+     * 定时器不存在时设置定时器
+     *
+     * @param type
+     * @param userid
+     * @param deadline
+     */
+    public void putAgentUserTimeoutIfAbsent(final String type, final String userid, final long deadline) {
+        redisCommand.addZSetValIfAbsent(RedisKey.getAgentUserTimeoutZSetKey(), type + ":" + userid, deadline);
+    }
+
+    /**
+     * 取消定时器
+     *
+     * @param userid
+     * @param types
+     */
+    public void deleteAgentUserTimeout(final String userid, final String... types) {
+        final String[] vals = new String[types.length];
+        for (int i = 0; i < types.length; i++) {
+            vals[i] = types[i] + ":" + userid;
+        }
+        redisCommand.removeZSetVal(RedisKey.getAgentUserTimeoutZSetKey(), vals);
+    }
+
+    /**
+     * 取出已经到期的定时器，每个定时器只会被一个节点取出
+     *
+     * @param now
+     * @param limit
+     * @return 类型:userid
+     */
+    @SuppressWarnings("unchecked")
+    public List<String> claimAgentUserTimeouts(final long now, final int limit) {
+        final List<byte[]> due = redisCommand.eval(RedisScripts.TIMEOUT_CLAIM,
+                Collections.singletonList(RedisKey.getAgentUserTimeoutZSetKey()),
+                raw(String.valueOf(now)), raw(String.valueOf(limit)));
+        final List<String> result = new ArrayList<>();
+        if (due != null) {
+            for (final byte[] val : due) {
+                result.add(new String(val, StandardCharsets.UTF_8));
+            }
+        }
+        return result;
+    }
+
+    /***************************
+     * 坐席负载相关
+     * 按技能组记录每个坐席服务中的访客数量，代替分配坐席时逐个坐席查询数据库。
+     * 负载由 agentuser_put、agentuser_delete、agentuser_inserv_delete 脚本在移动 AgentUser 的同时原子增减，
+     * 负载索引记录每个服务中的访客计入的技能组和坐席，转接或重复写入时不会重复计数；
+     * 启动时由 rebuildAgentLoad 根据服务中 Hash 重建，不查询数据库
+     ***************************/
+
+    /**
+     * 获得坐席在技能组中服务中的访客数量
+     *
+     * @param agentno
+     * @param skill
+     * @return
+     */
+    public int getInservAgentUsersSizeByAgentnoAndSkill(final String agentno, final String skill) {
+        return Math.max(0, NumberUtils.toInt(
+                redisCommand.getHashKV(RedisKey.getAgentLoadHashKeyBySkill(skill), agentno)));
+    }
+
+    /**
+     * 获得技能组中各坐席服务中的访客数量
+     *
+     * @param skill
+     * @return agentno -> 数量
+     */
+    public Map<String, Integer> getInservAgentUsersSizeBySkill(final String skill) {
+        final Map<String, Integer> result = new HashMap<>();
+        for (final Map.Entry<String, String> entry : redisCommand.getHash(
+                RedisKey.getAgentLoadHashKeyBySkill(skill)).entrySet()) {
+            result.put(entry.getKey(), Math.max(0, NumberUtils.toInt(entry.getValue())));
+        }
+        return result;
+    }
+
+    /**
+     * 根据服务中的访客重建坐席负载和负载索引
+     */
+    public void rebuildAgentLoad() {
+        for (final String skill : redisCommand.getSet(RedisKey.getAgentLoadSkillsSetKey())) {
+            redisCommand.delete(RedisKey.getAgentLoadHashKeyBySkill(skill));
         }
+        redisCommand.delete(RedisKey.getAgentLoadSkillsSetKey());
+        redisCommand.delete(RedisKey.getAgentLoadIndexHashKey());
+
+        final Map<String, byte[]> inserv = redisCommand.getHashAsBytes(RedisKey.getAgentUserInServHashKey());
+        for (final byte[] val : inserv.values()) {
+            final AgentUser agentUser = SerializeUtil.decode(val);
+            if (agentUser != null) {
+                // 重新写入同一条记录，负载在脚本中计入
+                agentUser.setStatus(MainContext.AgentUserStatusEnum.INSERVICE.toString());
+                evalPutAgentUser(agentUser, true, System.currentTimeMillis());
+            }
+        }
+        logger.info("[rebuildAgentLoad] inservice {}", inserv.size());
+    }
+
+    private static byte[] raw(final String s) {
+        return s.getBytes(StandardCharsets.UTF_8);
+    }
+
+    /***************************
+     * 报表汇总相关
+     * 服务记录变更后记录所在时段，由定时任务重新汇总
+     ***************************/
+
+    /**
+     * 记录等待重新汇总的时段，时段已经在等待时不重复加入
+     *
+     * @param period 时段，yyyyMMddHH 或 yyyyMMdd
+     */
+    public void putReportRollupPending(final String period) {
+        redisCommand.addZSetValIfAbsent(RedisKey.getReportRollupPendingZSetKey(), period, System.currentTimeMillis());
+    }
+
+    /**
+     * 取出等待重新汇总的时段，同一时间每个时段只会被一个节点取出；
+     * 汇总完成后调用 releaseReportRollupLease，节点中途退出时租约到期后重新等待汇总
+     *
+     * @param limit
+     * @param lease 租约时长，毫秒
+     * @return
+     */
+    @SuppressWarnings("unchecked")
+    public List<String> claimReportRollupPending(final int limit, final long lease) {
+        final long now = System.currentTimeMillis();
+        final List<byte[]> due = redisCommand.eval(RedisScripts.LEASE_CLAIM,
+                Arrays.asList(RedisKey.getReportRollupPendingZSetKey(), RedisKey.getReportRollupLeaseZSetKey()),
+                raw(String.valueOf(now)), raw(String.valueOf(limit)), raw(String.valueOf(now + lease)));
+        final List<String> result = new ArrayList<>();
+        if (due != null) {
+            for (final byte[] val : due) {
+                result.add(new String(val, StandardCharsets.UTF_8));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * 时段已经汇总并提交，删除租约
+     *
+     * @param period
+     */
+    public void releaseReportRollupLease(final String period) {
+        redisCommand.removeZSetVal(RedisKey.getReportRollupLeaseZSetKey(), period);
+    }
+
+    /***************************
+     * SocketIO 连接所在节点相关
+     * 跨节点发送消息时，只发送到连接所在的节点
+     ***************************/
+
+    /**
+     * 记录访客或坐席的连接所在节点
+     *
+     * @param type    连接类型
+     * @param id      访客ID或坐席ID
+     * @param nodeId  节点ID
+     * @param seconds 过期时间，长时间没有重新连接的记录自动删除
+     */
+    public void putSocketIOConnection(final String type, final String id, final String nodeId, final long seconds) {
+        final String key = RedisKey.getSocketIOConnectionKey(type, id);
+        redisCommand.insertSetVal(key, nodeId);
+        redisCommand.expire(key, seconds);
+    }
+
+    /**
+     * 删除访客或坐席的连接所在节点
+     *
+     * @param type
+     * @param id
+     * @param nodeId
+     */
+    public void deleteSocketIOConnection(final String type, final String id, final String nodeId) {
+        redisCommand.removeSetVal(RedisKey.getSocketIOConnectionKey(type, id), nodeId);
+    }
+
+    /**
+     * 获得访客或坐席的连接所在的存活节点
+     *
+     * @param type
+     * @param id
+     * @param since 心跳早于该时间的节点视为离线
+     * @return
+     */
+    @SuppressWarnings("unchecked")
+    public List<String> findSocketIONodes(final String type, final String id, final long since) {
+        final List<byte[]> nodes = redisCommand.eval(RedisScripts.SOCKETIO_NODES, Arrays.asList(
+                        RedisKey.getSocketIOConnectionKey(type, id), RedisKey.getSocketIONodesHashKey()),
+                raw(String.valueOf(since)));
+        final List<String> result = new ArrayList<>();
+        if (nodes != null) {
+            for (final byte[] node : nodes) {
+                result.add(new String(node, StandardCharsets.UTF_8));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * 更新节点心跳
+     *
+     * @param nodeId
+     */
+    public void putSocketIONodeHeartbeat(final String nodeId) {
+        redisCommand.setHashKV(
+                RedisKey.getSocketIONodesHashKey(), nodeId, String.valueOf(System.currentTimeMillis()));
     }
 
     /***************************
      * CousultInvite 相关
      ***************************/
     public void putConsultInvite(final CousultInvite cousultInvite) {
-        redisCommand.setHashKV(
+        redisCommand.setHashBytes(
                 RedisKey.getConsultInvites(), cousultInvite.getSnsaccountid(),
-                SerializeUtil.serialize(cousultInvite));
+                SerializeUtil.encode(cousultInvite));
     }
 
     public CousultInvite findOneConsultInviteBySnsid(final String snsid) {
-        String serialized = redisCommand.getHashKV(RedisKey.getConsultInvites(), snsid);
-        if (StringUtils.isBlank(serialized)) {
+        byte[] serialized = redisCommand.getHashBytes(RedisKey.getConsultInvites(), snsid);
+        if (serialized == null) {
             return null;
         } else {
-            return (CousultInvite) SerializeUtil.deserialize(serialized);
+            return (CousultInvite) SerializeUtil.decode(serialized);
         }
     }
 
     public void deleteConsultInviteBySnsid(final String snsid) {
         redisCommand.delHashKV(RedisKey.getConsultInvites(), snsid);
+        redisCommand.incrHashKV(RedisKey.getConsultInviteVersions(), snsid, 1);
+    }
+
+    /**
+     * 网站渠道配置变更后更新缓存，并增加配置版本号，聊天控件的地址随版本号变化
+     *
+     * @param cousultInvite
+     */
+    public void updateConsultInvite(final CousultInvite cousultInvite) {
+        putConsultInvite(cousultInvite);
+        redisCommand.incrHashKV(RedisKey.getConsultInviteVersions(), cousultInvite.getSnsaccountid(), 1);
+    }
+
+    public long getConsultInviteVersion(final String snsid) {
+        return NumberUtils.toLong(redisCommand.getHashKV(RedisKey.getConsultInviteVersions(), snsid));
     }
 
 
@@ -420,8 +802,8 @@ public class Cache {
      */
     public void putOnlineUser(final PassportWebIMUser passportWebIMUser) {
         // 此处onlineUser的id 与 onlineUser userId相同
-        redisCommand.setHashKV(
-                RedisKey.getOnlineUserHashKey(), passportWebIMUser.getId(), SerializeUtil.serialize(passportWebIMUser));
+        redisCommand.setHashBytes(
+                RedisKey.getOnlineUserHashKey(), passportWebIMUser.getId(), SerializeUtil.encode(passportWebIMUser));
     }
 
     /**
@@ -431,8 +813,8 @@ public class Cache {
      * @return
      */
     public PassportWebIMUser findOneOnlineUserByUserId(final String id) {
-        String serialized = redisCommand.getHashKV(RedisKey.getOnlineUserHashKey(), id);
-        if (StringUtils.isBlank(serialized)) {
+        byte[] serialized = redisCommand.getHashBytes(RedisKey.getOnlineUserHashKey(), id);
+        if (serialized == null) {
             // query with MySQL
             return onlineUserRes.findOneByUserid(id);
         } else {
@@ -440,8 +822,8 @@ public class Cache {
         }
     }
 
-    private static PassportWebIMUser convertFromStringToOnlineUser(final String serialized) {
-        PassportWebIMUser obj = SerializeUtil.deserialize(serialized);
+    private static PassportWebIMUser convertFromStringToOnlineUser(final byte[] serialized) {
+        PassportWebIMUser obj = SerializeUtil.decode(serialized);
         return obj;
     }
 
@@ -472,10 +854,10 @@ public class Cache {
         redisCommand.removeSetVal(RedisKey.getInServAgentUsersByAgentno(agentno), userid);
     }
 
-    private Map<String, PassportWebIMUser> convertFromStringToOnlineUsers(final Map<String, String> map) {
+    private Map<String, PassportWebIMUser> convertFromStringToOnlineUsers(final Map<String, byte[]> map) {
         Map<String, PassportWebIMUser> result = new HashMap<>();
-        for (Map.Entry<String, String> entry : map.entrySet()) {
-            PassportWebIMUser x = SerializeUtil.deserialize(entry.getValue());
+        for (Map.Entry<String, byte[]> entry : map.entrySet()) {
+            PassportWebIMUser x = SerializeUtil.decode(entry.getValue());
             result.put(entry.getKey(), x);
         }
         return result;
@@ -493,7 +875,7 @@ public class Cache {
      * @param agent
      */
     public void putCallCenterAgentById(final String id, final CallCenterAgent agent) {
-        redisCommand.setHashKV(RedisKey.getCallCenterAgentHashKey(), id, SerializeUtil.serialize(agent));
+        redisCommand.setHashBytes(RedisKey.getCallCenterAgentHashKey(), id, SerializeUtil.encode(agent));
     }
 
     /**
@@ -503,9 +885,9 @@ public class Cache {
      * @return
      */
     public CallCenterAgent findOneCallCenterAgentById(final String id) {
-        String serialized = redisCommand.getHashKV(RedisKey.getCallCenterAgentHashKey(), id);
-        if (StringUtils.isNotBlank(serialized)) {
-            return (CallCenterAgent) SerializeUtil.deserialize(serialized);
+        byte[] serialized = redisCommand.getHashBytes(RedisKey.getCallCenterAgentHashKey(), id);
+        if (serialized != null) {
+            return (CallCenterAgent) SerializeUtil.decode(serialized);
         } else {
             return null;
         }
@@ -527,11 +909,11 @@ public class Cache {
      * @return
      */
     public Map<String, CallCenterAgent> findAllCallCenterAgents() {
-        Map<String, String> map = redisCommand.getHash(RedisKey.getCallCenterAgentHashKey());
+        Map<String, byte[]> map = redisCommand.getHashAsBytes(RedisKey.getCallCenterAgentHashKey());
         Map<String, CallCenterAgent> result = new HashMap<>();
 
-        for (Map.Entry<String, String> entry : map.entrySet()) {
-            result.put(entry.getKey(), SerializeUtil.deserialize(entry.getValue()));
+        for (Map.Entry<String, byte[]> entry : map.entrySet()) {
+            result.put(entry.getKey(), SerializeUtil.decode(entry.getValue()));
         }
 
         return result;
@@ -542,18 +924,18 @@ public class Cache {
      */
     // 将访客放在租户的黑名单中
     public void putBlackEntity(final BlackEntity blackEntity) {
-        redisCommand.setHashKV(
-                RedisKey.getBlackEntityKey(), blackEntity.getUserid(), SerializeUtil.serialize(blackEntity));
+        redisCommand.setHashBytes(
+                RedisKey.getBlackEntityKey(), blackEntity.getUserid(), SerializeUtil.encode(blackEntity));
     }
 
     // 通过指定的访客和租户查找黑名单
     public Optional<BlackEntity> findOneBlackEntityByUserId(final String userid) {
-        String ser = redisCommand.getHashKV(RedisKey.getBlackEntityKey(), userid);
-        if (StringUtils.isBlank(ser)) {
+        byte[] ser = redisCommand.getHashBytes(RedisKey.getBlackEntityKey(), userid);
+        if (ser == null) {
             return Optional.empty();
         }
 
-        return Optional.ofNullable(SerializeUtil.deserialize(ser));
+        return Optional.ofNullable(SerializeUtil.decode(ser));
     }
 
     // 将一个访客从黑名单中移除
@@ -569,9 +951,9 @@ public class Cache {
     // 根据租户ID获得所有访客的黑名单
     public Map<String, BlackEntity> findAllBlackEntity() {
         Map<String, BlackEntity> result = new HashMap<>();
-        for (Map.Entry<String, String> entry : redisCommand.getHash(
+        for (Map.Entry<String, byte[]> entry : redisCommand.getHashAsBytes(
                 RedisKey.getBlackEntityKey()).entrySet()) {
-            result.put(entry.getKey(), SerializeUtil.deserialize(entry.getValue()));
+            result.put(entry.getKey(), SerializeUtil.decode(entry.getValue()));
         }
         return result;
     }
@@ -581,14 +963,14 @@ public class Cache {
      * Job 相关
      *****************************/
     public void putJobById(final String jobId, final JobDetail job) {
-        redisCommand.setHashKV(RedisKey.getJobHashKey(), jobId, SerializeUtil.serialize(job));
+        redisCommand.setHashBytes(RedisKey.getJobHashKey(), jobId, SerializeUtil.encode(job));
     }
 
     public JobDetail findOneJobById(final String jobId) {
-        String serialized = redisCommand.getHashKV(RedisKey.getJobHashKey(), jobId);
+        byte[] serialized = redisCommand.getHashBytes(RedisKey.getJobHashKey(), jobId);
 
-        if (StringUtils.isNotBlank(serialized)) {
-            return (JobDetail) SerializeUtil.deserialize(serialized);
+        if (serialized != null) {
+            return (JobDetail) SerializeUtil.decode(serialized);
         }
         return null;
     }
@@ -601,85 +983,19 @@ public class Cache {
         redisCommand.delHashKV(RedisKey.getJobHashKey(), jobId);
     }
 
-    /**
-     * 系统词典相关
-     */
-    // 存储根词典
-    public void putSysDic(final String id, final SysDic sysDic) {
-        redisCommand.setHashKV(RedisKey.getSysDicHashKey(), id, SerializeUtil.serialize(sysDic));
-    }
-
-    // 将指定租户的系统词典清空
-    public void eraseSysDic() {
-        redisCommand.delete(RedisKey.getSysDicHashKey());
-    }
-
-    // 存储词典子项
-    public void putSysDic(final String code, final List<SysDic> sysDics) {
-        redisCommand.setHashKV(RedisKey.getSysDicHashKey(), code, SerializeUtil.serialize(sysDics));
-    }
-
-    // 获得词典的子项列表
-    public List<SysDic> getSysDicItemsByCode(final String code) {
-        String serialized = redisCommand.getHashKV(RedisKey.getSysDicHashKey(), code);
-        if (serialized != null) {
-            return (List<SysDic>) SerializeUtil.deserialize(serialized);
-        }
-        return null;
-    }
-
-    // 获得词典子项
-    public SysDic findOneSysDicByCode(final String code) {
-        String serialized = redisCommand.getHashKV(RedisKey.getSysDicHashKey(), code);
-
-        if (StringUtils.isBlank(serialized)) {
-            return null;
-        }
-
-        return (SysDic) SerializeUtil.deserialize(serialized);
-    }
-
-    // 获得词典
-    public SysDic findOneSysDicById(final String id) {
-        String serialized = redisCommand.getHashKV(RedisKey.getSysDicHashKey(), id);
-
-        if (StringUtils.isBlank(serialized)) {
-            return null;
-        }
-
-        return (SysDic) SerializeUtil.deserialize(serialized);
-    }
-
-    // 批量存储
-    public void putSysDic(List<SysDic> vals) {
-        Map<String, String> map = new HashMap<>();
-        for (final SysDic dic : vals) {
-            map.put(dic.getId(), SerializeUtil.serialize(dic));
-        }
-        redisCommand.hmset(RedisKey.getSysDicHashKey(), map);
-    }
-
-    public void deleteSysDicById(final String id) {
-        redisCommand.delHashKV(RedisKey.getSysDicHashKey(), id);
-    }
-
-    public boolean existSysDicById(final String id) {
-        return redisCommand.hasHashKV(RedisKey.getSysDicHashKey(), id);
-    }
-
     /**
      * System 相关
      */
     public <T extends Serializable> void putSystemById(final String id, final T obj) {
-        redisCommand.setHashKV(RedisKey.getSystemHashKey(), id, SerializeUtil.serialize(obj));
+        redisCommand.setHashBytes(RedisKey.getSystemHashKey(), id, SerializeUtil.encode(obj));
     }
 
     public <T extends Serializable> void putSystemListById(final String id, final List<T> obj) {
-        redisCommand.setHashKV(RedisKey.getSystemHashKey(), id, SerializeUtil.serialize(obj));
+        redisCommand.setHashBytes(RedisKey.getSystemHashKey(), id, SerializeUtil.encode(obj));
     }
 
     public <TK, TV extends Serializable> void putSystemMapById(final String id, final Map<TK, TV> obj) {
-        redisCommand.setHashKV(RedisKey.getSystemHashKey(), id, SerializeUtil.serialize(obj));
+        redisCommand.setHashBytes(RedisKey.getSystemHashKey(), id, SerializeUtil.encode(obj));
     }
 
     public boolean existSystemById(final String id) {
@@ -691,25 +1007,25 @@ public class Cache {
     }
 
     public <T extends Serializable> T findOneSystemById(final String id) {
-        String serialized = redisCommand.getHashKV(RedisKey.getSystemHashKey(), id);
-        if (StringUtils.isNotBlank(serialized)) {
-            return (T) SerializeUtil.deserialize(serialized);
+        byte[] serialized = redisCommand.getHashBytes(RedisKey.getSystemHashKey(), id);
+        if (serialized != null) {
+            return (T) SerializeUtil.decode(serialized);
         }
         return null;
     }
 
     public <T extends Serializable> List<T> findOneSystemListById(final String id) {
-        String serialized = redisCommand.getHashKV(RedisKey.getSystemHashKey(), id);
-        if (StringUtils.isNotBlank(serialized)) {
-            return (List<T>) SerializeUtil.deserialize(serialized);
+        byte[] serialized = redisCommand.getHashBytes(RedisKey.getSystemHashKey(), id);
+        if (serialized != null) {
+            return (List<T>) SerializeUtil.decode(serialized);
         }
         return null;
     }
 
     public <TK, TV extends Serializable> Map<TK, TV> findOneSystemMapById(final String id) {
-        String serialized = redisCommand.getHashKV(RedisKey.getSystemHashKey(), id);
-        if (StringUtils.isNotBlank(serialized)) {
-            return (Map<TK, TV>) SerializeUtil.deserialize(serialized);
+        byte[] serialized = redisCommand.getHashBytes(RedisKey.getSystemHashKey(), id);
+        if (serialized != null) {
+            return (Map<TK, TV>) SerializeUtil.decode(serialized);
         }
         return null;
     }
@@ -719,51 +1035,6 @@ public class Cache {
         return redisCommand.getHashSize(RedisKey.getSystemHashKey());
     }
 
-    /**************************
-     * Session Config 相关
-     **************************/
-
-    public void putSessionConfig(final SessionConfig sessionConfig, String organid) {
-        redisCommand.put(RedisKey.getSessionConfig(organid), SerializeUtil.serialize(sessionConfig));
-    }
-
-    public SessionConfig findOneSessionConfig(String organid) {
-        String serialized = redisCommand.get(RedisKey.getSessionConfig(organid));
-        if (StringUtils.isNotBlank(serialized)) {
-            return (SessionConfig) SerializeUtil.deserialize(serialized);
-        }
-        return null;
-    }
-
-    public void deleteSessionConfig(String organid) {
-        redisCommand.delete(RedisKey.getSessionConfig(organid));
-    }
-
-    public boolean existSessionConfig(String organid) {
-        return redisCommand.exists(RedisKey.getSessionConfig(organid));
-    }
-
-    public void putSessionConfigList(final List<SessionConfig> lis) {
-        redisCommand.put(RedisKey.getSessionConfigList(), SerializeUtil.serialize(lis));
-    }
-
-    public List<SessionConfig> findOneSessionConfigList() {
-        String serialized = redisCommand.get(RedisKey.getSessionConfigList());
-        if (StringUtils.isNotBlank(serialized)) {
-            return (List<SessionConfig>) SerializeUtil.deserialize(serialized);
-        }
-
-        return null;
-    }
-
-    public void deleteSessionConfigList() {
-        redisCommand.delete(RedisKey.getSessionConfigList());
-    }
-
-    public boolean existSessionConfigList() {
-        return redisCommand.exists(RedisKey.getSessionConfigList());
-    }
-
     /******************************************
      * Customer Chats Audit 相关
      ******************************************/
@@ -771,8 +1042,8 @@ public class Cache {
         if (StringUtils.isBlank(audit.getAgentUserId())) {
             throw new CSKefuCacheException("agentUserId is required.");
         }
-        redisCommand.setHashKV(
-                RedisKey.getCustomerChatsAuditKey(), audit.getAgentUserId(), SerializeUtil.serialize(audit));
+        redisCommand.setHashBytes(
+                RedisKey.getCustomerChatsAuditKey(), audit.getAgentUserId(), SerializeUtil.encode(audit));
     }
 
     public void deleteAgentUserAuditById(final String agentUserId) {
@@ -781,11 +1052,11 @@ public class Cache {
 
     public Optional<AgentUserAudit> findOneAgentUserAuditById(final String agentUserId) {
         logger.info("[findOneAgentUserAuditById] agentUserId {}", agentUserId);
-        String serialized = redisCommand.getHashKV(RedisKey.getCustomerChatsAuditKey(), agentUserId);
-        if (StringUtils.isBlank(serialized)) {
+        byte[] serialized = redisCommand.getHashBytes(RedisKey.getCustomerChatsAuditKey(), agentUserId);
+        if (serialized == null) {
             return Optional.empty();
         }
-        return Optional.ofNullable((AgentUserAudit) SerializeUtil.deserialize(serialized));
+        return Optional.ofNullable((AgentUserAudit) SerializeUtil.decode(serialized));
     }
 
     public boolean existAgentUserAuditById(final String agentUserId) {
@@ -0,0 +1,120 @@
+/*
+ * Copyright (C) 2023 Beijing Huaxia Chunsong Technology Co., Ltd.
+ * <https://www.chatopera.com>, Licensed under the Chunsong Public
+ * License, Version 1.0  (the "License"), https://docs.cskefu.com/licenses/v1.html
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cskefu.cc.cache;
+
+import com.cskefu.cc.model.Organ;
+import com.cskefu.cc.persistence.repository.OrganRepository;
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.BeanUtils;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.*;
+
+/**
+ * 部门树的本地快照：ID -> 部门，部门 -> 部门及其全部下级部门；部门写入数据库后失效，见 VersionedSnapshot
+ * <p>
+ * 快照中的部门是加载时复制的对象，不受数据库会话管理，在快照之间共享，调用方不能修改。
+ */
+@Component
+public class OrganCache {
+
+    private final static Logger logger = LoggerFactory.getLogger(OrganCache.class);
+
+    @Value("${cskefu.organ.check-interval:5000}")
+    private long checkInterval;
+
+    @Autowired
+    private OrganRepository organRes;
+
+    @Autowired
+    private SnapshotRegistry snapshotRegistry;
+
+    private VersionedSnapshot<Snapshot> snapshot;
+
+    @PostConstruct
+    public void setup() {
+        snapshot = snapshotRegistry.register("organ", RedisKey.getOrganVersionKey(), checkInterval,
+                this::load, OrganRepository.class);
+    }
+
+    /**
+     * 获得部门及其全部下级部门的ID
+     *
+     * @param organid
+     * @return 不可修改的集合
+     */
+    public Set<String> findSubtree(final String organid) {
+        final Set<String> result = organid != null ? snapshot.get().subtrees.get(organid) : null;
+        return result != null ? result : Collections.emptySet();
+    }
+
+    /**
+     * 获得部门及其全部下级部门
+     *
+     * @param organid
+     * @return 部门ID -> 部门，部门不存在时返回空
+     */
+    public Map<String, Organ> findSubtreeMap(final String organid) {
+        final Map<String, Organ> result = new HashMap<>();
+        if (organid != null) {
+            final Snapshot current = snapshot.get();
+            for (final String id : current.subtrees.getOrDefault(organid, Collections.emptySet())) {
+                result.put(id, current.organs.get(id));
+            }
+        }
+        return result;
+    }
+
+    private Snapshot load() {
+        final List<Organ> organs = organRes.findAll();
+        logger.info("[load] organs {}", organs.size());
+        return new Snapshot(organs);
+    }
+
+    private static final class Snapshot {
+        private final Map<String, Organ> organs;
+        private final Map<String, Set<String>> subtrees;
+
+        private Snapshot(final List<Organ> organs) {
+            final Map<String, Organ> copies = new HashMap<>();
+            final Map<String, List<String>> children = new HashMap<>();
+            for (final Organ organ : organs) {
+                final Organ copy = new Organ();
+                BeanUtils.copyProperties(organ, copy);
+                copies.put(copy.getId(), copy);
+                if (organ.getParent() != null) {
+                    children.computeIfAbsent(organ.getParent(), k -> new ArrayList<>()).add(organ.getId());
+                }
+            }
+
+            final Map<String, Set<String>> subtrees = new HashMap<>();
+            for (final String organid : copies.keySet()) {
+                final Set<String> subtree = new HashSet<>();
+                final Deque<String> pending = new ArrayDeque<>();
+                pending.push(organid);
+                while (!pending.isEmpty()) {
+                    final String id = pending.pop();
+                    if (subtree.add(id)) {
+                        pending.addAll(children.getOrDefault(id, Collections.emptyList()));
+                    }
+                }
+                subtrees.put(organid, Collections.unmodifiableSet(subtree));
+            }
+
+            this.organs = Collections.unmodifiableMap(copies);
+            this.subtrees = Collections.unmodifiableMap(subtrees);
+        }
+    }
+}
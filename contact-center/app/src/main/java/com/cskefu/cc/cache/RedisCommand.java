@@ -16,11 +16,15 @@ package com.cskefu.cc.cache;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.redis.connection.ReturnType;
 import org.springframework.data.redis.core.*;
+import org.springframework.data.redis.core.script.RedisScript;
 import org.springframework.stereotype.Component;
 import org.springframework.util.CollectionUtils;
 
 import jakarta.annotation.PostConstruct;
+import java.nio.charset.StandardCharsets;
 import java.util.*;
 import java.util.concurrent.TimeUnit;
 
@@ -70,6 +74,16 @@ public class RedisCommand {
         return redisValOps.get(key);
     }
 
+    /**
+     * 将一个KEY的值加一
+     *
+     * @param key
+     * @return 加一之后的值
+     */
+    public long increment(final String key) {
+        return redisValOps.increment(key);
+    }
+
     /**
      * 删除一个KEY
      *
@@ -258,6 +272,18 @@ public class RedisCommand {
         redisHashOps.delete(hashKey, childKey);
     }
 
+    /**
+     * 将Hash Map KV的值增加 delta
+     *
+     * @param hashKey
+     * @param childKey
+     * @param delta
+     * @return 增加之后的值
+     */
+    public long incrHashKV(final String hashKey, final String childKey, final long delta) {
+        return redisHashOps.increment(hashKey, childKey, delta);
+    }
+
     /**
      * HashSet
      * https://www.cnblogs.com/hongdada/p/9141125.html
@@ -276,6 +302,123 @@ public class RedisCommand {
     }
 
 
+    /*****************************
+     * 二进制值相关
+     * 缓存对象经 SerializeUtil 编码后直接以字节存储，避免 Base64 的额外开销
+     *****************************/
+
+    private static byte[] raw(final String s) {
+        return s.getBytes(StandardCharsets.UTF_8);
+    }
+
+    public void putBytes(final String key, final byte[] val) {
+        redis.execute((RedisCallback<Boolean>) con -> con.stringCommands().set(raw(key), val));
+    }
+
+    public byte[] getBytes(final String key) {
+        return redis.execute((RedisCallback<byte[]>) con -> con.stringCommands().get(raw(key)));
+    }
+
+    public void setHashBytes(final String hashKey, final String childKey, final byte[] childVal) {
+        redis.execute((RedisCallback<Boolean>) con -> con.hashCommands().hSet(raw(hashKey), raw(childKey), childVal));
+    }
+
+    public byte[] getHashBytes(final String hashKey, final String childKey) {
+        return redis.execute((RedisCallback<byte[]>) con -> con.hashCommands().hGet(raw(hashKey), raw(childKey)));
+    }
+
+    /**
+     * 获得一个Hash中所有的值
+     *
+     * @param hashKey
+     * @return
+     */
+    public Map<String, byte[]> getHashAsBytes(final String hashKey) {
+        return getAllMembersInMultiHashAsBytes(Collections.singletonList(hashKey));
+    }
+
+    /**
+     * 获得多个Hash的全部成员
+     *
+     * @param keys
+     * @return
+     */
+    public Map<String, byte[]> getAllMembersInMultiHashAsBytes(final List<String> keys) {
+        return redis.execute((RedisCallback<Map<String, byte[]>>) con -> {
+            Map<String, byte[]> ans = new HashMap<>();
+            for (String key : keys) {
+                Map<byte[], byte[]> result = con.hashCommands().hGetAll(raw(key));
+                if (!CollectionUtils.isEmpty(result)) {
+                    for (Map.Entry<byte[], byte[]> entry : result.entrySet()) {
+                        ans.put(new String(entry.getKey(), StandardCharsets.UTF_8), entry.getValue());
+                    }
+                }
+            }
+            return ans;
+        });
+    }
+
+    public void hmsetBytes(final String key, final Map<String, byte[]> map) {
+        try {
+            final Map<byte[], byte[]> hashes = new HashMap<>(map.size());
+            for (Map.Entry<String, byte[]> entry : map.entrySet()) {
+                hashes.put(raw(entry.getKey()), entry.getValue());
+            }
+            redis.execute((RedisCallback<Void>) con -> {
+                con.hashCommands().hMSet(raw(key), hashes);
+                return null;
+            });
+        } catch (Exception e) {
+            logger.error("hmsetBytes bad things happen", e);
+        }
+    }
+
+
+    /*****************************
+     * Lua 脚本相关
+     *****************************/
+
+    /**
+     * 执行脚本，优先使用 EVALSHA，Redis 中没有该脚本时使用 EVAL 并缓存脚本
+     *
+     * @param script 脚本
+     * @param keys   脚本中使用的KEY
+     * @param args   脚本参数
+     * @return 脚本返回值，类型由 script.getResultType 决定
+     */
+    @SuppressWarnings("unchecked")
+    public <T> T eval(final RedisScript<T> script, final List<String> keys, final byte[]... args) {
+        final ReturnType returnType = ReturnType.fromJavaType(script.getResultType());
+        final byte[][] keysAndArgs = new byte[keys.size() + args.length][];
+        for (int i = 0; i < keys.size(); i++) {
+            keysAndArgs[i] = raw(keys.get(i));
+        }
+        System.arraycopy(args, 0, keysAndArgs, keys.size(), args.length);
+
+        return redis.execute((RedisCallback<T>) con -> {
+            try {
+                return (T) con.scriptingCommands().evalSha(script.getSha1(), returnType, keys.size(), keysAndArgs);
+            } catch (DataAccessException e) {
+                if (!isNoScript(e)) {
+                    throw e;
+                }
+                return (T) con.scriptingCommands().eval(
+                        raw(script.getScriptAsString()), returnType, keys.size(), keysAndArgs);
+            }
+        });
+    }
+
+    private static boolean isNoScript(final Throwable e) {
+        Throwable cause = e;
+        while (cause != null) {
+            if (cause.getMessage() != null && cause.getMessage().contains("NOSCRIPT")) {
+                return true;
+            }
+            cause = cause.getCause();
+        }
+        return false;
+    }
+
     /*****************************
      * Set 相关
      *****************************/
@@ -301,4 +444,35 @@ public class RedisCommand {
         return new ArrayList<>(s);
     }
 
+    /*****************************
+     * Sorted Set 相关
+     *****************************/
+
+    /**
+     * 增加或更新 Sorted Set 中的成员
+     *
+     * @param key
+     * @param val
+     * @param score
+     */
+    public void addZSetVal(final String key, final String val, final double score) {
+        redis.opsForZSet().add(key, val, score);
+    }
+
+    /**
+     * 成员不存在时加入 Sorted Set
+     *
+     * @param key
+     * @param val
+     * @param score
+     * @return 加入时返回true
+     */
+    public boolean addZSetValIfAbsent(final String key, final String val, final double score) {
+        return Boolean.TRUE.equals(redis.opsForZSet().addIfAbsent(key, val, score));
+    }
+
+    public void removeZSetVal(final String key, final String... vals) {
+        redis.opsForZSet().remove(key, (Object[]) vals);
+    }
+
 }
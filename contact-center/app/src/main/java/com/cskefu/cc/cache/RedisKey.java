@@ -14,6 +14,7 @@
 package com.cskefu.cc.cache;
 
 import com.cskefu.cc.basic.MainContext;
+import org.apache.commons.lang3.StringUtils;
 
 public class RedisKey {
 
@@ -57,6 +58,137 @@ public class RedisKey {
         return getAgentStatusHashKeyByStatusStr(MainContext.AgentStatusEnum.NOTREADY.toString());
     }
 
+    /**
+     * 坐席状态的版本号，坐席状态每次变更加一
+     *
+     * @return
+     */
+    public static String getAgentStatusVersionKey() {
+        return "agent:status:version";
+    }
+
+    /**
+     * 坐席分配配置（部门、渠道、会话配置）的版本号，每次变更加一
+     *
+     * @return
+     */
+    public static String getACDConfigVersionKey() {
+        return "acd:config:version";
+    }
+
+    /**
+     * 部门树的版本号，每次变更加一
+     *
+     * @return
+     */
+    public static String getOrganVersionKey() {
+        return "organ:version";
+    }
+
+    /**
+     * 用户授权信息（部门、角色、权限）的版本号，每次变更加一
+     *
+     * @return
+     */
+    public static String getUserAuthVersionKey() {
+        return "user:auth:version";
+    }
+
+    /**
+     * 系统词典的版本号，每次变更加一
+     *
+     * @return
+     */
+    public static String getSysDicVersionKey() {
+        return "sysdic:version";
+    }
+
+    /**
+     * 系统设置的版本号，每次变更加一
+     *
+     * @return
+     */
+    public static String getSystemConfigVersionKey() {
+        return "systemconfig:version";
+    }
+
+    /**
+     * 等待重新汇总的服务记录时段，ZSet: 时段 -> 加入时间
+     *
+     * @return
+     */
+    public static String getReportRollupPendingZSetKey() {
+        return "report:rollup:pending";
+    }
+
+    /**
+     * 正在汇总的时段，ZSet: 时段 -> 租约到期时间
+     *
+     * @return
+     */
+    public static String getReportRollupLeaseZSetKey() {
+        return "report:rollup:leases";
+    }
+
+    /**
+     * 已经将历史数据全部加入等待汇总的日期，与等待汇总的时段一起保存在 Redis 中
+     *
+     * @return
+     */
+    public static String getReportRollupBackfillKey() {
+        return "report:rollup:backfill";
+    }
+
+    /**
+     * 服务记录汇总表的版本号，每次汇总加一
+     *
+     * @return
+     */
+    public static String getReportRollupVersionKey() {
+        return "report:rollup:version";
+    }
+
+    /**
+     * 会话中登录用户的完整信息，保存在会话库中
+     *
+     * @param ref 会话中记录的引用
+     * @return
+     */
+    public static String getSessionUserKey(final String ref) {
+        return CACHE_SESSIONS + ":user:" + ref;
+    }
+
+    /**
+     * 坐席在一个技能组中服务中的访客数量，Hash: agentno -> 数量
+     *
+     * @param skill 技能组，未指定技能组的访客计入 "_"
+     * @return
+     */
+    public static String getAgentLoadHashKeyBySkill(final String skill) {
+        StringBuffer sb = new StringBuffer();
+        sb.append("agent:load:skill:");
+        sb.append(StringUtils.isBlank(skill) ? "_" : skill);
+        return sb.toString();
+    }
+
+    /**
+     * 存在坐席负载计数的技能组集合，用于重建计数
+     *
+     * @return
+     */
+    public static String getAgentLoadSkillsSetKey() {
+        return "agent:load:skills";
+    }
+
+    /**
+     * 坐席负载索引，Hash: userid -> 技能组负载 Hash 和坐席ID，用换行分隔
+     *
+     * @return
+     */
+    public static String getAgentLoadIndexHashKey() {
+        return "agent:load:index";
+    }
+
 
     // AGENT USER 相关
 
@@ -100,6 +232,59 @@ public class RedisKey {
         return getAgentUserHashKeyByStatusStr(MainContext.AgentUserStatusEnum.END.toString());
     }
 
+    /**
+     * 全部排队访客，ZSet: userid -> 入队时间
+     *
+     * @return
+     */
+    public static String getAgentUserQueueZSetKey() {
+        return "agent:user:queue";
+    }
+
+    /**
+     * 指定技能组的排队访客，ZSet: userid -> 入队时间
+     *
+     * @param skill
+     * @return
+     */
+    public static String getAgentUserQueueZSetKeyBySkill(final String skill) {
+        StringBuffer sb = new StringBuffer();
+        sb.append("agent:user:queue:skill:");
+        sb.append(StringUtils.isBlank(skill) ? "_" : skill);
+        return sb.toString();
+    }
+
+    /**
+     * 指定坐席的排队访客，ZSet: userid -> 入队时间
+     *
+     * @param agentno
+     * @return
+     */
+    public static String getAgentUserQueueZSetKeyByAgentno(final String agentno) {
+        StringBuffer sb = new StringBuffer();
+        sb.append("agent:user:queue:agent:");
+        sb.append(StringUtils.isBlank(agentno) ? "_" : agentno);
+        return sb.toString();
+    }
+
+    /**
+     * 排队索引，Hash: userid -> 访客所在的技能组、坐席 ZSet
+     *
+     * @return
+     */
+    public static String getAgentUserQueueIndexHashKey() {
+        return "agent:user:queue:index";
+    }
+
+    /**
+     * 会话超时定时器，ZSet: 类型:userid -> 到期时间
+     *
+     * @return
+     */
+    public static String getAgentUserTimeoutZSetKey() {
+        return "agent:user:timeout";
+    }
+
     /**
      * 获得一个坐席的服务中的访客列表KEY
      */
@@ -112,6 +297,34 @@ public class RedisKey {
     }
 
 
+    // SocketIO 连接所在节点
+
+    /**
+     * 访客或坐席的SocketIO连接所在的节点集合
+     *
+     * @param type 连接类型，如 im、agent
+     * @param id   访客ID或坐席ID
+     * @return
+     */
+    public static String getSocketIOConnectionKey(final String type, final String id) {
+        StringBuffer sb = new StringBuffer();
+        sb.append("socketio:conn:");
+        sb.append(type);
+        sb.append(":");
+        sb.append(id);
+        return sb.toString();
+    }
+
+    /**
+     * 节点心跳，Hash: nodeId -> 最近一次心跳的时间
+     *
+     * @return
+     */
+    public static String getSocketIONodesHashKey() {
+        return "socketio:nodes";
+    }
+
+
     // Customer Chats Audit
 
     /**
@@ -188,35 +401,6 @@ public class RedisKey {
         return sb.toString();
     }
 
-    /**
-     * 系统词典
-     *
-     * @return
-     */
-    public static String getSysDicHashKey() {
-        StringBuffer sb = new StringBuffer();
-        sb.append("sysdic");
-        return sb.toString();
-    }
-
-
-    /**
-     * 坐席会话配置相关
-     *
-     * @return
-     */
-    public static String getSessionConfigList() {
-        StringBuffer sb = new StringBuffer();
-        sb.append("session:config:list");
-        return sb.toString();
-    }
-
-    public static String getSessionConfig(String organid) {
-        StringBuffer sb = new StringBuffer();
-        sb.append(organid);
-        sb.append(":session:config");
-        return sb.toString();
-    }
 
     /**
      * SocketIO连接相关
@@ -237,6 +421,13 @@ public class RedisKey {
         return sb.toString();
     }
 
+    /**
+     * 网站渠道配置的版本号，snsid -> 版本号
+     */
+    public static String getConsultInviteVersions() {
+        return "consultinvite:version";
+    }
+
     /**
      * 和访客黑名单相关
      */
@@ -0,0 +1,91 @@
+/*
+ * Copyright (C) 2023 Beijing Huaxia Chunsong Technology Co., Ltd.
+ * <https://www.chatopera.com>, Licensed under the Chunsong Public
+ * License, Version 1.0  (the "License"), https://docs.cskefu.com/licenses/v1.html
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cskefu.cc.cache;
+
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+
+import java.util.List;
+
+/**
+ * Redis Lua 脚本，脚本文件位于 scripts/redis
+ * 状态在多个 Hash 之间移动时在 Redis 中原子执行，只需一次往返
+ */
+public class RedisScripts {
+
+    /**
+     * 更新访客坐席关联关系
+     */
+    public static final RedisScript<Long> AGENT_USER_PUT = load("agentuser_put.lua", Long.class);
+
+    /**
+     * 删除访客坐席关联关系
+     */
+    public static final RedisScript<Long> AGENT_USER_DELETE = load("agentuser_delete.lua", Long.class);
+
+    /**
+     * 将访客从服务中移除
+     */
+    public static final RedisScript<Long> AGENT_USER_INSERV_DELETE = load("agentuser_inserv_delete.lua", Long.class);
+
+    /**
+     * 将访客从排队中移除
+     */
+    public static final RedisScript<Long> AGENT_USER_DEQUEUE = load("agentuser_dequeue.lua", Long.class);
+
+    /**
+     * 获得访客的排队位置和队列长度
+     */
+    @SuppressWarnings("rawtypes")
+    public static final RedisScript<List> QUEUE_POSITION = load("queue_position.lua", List.class);
+
+    /**
+     * 按入队时间获得坐席可以接待的排队访客
+     */
+    @SuppressWarnings("rawtypes")
+    public static final RedisScript<List> QUEUE_PENDING = load("queue_pending.lua", List.class);
+
+    /**
+     * 取出等待处理的成员并加上租约
+     */
+    @SuppressWarnings("rawtypes")
+    public static final RedisScript<List> LEASE_CLAIM = load("lease_claim.lua", List.class);
+
+    /**
+     * 取出已经到期的定时器
+     */
+    @SuppressWarnings("rawtypes")
+    public static final RedisScript<List> TIMEOUT_CLAIM = load("timeout_claim.lua", List.class);
+
+    /**
+     * 更新坐席状态
+     */
+    public static final RedisScript<Long> AGENT_STATUS_PUT = load("agentstatus_put.lua", Long.class);
+
+    /**
+     * 查找 SocketIO 连接所在的存活节点
+     */
+    @SuppressWarnings("rawtypes")
+    public static final RedisScript<List> SOCKETIO_NODES = load("socketio_nodes.lua", List.class);
+
+    /**
+     * 在多个 Hash 中查找第一个值
+     */
+    public static final RedisScript<byte[]> HGET_FIRST = load("hget_first.lua", byte[].class);
+
+    private static <T> RedisScript<T> load(final String name, final Class<T> resultType) {
+        DefaultRedisScript<T> script = new DefaultRedisScript<>();
+        script.setLocation(new ClassPathResource("scripts/redis/" + name));
+        script.setResultType(resultType);
+        return script;
+    }
+}
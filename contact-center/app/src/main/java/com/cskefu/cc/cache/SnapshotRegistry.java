@@ -0,0 +1,112 @@
+/*
+ * Copyright (C) 2023 Beijing Huaxia Chunsong Technology Co., Ltd.
+ * <https://www.chatopera.com>, Licensed under the Chunsong Public
+ * License, Version 1.0  (the "License"), https://docs.cskefu.com/licenses/v1.html
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cskefu.cc.cache;
+
+import com.cskefu.cc.activemq.BrokerPublisher;
+import com.cskefu.cc.basic.Constants;
+import com.google.gson.JsonObject;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.Supplier;
+
+/**
+ * 本地快照的注册表：创建快照，按名称接收其它节点的版本广播，按 Repository 通知数据库变更
+ */
+@Component
+public class SnapshotRegistry {
+
+    private final static Logger logger = LoggerFactory.getLogger(SnapshotRegistry.class);
+
+    @Value("${application.node.id}")
+    private String appNodeId;
+
+    @Autowired
+    private RedisCommand redisCommand;
+
+    @Autowired
+    private BrokerPublisher brokerPublisher;
+
+    // 快照名称 -> 快照
+    private final ConcurrentMap<String, VersionedSnapshot<?>> snapshots = new ConcurrentHashMap<>();
+
+    /**
+     * 创建快照
+     *
+     * @param name          快照名称，各节点一致
+     * @param versionKey    Redis 中版本号的 KEY
+     * @param checkInterval 检查版本号的间隔，毫秒
+     * @param loader        加载快照数据
+     * @param sources       数据来源的 Repository，写入后快照失效
+     * @return
+     */
+    public <T> VersionedSnapshot<T> register(final String name, final String versionKey, final long checkInterval,
+                                             final Supplier<T> loader, final Class<?>... sources) {
+        final List<Class<?>> list = Collections.unmodifiableList(Arrays.asList(sources));
+        final VersionedSnapshot<T> snapshot = new VersionedSnapshot<>(
+                name, versionKey, checkInterval, loader, list, this);
+        if (snapshots.putIfAbsent(name, snapshot) != null) {
+            throw new IllegalArgumentException("Duplicated snapshot " + name);
+        }
+        logger.info("[register] snapshot {}, check interval {}", name, checkInterval);
+        return snapshot;
+    }
+
+    /**
+     * Repository 写入了数据库，依赖它的快照在事务提交后失效
+     *
+     * @param repository
+     */
+    public void changed(final Object repository) {
+        for (final VersionedSnapshot<?> snapshot : snapshots.values()) {
+            if (snapshot.dependsOn(repository)) {
+                snapshot.changed();
+            }
+        }
+    }
+
+    /**
+     * 收到其它节点广播的版本号
+     *
+     * @param name
+     * @param version
+     */
+    public void invalidate(final String name, final long version) {
+        final VersionedSnapshot<?> snapshot = snapshots.get(name);
+        if (snapshot != null) {
+            snapshot.invalidate(version);
+        }
+    }
+
+    long increment(final String versionKey) {
+        return redisCommand.increment(versionKey);
+    }
+
+    String readVersion(final String versionKey) {
+        return redisCommand.get(versionKey);
+    }
+
+    void broadcast(final String name, final long version) {
+        JsonObject payload = new JsonObject();
+        payload.addProperty("name", name);
+        payload.addProperty("version", version);
+        payload.addProperty("node", appNodeId);
+        brokerPublisher.send(Constants.MQ_TOPIC_SNAPSHOT_CHANGED, payload.toString(), true);
+    }
+}
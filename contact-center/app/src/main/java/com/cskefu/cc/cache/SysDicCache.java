@@ -0,0 +1,163 @@
+/*
+ * Copyright (C) 2023 Beijing Huaxia Chunsong Technology Co., Ltd.
+ * <https://www.chatopera.com>, Licensed under the Chunsong Public
+ * License, Version 1.0  (the "License"), https://docs.cskefu.com/licenses/v1.html
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cskefu.cc.cache;
+
+import com.cskefu.cc.model.SysDic;
+import com.cskefu.cc.persistence.repository.SysDicRepository;
+import jakarta.annotation.PostConstruct;
+import org.apache.commons.lang3.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.*;
+
+/**
+ * 系统词典的本地快照：根词典编码 -> 子项，ID -> 词典项，根词典下 父ID -> 子项；词典写入数据库后失效，见 VersionedSnapshot
+ * <p>
+ * 返回的列表不可修改，词典项是快照中共享的对象，调用方不能修改。
+ */
+@Component
+public class SysDicCache {
+
+    private final static Logger logger = LoggerFactory.getLogger(SysDicCache.class);
+
+    @Value("${cskefu.sysdic.check-interval:5000}")
+    private long checkInterval;
+
+    @Autowired
+    private SysDicRepository sysDicRes;
+
+    @Autowired
+    private SnapshotRegistry snapshotRegistry;
+
+    private VersionedSnapshot<Snapshot> snapshot;
+
+    @PostConstruct
+    public void setup() {
+        snapshot = snapshotRegistry.register("sysdic", RedisKey.getSysDicVersionKey(), checkInterval,
+                this::load, SysDicRepository.class);
+    }
+
+    /**
+     * 是否存在该编码的根词典
+     *
+     * @param code
+     * @return
+     */
+    public boolean containsCode(final String code) {
+        return code != null && snapshot.get().items.containsKey(code);
+    }
+
+    /**
+     * 获得根词典的全部子项
+     *
+     * @param code 根词典编码
+     * @return 根词典不存在时返回null
+     */
+    public List<SysDic> findItemsByCode(final String code) {
+        return code != null ? snapshot.get().items.get(code) : null;
+    }
+
+    /**
+     * 获得根词典中父ID为 parentid 的子项
+     *
+     * @param code     根词典编码
+     * @param parentid
+     * @return
+     */
+    public List<SysDic> findChildren(final String code, final String parentid) {
+        final Map<String, List<SysDic>> children = code != null ? snapshot.get().children.get(code) : null;
+        final List<SysDic> result = children != null && parentid != null ? children.get(parentid) : null;
+        return result != null ? result : Collections.emptyList();
+    }
+
+    /**
+     * 获得根词典的第一级子项
+     *
+     * @param code 根词典编码
+     * @return
+     */
+    public List<SysDic> findTopItems(final String code) {
+        final Snapshot current = snapshot.get();
+        final String rootId = code != null ? current.roots.get(code) : null;
+        final Map<String, List<SysDic>> children = rootId != null ? current.children.get(code) : null;
+        final List<SysDic> result = children != null ? children.get(rootId) : null;
+        return result != null ? result : Collections.emptyList();
+    }
+
+    /**
+     * 获得词典项
+     *
+     * @param id
+     * @return
+     */
+    public SysDic findById(final String id) {
+        return id != null ? snapshot.get().byId.get(id) : null;
+    }
+
+    private Snapshot load() {
+        final List<SysDic> sysDics = sysDicRes.findAll();
+        final Snapshot result = new Snapshot(sysDics);
+        logger.info("[load] dics {}, items {}", result.roots.size(), sysDics.size());
+        return result;
+    }
+
+    private static final class Snapshot {
+        private final Map<String, SysDic> byId;
+        // 根词典编码 -> 根词典ID
+        private final Map<String, String> roots;
+        private final Map<String, List<SysDic>> items;
+        private final Map<String, Map<String, List<SysDic>>> children;
+
+        private Snapshot(final List<SysDic> sysDics) {
+            final Map<String, SysDic> byId = new HashMap<>();
+            final Map<String, String> roots = new HashMap<>();
+            for (final SysDic dic : sysDics) {
+                byId.put(dic.getId(), dic);
+                if (StringUtils.equals(dic.getParentid(), "0") && dic.getCode() != null) {
+                    roots.put(dic.getCode(), dic.getId());
+                }
+            }
+
+            // 根词典ID -> 子项，与数据库中的顺序一致
+            final Map<String, List<SysDic>> byRoot = new HashMap<>();
+            for (final SysDic dic : sysDics) {
+                if (!StringUtils.equals(dic.getParentid(), "0") && dic.getDicid() != null) {
+                    byRoot.computeIfAbsent(dic.getDicid(), k -> new ArrayList<>()).add(dic);
+                }
+            }
+
+            final Map<String, List<SysDic>> items = new HashMap<>();
+            final Map<String, Map<String, List<SysDic>>> children = new HashMap<>();
+            for (final Map.Entry<String, String> root : roots.entrySet()) {
+                final List<SysDic> list = byRoot.getOrDefault(root.getValue(), Collections.emptyList());
+                items.put(root.getKey(), Collections.unmodifiableList(list));
+
+                final Map<String, List<SysDic>> byParent = new HashMap<>();
+                for (final SysDic dic : list) {
+                    if (dic.getParentid() != null) {
+                        byParent.computeIfAbsent(dic.getParentid(), k -> new ArrayList<>()).add(dic);
+                    }
+                }
+                byParent.replaceAll((k, v) -> Collections.unmodifiableList(v));
+                children.put(root.getKey(), Collections.unmodifiableMap(byParent));
+            }
+
+            this.byId = Collections.unmodifiableMap(byId);
+            this.roots = Collections.unmodifiableMap(roots);
+            this.items = Collections.unmodifiableMap(items);
+            this.children = Collections.unmodifiableMap(children);
+        }
+    }
+}
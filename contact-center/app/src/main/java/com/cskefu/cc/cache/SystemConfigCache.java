@@ -0,0 +1,132 @@
+/*
+ * Copyright (C) 2023 Beijing Huaxia Chunsong Technology Co., Ltd.
+ * <https://www.chatopera.com>, Licensed under the Chunsong Public
+ * License, Version 1.0  (the "License"), https://docs.cskefu.com/licenses/v1.html
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cskefu.cc.cache;
+
+import com.cskefu.cc.model.SystemConfig;
+import com.cskefu.cc.persistence.repository.SystemConfigRepository;
+import jakarta.annotation.PostConstruct;
+import org.apache.commons.lang3.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+
+/**
+ * 系统设置的本地快照，系统设置写入数据库后失效，见 VersionedSnapshot
+ * <p>
+ * 返回的 SystemConfig 是快照中共享的对象，调用方不能修改。
+ */
+@Component
+public class SystemConfigCache {
+
+    private final static Logger logger = LoggerFactory.getLogger(SystemConfigCache.class);
+
+    // 默认主题，绿色
+    private final static String DEFAULT_THEME = "01";
+
+    @Value("${cskefu.systemconfig.check-interval:5000}")
+    private long checkInterval;
+
+    @Autowired
+    private SystemConfigRepository systemConfigRes;
+
+    @Autowired
+    private SnapshotRegistry snapshotRegistry;
+
+    private VersionedSnapshot<Snapshot> snapshot;
+
+    @PostConstruct
+    public void setup() {
+        snapshot = snapshotRegistry.register("systemconfig", RedisKey.getSystemConfigVersionKey(), checkInterval,
+                this::load, SystemConfigRepository.class);
+    }
+
+    /**
+     * 获得系统设置
+     *
+     * @return 未设置时返回null
+     */
+    public SystemConfig get() {
+        return snapshot.get().config;
+    }
+
+    /**
+     * 获得系统设置，未设置时返回默认设置，用于页面渲染
+     *
+     * @return
+     */
+    public SystemConfig getOrDefault() {
+        return snapshot.get().viewConfig;
+    }
+
+    /**
+     * 页面主题
+     *
+     * @return
+     */
+    public String getTheme() {
+        return snapshot.get().theme;
+    }
+
+    /**
+     * 是否启用多租户管理模式
+     *
+     * @return
+     */
+    public boolean isTenant() {
+        return snapshot.get().tenant;
+    }
+
+    /**
+     * 多租户模式下是否共享组织机构
+     *
+     * @return
+     */
+    public boolean isTenantShare() {
+        return snapshot.get().tenantShare;
+    }
+
+    /**
+     * 多租户模式下登录后是否进入租户选择
+     *
+     * @return
+     */
+    public boolean isTenantConsole() {
+        return snapshot.get().tenantConsole;
+    }
+
+    private Snapshot load() {
+        final List<SystemConfig> systemConfigs = systemConfigRes.findAll();
+        logger.info("[load] configured {}", systemConfigs.size() > 0);
+        return new Snapshot(systemConfigs.size() > 0 ? systemConfigs.get(0) : null);
+    }
+
+    private static final class Snapshot {
+        private final SystemConfig config;
+        private final SystemConfig viewConfig;
+        private final String theme;
+        private final boolean tenant;
+        private final boolean tenantShare;
+        private final boolean tenantConsole;
+
+        private Snapshot(final SystemConfig config) {
+            this.config = config;
+            this.viewConfig = config != null ? config : new SystemConfig();
+            this.theme = StringUtils.defaultIfBlank(viewConfig.getTheme(), DEFAULT_THEME);
+            this.tenant = viewConfig.isEnabletneant();
+            this.tenantShare = tenant && viewConfig.isTenantshare();
+            this.tenantConsole = tenant && viewConfig.isTenantconsole();
+        }
+    }
+}
@@ -0,0 +1,185 @@
+/*
+ * Copyright (C) 2023 Beijing Huaxia Chunsong Technology Co., Ltd.
+ * <https://www.chatopera.com>, Licensed under the Chunsong Public
+ * License, Version 1.0  (the "License"), https://docs.cskefu.com/licenses/v1.html
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cskefu.cc.cache;
+
+import org.apache.commons.lang3.StringUtils;
+import org.apache.commons.lang3.math.NumberUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * 带版本号的本地快照
+ * <p>
+ * 快照数据不可变，整体替换。数据变更后在 Redis 中增加版本号，并通过 ActiveMQ 广播，各节点收到后使快照失效，
+ * 下次读取时重新加载；为防止广播丢失，快照超过 check-interval 后会检查一次 Redis 中的版本号。
+ * <p>
+ * 通过 SnapshotRegistry 创建，数据库变更由 SnapshotAspect 通知，其它节点的广播由 SnapshotSubscription 接收。
+ *
+ * @param <T> 快照数据，加载后不能再修改
+ */
+public class VersionedSnapshot<T> {
+
+    private final static Logger logger = LoggerFactory.getLogger(VersionedSnapshot.class);
+
+    private final String name;
+    private final String versionKey;
+    private final long checkInterval;
+    private final Supplier<T> loader;
+    // 数据来源的 Repository，写入后快照失效
+    private final List<Class<?>> sources;
+    private final SnapshotRegistry registry;
+
+    // 已知的最新版本号，来自本节点的变更或其它节点的广播
+    private final AtomicLong latestVersion = new AtomicLong(-1);
+
+    private volatile Holder<T> holder;
+
+    VersionedSnapshot(final String name, final String versionKey, final long checkInterval, final Supplier<T> loader,
+                      final List<Class<?>> sources, final SnapshotRegistry registry) {
+        this.name = name;
+        this.versionKey = versionKey;
+        this.checkInterval = checkInterval;
+        this.loader = loader;
+        this.sources = sources;
+        this.registry = registry;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * 获得快照数据，快照失效时重新加载
+     *
+     * @return
+     */
+    public T get() {
+        return current().data;
+    }
+
+    /**
+     * 获得快照的版本号
+     *
+     * @return
+     */
+    public long getVersion() {
+        return current().version;
+    }
+
+    /**
+     * 数据已经变更，在事务提交后增加版本号并通知所有节点
+     */
+    public void changed() {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    changed(registry.increment(versionKey));
+                }
+            });
+        } else {
+            changed(registry.increment(versionKey));
+        }
+    }
+
+    /**
+     * 版本号已经在 Redis 中增加，通知所有节点
+     *
+     * @param version 新的版本号
+     */
+    public void changed(final long version) {
+        invalidate(version);
+        registry.broadcast(name, version);
+    }
+
+    /**
+     * 收到新的版本号，低于该版本的快照失效
+     *
+     * @param version
+     */
+    public void invalidate(final long version) {
+        latestVersion.accumulateAndGet(version, Math::max);
+    }
+
+    boolean dependsOn(final Object repository) {
+        for (final Class<?> source : sources) {
+            if (source.isInstance(repository)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private Holder<T> current() {
+        Holder<T> current = holder;
+        if (current != null && current.version >= latestVersion.get()) {
+            if (System.currentTimeMillis() - current.checkedAt < checkInterval) {
+                return current;
+            }
+            // 超过检查间隔，确认版本号没有变化
+            if (readVersion() == current.version) {
+                current.checkedAt = System.currentTimeMillis();
+                return current;
+            }
+        }
+        return load();
+    }
+
+    private synchronized Holder<T> load() {
+        Holder<T> current = holder;
+        if (current != null && current.version >= latestVersion.get() &&
+                System.currentTimeMillis() - current.checkedAt < checkInterval) {
+            // 其它线程已经完成加载
+            return current;
+        }
+
+        // 先读取版本号再读取数据，数据只会比版本号新，不会旧
+        final long observed = latestVersion.get();
+        final long version = readVersion();
+        final T data = loader.get();
+        if (version >= observed) {
+            // 加载期间收到更高的版本号时保留，下次读取时重新加载
+            latestVersion.accumulateAndGet(version, Math::max);
+        } else if (latestVersion.compareAndSet(observed, version)) {
+            // Redis 数据丢失后版本号变小，以 Redis 为准，否则会反复加载；
+            // 加载期间又收到了新的版本号时不修改，下次读取时重新加载并再次比较
+            logger.warn("[load] {} version went backwards from {} to {}", name, observed, version);
+        }
+
+        current = new Holder<>(version, data);
+        holder = current;
+        logger.debug("[load] {} version {}", name, version);
+        return current;
+    }
+
+    private long readVersion() {
+        final String version = registry.readVersion(versionKey);
+        return StringUtils.isBlank(version) ? 0 : NumberUtils.toLong(version);
+    }
+
+    private static final class Holder<T> {
+        private final long version;
+        private final T data;
+        private volatile long checkedAt;
+
+        private Holder(final long version, final T data) {
+            this.version = version;
+            this.data = data;
+            this.checkedAt = System.currentTimeMillis();
+        }
+    }
+}
@@ -21,10 +21,9 @@ import com.cskefu.cc.basic.plugins.IPluginConfigurer;
 import com.cskefu.cc.basic.plugins.PluginRegistry;
 import com.cskefu.cc.cache.Cache;
 import com.cskefu.cc.model.BlackEntity;
-import com.cskefu.cc.model.SysDic;
-import com.cskefu.cc.model.SystemConfig;
 import com.cskefu.cc.persistence.repository.*;
 import com.cskefu.cc.proxy.LicenseProxy;
+import com.cskefu.cc.schedule.AgentUserTimeoutTask;
 import org.apache.commons.lang3.StringUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -37,60 +36,12 @@ public class AppCtxRefreshEventListener implements ApplicationListener<ContextRe
 
     private static final Logger logger = LoggerFactory.getLogger(AppCtxRefreshEventListener.class);
 
-    private void setupSysdicCacheAndExtras(final ContextRefreshedEvent event, final String cacheSetupStrategy, final Cache cache, final SysDicRepository sysDicRes, final BlackListRepository blackListRes) {
+    /**
+     * 重建 Redis 中的黑名单、坐席负载、排队位置和会话超时定时器
+     */
+    private void setupRedisCache(final String cacheSetupStrategy, final Cache cache, final BlackListRepository blackListRes) {
         if (!StringUtils.equalsIgnoreCase(cacheSetupStrategy, Constants.cache_setup_strategy_skip)) {
 
-            /**************************
-             * 加载系统到缓存
-             * 加载系统词典大约只需要5s左右
-             **************************/
-
-            // 首先将之前缓存清空，此处使用系统的默认租户信息
-            cache.eraseSysDic();
-
-            List<SysDic> sysDicList = sysDicRes.findAll();
-            Map<String, List<SysDic>> rootDictItems = new HashMap<>(); // 关联根词典及其子项
-            Map<String, SysDic> rootDics = new HashMap<>();
-            Set<String> parents = new HashSet<>();
-
-            // 获得所有根词典
-            for (final SysDic dic : sysDicList) {
-                if (StringUtils.equals(dic.getParentid(), "0")) {
-                    parents.add(dic.getId());
-                    rootDics.put(dic.getId(), dic);
-                }
-            }
-
-            // 向根词典中添加子项
-            for (final SysDic dic : sysDicList) {
-                if ((!StringUtils.equals(dic.getParentid(), "0")) &&
-                        parents.contains(dic.getDicid())) {
-                    // 不是根词典，并且包含在一个根词典内
-                    if (!rootDictItems.containsKey(dic.getDicid())) {
-                        rootDictItems.put(dic.getDicid(), new ArrayList<>());
-                    }
-                    rootDictItems.get(dic.getDicid()).add(dic);
-                }
-            }
-
-            // 更新缓存
-            // TODO 集群时注意!!!
-            // 此处为长时间的操作，如果在一个集群中，会操作共享内容，非常不可靠
-            // 所以，当前代码不支持集群，需要解决启动上的这个问题！
-
-            // 存储根词典 TODO 此处只考虑了系统默认租户
-            cache.putSysDic(new ArrayList<>(rootDics.values()));
-
-            for (final Map.Entry<String, List<SysDic>> entry : rootDictItems.entrySet()) {
-                SysDic rootDic = rootDics.get(entry.getKey());
-                // 打印根词典信息
-                logger.debug("[onApplicationEvent] root dict: {}, code {}, name {}, item size {}", entry.getKey(), rootDics.get(entry.getKey()).getCode(), rootDics.get(entry.getKey()).getName(), entry.getValue().size());
-                // 存储子项列表
-                cache.putSysDic(rootDic.getCode(), entry.getValue());
-                // 存储子项成员
-                cache.putSysDic(entry.getValue());
-            }
-
             List<BlackEntity> blackList = blackListRes.findAll();
             for (final BlackEntity black : blackList) {
                 if (StringUtils.isNotBlank(black.getUserid())) {
@@ -101,17 +52,22 @@ public class AppCtxRefreshEventListener implements ApplicationListener<ContextRe
             }
 
             /**
-             * 加载系统全局配置
+             * 重建坐席负载计数
              */
-            SystemConfigRepository systemConfigRes = event.getApplicationContext().getBean(SystemConfigRepository.class);
-            List<SystemConfig> configs = systemConfigRes.findAll();
-            SystemConfig config = configs.size() > 0 ? configs.get(0) : null;
-            if (config != null) {
-                cache.putSystemById("systemConfig", config);
-            }
-            logger.warn("[StartedEventListener] setup Sysdicts in Redis done, strategy {}", cacheSetupStrategy);
+            cache.rebuildAgentLoad();
+
+            /**
+             * 重建排队位置索引
+             */
+            cache.rebuildAgentUserQueue();
+
+            /**
+             * 补充会话超时定时器
+             */
+            MainContext.getContext().getBean(AgentUserTimeoutTask.class).rebuild();
+            logger.warn("[setupRedisCache] rebuild blacklist, agent load, queue index and timeouts in Redis done, strategy {}", cacheSetupStrategy);
         } else {
-            logger.warn("[onApplicationEvent] skip initialize sysdicts.");
+            logger.warn("[setupRedisCache] skip rebuilding cache in Redis, strategy {}", cacheSetupStrategy);
         }
     }
 
@@ -120,12 +76,11 @@ public class AppCtxRefreshEventListener implements ApplicationListener<ContextRe
         if (MainContext.getContext() == null) {
             logger.info("[onApplicationEvent] set main context and initialize the Cache System.");
             MainContext.setApplicationContext(event.getApplicationContext());
-            SysDicRepository sysDicRes = event.getApplicationContext().getBean(SysDicRepository.class);
             BlackListRepository blackListRes = event.getApplicationContext().getBean(BlackListRepository.class);
             Cache cache = event.getApplicationContext().getBean(Cache.class);
             String cacheSetupStrategy = event.getApplicationContext().getEnvironment().getProperty("cache.setup.strategy");
 
-            setupSysdicCacheAndExtras(event, cacheSetupStrategy, cache, sysDicRes, blackListRes);
+            setupRedisCache(cacheSetupStrategy, cache, blackListRes);
 
             MainUtils.initSystemArea();
 
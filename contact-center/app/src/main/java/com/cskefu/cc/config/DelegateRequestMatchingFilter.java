@@ -22,6 +22,7 @@ import org.springframework.security.web.util.matcher.RequestMatcher;
 import jakarta.servlet.*;
 import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
+import jakarta.servlet.http.HttpSession;
 import java.io.IOException;
 
 public class DelegateRequestMatchingFilter implements Filter {
@@ -39,7 +40,9 @@ public class DelegateRequestMatchingFilter implements Filter {
                 matchAnyRoles = true;
             }
         }
-        User user = (User) request.getSession().getAttribute(Constants.USER_SESSION_NAME);
+        // 不创建会话，没有会话时未登录
+        HttpSession session = request.getSession(false);
+        User user = session != null ? (User) session.getAttribute(Constants.USER_SESSION_NAME) : null;
         if (matchAnyRoles) {
             if (user != null && (user.isAdmin())) {
                 chain.doFilter(req, resp);
@@ -51,6 +51,21 @@ public class ExecutorConfig {
 		return poolTaskExecutor;
 	}
 
+	/**
+	 * 联系人、客户导入使用的线程池，同时导入的任务有上限，超过队列容量时拒绝
+	 * @return
+	 */
+	@Bean(name = "importTaskExecutor")
+	public ThreadPoolTaskExecutor importTask() {
+		ThreadPoolTaskExecutor poolTaskExecutor = new ThreadPoolTaskExecutor();
+		poolTaskExecutor.setCorePoolSize(2);
+		poolTaskExecutor.setMaxPoolSize(2);
+		poolTaskExecutor.setQueueCapacity(20);
+		poolTaskExecutor.setWaitForTasksToCompleteOnShutdown(true);
+		poolTaskExecutor.setThreadNamePrefix("cs-import-task-");
+		return poolTaskExecutor;
+	}
+
     @Bean(name = "scheduleTaskExecutor")
     public ThreadPoolTaskScheduler schedule(){
         ThreadPoolTaskScheduler taskScheduler = new ThreadPoolTaskScheduler();
@@ -0,0 +1,66 @@
+/*
+ * Copyright (C) 2023 Beijing Huaxia Chunsong Technology Co., Ltd.
+ * <https://www.chatopera.com>, Licensed under the Chunsong Public
+ * License, Version 1.0  (the "License"), https://docs.cskefu.com/licenses/v1.html
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cskefu.cc.config;
+
+import org.apache.commons.lang3.RandomStringUtils;
+import org.apache.commons.lang3.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.context.event.ApplicationEnvironmentPreparedEvent;
+import org.springframework.context.ApplicationListener;
+import org.springframework.core.env.ConfigurableEnvironment;
+import org.springframework.core.env.MapPropertySource;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.Collections;
+
+/**
+ * 生成节点ID
+ * <p>
+ * 节点ID用于各节点独立的消息队列、SocketIO 连接所在节点等，多个节点使用相同的ID时会互相收到对方的消息。
+ * application.node.id 未设置或保持默认值 localhost 时，使用主机名加随机后缀作为本次启动的节点ID。
+ */
+public class NodeIdEnvironmentListener implements ApplicationListener<ApplicationEnvironmentPreparedEvent> {
+
+    private static final Logger logger = LoggerFactory.getLogger(NodeIdEnvironmentListener.class);
+
+    public static final String NODE_ID_PROPERTY = "application.node.id";
+
+    private static final String DEFAULT_NODE_ID = "localhost";
+
+    @Override
+    public void onApplicationEvent(final ApplicationEnvironmentPreparedEvent event) {
+        final ConfigurableEnvironment environment = event.getEnvironment();
+        final String configured = environment.getProperty(NODE_ID_PROPERTY);
+        if (StringUtils.isNotBlank(configured) && !StringUtils.equalsIgnoreCase(configured, DEFAULT_NODE_ID)) {
+            return;
+        }
+
+        final String nodeId = getHostName() + "-" + RandomStringUtils.randomAlphanumeric(6).toLowerCase();
+        environment.getPropertySources().addFirst(
+                new MapPropertySource("generatedNodeId", Collections.singletonMap(NODE_ID_PROPERTY, nodeId)));
+        logger.warn("[onApplicationEvent] {} is not set, use generated node id {}", NODE_ID_PROPERTY, nodeId);
+    }
+
+    private static String getHostName() {
+        try {
+            final String host = InetAddress.getLocalHost().getHostName();
+            if (StringUtils.isNotBlank(host) && !StringUtils.equalsIgnoreCase(host, DEFAULT_NODE_ID)) {
+                // 只保留可以作为队列名称的字符
+                return host.replaceAll("[^A-Za-z0-9_.-]", "_");
+            }
+        } catch (UnknownHostException e) {
+            logger.warn("[getHostName] fail to resolve host name", e);
+        }
+        return "node";
+    }
+}
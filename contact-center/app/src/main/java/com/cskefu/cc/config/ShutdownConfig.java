@@ -15,12 +15,17 @@ import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 
 import com.cskefu.cc.basic.TerminateBean;
+import com.cskefu.cc.interceptor.RequestLogWriter;
+import com.cskefu.cc.peer.im.ChatMessageWriter;
+import com.cskefu.cc.peer.im.UserHistoryWriter;
 
 @Configuration
 public class ShutdownConfig {
 
     @Bean
-    public TerminateBean getTerminateBean() {
-        return new TerminateBean();
+    public TerminateBean getTerminateBean(final ChatMessageWriter chatMessageWriter,
+                                          final RequestLogWriter requestLogWriter,
+                                          final UserHistoryWriter userHistoryWriter) {
+        return new TerminateBean(chatMessageWriter, requestLogWriter, userHistoryWriter);
     }
 }
\ No newline at end of file
@@ -0,0 +1,265 @@
+/*
+ * Copyright (C) 2023 Beijing Huaxia Chunsong Technology Co., Ltd.
+ * <https://www.chatopera.com>, Licensed under the Chunsong Public
+ * License, Version 1.0  (the "License"), https://docs.cskefu.com/licenses/v1.html
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cskefu.cc.config;
+
+import com.cskefu.cc.basic.Constants;
+import com.cskefu.cc.basic.MainUtils;
+import com.cskefu.cc.cache.RedisKey;
+import com.cskefu.cc.model.User;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.session.Session;
+import org.springframework.session.SessionRepository;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 会话存储，登录用户的完整信息与会话分开保存
+ * <p>
+ * User 包含部门、角色和权限，数据量大。会话中只保存引用 user_ref，User 在设置时写入一次 sso:user:{ref}，
+ * 读取时优先使用本节点的缓存，其它节点首次读取时从 Redis 加载。每次设置 User 生成新的引用，
+ * 同一个引用对应的 User 不再修改，所以本地缓存不需要失效通知。User 的过期时间在会话访问时顺延。
+ */
+public class UserSessionRepository implements SessionRepository<UserSessionRepository.UserSession> {
+
+    private final static Logger logger = LoggerFactory.getLogger(UserSessionRepository.class);
+
+    // 被替换的 User 在 Redis 中保留的时间
+    private final static Duration RETIRED_TTL = Duration.ofMinutes(1);
+
+    private final SessionRepository<Session> delegate;
+
+    private final RedisTemplate<String, Object> redisTemplate;
+
+    private final Duration maxInactiveInterval;
+
+    // 引用 -> User
+    private final Cache<String, Entry> users;
+
+    @SuppressWarnings("unchecked")
+    public UserSessionRepository(final SessionRepository<? extends Session> delegate,
+                                 final RedisTemplate<String, Object> redisTemplate,
+                                 final Duration maxInactiveInterval,
+                                 final long cacheSize) {
+        this.delegate = (SessionRepository<Session>) delegate;
+        this.redisTemplate = redisTemplate;
+        this.maxInactiveInterval = maxInactiveInterval;
+        this.users = CacheBuilder.newBuilder()
+                .maximumSize(cacheSize)
+                .expireAfterAccess(maxInactiveInterval.toMillis(), TimeUnit.MILLISECONDS)
+                .build();
+    }
+
+    @Override
+    public UserSession createSession() {
+        return new UserSession(delegate.createSession());
+    }
+
+    @Override
+    public void save(final UserSession session) {
+        session.touch();
+        delegate.save(session.delegate);
+    }
+
+    @Override
+    public UserSession findById(final String id) {
+        final Session session = delegate.findById(id);
+        return session != null ? new UserSession(session) : null;
+    }
+
+    @Override
+    public void deleteById(final String id) {
+        final Session session = delegate.findById(id);
+        if (session != null) {
+            deleteUser(session.getAttribute(Constants.USER_REF_SESSION_NAME));
+        }
+        delegate.deleteById(id);
+    }
+
+    private void deleteUser(final String ref) {
+        if (ref != null) {
+            users.invalidate(ref);
+            redisTemplate.delete(RedisKey.getSessionUserKey(ref));
+        }
+    }
+
+    private static final class Entry {
+        private final User user;
+        // 最近一次顺延 Redis 中 User 过期时间的时间
+        private volatile long touchedAt;
+
+        private Entry(final User user, final long touchedAt) {
+            this.user = user;
+            this.touchedAt = touchedAt;
+        }
+    }
+
+    /**
+     * 读写 user 属性时转换为引用，其它属性直接读写原会话
+     */
+    public final class UserSession implements Session {
+
+        private final Session delegate;
+
+        private UserSession(final Session delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public String getId() {
+            return delegate.getId();
+        }
+
+        @Override
+        public String changeSessionId() {
+            return delegate.changeSessionId();
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public <T> T getAttribute(final String attributeName) {
+            if (!Constants.USER_SESSION_NAME.equals(attributeName)) {
+                return delegate.getAttribute(attributeName);
+            }
+            final String ref = delegate.getAttribute(Constants.USER_REF_SESSION_NAME);
+            if (ref == null) {
+                // 升级前创建的会话，User 直接保存在会话中
+                return delegate.getAttribute(attributeName);
+            }
+            final Entry entry = getEntry(ref);
+            return entry != null ? (T) entry.user : null;
+        }
+
+        @Override
+        public Set<String> getAttributeNames() {
+            final Set<String> names = new HashSet<>(delegate.getAttributeNames());
+            if (names.remove(Constants.USER_REF_SESSION_NAME)) {
+                names.add(Constants.USER_SESSION_NAME);
+            }
+            return names;
+        }
+
+        @Override
+        public void setAttribute(final String attributeName, final Object attributeValue) {
+            if (!Constants.USER_SESSION_NAME.equals(attributeName)) {
+                delegate.setAttribute(attributeName, attributeValue);
+                return;
+            }
+            if (attributeValue == null) {
+                removeAttribute(attributeName);
+                return;
+            }
+
+            final User user = (User) attributeValue;
+            final String prev = delegate.getAttribute(Constants.USER_REF_SESSION_NAME);
+            final String ref = user.getId() + ":" + MainUtils.getUUID();
+            redisTemplate.opsForValue().set(RedisKey.getSessionUserKey(ref), user, maxInactiveInterval);
+            users.put(ref, new Entry(user, System.currentTimeMillis()));
+            delegate.setAttribute(Constants.USER_REF_SESSION_NAME, ref);
+            if (prev != null) {
+                // 会话保存前，同一会话的其它请求可能还在使用之前的引用，稍后过期
+                users.invalidate(prev);
+                redisTemplate.expire(RedisKey.getSessionUserKey(prev), RETIRED_TTL);
+            }
+            removeLegacyUser();
+        }
+
+        @Override
+        public void removeAttribute(final String attributeName) {
+            if (Constants.USER_SESSION_NAME.equals(attributeName)) {
+                final String ref = delegate.getAttribute(Constants.USER_REF_SESSION_NAME);
+                if (ref != null) {
+                    delegate.removeAttribute(Constants.USER_REF_SESSION_NAME);
+                    deleteUser(ref);
+                }
+                removeLegacyUser();
+            } else {
+                delegate.removeAttribute(attributeName);
+            }
+        }
+
+        @Override
+        public Instant getCreationTime() {
+            return delegate.getCreationTime();
+        }
+
+        @Override
+        public void setLastAccessedTime(final Instant lastAccessedTime) {
+            delegate.setLastAccessedTime(lastAccessedTime);
+        }
+
+        @Override
+        public Instant getLastAccessedTime() {
+            return delegate.getLastAccessedTime();
+        }
+
+        @Override
+        public void setMaxInactiveInterval(final Duration interval) {
+            delegate.setMaxInactiveInterval(interval);
+        }
+
+        @Override
+        public Duration getMaxInactiveInterval() {
+            return delegate.getMaxInactiveInterval();
+        }
+
+        @Override
+        public boolean isExpired() {
+            return delegate.isExpired();
+        }
+
+        private void removeLegacyUser() {
+            if (delegate.getAttribute(Constants.USER_SESSION_NAME) != null) {
+                delegate.removeAttribute(Constants.USER_SESSION_NAME);
+            }
+        }
+
+        private Entry getEntry(final String ref) {
+            Entry entry = users.getIfPresent(ref);
+            if (entry == null) {
+                final User user = (User) redisTemplate.opsForValue().get(RedisKey.getSessionUserKey(ref));
+                if (user == null) {
+                    logger.info("[getEntry] user of session {} is expired", delegate.getId());
+                    return null;
+                }
+                // 其它节点写入的 User，下次保存会话时顺延过期时间
+                entry = new Entry(user, 0);
+                users.put(ref, entry);
+            }
+            return entry;
+        }
+
+        /**
+         * 会话访问超过半个超时时间后，顺延 Redis 中 User 的过期时间
+         */
+        private void touch() {
+            final String ref = delegate.getAttribute(Constants.USER_REF_SESSION_NAME);
+            if (ref == null) {
+                return;
+            }
+            final Entry entry = users.getIfPresent(ref);
+            final long now = System.currentTimeMillis();
+            if (entry == null || now - entry.touchedAt > maxInactiveInterval.toMillis() / 2) {
+                redisTemplate.expire(RedisKey.getSessionUserKey(ref), maxInactiveInterval);
+                if (entry != null) {
+                    entry.touchedAt = now;
+                }
+            }
+        }
+    }
+}
@@ -24,6 +24,7 @@ import org.springframework.data.redis.connection.jedis.JedisConnectionFactory;
 import org.springframework.data.redis.core.RedisTemplate;
 import org.springframework.data.redis.serializer.StringRedisSerializer;
 import org.springframework.session.FlushMode;
+import org.springframework.session.SaveMode;
 import org.springframework.session.data.redis.RedisSessionRepository;
 import org.springframework.session.data.redis.config.annotation.web.http.EnableRedisHttpSession;
 
@@ -65,15 +66,21 @@ public class WebServerSessionConfigure {
     @Value("${spring.data.redis.timeout}")
     private int timeout;
 
+    @Value("${cskefu.session.user.cache-size:10000}")
+    private long userCacheSize;
+
     @Primary
     @Bean
     // TODO lecjy
-    public RedisSessionRepository sessionRepository(RedisTemplate<String, Object> sessionRedisTemplate) {
+    public UserSessionRepository sessionRepository(RedisTemplate<String, Object> sessionRedisTemplate) {
         RedisSessionRepository sessionRepository = new RedisSessionRepository(sessionRedisTemplate);
         sessionRepository.setDefaultMaxInactiveInterval(Duration.ofSeconds(maxInactiveIntervalInSeconds));
-        sessionRepository.setFlushMode(FlushMode.IMMEDIATE);
+        // 只写入修改过的属性，请求结束时一次写入
+        sessionRepository.setFlushMode(FlushMode.ON_SAVE);
+        sessionRepository.setSaveMode(SaveMode.ON_SET_ATTRIBUTE);
         sessionRepository.setRedisKeyNamespace(RedisKey.CACHE_SESSIONS);
-        return sessionRepository;
+        return new UserSessionRepository(sessionRepository, sessionRedisTemplate,
+                Duration.ofSeconds(maxInactiveIntervalInSeconds), userCacheSize);
     }
 
     @Bean
@@ -257,7 +257,8 @@ public class Handler {
     }
 
     public void setUser(HttpServletRequest request, User user) {
-        request.getSession(true).removeAttribute(Constants.USER_SESSION_NAME);
+        // 直接替换，之前的用户引用由 UserSessionRepository 延迟过期，同一会话正在处理的其它请求仍然可以读取
+        request.getSession(true).removeAttribute(Constants.USER_AUTH_STAMP_SESSION_NAME);
         request.getSession(true).setAttribute(Constants.USER_SESSION_NAME, user);
     }
 
@@ -296,9 +296,7 @@ public class LoginController extends Handler {
             }
 
             // 登录成功 判断是否进入多租户页面
-            SystemConfig systemConfig = MainUtils.getSystemConfig();
-            if (systemConfig != null && systemConfig.isEnabletneant() && systemConfig.isTenantconsole()
-                    && !loginUser.isAdmin()) {
+            if (MainContext.getSystemConfigCache().isTenantConsole() && !loginUser.isAdmin()) {
                 view = new ModelAndView("redirect:/apps/tenant/index");
             }
             List<UserRole> userRoleList = userRoleRes.findByUser(loginUser);
@@ -126,7 +126,7 @@ public class WebIMController extends Handler {
             inviteData.setConsult_dialog_headimg(super.saveImageFileWithMultipart(agentheadimg));
         }
         inviteRes.save(inviteData);
-        cache.putConsultInvite(inviteData);
+        cache.updateConsultInvite(inviteData);
         return request(super.createView("redirect:/admin/webim/index.html?snsid=" + inviteData.getSnsaccountid()));
     }
 
@@ -227,7 +227,7 @@ public class WebIMController extends Handler {
             inviteRes.save(inviteData);
         }
 
-        cache.putConsultInvite(inviteData);
+        cache.updateConsultInvite(inviteData);
         return request(super.createView("redirect:/admin/webim/profile.html?snsid=" + inviteData.getSnsaccountid()));
     }
 
@@ -272,7 +272,7 @@ public class WebIMController extends Handler {
         } else {
             inviteRes.save(inviteData);
         }
-        cache.putConsultInvite(inviteData);
+        cache.updateConsultInvite(inviteData);
         return request(super.createView("redirect:/admin/webim/invote.html?snsid=" + inviteData.getSnsaccountid()));
     }
 
@@ -251,7 +251,6 @@ public class SystemConfigController extends Handler {
         // 保存到数据库
         systemConfigRes.save(systemConfig);
 
-        MainContext.getCache().putSystemById("systemConfig", systemConfig);
         map.addAttribute("imServerStatus", MainContext.getIMServerStatus());
 
         return request(super.createView("redirect:/admin/config/index.html?msg=" + msg));
@@ -14,12 +14,10 @@
  */
 package com.cskefu.cc.controller.admin.system;
 
-import com.cskefu.cc.cache.Cache;
 import com.cskefu.cc.controller.Handler;
 import com.cskefu.cc.model.SysDic;
 import com.cskefu.cc.persistence.repository.SysDicRepository;
 import com.cskefu.cc.util.Menu;
-import org.apache.commons.lang3.StringUtils;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Sort.Direction;
@@ -41,9 +39,6 @@ public class SysDicController extends Handler {
     @Autowired
     private SysDicRepository sysDicRes;
 
-    @Autowired
-    private Cache cache;
-
     @RequestMapping("/index")
     @Menu(type = "admin", subtype = "sysdic")
     public ModelAndView index(ModelMap map, HttpServletRequest request) {
@@ -68,7 +63,6 @@ public class SysDicController extends Handler {
             dic.setCreater(super.getUser(request).getId());
             dic.setCreatetime(new Date());
             sysDicRes.save(dic);
-            reloadSysDicItem(dic);
         } else {
             msg = "exist";
         }
@@ -96,7 +90,6 @@ public class SysDicController extends Handler {
             sysDic.setIconstr(dic.getIconstr());
             sysDic.setDescription(dic.getDescription());
             sysDicRes.save(sysDic);
-            reloadSysDicItem(sysDic);
         }
         return request(super.createView("redirect:/admin/sysdic/index.html?p=" + p));
     }
@@ -108,8 +101,6 @@ public class SysDicController extends Handler {
         sysDicRes.deleteAll(sysDicRes.findByDicid(id));
         sysDicRes.delete(sysDic);
 
-        reloadSysDicItem(sysDic);
-
         return request(super.createView("redirect:/admin/sysdic/index.html?p=" + p));
     }
 
@@ -139,34 +130,12 @@ public class SysDicController extends Handler {
             dic.setCreater(super.getUser(request).getId());
             dic.setCreatetime(new Date());
             sysDicRes.save(dic);
-            reloadSysDicItem(dic);
         } else {
             msg = "exist";
         }
         return request(super.createView("redirect:/admin/sysdic/dicitem.html?id=" + dic.getParentid() + (msg != null ? "&p=" + p + "&msg=" + msg : "")));
     }
 
-    /**
-     * 更新系统词典缓存
-     * @param dic
-     */
-    public void reloadSysDicItem(final SysDic dic) {
-        cache.putSysDic(dic.getId(), dic);
-        if (StringUtils.isNotBlank(dic.getDicid())) { // 该数据为某词典的子项
-            // 首先获得根词典
-            SysDic root = cache.findOneSysDicById(dic.getDicid());
-            // 获得其目前的全部子项，此处是从数据库提取
-            // 而不是缓存，因为缓存的数据已经旧了
-            List<SysDic> sysDicList = sysDicRes.findByDicid(dic.getDicid());
-            // 更新其全部子项数据到缓存
-            cache.putSysDic(root.getCode(), sysDicList);
-        } else if (dic.getParentid().equals("0")) {
-            // 如果该数据为某根词典
-            List<SysDic> sysDicList = sysDicRes.findByDicid(dic.getId());
-            cache.putSysDic(dic.getCode(), sysDicList);
-        }
-    }
-
     @RequestMapping("/dicitem/batadd")
     @Menu(type = "admin", subtype = "sysdic")
     public ModelAndView dicitembatadd(ModelMap map, HttpServletRequest request, @Valid String id, @Valid String p) {
@@ -198,7 +167,6 @@ public class SysDicController extends Handler {
 
             }
         }
-        reloadSysDicItem(sysDicRes.findById(sysDic.getParentid()).orElse(null));
 
         return request(super.createView("redirect:/admin/sysdic/dicitem.html?id=" + sysDic.getParentid() + "&p=" + p));
     }
@@ -226,7 +194,6 @@ public class SysDicController extends Handler {
             sysDic.setDescription(dic.getDescription());
             sysDicRes.save(sysDic);
 
-            reloadSysDicItem(sysDic);
         }
         return request(super.createView("redirect:/admin/sysdic/dicitem.html?id=" + dic.getParentid() + "&p=" + p));
     }
@@ -237,7 +204,6 @@ public class SysDicController extends Handler {
         sysDicRes.deleteAll(sysDicRes.findByDicid(id));
         SysDic dic = sysDicRes.findById(id).orElse(null);
         sysDicRes.delete(dic);
-        reloadSysDicItem(dic);
         return request(super.createView("redirect:/admin/sysdic/dicitem.html?id=" + dic.getParentid() + "&p=" + p));
     }
 
@@ -15,7 +15,6 @@
 package com.cskefu.cc.controller.api;
 
 import com.cskefu.cc.controller.Handler;
-import com.cskefu.cc.controller.admin.system.SysDicController;
 import com.cskefu.cc.util.restapi.RestUtils;
 import com.cskefu.cc.model.Dict;
 import com.cskefu.cc.model.SysDic;
@@ -56,9 +55,6 @@ public class ApiSysDicController extends Handler {
     @Autowired
     private SysDicRepository sysDicRes;
 
-    @Autowired
-    private SysDicController sysDicCtrl;
-
     /**
      * 获取数据字典
      *
@@ -102,7 +98,6 @@ public class ApiSysDicController extends Handler {
 
             record.setHaschild(false);
             sysDicRes.save(record);
-            sysDicCtrl.reloadSysDicItem(record);
 
             JsonObject data = new JsonObject();
             data.addProperty("id", record.getId());
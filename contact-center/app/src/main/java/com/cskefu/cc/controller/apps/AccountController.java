@@ -15,6 +15,7 @@
 
 package com.cskefu.cc.controller.apps;
 
+import com.cskefu.cc.basic.MainContext;
 import com.cskefu.cc.basic.MainUtils;
 import com.cskefu.cc.controller.Handler;
 import com.cskefu.cc.exception.CSKefuException;
@@ -38,8 +39,11 @@ import org.apache.commons.lang3.StringUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.data.domain.PageRequest;
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
 import org.springframework.stereotype.Controller;
 import org.springframework.ui.ModelMap;
 import org.springframework.web.bind.annotation.RequestMapping;
@@ -47,6 +51,8 @@ import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.multipart.MultipartFile;
 import org.springframework.web.servlet.ModelAndView;
 
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
 import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
 import jakarta.validation.Valid;
@@ -84,6 +90,19 @@ public class AccountController extends Handler {
     @Value("${web.upload-path}")
     private String path;
 
+    @Value("${cskefu.export.batch-size:500}")
+    private int exportBatchSize;
+
+    @Value("${cskefu.export.max-rows:0}")
+    private int exportMaxRows;
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    @Autowired
+    @Qualifier("importTaskExecutor")
+    private ThreadPoolTaskExecutor importTaskExecutor;
+
     @RequestMapping("/index")
     @Menu(type = "customer", subtype = "index")
     public ModelAndView index(ModelMap map,
@@ -352,15 +371,25 @@ public class AccountController extends Handler {
             FileUtils.writeByteArrayToFile(new File(path, fileName), cusfile.getBytes());
             event.setDSData(new DSData(table, excelFile, cusfile.getContentType(), super.getUser(request)));
             event.getDSData().setClazz(Account.class);
-            event.getDSData().setProcess(new AccountProcess(accountRes));
+            event.getDSData().setProcess(new AccountProcess(accountRes, entityManager));
 	    	/*if(StringUtils.isNotBlank(ekind)){
 	    		exchange.getValues().put("ekind", ekind) ;
 	    	}*/
             event.getValues().put("creater", super.getUser(request).getId());
             event.getValues().put("organ", organId);
             event.getValues().put("shares", "all");
+            event.getDSData().getReport().setStatus(MainContext.TaskStatusType.QUEUE.getType());
             reporterRes.save(event.getDSData().getReport());
-            new ExcelImportProecess(event).process();        //启动导入任务
+            try {
+                importTaskExecutor.execute(new ExcelImportProecess(event)::process);        //启动导入任务
+            } catch (TaskRejectedException e) {
+                logger.warn("[impsave] too many import tasks, reject file {}", fileName);
+                FileUtils.deleteQuietly(excelFile);
+                event.getDSData().getReport().setStatus(MainContext.TaskStatusType.END.getType());
+                event.getDSData().getReport().setError(true);
+                event.getDSData().getReport().setErrormsg("rejected");
+                reporterRes.save(event.getDSData().getReport());
+            }
         }
 
         return request(super.createView("redirect:/apps/customer/index.html"));
@@ -372,15 +401,14 @@ public class AccountController extends Handler {
         if (ids != null && ids.length > 0) {
             Iterable<Account> entCustomerList = accountRes.findAllById(Arrays.asList(ids));
             MetadataTable table = metadataRes.findByTablename("uk_entcustomer");
-            List<Map<String, Object>> values = new ArrayList<>();
-            for (Account customer : entCustomerList) {
-                values.add(MainUtils.transBean2Map(customer));
-            }
 
-            response.setHeader("content-disposition", "attachment;filename=CSKeFu-EntCustomer-" + new SimpleDateFormat("yyyy-MM-dd").format(new Date()) + ".xls");
+            response.setHeader("content-disposition", "attachment;filename=CSKeFu-EntCustomer-" + new SimpleDateFormat("yyyy-MM-dd").format(new Date()) + ".xlsx");
 
-            ExcelExporterProcess excelProcess = new ExcelExporterProcess(values, table, response.getOutputStream());
-            excelProcess.process();
+            ExcelExporterProcess excelProcess = new ExcelExporterProcess(table, response.getOutputStream());
+            for (Account customer : entCustomerList) {
+                excelProcess.write(customer);
+            }
+            excelProcess.finish();
         }
 
         return;
@@ -401,18 +429,11 @@ public class AccountController extends Handler {
             map.put("ekind", ekind);
         }
 
-        Iterable<Account> entCustomerList = accountRes.findByCreaterAndSharesAndDatastatus(super.getUser(request).getId(), super.getUser(request).getId(), false, PageRequest.of(super.getP(request), super.getPs(request)));
-
         MetadataTable table = metadataRes.findByTablename("uk_entcustomer");
-        List<Map<String, Object>> values = new ArrayList<>();
-        for (Account customer : entCustomerList) {
-            values.add(MainUtils.transBean2Map(customer));
-        }
 
-        response.setHeader("content-disposition", "attachment;filename=CSKeFu-EntCustomer-" + new SimpleDateFormat("yyyy-MM-dd").format(new Date()) + ".xls");
+        response.setHeader("content-disposition", "attachment;filename=CSKeFu-EntCustomer-" + new SimpleDateFormat("yyyy-MM-dd").format(new Date()) + ".xlsx");
 
-        ExcelExporterProcess excelProcess = new ExcelExporterProcess(values, table, response.getOutputStream());
-        excelProcess.process();
+        exportAccounts(super.getUser(request), table, response);
         return;
     }
 
@@ -435,22 +456,24 @@ public class AccountController extends Handler {
             map.put("ekind", ekind);
         }
 
-        Iterable<Account> entCustomerList = accountRes.findByCreaterAndSharesAndDatastatus(super.getUser(request).getId(),
-                super.getUser(request).getId(),
-
-                false,
-                PageRequest.of(super.getP(request), super.getPs(request)));
         MetadataTable table = metadataRes.findByTablename("uk_entcustomer");
-        List<Map<String, Object>> values = new ArrayList<>();
-        for (Account customer : entCustomerList) {
-            values.add(MainUtils.transBean2Map(customer));
-        }
 
-        response.setHeader("content-disposition", "attachment;filename=CSKeFu-EntCustomer-" + new SimpleDateFormat("yyyy-MM-dd").format(new Date()) + ".xls");
+        response.setHeader("content-disposition", "attachment;filename=CSKeFu-EntCustomer-" + new SimpleDateFormat("yyyy-MM-dd").format(new Date()) + ".xlsx");
 
-        ExcelExporterProcess excelProcess = new ExcelExporterProcess(values, table, response.getOutputStream());
-        excelProcess.process();
+        exportAccounts(super.getUser(request), table, response);
 
         return;
     }
+
+    /**
+     * 按ID顺序分批导出当前用户的全部客户
+     */
+    private void exportAccounts(final User logined, final MetadataTable table, final HttpServletResponse response) throws IOException {
+        ExcelExporterProcess excelProcess = new ExcelExporterProcess(table, response.getOutputStream());
+        excelProcess.writeAll(
+                lastId -> accountRes.findByCreaterAndSharesAndDatastatusAndIdGreaterThanOrderByIdAsc(
+                        logined.getId(), logined.getId(), false, lastId, PageRequest.of(0, exportBatchSize)),
+                Account::getId, entityManager::clear, exportMaxRows);
+        excelProcess.finish();
+    }
 }
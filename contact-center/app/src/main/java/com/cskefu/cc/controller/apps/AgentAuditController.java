@@ -26,6 +26,7 @@ import com.cskefu.cc.controller.Handler;
 import com.cskefu.cc.exception.CSKefuException;
 import com.cskefu.cc.model.*;
 import com.cskefu.cc.peer.PeerSyncIM;
+import com.cskefu.cc.peer.im.ChatMessageWriter;
 import com.cskefu.cc.persistence.repository.*;
 import com.cskefu.cc.proxy.*;
 import com.cskefu.cc.socketio.message.Message;
@@ -78,7 +79,7 @@ public class AgentAuditController extends Handler {
     private AgentServiceRepository agentServiceRes;
 
     @Autowired
-    private AgentUserTaskRepository agentUserTaskRes;
+    private ChatMessageWriter chatMessageWriter;
 
     @Autowired
     private ServiceSummaryRepository serviceSummaryRes;
@@ -275,9 +276,11 @@ public class AgentAuditController extends Handler {
 
             view.addObject("inviteData", OnlineUserProxy.consult(agentUser.getAppid()));
 
-            AgentUserTask agentUserTask = agentUserTaskRes.findById(id).orElse(null);
-            agentUserTask.setTokenum(0);
-            agentUserTaskRes.save(agentUserTask);
+            AgentUserTask agentUserTask = chatMessageWriter.findAgentUserTask(id).orElse(null);
+            synchronized (agentUserTask) {
+                agentUserTask.setTokenum(0);
+            }
+            chatMessageWriter.save(agentUserTask);
 
             if (StringUtils.isNotBlank(agentUser.getAgentserviceid())) {
                 List<AgentServiceSummary> summarizes = this.serviceSummaryRes.findByAgentserviceid(
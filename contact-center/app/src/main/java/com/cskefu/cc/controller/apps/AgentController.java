@@ -27,6 +27,7 @@
  import com.cskefu.cc.exception.CSKefuException;
  import com.cskefu.cc.model.*;
  import com.cskefu.cc.peer.PeerSyncIM;
+ import com.cskefu.cc.peer.im.ChatMessageWriter;
  import com.cskefu.cc.persistence.blob.JpaBlobHelper;
  import com.cskefu.cc.persistence.interfaces.DataExchangeInterface;
  import com.cskefu.cc.persistence.repository.*;
@@ -119,7 +120,7 @@
      private TagRelationRepository tagRelationRes;
 
      @Autowired
-     private AgentUserTaskRepository agentUserTaskRes;
+     private ChatMessageWriter chatMessageWriter;
 
      @Autowired
      private UserRepository userRes;
@@ -392,9 +393,11 @@
              }
 
              view.addObject("inviteData", OnlineUserProxy.consult(agentUser.getAppid()));
-             AgentUserTask agentUserTask = agentUserTaskRes.findById(id).orElse(null);
-             agentUserTask.setTokenum(0);
-             agentUserTaskRes.save(agentUserTask);
+             AgentUserTask agentUserTask = chatMessageWriter.findAgentUserTask(id).orElse(null);
+             synchronized (agentUserTask) {
+                 agentUserTask.setTokenum(0);
+             }
+             chatMessageWriter.save(agentUserTask);
 
              if (StringUtils.isNotBlank(agentUser.getAgentserviceid())) {
                  List<AgentServiceSummary> summarizes = this.serviceSummaryRes.findByAgentserviceid(
@@ -689,9 +692,11 @@
      @Menu(type = "apps", subtype = "agent")
      public ModelAndView readmsg(HttpServletRequest request, @Valid String userid) {
 
-         agentUserTaskRes.findById(userid).ifPresent(task -> {
-             task.setTokenum(0);
-             agentUserTaskRes.save(task);
+         chatMessageWriter.findAgentUserTask(userid).ifPresent(task -> {
+             synchronized (task) {
+                 task.setTokenum(0);
+             }
+             chatMessageWriter.save(task);
          });
 
          return request(super.createView("/public/success"));
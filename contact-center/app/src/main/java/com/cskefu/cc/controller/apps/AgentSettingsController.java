@@ -14,7 +14,6 @@
  */
 package com.cskefu.cc.controller.apps;
 
-import com.cskefu.cc.acd.ACDPolicyService;
 import com.cskefu.cc.basic.Constants;
 import com.cskefu.cc.basic.MainUtils;
 import com.cskefu.cc.cache.Cache;
@@ -50,9 +49,6 @@ import java.util.Map;
 public class AgentSettingsController extends Handler {
     private final static Logger logger = LoggerFactory.getLogger(AgentSettingsController.class);
 
-    @Autowired
-    private ACDPolicyService acdPolicyService;
-
     @Autowired
     private SessionConfigRepository sessionConfigRes;
 
@@ -131,12 +127,9 @@ public class AgentSettingsController extends Handler {
             tempSessionConfig.setSkill(currentOrgan.getId());
         }
 
+        // 保存后由 SnapshotAspect 更新 acdconfig 快照的版本号，各节点重新加载会话配置
         sessionConfigRes.save(tempSessionConfig);
 
-        cache.putSessionConfig(tempSessionConfig, tempSessionConfig.getSkill());
-        cache.deleteSessionConfigList();
-
-        acdPolicyService.initSessionConfigList();
         map.put("sessionConfig", tempSessionConfig);
 
         return request(super.createView("redirect:/setting/agent/index.html"));
@@ -14,6 +14,7 @@
  */
 package com.cskefu.cc.controller.apps;
 
+import com.cskefu.cc.basic.MainContext;
 import com.cskefu.cc.basic.MainUtils;
 import com.cskefu.cc.controller.Handler;
 import com.cskefu.cc.exception.BillingQuotaException;
@@ -35,9 +36,12 @@ import org.apache.commons.lang3.StringUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageRequest;
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
 import org.springframework.stereotype.Controller;
 import org.springframework.ui.ModelMap;
 import org.springframework.web.bind.annotation.RequestMapping;
@@ -45,6 +49,8 @@ import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.multipart.MultipartFile;
 import org.springframework.web.servlet.ModelAndView;
 
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
 import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
 import jakarta.validation.Valid;
@@ -91,6 +97,19 @@ public class ContactsController extends Handler {
     @Value("${web.upload-path}")
     private String path;
 
+    @Value("${cskefu.export.batch-size:500}")
+    private int exportBatchSize;
+
+    @Value("${cskefu.export.max-rows:0}")
+    private int exportMaxRows;
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    @Autowired
+    @Qualifier("importTaskExecutor")
+    private ThreadPoolTaskExecutor importTaskExecutor;
+
     @RequestMapping("/index")
     @Menu(type = "customer", subtype = "index")
     public ModelAndView index(
@@ -437,12 +456,22 @@ public class ContactsController extends Handler {
             FileUtils.writeByteArrayToFile(new File(path, fileName), cusfile.getBytes());
             event.setDSData(new DSData(table, excelFile, cusfile.getContentType(), logined));
             event.getDSData().setClazz(Contacts.class);
-            event.getDSData().setProcess(new ContactsProcess(contactsRes));
+            event.getDSData().setProcess(new ContactsProcess(contactsRes, entityManager));
             event.getValues().put("creater", logined.getId());
             event.getValues().put("organ", organId);
             event.getValues().put("shares", "all");
+            event.getDSData().getReport().setStatus(MainContext.TaskStatusType.QUEUE.getType());
             reporterRes.save(event.getDSData().getReport());
-            new ExcelImportProecess(event).process();        //启动导入任务
+            try {
+                importTaskExecutor.execute(new ExcelImportProecess(event)::process);        //启动导入任务
+            } catch (TaskRejectedException e) {
+                logger.warn("[impsave] too many import tasks, reject file {}", fileName);
+                FileUtils.deleteQuietly(excelFile);
+                event.getDSData().getReport().setStatus(MainContext.TaskStatusType.END.getType());
+                event.getDSData().getReport().setError(true);
+                event.getDSData().getReport().setErrormsg("rejected");
+                reporterRes.save(event.getDSData().getReport());
+            }
         }
         return request(super.createView("redirect:/apps/contacts/index.html"));
     }
@@ -453,18 +482,17 @@ public class ContactsController extends Handler {
         if (ids != null && ids.length > 0) {
             Iterable<Contacts> contactsList = contactsRes.findAllById(Arrays.asList(ids));
             MetadataTable table = metadataRes.findByTablename("uk_contacts");
-            List<Map<String, Object>> values = new ArrayList<>();
-            for (Contacts contacts : contactsList) {
-                values.add(MainUtils.transBean2Map(contacts));
-            }
 
             response.setHeader(
                     "content-disposition",
                     "attachment;filename=CSKefu-Contacts-" + new SimpleDateFormat("yyyy-MM-dd").format(
-                            new Date()) + ".xls");
+                            new Date()) + ".xlsx");
 
-            ExcelExporterProcess excelProcess = new ExcelExporterProcess(values, table, response.getOutputStream());
-            excelProcess.process();
+            ExcelExporterProcess excelProcess = new ExcelExporterProcess(table, response.getOutputStream());
+            for (Contacts contacts : contactsList) {
+                excelProcess.write(contacts);
+            }
+            excelProcess.finish();
         }
 
         return;
@@ -486,22 +514,14 @@ public class ContactsController extends Handler {
             map.put("ckind", ckind);
         }
 
-        Iterable<Contacts> contactsList = contactsRes.findByCreaterAndSharesInOrSharesIsNullAndDatastatus(
-                logined.getId(), Arrays.asList(logined.getId(),"all"),false, PageRequest.of(super.getP(request), super.getPs(request)));
-
         MetadataTable table = metadataRes.findByTablename("uk_contacts");
-        List<Map<String, Object>> values = new ArrayList<>();
-        for (Contacts contacts : contactsList) {
-            values.add(MainUtils.transBean2Map(contacts));
-        }
 
         response.setHeader(
                 "content-disposition",
                 "attachment;filename=CSKefu-Contacts-" + new SimpleDateFormat("yyyy-MM-dd").format(
-                        new Date()) + ".xls");
+                        new Date()) + ".xlsx");
 
-        ExcelExporterProcess excelProcess = new ExcelExporterProcess(values, table, response.getOutputStream());
-        excelProcess.process();
+        exportContacts(logined, table, response);
         return;
     }
 
@@ -520,26 +540,32 @@ public class ContactsController extends Handler {
             map.put("ckind", ckind);
         }
 
-        Iterable<Contacts> contactsList = contactsRes.findByCreaterAndSharesInOrSharesIsNullAndDatastatus(
-                logined.getId(), Arrays.asList(logined.getId(),"all"), false, PageRequest.of(super.getP(request), super.getPs(request)));
         MetadataTable table = metadataRes.findByTablename("uk_contacts");
-        List<Map<String, Object>> values = new ArrayList<>();
-        for (Contacts contacts : contactsList) {
-            values.add(MainUtils.transBean2Map(contacts));
-        }
 
         response.setHeader(
                 "content-disposition",
                 "attachment;filename=CSKefu-Contacts-" + new SimpleDateFormat("yyyy-MM-dd").format(
-                        new Date()) + ".xls");
+                        new Date()) + ".xlsx");
 
-        ExcelExporterProcess excelProcess = new ExcelExporterProcess(values, table, response.getOutputStream());
-        excelProcess.process();
+        exportContacts(logined, table, response);
 
         return;
     }
 
 
+    /**
+     * 按ID顺序分批导出当前用户可见的全部联系人
+     */
+    private void exportContacts(final User logined, final MetadataTable table, final HttpServletResponse response) throws IOException {
+        final List<String> shares = Arrays.asList(logined.getId(), "all");
+        ExcelExporterProcess excelProcess = new ExcelExporterProcess(table, response.getOutputStream());
+        excelProcess.writeAll(
+                lastId -> contactsRes.findByCreaterAndSharesInOrSharesIsNullAndDatastatusAndIdGreaterThan(
+                        logined.getId(), shares, false, lastId, PageRequest.of(0, exportBatchSize)),
+                Contacts::getId, entityManager::clear, exportMaxRows);
+        excelProcess.finish();
+    }
+
     @RequestMapping("/embed/index")
     @Menu(type = "customer", subtype = "embed")
     public ModelAndView embed(ModelMap map, HttpServletRequest request, @Valid String q, @Valid String ckind, @Valid String msg, @Valid String userid, @Valid String agentserviceid) throws CSKefuException {
@@ -28,6 +28,7 @@ import com.cskefu.cc.controller.Handler;
 import com.cskefu.cc.interceptor.UserExperiencePlanInterceptorHandler;
 import com.cskefu.cc.util.restapi.RestUtils;
 import com.cskefu.cc.model.*;
+import com.cskefu.cc.peer.im.UserHistoryWriter;
 import com.cskefu.cc.persistence.blob.JpaBlobHelper;
 import com.cskefu.cc.persistence.repository.*;
 import com.cskefu.cc.proxy.OnlineUserProxy;
@@ -58,6 +59,7 @@ import jakarta.annotation.PostConstruct;
 import jakarta.servlet.http.Cookie;
 import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
+import jakarta.servlet.http.HttpSession;
 import jakarta.validation.Valid;
 import java.io.File;
 import java.io.IOException;
@@ -135,7 +137,13 @@ public class IMController extends Handler {
     private ChannelRepository snsAccountRes;
 
     @Autowired
-    private UserHistoryRepository userHistoryRes;
+    private UserHistoryWriter userHistoryWriter;
+
+    @Value("${cskefu.webim.loader.max-age:60}")
+    private int loaderMaxAge;
+
+    @Value("${cskefu.webim.point.max-age:600}")
+    private int pointMaxAge;
 
     @Autowired
     private ChatbotRepository chatbotRes;
@@ -164,6 +172,19 @@ public class IMController extends Handler {
         }
     }
 
+    /**
+     * 在客户或第三方网页内加载聊天控件
+     * <p>
+     * 聊天控件的地址带有网站渠道配置的版本号，配置变更后浏览器和 CDN 加载新的聊天控件
+     *
+     * @param request
+     * @param response
+     * @param id
+     * @param userid
+     * @param title
+     * @param aiid
+     * @return
+     */
     @RequestMapping("/{id}")
     @Menu(type = "im", subtype = "point", access = true)
     public ModelAndView loader(
@@ -174,28 +195,29 @@ public class IMController extends Handler {
             @Valid String aiid) {
         ModelAndView view = request(super.createView("/apps/im/loader"));
 
-        CousultInvite consultInvite = consultInviteRes.findBySnsaccountid(id);
         view.addObject("hostname", request.getServerName());
-        SystemConfig systemConfig = MainUtils.getSystemConfig();
-
         view.addObject("schema", super.getSchema(request));
         view.addObject("port", request.getServerPort());
         view.addObject("appid", id);
         view.addObject("userid", userid);
         view.addObject("title", title);
         view.addObject("aiid", aiid);
+        view.addObject("version", cache.getConsultInviteVersion(id));
 
+        response.setHeader("Cache-Control", "public, max-age=" + loaderMaxAge);
         return view;
     }
 
     /**
      * 在客户或第三方网页内，写入聊天控件
+     * <p>
+     * 聊天控件只包含网站渠道的配置，访客的 client、sessionid 和 traceid 在浏览器中生成，
+     * 可以被浏览器和 CDN 缓存；展示技能组和在线坐席时按访客地域生成，不缓存。
+     * 浏览记录由浏览器上报到 beacon。
      *
      * @param request
      * @param response
      * @param id
-     * @param userid
-     * @param title
      * @param aiid
      * @return
      */
@@ -204,38 +226,28 @@ public class IMController extends Handler {
     public ModelAndView point(
             HttpServletRequest request, HttpServletResponse response,
             @PathVariable String id,
-            @Valid String userid,
-            @Valid String title,
             @Valid String aiid) {
         ModelAndView view = request(super.createView("/apps/im/point"));
         view.addObject("channelVisitorSeparate", channelWebIMVisitorSeparate);
+        logger.debug("[point] snsid {}, website {}", id, request.getServerName());
 
-        final String sessionid = MainUtils.getContextID(request.getSession().getId());
-        logger.info("[point] session snsid {}, session {}", id, sessionid);
-
+        boolean cacheable = true;
         if (StringUtils.isNotBlank(id)) {
             Boolean webimexist = false;
             view.addObject("hostname", request.getServerName());
-            logger.info("[point] new website is : {}", request.getServerName());
             Optional<Channel> snsAccountOpt = snsAccountRes.findBySnsid(id);
             if (snsAccountOpt.isPresent()) {
                 webimexist = true;
             }
             view.addObject("webimexist", webimexist);
 
-            SystemConfig systemConfig = MainUtils.getSystemConfig();
             view.addObject("schema", super.getSchema(request));
             view.addObject("port", request.getServerPort());
 
             view.addObject("appid", id);
-            view.addObject("client", MainUtils.getUUID());
-            view.addObject("sessionid", sessionid);
-            view.addObject("ip", MainUtils.md5(request.getRemoteAddr()));
-            view.addObject("mobile", MobileDevice.isMobile(request.getHeader("User-Agent")));
 
             CousultInvite invite = OnlineUserProxy.consult(id);
             if (invite != null) {
-                logger.info("[point] find CousultInvite {}", invite.getId());
                 view.addObject("inviteData", invite);
                 view.addObject("appid", id);
 
@@ -245,73 +257,14 @@ public class IMController extends Handler {
                     view.addObject("aiid", invite.getAiid());
                 }
 
-                // 记录用户行为日志
-                // 每次有一个新网页加载出聊天控件，都会生成一个userHistory
-                UserHistory userHistory = new UserHistory();
-                String url = request.getHeader("referer");
-                if (StringUtils.isNotBlank(url)) {
-                    if (url.length() > 255) {
-                        userHistory.setUrl(url.substring(0, 255));
-                    } else {
-                        userHistory.setUrl(url);
-                    }
-                    userHistory.setReferer(userHistory.getUrl());
-                }
-                userHistory.setParam(MainUtils.getParameter(request));
-                userHistory.setMaintype("send");
-                userHistory.setSubtype("point");
-                userHistory.setName("online");
-                userHistory.setAdmin(false);
-                userHistory.setAccessnum(true);
-                userHistory.setModel(MainContext.ChannelType.WEBIM.toString());
-
-                final User imUser = super.getIMUser(request, userid, null);
-                if (imUser != null) {
-                    userHistory.setCreater(imUser.getId());
-                    userHistory.setUsername(imUser.getUsername());
-                }
-
-                if (StringUtils.isNotBlank(title)) {
-                    if (title.length() > 255) {
-                        userHistory.setTitle(title.substring(0, 255));
-                    } else {
-                        userHistory.setTitle(title);
-                    }
-                }
-
-                userHistory.setAppid(id);
-                userHistory.setSessionid(sessionid);
-
-                String ip = MainUtils.getIpAddr(request);
-                userHistory.setHostname(ip);
-                userHistory.setIp(ip);
-                IP ipdata = IPTools.getInstance().findGeography(ip);
-                userHistory.setCountry(ipdata.getCountry());
-                userHistory.setProvince(ipdata.getProvince());
-                userHistory.setCity(ipdata.getCity());
-                userHistory.setIsp(ipdata.getIsp());
-
-                BrowserClient client = MainUtils.parseClient(request);
-                userHistory.setOstype(client.getOs());
-                userHistory.setBrowser(client.getBrowser());
-                userHistory.setMobile(MobileDevice.isMobile(request.getHeader("User-Agent")) ? "1" : "0");
-
                 if (invite.isSkill() && invite.isConsult_skill_fixed() == false) { // 展示所有技能组
-                    /***
-                     * 查询 技能组 ， 缓存？
-                     */
+                    // 技能组按访客地域过滤，并展示在线坐席，不能缓存
+                    cacheable = false;
+                    IP ipdata = IPTools.getInstance().findGeography(MainUtils.getIpAddr(request));
                     view.addObject("skillGroups", OnlineUserProxy.organ(ipdata, invite, true));
-                    /**
-                     * 查询坐席 ， 缓存？
-                     */
                     view.addObject("agentList", OnlineUserProxy.agents());
                 }
 
-                view.addObject("traceid", userHistory.getId());
-
-                // 用户的浏览历史会有很大的数据量，目前强制开启
-                userHistoryRes.save(userHistory);
-
                 /**
                  * 广告信息
                  */
@@ -343,9 +296,82 @@ public class IMController extends Handler {
             }
         }
 
+        // 本次请求创建了会话时响应中有 Set-Cookie，不能被 CDN 缓存
+        final HttpSession session = request.getSession(false);
+        if (cacheable && (session == null || !session.isNew())) {
+            response.setHeader("Cache-Control", "public, max-age=" + pointMaxAge);
+        } else if (cacheable) {
+            response.setHeader("Cache-Control", "private, max-age=" + pointMaxAge);
+        } else {
+            MainUtils.noCacheResponse(response);
+        }
         return view;
     }
 
+    /**
+     * 聊天控件加载后，浏览器上报的浏览记录
+     * <p>
+     * 每次有一个新网页加载出聊天控件，都会生成一个userHistory，由 UserHistoryWriter 异步批量写入
+     *
+     * @param request
+     * @param id
+     * @param traceid
+     * @param userid
+     * @param sessionid
+     * @param title
+     * @param url
+     * @return
+     */
+    @RequestMapping("/beacon/{id}")
+    @Menu(type = "im", subtype = "beacon", access = true)
+    public ResponseEntity<Void> beacon(
+            HttpServletRequest request,
+            @PathVariable String id,
+            @Valid String traceid,
+            @Valid String userid,
+            @Valid String sessionid,
+            @Valid String title,
+            @Valid String url) {
+        if (OnlineUserProxy.consult(id) != null) {
+            // id 由服务器生成，traceid 只用于忽略重复上报
+            UserHistory userHistory = new UserHistory();
+            if (StringUtils.isNotBlank(url)) {
+                userHistory.setUrl(StringUtils.left(url, 255));
+                userHistory.setReferer(userHistory.getUrl());
+            }
+            userHistory.setMaintype("send");
+            userHistory.setSubtype("point");
+            userHistory.setName("online");
+            userHistory.setAdmin(false);
+            userHistory.setAccessnum(true);
+            userHistory.setModel(MainContext.ChannelType.WEBIM.toString());
+
+            if (isBrowserId(userid)) {
+                userHistory.setCreater(userid);
+                userHistory.setUsername(Constants.GUEST_USER + "_" + MainUtils.genIDByKey(userid));
+            }
+            if (StringUtils.isNotBlank(title)) {
+                userHistory.setTitle(StringUtils.left(title, 255));
+            }
+
+            userHistory.setAppid(id);
+            if (isBrowserId(sessionid)) {
+                userHistory.setSessionid(sessionid);
+            }
+
+            userHistoryWriter.save(userHistory, isBrowserId(traceid) ? traceid : null,
+                    MainUtils.getIpAddr(request), request.getHeader("User-Agent"));
+        }
+        return new ResponseEntity<>(HttpStatus.NO_CONTENT);
+    }
+
+    /**
+     * 浏览器生成的 ID，不超过 32 位的字母和数字
+     */
+    private static boolean isBrowserId(final String id) {
+        return StringUtils.isNotBlank(id) && id.length() <= 32 && StringUtils.isAlphanumeric(id);
+    }
+
     private void createContacts(
             final String userid,
             final HttpServletRequest request,
@@ -156,7 +156,7 @@ public class AgentSummaryController extends Handler {
                 values.add(MainUtils.transBean2Map(event));
             }
 
-            response.setHeader("content-disposition", "attachment;filename=CSKeFu-Summary-History-" + new SimpleDateFormat("yyyy-MM-dd").format(new Date()) + ".xls");
+            response.setHeader("content-disposition", "attachment;filename=CSKeFu-Summary-History-" + new SimpleDateFormat("yyyy-MM-dd").format(new Date()) + ".xlsx");
 
             ExcelExporterProcess excelProcess = new ExcelExporterProcess(values, table, response.getOutputStream());
             excelProcess.process();
@@ -178,7 +178,7 @@ public class AgentSummaryController extends Handler {
             values.add(MainUtils.transBean2Map(statusEvent));
         }
 
-        response.setHeader("content-disposition", "attachment;filename=CSKeFu-Summary-History-" + new SimpleDateFormat("yyyy-MM-dd").format(new Date()) + ".xls");
+        response.setHeader("content-disposition", "attachment;filename=CSKeFu-Summary-History-" + new SimpleDateFormat("yyyy-MM-dd").format(new Date()) + ".xlsx");
 
         ExcelExporterProcess excelProcess = new ExcelExporterProcess(values, table, response.getOutputStream());
         excelProcess.process();
@@ -211,7 +211,7 @@ public class AgentSummaryController extends Handler {
             values.add(MainUtils.transBean2Map(summary));
         }
 
-        response.setHeader("content-disposition", "attachment;filename=CSKeFu-Summary-History-" + new SimpleDateFormat("yyyy-MM-dd").format(new Date()) + ".xls");
+        response.setHeader("content-disposition", "attachment;filename=CSKeFu-Summary-History-" + new SimpleDateFormat("yyyy-MM-dd").format(new Date()) + ".xlsx");
 
         MetadataTable table = metadataRes.findByTablename("uk_servicesummary");
 
@@ -164,7 +164,7 @@ public class ProcessedSummaryController extends Handler {
                 values.add(MainUtils.transBean2Map(event));
             }
 
-            response.setHeader("content-disposition", "attachment;filename=CSKeFu-Summary-History-" + new SimpleDateFormat("yyyy-MM-dd").format(new Date()) + ".xls");
+            response.setHeader("content-disposition", "attachment;filename=CSKeFu-Summary-History-" + new SimpleDateFormat("yyyy-MM-dd").format(new Date()) + ".xlsx");
 
             ExcelExporterProcess excelProcess = new ExcelExporterProcess(values, table, response.getOutputStream());
             excelProcess.process();
@@ -187,7 +187,7 @@ public class ProcessedSummaryController extends Handler {
             values.add(MainUtils.transBean2Map(statusEvent));
         }
 
-        response.setHeader("content-disposition", "attachment;filename=CSKeFu-Summary-History-" + new SimpleDateFormat("yyyy-MM-dd").format(new Date()) + ".xls");
+        response.setHeader("content-disposition", "attachment;filename=CSKeFu-Summary-History-" + new SimpleDateFormat("yyyy-MM-dd").format(new Date()) + ".xlsx");
 
         ExcelExporterProcess excelProcess = new ExcelExporterProcess(values, table, response.getOutputStream());
         excelProcess.process();
@@ -225,7 +225,7 @@ public class ProcessedSummaryController extends Handler {
             values.add(MainUtils.transBean2Map(summary));
         }
 
-        response.setHeader("content-disposition", "attachment;filename=CSKeFu-Summary-History-" + new SimpleDateFormat("yyyy-MM-dd").format(new Date()) + ".xls");
+        response.setHeader("content-disposition", "attachment;filename=CSKeFu-Summary-History-" + new SimpleDateFormat("yyyy-MM-dd").format(new Date()) + ".xlsx");
 
         MetadataTable table = metadataRes.findByTablename("uk_servicesummary");
 
@@ -23,6 +23,7 @@ import com.cskefu.cc.persistence.repository.CubeService;
 import com.cskefu.cc.persistence.repository.DataSourceService;
 import com.cskefu.cc.proxy.OrganProxy;
 import com.cskefu.cc.proxy.UserProxy;
+import com.cskefu.cc.schedule.AgentServiceRollupTask;
 import com.cskefu.cc.util.Menu;
 import com.cskefu.cc.util.bi.ReportData;
 import com.cskefu.cc.util.bi.UKExcelUtil;
@@ -63,6 +64,9 @@ public class StatsController extends Handler {
     @Autowired
     private UserProxy userProxy;
 
+    @Autowired
+    private AgentServiceRollupTask agentServiceRollupTask;
+
 
     @RequestMapping("/stats/coment")
     @Menu(type = "service", subtype = "statcoment", admin = true)
@@ -74,20 +78,15 @@ public class StatsController extends Handler {
         logger.info("[statcoment] agent {}, skill {}, begin {}, end {}", agent, skill, begin, end);
         Organ currentOrgan = super.getOrgan(request);
         Map<String, Organ> organs = organProxy.findAllOrganByParent(currentOrgan);
-        Map<String, Object> mapR = new HashMap<>();
-        mapR.put("begin", begin);
-        mapR.put("agent", agent);
-        mapR.put("end", end);
         if (StringUtils.isNotBlank(skill)) {
             map.addAttribute("skill", skill);
             map.addAttribute("agentList", userProxy.findUserInOrgans(Arrays.asList(skill)));
-            mapR.put("skill", "'" + skill + "'");
         } else {
             map.addAttribute("agentList", userProxy.findUserInOrgans(organs.keySet()));
-            mapR.put("skill", organs.keySet().stream().map(p -> "'" + p + "'").collect(Collectors.joining(",")));
         }
 
-        ReportData reportData = new CubeService("coment.pug", path, dataSource, mapR).execute("SELECT [comment].[满意度].members on columns , NonEmptyCrossJoin([time].[日期].members , NonEmptyCrossJoin([skill].[技能组].members,[agent].[坐席].members)) on rows  FROM [满意度]");
+        ReportData reportData = new CubeService("coment.pug", path, dataSource, agentServiceRollupTask.getVersion()).execute(
+                "SELECT NON EMPTY [comment].[满意度].members on columns , " + getReportRows(organs, agent, skill, begin, end) + " on rows  FROM [满意度]");
 
         List<SysDic> dicList = Dict.getInstance().getDic(Constants.CSKEFU_SYSTEM_COMMENT_DIC);
         for (Level title : reportData.getCol().getChilderen()) {
@@ -124,16 +123,8 @@ public class StatsController extends Handler {
     public void statcomentexp(ModelMap map, HttpServletRequest request, HttpServletResponse response, @Valid String agent, @Valid String skill, @Valid String begin, @Valid String end) throws Exception {
         Organ currentOrgan = super.getOrgan(request);
         Map<String, Organ> organs = organProxy.findAllOrganByParent(currentOrgan);
-        Map<String, Object> mapR = new HashMap<>();
-        mapR.put("begin", begin);
-        mapR.put("agent", agent);
-        mapR.put("end", end);
-        if (StringUtils.isNotBlank(skill)) {
-            mapR.put("skill", "'" + skill + "'");
-        } else {
-            mapR.put("skill", organs.keySet().stream().map(p -> "'" + p + "'").collect(Collectors.joining(",")));
-        }
-        ReportData reportData = new CubeService("coment.pug", path, dataSource, mapR).execute("SELECT [comment].[满意度].members on columns , NonEmptyCrossJoin([time].[日期].members , NonEmptyCrossJoin([skill].[技能组].members,[agent].[坐席].members)) on rows  FROM [满意度]");
+        ReportData reportData = new CubeService("coment.pug", path, dataSource, agentServiceRollupTask.getVersion()).execute(
+                "SELECT NON EMPTY [comment].[满意度].members on columns , " + getReportRows(organs, agent, skill, begin, end) + " on rows  FROM [满意度]");
 
         List<SysDic> dicList = Dict.getInstance().getDic(Constants.CSKEFU_SYSTEM_COMMENT_DIC);
         for (Level title : reportData.getCol().getChilderen()) {
@@ -155,19 +146,14 @@ public class StatsController extends Handler {
     public ModelAndView statagent(ModelMap map, HttpServletRequest request, @Valid String agent, @Valid String skill, @Valid String begin, @Valid String end) throws Exception {
         Organ currentOrgan = super.getOrgan(request);
         Map<String, Organ> organs = organProxy.findAllOrganByParent(currentOrgan);
-        Map<String, Object> mapR = new HashMap<>();
-        mapR.put("begin", begin);
-        mapR.put("agent", agent);
-        mapR.put("end", end);
         if (StringUtils.isNotBlank(skill)) {
             map.addAttribute("skill", skill);
             map.addAttribute("agentList", userProxy.findUserInOrgans(Arrays.asList(skill)));
-            mapR.put("skill", "'" + skill + "'");
         } else {
             map.addAttribute("agentList", userProxy.findUserInOrgans(organs.keySet()));
-            mapR.put("skill", organs.keySet().stream().map(p -> "'" + p + "'").collect(Collectors.joining(",")));
         }
-        ReportData reportData = new CubeService("consult.pug", path, dataSource, mapR).execute("SELECT {[Measures].[咨询数量],[Measures].[平均等待时长（秒）],[Measures].[平均咨询时长（秒）]} on columns , NonEmptyCrossJoin([time].[日期].members , NonEmptyCrossJoin([skill].[技能组].members,[agent].[坐席].members)) on rows  FROM [咨询]");
+        ReportData reportData = new CubeService("consult.pug", path, dataSource, agentServiceRollupTask.getVersion()).execute(
+                "SELECT {[Measures].[咨询数量],[Measures].[平均等待时长（秒）],[Measures].[平均咨询时长（秒）]} on columns , " + getReportRows(organs, agent, skill, begin, end) + " on rows  FROM [咨询]");
         map.addAttribute("reportData", reportData);
 
         if (StringUtils.isNotBlank(agent)) {
@@ -191,18 +177,50 @@ public class StatsController extends Handler {
     public void statagentexp(ModelMap map, HttpServletRequest request, HttpServletResponse response, @Valid String agent, @Valid String skill, @Valid String begin, @Valid String end) throws Exception {
         Organ currentOrgan = super.getOrgan(request);
         Map<String, Organ> organs = organProxy.findAllOrganByParent(currentOrgan);
-        Map<String, Object> mapR = new HashMap<>();
-        mapR.put("begin", begin);
-        mapR.put("agent", agent);
-        mapR.put("end", end);
-        if (StringUtils.isNotBlank(skill)) {
-            mapR.put("skill", "'" + skill + "'");
-        } else {
-            mapR.put("skill", organs.keySet().stream().map(p -> "'" + p + "'").collect(Collectors.joining(",")));
-        }
-        ReportData reportData = new CubeService("consult.pug", path, dataSource, mapR).execute("SELECT {[Measures].[咨询数量],[Measures].[平均等待时长（秒）],[Measures].[平均咨询时长（秒）]} on columns , NonEmptyCrossJoin([time].[日期].members , NonEmptyCrossJoin([skill].[技能组].members,[agent].[坐席].members)) on rows  FROM [咨询]");
+        ReportData reportData = new CubeService("consult.pug", path, dataSource, agentServiceRollupTask.getVersion()).execute(
+                "SELECT {[Measures].[咨询数量],[Measures].[平均等待时长（秒）],[Measures].[平均咨询时长（秒）]} on columns , " + getReportRows(organs, agent, skill, begin, end) + " on rows  FROM [咨询]");
         response.setHeader("content-disposition", "attachment;filename=CSKeFu-Report-" + new SimpleDateFormat("yyyy-MM-dd").format(new Date()) + ".xls");
         new UKExcelUtil(reportData, response.getOutputStream(), "客服坐席统计").createFile();
         return;
     }
+
+    /**
+     * 报表的行：日期、技能组、坐席，查询条件作为各维度的成员集合，所有用户共用同一个 schema
+     *
+     * @param organs 当前部门及其下级部门
+     * @param agent
+     * @param skill
+     * @param begin  开始日期，yyyy-MM-dd
+     * @param end    结束日期，yyyy-MM-dd
+     * @return
+     */
+    private static String getReportRows(final Map<String, Organ> organs, final String agent, final String skill,
+                                        final String begin, final String end) {
+        final List<String> dates = new ArrayList<>();
+        if (isDate(begin)) {
+            dates.add("[time].CurrentMember.Name >= \"" + begin + "\"");
+        }
+        if (isDate(end)) {
+            dates.add("[time].CurrentMember.Name <= \"" + end + "\"");
+        }
+        final String time = dates.isEmpty() ? "[time].[日期].members" :
+                "Filter([time].[日期].members, " + StringUtils.join(dates, " AND ") + ")";
+
+        final Collection<String> skills = StringUtils.isNotBlank(skill) ? Collections.singletonList(skill) : organs.keySet();
+        final String skillSet = skills.stream().map(p -> "[skill].[技能组].&[" + escapeName(p) + "]")
+                .collect(Collectors.joining(",", "{", "}"));
+
+        final String agentSet = StringUtils.isNotBlank(agent) ? "{[agent].[坐席].&[" + escapeName(agent) + "]}" :
+                "[agent].[坐席].members";
+
+        return "NonEmptyCrossJoin(" + time + " , NonEmptyCrossJoin(" + skillSet + "," + agentSet + "))";
+    }
+
+    private static boolean isDate(final String value) {
+        return value != null && value.matches("\\d{4}-\\d{2}-\\d{2}");
+    }
+
+    private static String escapeName(final String name) {
+        return name.replace("]", "]]");
+    }
 }
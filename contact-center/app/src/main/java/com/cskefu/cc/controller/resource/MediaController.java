@@ -21,6 +21,7 @@ import com.cskefu.cc.util.restapi.RestUtils;
 import com.cskefu.cc.model.AttachmentFile;
 import com.cskefu.cc.model.StreamingFile;
 import com.cskefu.cc.persistence.blob.JpaBlobHelper;
+import com.cskefu.cc.persistence.blob.StreamingFileCache;
 import com.cskefu.cc.persistence.repository.AttachmentRepository;
 import com.cskefu.cc.persistence.repository.StreamingFileRepository;
 import com.cskefu.cc.util.Menu;
@@ -31,6 +32,7 @@ import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpRange;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Controller;
@@ -48,7 +50,12 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.net.URL;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
 import java.sql.SQLException;
+import java.util.Collections;
+import java.util.List;
 
 @Controller
 @RequestMapping("/res")
@@ -64,6 +71,9 @@ public class MediaController extends Handler {
     @Autowired
     private JpaBlobHelper jpaBlobHelper;
 
+    @Autowired
+    private StreamingFileCache streamingFileCache;
+
     private final String TEMPLATE_DATA_PATH = "WEB-INF/data/templates/";
 
     @Autowired
@@ -71,25 +81,38 @@ public class MediaController extends Handler {
 
     @RequestMapping("/image")
     @Menu(type = "resouce", subtype = "image", access = true)
-    public void index(HttpServletResponse response,
+    public void index(HttpServletRequest request, HttpServletResponse response,
                       @Valid String id,
                       @RequestParam(value = "original", required = false) boolean original,
                       @RequestParam(value = "cooperation", required = false) boolean cooperation) throws IOException, SQLException {
-        StreamingFile sf = streamingFileRes.findById(id).orElse(null);
-        if (sf != null) {
-            response.setHeader("Content-Type", sf.getMime());
-            response.setContentType(sf.getMime());
-            if (cooperation && (sf.getCooperation() != null)) { // 协作文件
+        if (StringUtils.isBlank(id)) {
+            return;
+        }
+        if (cooperation) {
+            // 协作文件会被修改，不缓存
+            StreamingFile sf = streamingFileRes.findById(id).orElse(null);
+            if (sf != null && sf.getCooperation() != null) {
+                response.setContentType(sf.getMime());
+                response.setHeader(HttpHeaders.CACHE_CONTROL, "no-cache");
                 IOUtils.copy(sf.getCooperation().getBinaryStream(), response.getOutputStream());
-            } else if (original && sf.getData() != null) { // 源文件
-                IOUtils.copy(sf.getData().getBinaryStream(), response.getOutputStream());
-            } else if (sf.getThumbnail() != null) { // 缩略图
-                IOUtils.copy(sf.getThumbnail().getBinaryStream(), response.getOutputStream());
-            } else if (sf.getData() != null) {
-                IOUtils.copy(sf.getData().getBinaryStream(), response.getOutputStream());
-            } else {
+                return;
+            }
+        }
+
+        // 原图和缩略图不会修改，使用文件ID作为 ETag
+        final String etag = "\"" + id + (original ? "-o" : "-t") + "\"";
+        if (isNotModified(request, response, etag)) {
+            return;
+        }
+        try (StreamingFileCache.Opened opened = streamingFileCache.open(id, original)) {
+            if (opened == null) {
                 logger.warn("[index] can not get streaming file id {}, original {}, cooperation {}", id, original, cooperation);
+                return;
             }
+            response.setContentType(opened.getMime());
+            response.setHeader(HttpHeaders.CACHE_CONTROL, "public, max-age=31536000, immutable");
+            response.setHeader(HttpHeaders.ETAG, etag);
+            serve(request, response, opened, etag);
         }
     }
 
@@ -147,15 +170,22 @@ public class MediaController extends Handler {
     @Menu(type = "resouce", subtype = "file")
     public void file(HttpServletResponse response, HttpServletRequest request, @Valid String id) throws IOException, SQLException {
         if (StringUtils.isNotBlank(id)) {
+            final String etag = "\"" + id + "\"";
+            if (isNotModified(request, response, etag)) {
+                return;
+            }
             AttachmentFile attachmentFile = attachementRes.findById(id).orElse(null);
             if (attachmentFile != null && attachmentFile.getFileid() != null) {
-                StreamingFile sf = streamingFileRes.findById(attachmentFile.getFileid()).orElse(null);
-                if (sf != null) {
-                    response.setContentType(attachmentFile.getFiletype());
-                    response.setHeader("Content-Disposition", "attachment;filename=" + java.net.URLEncoder.encode(attachmentFile.getTitle(), "UTF-8"));
-                    IOUtils.copy(sf.getData().getBinaryStream(), response.getOutputStream());
-                } else {
-                    logger.warn("[streaming file] can not get file id {}", attachmentFile.getFileid());
+                try (StreamingFileCache.Opened opened = streamingFileCache.open(attachmentFile.getFileid(), true)) {
+                    if (opened != null) {
+                        response.setContentType(attachmentFile.getFiletype());
+                        response.setHeader("Content-Disposition", "attachment;filename=" + java.net.URLEncoder.encode(attachmentFile.getTitle(), "UTF-8"));
+                        response.setHeader(HttpHeaders.CACHE_CONTROL, "private, max-age=31536000, immutable");
+                        response.setHeader(HttpHeaders.ETAG, etag);
+                        serve(request, response, opened, etag);
+                    } else {
+                        logger.warn("[streaming file] can not get file id {}", attachmentFile.getFileid());
+                    }
                 }
             } else {
                 logger.warn("[attachment file] can not find attachment file id {}", id);
@@ -163,6 +193,83 @@ public class MediaController extends Handler {
         }
     }
 
+    /**
+     * 请求的 ETag 没有变化时返回304
+     *
+     * @param request
+     * @param response
+     * @param etag
+     * @return
+     */
+    private boolean isNotModified(HttpServletRequest request, HttpServletResponse response, String etag) {
+        final String ifNoneMatch = request.getHeader(HttpHeaders.IF_NONE_MATCH);
+        if (ifNoneMatch == null) {
+            return false;
+        }
+        for (final String tag : StringUtils.split(ifNoneMatch, ',')) {
+            final String trimmed = StringUtils.removeStart(tag.trim(), "W/");
+            if (StringUtils.equals(trimmed, etag) || StringUtils.equals(trimmed, "*")) {
+                response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+                response.setHeader(HttpHeaders.ETAG, etag);
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 输出文件，支持单个范围的 Range 请求，多个范围时返回整个文件
+     *
+     * @param request
+     * @param response
+     * @param opened
+     * @param etag
+     * @throws IOException
+     */
+    private void serve(HttpServletRequest request, HttpServletResponse response, StreamingFileCache.Opened opened,
+                       String etag) throws IOException {
+        final long length = opened.getLength();
+        long start = 0;
+        long end = length - 1;
+
+        response.setHeader(HttpHeaders.ACCEPT_RANGES, "bytes");
+        final String range = request.getHeader(HttpHeaders.RANGE);
+        final String ifRange = request.getHeader(HttpHeaders.IF_RANGE);
+        if (range != null && (ifRange == null || StringUtils.equals(ifRange, etag))) {
+            List<HttpRange> ranges;
+            try {
+                ranges = HttpRange.parseRanges(range);
+            } catch (IllegalArgumentException e) {
+                // 格式错误时忽略 Range
+                ranges = Collections.emptyList();
+            }
+            if (ranges.size() == 1) {
+                try {
+                    start = ranges.get(0).getRangeStart(length);
+                    end = ranges.get(0).getRangeEnd(length);
+                } catch (IllegalArgumentException e) {
+                    response.setStatus(HttpServletResponse.SC_REQUESTED_RANGE_NOT_SATISFIABLE);
+                    response.setHeader(HttpHeaders.CONTENT_RANGE, "bytes */" + length);
+                    return;
+                }
+                response.setStatus(HttpServletResponse.SC_PARTIAL_CONTENT);
+                response.setHeader(HttpHeaders.CONTENT_RANGE, "bytes " + start + "-" + end + "/" + length);
+            }
+        }
+
+        response.setContentLengthLong(end - start + 1);
+        if (StringUtils.equals(request.getMethod(), "HEAD")) {
+            return;
+        }
+
+        final FileChannel channel = opened.getChannel();
+        final WritableByteChannel out = Channels.newChannel(response.getOutputStream());
+        long position = start;
+        while (position <= end) {
+            position += channel.transferTo(position, end - position + 1, out);
+        }
+    }
+
     @RequestMapping("/template")
     @Menu(type = "resouce", subtype = "template")
     public void template(HttpServletResponse response, HttpServletRequest request, @Valid String filename) throws IOException {
@@ -20,7 +20,6 @@ import com.cskefu.cc.basic.MainUtils;
 import com.cskefu.cc.controller.Handler;
 import com.cskefu.cc.model.RequestLog;
 import com.cskefu.cc.model.User;
-import com.cskefu.cc.persistence.repository.RequestLogRepository;
 import com.cskefu.cc.util.Menu;
 import org.apache.commons.lang3.StringUtils;
 import org.slf4j.Logger;
@@ -43,7 +42,7 @@ public class RequestLogIntercreptorHandler implements org.springframework.web.se
 
     private final static Logger logger = LoggerFactory.getLogger(RequestLogIntercreptorHandler.class);
 
-    private static RequestLogRepository requestLogRes;
+    private static RequestLogWriter requestLogWriter;
 
     @Override
     public void afterCompletion(HttpServletRequest request,
@@ -104,7 +103,7 @@ public class RequestLogIntercreptorHandler implements org.springframework.web.se
             }
 
             log.setParameters(str.toString());
-            getRequestLogRes().save(log);
+            getRequestLogWriter().save(log);
         }
     }
 
@@ -119,10 +118,10 @@ public class RequestLogIntercreptorHandler implements org.springframework.web.se
         return true;
     }
 
-    private static RequestLogRepository getRequestLogRes() {
-        if (requestLogRes == null) {
-            requestLogRes = MainContext.getContext().getBean(RequestLogRepository.class);
+    private static RequestLogWriter getRequestLogWriter() {
+        if (requestLogWriter == null) {
+            requestLogWriter = MainContext.getContext().getBean(RequestLogWriter.class);
         }
-        return requestLogRes;
+        return requestLogWriter;
     }
 }
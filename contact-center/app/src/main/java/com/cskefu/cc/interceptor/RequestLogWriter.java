@@ -0,0 +1,174 @@
+/*
+ * Copyright (C) 2023 Beijing Huaxia Chunsong Technology Co., Ltd.
+ * <https://www.chatopera.com>, Licensed under the Chunsong Public
+ * License, Version 1.0  (the "License"), https://docs.cskefu.com/licenses/v1.html
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cskefu.cc.interceptor;
+
+import com.cskefu.cc.model.RequestLog;
+import com.cskefu.cc.persistence.AsyncBatchWriter;
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import jakarta.annotation.PostConstruct;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import org.apache.commons.lang3.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 系统访问记录的异步批量写入
+ * <p>
+ * 访问记录按 sample-rate 采样后放入队列，由写入线程合并为批次，在一个事务中写入数据库；
+ * 队列满时丢弃并计数，不影响请求。配置了 spill-path 时，数据库写入失败或队列积压超过一半，
+ * 该批次追加写入本地文件。
+ */
+@Component
+public class RequestLogWriter extends AsyncBatchWriter<RequestLog> {
+
+    private final static Logger logger = LoggerFactory.getLogger(RequestLogWriter.class);
+
+    @Value("${cskefu.request.log.buffer-size:4096}")
+    private int bufferSize;
+
+    @Value("${cskefu.request.log.batch-size:200}")
+    private int batchSize;
+
+    @Value("${cskefu.request.log.sample-rate:1}")
+    private double sampleRate;
+
+    @Value("${cskefu.request.log.spill-path:}")
+    private String spillPath;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    private TransactionTemplate transactionTemplate;
+
+    private final Gson gson = new GsonBuilder().setDateFormat("yyyy-MM-dd HH:mm:ss").create();
+
+    private final LongAdder sampledOut = new LongAdder();
+    private final LongAdder dropped = new LongAdder();
+    private final LongAdder spilled = new LongAdder();
+
+    @PostConstruct
+    public void setup() {
+        transactionTemplate = new TransactionTemplate(transactionManager);
+        start("requestlog-writer", bufferSize, batchSize);
+        registerCounter("sampledout", sampledOut);
+        registerCounter("dropped", dropped);
+        registerCounter("spilled", spilled);
+        logger.info("[setup] sample rate {}, spill path {}", sampleRate, spillPath);
+    }
+
+    /**
+     * 保存访问记录，未被采样或队列已满时丢弃
+     *
+     * @param log
+     */
+    public void save(final RequestLog log) {
+        if (sampleRate < 1 && ThreadLocalRandom.current().nextDouble() >= sampleRate) {
+            sampledOut.increment();
+            return;
+        }
+
+        if (publish(log)) {
+            return;
+        }
+
+        dropped.increment();
+        if (logger.isDebugEnabled()) {
+            logger.debug("[save] queue is full, drop request log {}", log.getUrl());
+        }
+    }
+
+    @Override
+    public void shutdown() {
+        super.shutdown();
+        logger.info("[shutdown] sampled out {}, dropped {}, spilled {}", getSampledOut(), getDropped(), getSpilled());
+    }
+
+    @Override
+    protected void write(final List<RequestLog> logs) {
+        // 队列积压超过一半，说明数据库写入跟不上
+        if (StringUtils.isNotBlank(spillPath) && getQueued() > bufferSize / 2) {
+            spill(logs);
+            return;
+        }
+
+        try {
+            transactionTemplate.executeWithoutResult(status -> {
+                for (final RequestLog log : logs) {
+                    entityManager.persist(log);
+                }
+            });
+            written.add(logs.size());
+        } catch (Exception e) {
+            logger.warn("[write] fail to save {} request logs", logs.size(), e);
+            if (StringUtils.isNotBlank(spillPath)) {
+                spill(logs);
+            } else {
+                failed.add(logs.size());
+            }
+        }
+    }
+
+    /**
+     * 按天追加写入本地文件，每行一条记录
+     */
+    private void spill(final List<RequestLog> logs) {
+        final File file = new File(spillPath,
+                "request-log-" + new SimpleDateFormat("yyyy-MM-dd").format(new Date()) + ".jsonl");
+        try {
+            Files.createDirectories(file.getParentFile().toPath());
+            try (Writer writer = Files.newBufferedWriter(file.toPath(), StandardCharsets.UTF_8,
+                    StandardOpenOption.CREATE, StandardOpenOption.APPEND)) {
+                for (final RequestLog log : logs) {
+                    writer.write(gson.toJson(log));
+                    writer.write('\n');
+                }
+            }
+            spilled.add(logs.size());
+        } catch (IOException e) {
+            failed.add(logs.size());
+            logger.error("[spill] fail to write {} request logs to {}", logs.size(), file, e);
+        }
+    }
+
+    public long getSampledOut() {
+        return sampledOut.sum();
+    }
+
+    public long getDropped() {
+        return dropped.sum();
+    }
+
+    public long getSpilled() {
+        return spilled.sum();
+    }
+}
@@ -20,13 +20,14 @@ import com.cskefu.cc.basic.MainUtils;
 import com.cskefu.cc.config.MessagingServerConfigure;
 import com.cskefu.cc.model.Dict;
 import com.cskefu.cc.model.Organ;
-import com.cskefu.cc.model.SystemConfig;
 import com.cskefu.cc.model.User;
 import com.cskefu.cc.proxy.AgentSessionProxy;
 import com.cskefu.cc.proxy.OrganProxy;
+import com.cskefu.cc.proxy.UserAuthCache;
 import com.cskefu.cc.proxy.UserProxy;
 import com.cskefu.cc.util.Menu;
 import com.cskefu.cc.util.PugHelper;
+import org.apache.commons.lang3.SerializationUtils;
 import org.apache.commons.lang3.StringUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -42,6 +43,7 @@ public class UserInterceptorHandler implements HandlerInterceptor {
     private final static Logger logger = LoggerFactory.getLogger(UserInterceptorHandler.class);
     private static UserProxy userProxy;
     private static OrganProxy organProxy;
+    private static UserAuthCache userAuthCache;
     private static Integer webimport;
 
     @Override
@@ -72,15 +74,20 @@ public class UserInterceptorHandler implements HandlerInterceptor {
                         organ = getOrganProxy().getDefault(user.getOrgans().values());
                     }
                     /**
-                     * 每次刷新用户的组织机构、角色和权限
-                     * TODO 此处代码执行频率高，但是并不是每次都要执行，存在很多冗余
-                     * 待用更好的方法实现
+                     * 组织机构、角色和权限变更，或者切换了当前组织机构后，刷新用户的组织机构、角色和权限
+                     * 版本戳没有变化时不访问数据库，也不写入会话
                      */
-                    getUserProxy().attachOrgansPropertiesForUser(user);                    // 用户的所有组织机构和附属组织机构信息
-                    getUserProxy().attachCurrentOrgansPropertiesForUser(user, organ);      // 用户的当前组织机构和附属组织机构信息
-                    getUserProxy().attachRolesMap(user, organ);                            // 用户的角色权限集合
-
-                    request.getSession(true).setAttribute(Constants.USER_SESSION_NAME, user);
+                    final String stamp = getUserAuthCache().getStamp(user, organ);
+                    if (!StringUtils.equals(stamp, (String) request.getSession(true).getAttribute(Constants.USER_AUTH_STAMP_SESSION_NAME))) {
+                        // 会话中的 User 在本节点缓存，同一用户的其它请求可能正在读取，在副本上更新
+                        user = SerializationUtils.clone(user);
+                        getUserProxy().attachOrgansPropertiesForUser(user);                    // 用户的所有组织机构和附属组织机构信息
+                        getUserProxy().attachCurrentOrgansPropertiesForUser(user, organ);      // 用户的当前组织机构和附属组织机构信息
+                        getUserProxy().attachRolesMap(user, organ);                            // 用户的角色权限集合
+
+                        request.getSession(true).setAttribute(Constants.USER_SESSION_NAME, user);
+                        request.getSession(true).setAttribute(Constants.USER_AUTH_STAMP_SESSION_NAME, stamp);
+                    }
                 }
             }
 
@@ -103,7 +110,6 @@ public class UserInterceptorHandler implements HandlerInterceptor {
             ModelAndView view) {
         final User user = (User) request.getSession().getAttribute(Constants.USER_SESSION_NAME);
         final String infoace = (String) request.getSession().getAttribute(Constants.CSKEFU_SYSTEM_INFOACQ); // 进入信息采集模式
-        final SystemConfig systemConfig = MainUtils.getSystemConfig();
         if (view != null) {
             if (user != null) {
                 view.addObject("user", user);
@@ -149,11 +155,7 @@ public class UserInterceptorHandler implements HandlerInterceptor {
                     "uKeFuSecField", MainContext.getCache().findOneSystemById(
                             Constants.CSKEFU_SYSTEM_SECFIELD)); // 处理系统 需要隐藏号码的字段， 启动的时候加载
 
-            if (systemConfig != null) {
-                view.addObject("systemConfig", systemConfig);
-            } else {
-                view.addObject("systemConfig", new SystemConfig());
-            }
+            view.addObject("systemConfig", MainContext.getSystemConfigCache().getOrDefault());
             view.addObject("tagTypeList", Dict.getInstance().getDic("com.dic.tag.type"));
 
             view.addObject("advTypeList", Dict.getInstance().getDic("com.dic.adv.type"));
@@ -188,4 +190,11 @@ public class UserInterceptorHandler implements HandlerInterceptor {
         }
         return organProxy;
     }
+
+    private static UserAuthCache getUserAuthCache() {
+        if (userAuthCache == null) {
+            userAuthCache = MainContext.getContext().getBean(UserAuthCache.class);
+        }
+        return userAuthCache;
+    }
 }
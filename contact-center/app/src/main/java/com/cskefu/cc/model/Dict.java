@@ -15,9 +15,7 @@
 package com.cskefu.cc.model;
 
 import com.cskefu.cc.basic.MainContext;
-import com.cskefu.cc.cache.RedisKey;
-import com.cskefu.cc.util.SerializeUtil;
-import org.apache.commons.lang3.StringUtils;
+import com.cskefu.cc.cache.SysDicCache;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -25,6 +23,9 @@ import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 
+/**
+ * 系统词典，模板中通过词典编码或ID读取，数据来自本节点的词典快照 {@link SysDicCache}
+ */
 public class Dict<K, V> extends HashMap<K, V> {
 
     private static final long serialVersionUID = 2110217015030751243L;
@@ -45,50 +46,35 @@ public class Dict<K, V> extends HashMap<K, V> {
         logger.debug("[get] key {}", keystr);
         Object result = null;
 
-        String serialized = MainContext.getRedisCommand().getHashKV(RedisKey.getSysDicHashKey(), keystr);
-
-        if (StringUtils.isNotBlank(serialized)) {
-            Object obj = SerializeUtil.deserialize(serialized);
-            if (obj instanceof List) {
-                result = getDic(keystr);
-            } else {
-                result = obj;
-            }
-        } else if (keystr.endsWith(".subdic") && keystr.lastIndexOf(".subdic") > 0) {
-            String id = keystr.substring(0, keystr.lastIndexOf(".subdic"));
-            SysDic dic = MainContext.getCache().findOneSysDicById(id);
-            if (dic != null) {
-                SysDic sysDic = MainContext.getCache().findOneSysDicById(dic.getDicid());
-                result = getDic(sysDic.getCode(), dic.getParentid());
+        final SysDicCache sysDicCache = MainContext.getSysDicCache();
+        if (sysDicCache.containsCode(keystr)) {
+            result = getDic(keystr);
+        } else {
+            result = sysDicCache.findById(keystr);
+            if (result == null && keystr.endsWith(".subdic") && keystr.lastIndexOf(".subdic") > 0) {
+                String id = keystr.substring(0, keystr.lastIndexOf(".subdic"));
+                SysDic dic = sysDicCache.findById(id);
+                if (dic != null) {
+                    SysDic sysDic = sysDicCache.findById(dic.getDicid());
+                    if (sysDic != null) {
+                        result = getDic(sysDic.getCode(), dic.getParentid());
+                    }
+                }
             }
         }
 
         return (V) result;
     }
 
-    @SuppressWarnings("unchecked")
+    /**
+     * 获得一个根词典的第一级子项
+     *
+     * @param code
+     * @return
+     */
     public List<SysDic> getDic(final String code) {
-        List<SysDic> result = new ArrayList<>();
-        String serialized = MainContext.getRedisCommand().getHashKV(RedisKey.getSysDicHashKey(), code);
-
-        if (StringUtils.isNotBlank(serialized)) {
-            Object obj = SerializeUtil.deserialize(serialized);
-            if (obj instanceof List) {
-                List<SysDic> sysDics = (List<SysDic>) obj;
-                for (SysDic dic : sysDics) {
-                    if (dic.getDicid().equals(dic.getParentid())) {
-                        result.add(dic);
-                    }
-                }
-            } else {
-                logger.warn("[getDic list] nothing found for code or id {} with deserialize, this is a potential error.", code);
-            }
-        } else {
-            logger.debug("[getDic list] nothing found for code or id {}", code);
-        }
-
+        List<SysDic> result = new ArrayList<>(MainContext.getSysDicCache().findTopItems(code));
         logger.debug("[getDic list] code or id: {}, dict size {}", code, result.size());
-
         return result;
     }
 
@@ -99,27 +85,18 @@ public class Dict<K, V> extends HashMap<K, V> {
      * @param id
      * @return
      */
-    @SuppressWarnings("unchecked")
     public List<SysDic> getDic(final String code, final String id) {
+        final SysDicCache sysDicCache = MainContext.getSysDicCache();
         List<SysDic> result = new ArrayList<>();
-        String serialized = MainContext.getRedisCommand().getHashKV(RedisKey.getSysDicHashKey(), code);
-
-        if (StringUtils.isNotBlank(serialized)) {
-            Object obj = SerializeUtil.deserialize(serialized);
-            if (obj instanceof List) {
-                List<SysDic> sysDics = (List<SysDic>) obj;
-                for (SysDic dic : sysDics) {
-                    if (dic.getParentid().equals(id)) {
-                        result.add(dic);
-                    }
-                }
-            } else if (obj instanceof SysDic) {
-                result.add((SysDic) obj);
+        if (sysDicCache.containsCode(code)) {
+            result.addAll(sysDicCache.findChildren(code, id));
+        } else {
+            SysDic dic = sysDicCache.findById(code);
+            if (dic != null) {
+                result.add(dic);
             } else {
-                logger.warn("[getDic] nothing found for code or id {} with deserialize, this is a potential error.", code);
+                logger.warn("[getDic] nothing found for code or id {}", code);
             }
-        } else {
-            logger.warn("[getDic] nothing found for code or id {}", code);
         }
 
         logger.debug("[getDic list] code or id: {}, dict size {}", code, result.size());
@@ -134,18 +111,18 @@ public class Dict<K, V> extends HashMap<K, V> {
      * @param code
      * @return
      */
-    @SuppressWarnings("unchecked")
     public List<SysDic> getSysDic(String code) {
-        return MainContext.getCache().getSysDicItemsByCode(code);
+        List<SysDic> items = MainContext.getSysDicCache().findItemsByCode(code);
+        return items != null ? new ArrayList<>(items) : null;
     }
 
     /**
      * 获得一个词典子项
      *
-     * @param code
+     * @param code 词典项ID
      * @return
      */
     public SysDic getDicItem(String code) {
-        return MainContext.getCache().findOneSysDicByCode(code);
+        return MainContext.getSysDicCache().findById(code);
     }
 }
@@ -0,0 +1,220 @@
+/*
+ * Copyright (C) 2023 Beijing Huaxia Chunsong Technology Co., Ltd.
+ * <https://www.chatopera.com>, Licensed under the Chunsong Public
+ * License, Version 1.0  (the "License"), https://docs.cskefu.com/licenses/v1.html
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cskefu.cc.peer.im;
+
+import com.cskefu.cc.model.AgentUserTask;
+import com.cskefu.cc.persistence.AsyncBatchWriter;
+import com.cskefu.cc.persistence.repository.AgentUserTaskRepository;
+import com.cskefu.cc.persistence.repository.ChatMessageRepository;
+import com.cskefu.cc.socketio.message.ChatMessage;
+import jakarta.annotation.PostConstruct;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.*;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 对话消息和坐席对话计数的异步批量写入
+ * <p>
+ * 消息发送后放入队列，由写入线程合并为批次，在一个事务中批量写入数据库，
+ * 同一个 AgentUserTask 在一个批次中的多次更新只写入一次。队列满时在调用线程中直接写入。
+ * <p>
+ * 队列中的数据是 ChatMessage 或 AgentUserTask。
+ */
+@Component
+public class ChatMessageWriter extends AsyncBatchWriter<Object> {
+
+    private final static Logger logger = LoggerFactory.getLogger(ChatMessageWriter.class);
+
+    @Value("${cskefu.chatmessage.writer.buffer-size:8192}")
+    private int bufferSize;
+
+    @Value("${cskefu.chatmessage.writer.batch-size:200}")
+    private int batchSize;
+
+    @Autowired
+    private ChatMessageRepository chatMessageRes;
+
+    @Autowired
+    private AgentUserTaskRepository agentUserTaskRes;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    private TransactionTemplate transactionTemplate;
+
+    // 已更新但还未写入数据库的 AgentUserTask，读取时优先使用
+    private final Map<String, PendingTask> pendingTasks = new HashMap<>();
+
+    private final LongAdder overflowed = new LongAdder();
+
+    @PostConstruct
+    public void setup() {
+        transactionTemplate = new TransactionTemplate(transactionManager);
+        start("chatmessage-writer", bufferSize, batchSize);
+        registerCounter("overflowed", overflowed);
+    }
+
+    /**
+     * 保存对话消息
+     *
+     * @param message
+     */
+    public void save(final ChatMessage message) {
+        if (!publish(message)) {
+            // 队列已满或已关闭，由调用线程写入
+            overflowed.increment();
+            writeMessages(Collections.singletonList(message));
+        }
+    }
+
+    /**
+     * 获得 AgentUserTask，优先返回还未写入数据库的版本
+     *
+     * @param id
+     * @return
+     */
+    public Optional<AgentUserTask> findAgentUserTask(final String id) {
+        synchronized (pendingTasks) {
+            final PendingTask pending = pendingTasks.get(id);
+            if (pending != null) {
+                return Optional.of(pending.task);
+            }
+        }
+        return agentUserTaskRes.findById(id);
+    }
+
+    /**
+     * 保存 AgentUserTask，修改 AgentUserTask 时需要以该对象加锁
+     *
+     * @param task
+     */
+    public void save(final AgentUserTask task) {
+        synchronized (pendingTasks) {
+            PendingTask pending = pendingTasks.get(task.getId());
+            if (pending == null || pending.task != task) {
+                pending = new PendingTask(task);
+                pendingTasks.put(task.getId(), pending);
+            }
+            pending.queued++;
+        }
+
+        if (!publish(task)) {
+            overflowed.increment();
+            writeTasks(Collections.singletonMap(task, 1));
+        }
+    }
+
+    @Override
+    public void shutdown() {
+        super.shutdown();
+        logger.info("[shutdown] overflowed {}", getOverflowed());
+    }
+
+    @Override
+    protected void write(final List<Object> items) {
+        final List<ChatMessage> messages = new ArrayList<>();
+        // 使用对象标识区分同一个 AgentUserTask 的不同实例
+        final Map<AgentUserTask, Integer> tasks = new IdentityHashMap<>();
+        for (final Object item : items) {
+            if (item instanceof ChatMessage) {
+                messages.add((ChatMessage) item);
+            } else {
+                tasks.merge((AgentUserTask) item, 1, Integer::sum);
+            }
+        }
+        if (!messages.isEmpty()) {
+            writeMessages(messages);
+        }
+        if (!tasks.isEmpty()) {
+            writeTasks(tasks);
+        }
+    }
+
+    private void writeMessages(final List<ChatMessage> messages) {
+        try {
+            transactionTemplate.executeWithoutResult(status -> {
+                for (final ChatMessage message : messages) {
+                    entityManager.persist(message);
+                }
+            });
+            written.add(messages.size());
+        } catch (Exception e) {
+            // 批量写入失败时逐条写入，避免一条消息影响整个批次
+            logger.warn("[writeMessages] batch of {} failed, retry one by one", messages.size(), e);
+            for (final ChatMessage message : messages) {
+                try {
+                    chatMessageRes.save(message);
+                    written.increment();
+                } catch (Exception ex) {
+                    failed.increment();
+                    logger.error("[writeMessages] fail to save chat message {}", message.getId(), ex);
+                }
+            }
+        }
+    }
+
+    /**
+     * @param tasks AgentUserTask 及其在队列中的次数
+     */
+    private void writeTasks(final Map<AgentUserTask, Integer> tasks) {
+        try {
+            transactionTemplate.executeWithoutResult(status -> {
+                for (final AgentUserTask task : tasks.keySet()) {
+                    synchronized (task) {
+                        agentUserTaskRes.save(task);
+                    }
+                }
+            });
+            written.add(tasks.size());
+        } catch (Exception e) {
+            failed.add(tasks.size());
+            logger.error("[writeTasks] fail to save {} agent user tasks", tasks.size(), e);
+        }
+
+        synchronized (pendingTasks) {
+            for (final Map.Entry<AgentUserTask, Integer> entry : tasks.entrySet()) {
+                final PendingTask pending = pendingTasks.get(entry.getKey().getId());
+                if (pending != null && pending.task == entry.getKey()) {
+                    pending.queued -= entry.getValue();
+                    if (pending.queued <= 0) {
+                        pendingTasks.remove(entry.getKey().getId());
+                    }
+                }
+            }
+        }
+    }
+
+    public long getOverflowed() {
+        return overflowed.sum();
+    }
+
+    private static final class PendingTask {
+        private final AgentUserTask task;
+        // 还在队列中的更新次数
+        private int queued;
+
+        private PendingTask(final AgentUserTask task) {
+            this.task = task;
+        }
+    }
+}
@@ -16,8 +16,6 @@ import com.cskefu.cc.basic.MainContext;
 import com.cskefu.cc.model.AgentUserTask;
 import com.cskefu.cc.peer.PeerContext;
 import com.cskefu.cc.peer.PeerUtils;
-import com.cskefu.cc.persistence.repository.AgentUserTaskRepository;
-import com.cskefu.cc.persistence.repository.ChatMessageRepository;
 import com.cskefu.cc.socketio.message.ChatMessage;
 import org.apache.commons.lang3.StringUtils;
 import org.slf4j.Logger;
@@ -34,10 +32,7 @@ public class ComposeMw1 implements Middleware<PeerContext> {
     private final static Logger logger = LoggerFactory.getLogger(ComposeMw1.class);
 
     @Autowired
-    private ChatMessageRepository chatMessageRes;
-
-    @Autowired
-    private AgentUserTaskRepository agentUserTaskRes;
+    private ChatMessageWriter chatMessageWriter;
 
     @Override
     public void apply(final PeerContext ctx, final Functional next) {
@@ -81,9 +76,9 @@ public class ComposeMw1 implements Middleware<PeerContext> {
                         final ChatMessage msg = (ChatMessage) ctx.getMessage().getChannelMessage();
                         // 忽略书写中的消息
                         if (!PeerUtils.isMessageInWritting(msg)) {
-                            // 消息已经发送，保存到数据库
-                            chatMessageRes.save(msg);
-                            logger.info("[apply] chat message saved.");
+                            // 消息已经发送，异步保存到数据库
+                            chatMessageWriter.save(msg);
+                            logger.info("[apply] chat message queued.");
                         }
                     }
                     break;
@@ -97,9 +92,15 @@ public class ComposeMw1 implements Middleware<PeerContext> {
      * @param ctx
      */
     private void prcessAgentUserTask(final PeerContext ctx) {
-        AgentUserTask agentUserTask = agentUserTaskRes.findById(ctx.getMessage().getAgentUser().getId()).orElse(null);
+        AgentUserTask agentUserTask = chatMessageWriter.findAgentUserTask(
+                ctx.getMessage().getAgentUser().getId()).orElse(null);
 
-        if (agentUserTask != null) {
+        if (agentUserTask == null) {
+            return;
+        }
+
+        // 同一对话的消息可能并发处理，修改计数时以该对象加锁
+        synchronized (agentUserTask) {
             final ChatMessage received = (ChatMessage) ctx.getMessage().getChannelMessage();
             if (agentUserTask.getLastgetmessage() != null && agentUserTask.getLastmessage() != null) {
                 received.setLastagentmsgtime(agentUserTask.getLastgetmessage());
@@ -127,8 +128,7 @@ public class ComposeMw1 implements Middleware<PeerContext> {
                 agentUserTask.setTokenum(agentUserTask.getTokenum() + 1);
             }
             received.setTokenum(agentUserTask.getTokenum());
-
-            agentUserTaskRes.save(agentUserTask);
         }
+        chatMessageWriter.save(agentUserTask);
     }
 }
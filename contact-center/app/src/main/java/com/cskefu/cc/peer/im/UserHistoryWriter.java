@@ -0,0 +1,187 @@
+/*
+ * Copyright (C) 2023 Beijing Huaxia Chunsong Technology Co., Ltd.
+ * <https://www.chatopera.com>, Licensed under the Chunsong Public
+ * License, Version 1.0  (the "License"), https://docs.cskefu.com/licenses/v1.html
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cskefu.cc.peer.im;
+
+import com.cskefu.cc.basic.MainUtils;
+import com.cskefu.cc.model.UserHistory;
+import com.cskefu.cc.persistence.AsyncBatchWriter;
+import com.cskefu.cc.util.BrowserClient;
+import com.cskefu.cc.util.IP;
+import com.cskefu.cc.util.IPTools;
+import com.cskefu.cc.util.MobileDevice;
+import jakarta.annotation.PostConstruct;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import org.apache.commons.lang3.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 网页聊天控件浏览记录的异步批量写入
+ * <p>
+ * 访客网页加载聊天控件后上报浏览记录，放入队列，由写入线程补充地域和浏览器信息，
+ * 合并为批次在一个事务中写入数据库；队列满时丢弃并计数，不影响请求。
+ * <p>
+ * 浏览记录的 id 由服务器生成；浏览器重复上报的同一个 traceid，在最近 dedup-size 个 traceid 内的忽略。
+ */
+@Component
+public class UserHistoryWriter extends AsyncBatchWriter<UserHistoryWriter.Visit> {
+
+    private final static Logger logger = LoggerFactory.getLogger(UserHistoryWriter.class);
+
+    @Value("${cskefu.webim.history.buffer-size:8192}")
+    private int bufferSize;
+
+    @Value("${cskefu.webim.history.batch-size:200}")
+    private int batchSize;
+
+    @Value("${cskefu.webim.history.dedup-size:10000}")
+    private int dedupSize;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    private TransactionTemplate transactionTemplate;
+
+    // 最近写入的 traceid，只在写入线程中访问
+    private Map<String, Boolean> recentTraceids;
+
+    private final LongAdder dropped = new LongAdder();
+    private final LongAdder duplicated = new LongAdder();
+
+    @PostConstruct
+    public void setup() {
+        transactionTemplate = new TransactionTemplate(transactionManager);
+        recentTraceids = new LinkedHashMap<String, Boolean>(16, 0.75f, false) {
+            @Override
+            protected boolean removeEldestEntry(final Map.Entry<String, Boolean> eldest) {
+                return size() > dedupSize;
+            }
+        };
+        start("userhistory-writer", bufferSize, batchSize);
+        registerCounter("dropped", dropped);
+        registerCounter("duplicated", duplicated);
+    }
+
+    /**
+     * 保存浏览记录，地域和浏览器信息在写入线程中根据 ip 和 userAgent 补充；队列已满时丢弃
+     *
+     * @param history
+     * @param traceid   浏览器生成的浏览记录 ID，用于忽略重复上报，可以为null
+     * @param ip
+     * @param userAgent
+     */
+    public void save(final UserHistory history, final String traceid, final String ip, final String userAgent) {
+        if (publish(new Visit(history, traceid, ip, userAgent))) {
+            return;
+        }
+
+        dropped.increment();
+        if (logger.isDebugEnabled()) {
+            logger.debug("[save] queue is full, drop user history of appid {}", history.getAppid());
+        }
+    }
+
+    @Override
+    public void shutdown() {
+        super.shutdown();
+        logger.info("[shutdown] dropped {}, duplicated {}", getDropped(), getDuplicated());
+    }
+
+    @Override
+    protected void write(final List<Visit> visits) {
+        final List<UserHistory> histories = new ArrayList<>(visits.size());
+        for (final Visit visit : visits) {
+            if (visit.traceid != null && recentTraceids.put(visit.traceid, Boolean.TRUE) != null) {
+                duplicated.increment();
+                continue;
+            }
+            try {
+                histories.add(complete(visit));
+            } catch (Exception e) {
+                failed.increment();
+                logger.warn("[write] fail to resolve user history of ip {}", visit.ip, e);
+            }
+        }
+        if (histories.isEmpty()) {
+            return;
+        }
+
+        try {
+            transactionTemplate.executeWithoutResult(status -> {
+                for (final UserHistory history : histories) {
+                    entityManager.persist(history);
+                }
+            });
+            written.add(histories.size());
+        } catch (Exception e) {
+            failed.add(histories.size());
+            logger.warn("[write] fail to save {} user histories", histories.size(), e);
+        }
+    }
+
+    /**
+     * 补充地域和浏览器信息
+     */
+    private UserHistory complete(final Visit visit) {
+        final UserHistory history = visit.history;
+        history.setHostname(visit.ip);
+        history.setIp(visit.ip);
+        final IP ipdata = IPTools.getInstance().findGeography(visit.ip);
+        history.setCountry(ipdata.getCountry());
+        history.setProvince(ipdata.getProvince());
+        history.setCity(ipdata.getCity());
+        history.setIsp(ipdata.getIsp());
+
+        final String userAgent = StringUtils.defaultString(visit.userAgent);
+        final BrowserClient client = MainUtils.parseClient(userAgent);
+        history.setOstype(client.getOs());
+        history.setBrowser(client.getBrowser());
+        history.setMobile(MobileDevice.isMobile(userAgent) ? "1" : "0");
+        return history;
+    }
+
+    public long getDropped() {
+        return dropped.sum();
+    }
+
+    public long getDuplicated() {
+        return duplicated.sum();
+    }
+
+    static final class Visit {
+        private final UserHistory history;
+        private final String traceid;
+        private final String ip;
+        private final String userAgent;
+
+        private Visit(final UserHistory history, final String traceid, final String ip, final String userAgent) {
+            this.history = history;
+            this.traceid = traceid;
+            this.ip = ip;
+            this.userAgent = userAgent;
+        }
+    }
+}
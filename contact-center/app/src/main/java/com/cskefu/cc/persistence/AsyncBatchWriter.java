@@ -0,0 +1,276 @@
+/*
+ * Copyright (C) 2023 Beijing Huaxia Chunsong Technology Co., Ltd.
+ * <https://www.chatopera.com>, Licensed under the Chunsong Public
+ * License, Version 1.0  (the "License"), https://docs.cskefu.com/licenses/v1.html
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cskefu.cc.persistence;
+
+import com.lmax.disruptor.BlockingWaitStrategy;
+import com.lmax.disruptor.EventHandler;
+import com.lmax.disruptor.EventTranslatorOneArg;
+import com.lmax.disruptor.ExceptionHandler;
+import com.lmax.disruptor.RingBuffer;
+import com.lmax.disruptor.TimeoutException;
+import com.lmax.disruptor.dsl.Disruptor;
+import com.lmax.disruptor.dsl.ProducerType;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 异步批量写入
+ * <p>
+ * 数据放入 Disruptor 环形队列，由单独的线程合并为不超过 batch-size 的批次，交给 write 写入。
+ * 队列已满或已关闭时 publish 返回 false，由子类决定丢弃还是在调用线程中写入。
+ * 应用关闭时由 TerminateBean 调用 shutdown，写入队列中剩余的数据。
+ * 计数和队列长度注册到 MeterRegistry，指标名称为 cskefu.writer.*，以 writer 标签区分。
+ *
+ * @param <T> 队列中的数据
+ */
+public abstract class AsyncBatchWriter<T> {
+
+    private final static Logger logger = LoggerFactory.getLogger(AsyncBatchWriter.class);
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    private String name;
+
+    private int bufferSize;
+
+    private int batchSize;
+
+    private Disruptor<Event<T>> disruptor;
+
+    private RingBuffer<Event<T>> ringBuffer;
+
+    private BatchHandler handler;
+
+    private volatile Thread thread;
+
+    // 发布时不加锁，关闭时才进入队列的数据由 drain 补充写入
+    private final AtomicBoolean running = new AtomicBoolean();
+
+    // 写入线程已经退出，之后进入队列的数据由 drain 写入；以下两个字段由 this 保护
+    private boolean stopped;
+
+    // 已经写入的最后一个位置
+    private long drainedSequence;
+
+    private final EventTranslatorOneArg<Event<T>, T> translator = (event, sequence, item) -> event.item = item;
+
+    protected final LongAdder published = new LongAdder();
+    protected final LongAdder written = new LongAdder();
+    protected final LongAdder batches = new LongAdder();
+    protected final LongAdder failed = new LongAdder();
+
+    /**
+     * 启动写入线程
+     *
+     * @param name       线程名称
+     * @param bufferSize 队列长度，2的幂
+     * @param batchSize  每批次的最大数量
+     */
+    protected void start(final String name, final int bufferSize, final int batchSize) {
+        this.name = name;
+        this.bufferSize = bufferSize;
+        this.batchSize = batchSize;
+        disruptor = new Disruptor<>(Event::new, bufferSize, r -> {
+            Thread t = new Thread(r, name);
+            t.setDaemon(true);
+            thread = t;
+            return t;
+        }, ProducerType.MULTI, new BlockingWaitStrategy());
+        handler = new BatchHandler();
+        disruptor.handleEventsWith(handler);
+        disruptor.setDefaultExceptionHandler(new LoggingExceptionHandler<>());
+        ringBuffer = disruptor.start();
+        running.set(true);
+
+        registerCounter("published", published);
+        registerCounter("written", written);
+        registerCounter("batches", batches);
+        registerCounter("failed", failed);
+        Gauge.builder("cskefu.writer.queued", this, AsyncBatchWriter::getQueued)
+                .tag("writer", name)
+                .register(meterRegistry);
+        logger.info("[start] {} buffer size {}, batch size {}", name, bufferSize, batchSize);
+    }
+
+    /**
+     * 注册计数，在 start 之后调用
+     *
+     * @param metric 指标名称，添加前缀 cskefu.writer.
+     * @param count
+     */
+    protected void registerCounter(final String metric, final LongAdder count) {
+        FunctionCounter.builder("cskefu.writer." + metric, count, LongAdder::sum)
+                .tag("writer", name)
+                .register(meterRegistry);
+    }
+
+    /**
+     * 放入队列
+     *
+     * @param item
+     * @return 队列已满或已关闭时返回false
+     */
+    protected boolean publish(final T item) {
+        if (running.get() && ringBuffer.tryPublishEvent(translator, item)) {
+            published.increment();
+            if (!running.get()) {
+                // 检查之后开始关闭，写入线程可能已经退出
+                drain();
+            }
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * 写入一个批次，在写入线程中调用；写入线程退出后在关闭或发布数据的线程中调用
+     *
+     * @param items
+     */
+    protected abstract void write(final List<T> items);
+
+    /**
+     * 停止接收新的数据，并写入队列中剩余的数据
+     */
+    public void shutdown() {
+        if (!running.compareAndSet(true, false)) {
+            return;
+        }
+        try {
+            disruptor.shutdown(30, TimeUnit.SECONDS);
+            stop();
+        } catch (TimeoutException e) {
+            logger.warn("[shutdown] {} timeout, {} items are not written.", name, getQueued());
+        }
+        logger.info("[shutdown] {} published {}, written {}, batches {}, failed {}",
+                name, getPublished(), getWritten(), getBatches(), getFailed());
+    }
+
+    /**
+     * 等待写入线程退出，由调用线程写入之后进入队列的数据
+     */
+    private void stop() {
+        final Thread t = thread;
+        if (t != null) {
+            try {
+                t.join(TimeUnit.SECONDS.toMillis(5));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            if (t.isAlive()) {
+                logger.warn("[stop] {} writer thread is still running.", name);
+                return;
+            }
+        }
+
+        synchronized (this) {
+            drainedSequence = disruptor.getSequenceValueFor(handler);
+            stopped = true;
+        }
+        drain();
+    }
+
+    /**
+     * 写入线程退出后，写入关闭前通过了检查、写入线程退出后才进入队列的数据
+     */
+    private synchronized void drain() {
+        if (!stopped) {
+            // 写入线程还在运行，由写入线程处理
+            return;
+        }
+
+        final long cursor = ringBuffer.getCursor();
+        for (long sequence = drainedSequence + 1; sequence <= cursor; sequence++) {
+            // 等待已经申请到位置的发布者完成发布
+            while (!ringBuffer.isPublished(sequence)) {
+                Thread.yield();
+            }
+            handler.onEvent(ringBuffer.get(sequence), sequence, sequence == cursor);
+            drainedSequence = sequence;
+        }
+    }
+
+    public long getPublished() {
+        return published.sum();
+    }
+
+    public long getWritten() {
+        return written.sum();
+    }
+
+    public long getBatches() {
+        return batches.sum();
+    }
+
+    public long getFailed() {
+        return failed.sum();
+    }
+
+    public long getQueued() {
+        return bufferSize - ringBuffer.remainingCapacity();
+    }
+
+    private static final class Event<T> {
+        private T item;
+    }
+
+    private class BatchHandler implements EventHandler<Event<T>> {
+        private final List<T> items = new ArrayList<>();
+
+        @Override
+        public void onEvent(final Event<T> event, final long sequence, final boolean endOfBatch) {
+            if (event.item != null) {
+                items.add(event.item);
+                event.item = null;
+            }
+
+            if ((endOfBatch || items.size() >= batchSize) && !items.isEmpty()) {
+                final List<T> batch = new ArrayList<>(items);
+                items.clear();
+                try {
+                    write(batch);
+                } catch (Exception e) {
+                    failed.add(batch.size());
+                    logger.error("[write] {} fail to write {} items", name, batch.size(), e);
+                }
+                batches.increment();
+            }
+        }
+    }
+
+    private static class LoggingExceptionHandler<E> implements ExceptionHandler<E> {
+        @Override
+        public void handleEventException(final Throwable ex, final long sequence, final E event) {
+            logger.error("[handleEventException] sequence {}", sequence, ex);
+        }
+
+        @Override
+        public void handleOnStartException(final Throwable ex) {
+            logger.error("[handleOnStartException]", ex);
+        }
+
+        @Override
+        public void handleOnShutdownException(final Throwable ex) {
+            logger.error("[handleOnShutdownException]", ex);
+        }
+    }
+}
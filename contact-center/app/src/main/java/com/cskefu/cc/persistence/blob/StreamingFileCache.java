@@ -0,0 +1,246 @@
+/*
+ * Copyright (C) 2023 Beijing Huaxia Chunsong Technology Co., Ltd.
+ * <https://www.chatopera.com>, Licensed under the Chunsong Public
+ * License, Version 1.0  (the "License"), https://docs.cskefu.com/licenses/v1.html
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cskefu.cc.persistence.blob;
+
+import com.cskefu.cc.model.StreamingFile;
+import com.cskefu.cc.persistence.repository.StreamingFileRepository;
+import jakarta.annotation.PostConstruct;
+import org.apache.commons.io.FileUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.sql.Blob;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * 文件数据的本地磁盘缓存
+ * <p>
+ * 原图和缩略图写入后不再修改，首次读取时从数据库复制到本地磁盘，之后直接从磁盘读取，不占用数据库连接。
+ * 缓存按最近使用淘汰，总大小不超过 max-size；超过 max-file-size 的文件只临时写入磁盘，读取后删除。
+ * 应用启动时清空缓存目录。
+ */
+@Component
+public class StreamingFileCache {
+
+    private final static Logger logger = LoggerFactory.getLogger(StreamingFileCache.class);
+
+    @Value("${web.upload-path}")
+    private String path;
+
+    @Value("${cskefu.media.cache.max-size:1073741824}")
+    private long maxSize;
+
+    @Value("${cskefu.media.cache.max-file-size:67108864}")
+    private long maxFileSize;
+
+    @Autowired
+    private StreamingFileRepository streamingFileRes;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    private TransactionTemplate transactionTemplate;
+
+    private File cacheDir;
+
+    // 按最近使用排序的缓存文件
+    private final LinkedHashMap<String, Media> entries = new LinkedHashMap<>(16, 0.75f, true);
+
+    private long size;
+
+    // 同一个文件只由一个线程从数据库加载
+    private final Object[] locks = new Object[64];
+
+    @PostConstruct
+    public void setup() throws IOException {
+        transactionTemplate = new TransactionTemplate(transactionManager);
+        transactionTemplate.setReadOnly(true);
+        for (int i = 0; i < locks.length; i++) {
+            locks[i] = new Object();
+        }
+        cacheDir = new File(path, "cache/media");
+        if (cacheDir.exists()) {
+            FileUtils.cleanDirectory(cacheDir);
+        } else {
+            cacheDir.mkdirs();
+        }
+        logger.info("[setup] cache dir {}, max size {}, max file size {}", cacheDir.getAbsolutePath(), maxSize,
+                maxFileSize);
+    }
+
+    /**
+     * 打开文件数据，优先使用原图时返回原图，否则返回缩略图，没有缩略图时返回原图
+     *
+     * @param id
+     * @param original 是否使用原图
+     * @return 文件不存在时返回null，调用方需要关闭返回的文件
+     * @throws IOException
+     */
+    public Opened open(final String id, final boolean original) throws IOException {
+        final String key = id + (original ? ".o" : ".t");
+        final Opened opened = openCached(key);
+        if (opened != null) {
+            return opened;
+        }
+
+        synchronized (locks[Math.floorMod(key.hashCode(), locks.length)]) {
+            final Opened loaded = openCached(key);
+            if (loaded != null) {
+                return loaded;
+            }
+            return load(key, id, original);
+        }
+    }
+
+    private Opened openCached(final String key) throws IOException {
+        synchronized (entries) {
+            final Media media = entries.get(key);
+            if (media == null) {
+                return null;
+            }
+            // 持有锁时打开，打开后文件被淘汰删除也可以继续读取
+            return new Opened(media, FileChannel.open(media.file.toPath(), StandardOpenOption.READ));
+        }
+    }
+
+    private Opened load(final String key, final String id, final boolean original) throws IOException {
+        final File tmp = File.createTempFile("media", ".tmp", cacheDir);
+        try {
+            // 文件不存在时返回null，否则返回 {mime}
+            final String[] found = transactionTemplate.execute(status -> {
+                final StreamingFile sf = streamingFileRes.findById(id).orElse(null);
+                if (sf == null) {
+                    return null;
+                }
+                final Blob blob = original && sf.getData() != null ? sf.getData() :
+                        sf.getThumbnail() != null ? sf.getThumbnail() : sf.getData();
+                if (blob == null) {
+                    return null;
+                }
+                try (InputStream input = blob.getBinaryStream()) {
+                    Files.copy(input, tmp.toPath(), StandardCopyOption.REPLACE_EXISTING);
+                } catch (Exception e) {
+                    throw new IllegalStateException("fail to copy streaming file " + id, e);
+                }
+                return new String[]{sf.getMime()};
+            });
+            if (found == null) {
+                return null;
+            }
+
+            final File file = new File(cacheDir, key);
+            Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+            final Media media = new Media(file, found[0], file.length());
+            final FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+            if (media.length > maxFileSize) {
+                // 不保留在缓存中，已经打开的文件删除后仍然可以读取
+                delete(file);
+            } else {
+                put(key, media);
+            }
+            return new Opened(media, channel);
+        } finally {
+            delete(tmp);
+        }
+    }
+
+    private void put(final String key, final Media media) {
+        synchronized (entries) {
+            final Media prev = entries.put(key, media);
+            if (prev != null) {
+                size -= prev.length;
+            }
+            size += media.length;
+
+            final Iterator<Map.Entry<String, Media>> it = entries.entrySet().iterator();
+            while (size > maxSize && it.hasNext()) {
+                final Media eldest = it.next().getValue();
+                if (eldest == media) {
+                    break;
+                }
+                it.remove();
+                size -= eldest.length;
+                delete(eldest.file);
+            }
+        }
+    }
+
+    private static void delete(final File file) {
+        try {
+            Files.deleteIfExists(file.toPath());
+        } catch (IOException e) {
+            logger.warn("[delete] fail to delete {}", file, e);
+        }
+    }
+
+    public long getSize() {
+        synchronized (entries) {
+            return size;
+        }
+    }
+
+    private static final class Media {
+        private final File file;
+        private final String mime;
+        private final long length;
+
+        private Media(final File file, final String mime, final long length) {
+            this.file = file;
+            this.mime = mime;
+            this.length = length;
+        }
+    }
+
+    /**
+     * 已经打开的文件
+     */
+    public static final class Opened implements AutoCloseable {
+        private final Media media;
+        private final FileChannel channel;
+
+        private Opened(final Media media, final FileChannel channel) {
+            this.media = media;
+            this.channel = channel;
+        }
+
+        public String getMime() {
+            return media.mime;
+        }
+
+        public long getLength() {
+            return media.length;
+        }
+
+        public FileChannel getChannel() {
+            return channel;
+        }
+
+        @Override
+        public void close() throws IOException {
+            channel.close();
+        }
+    }
+}
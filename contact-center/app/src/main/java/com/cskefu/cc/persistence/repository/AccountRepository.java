@@ -22,6 +22,7 @@ import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 
 import java.util.Collection;
+import java.util.List;
 
 public interface AccountRepository extends JpaRepository<Account, String> {
 
@@ -39,4 +40,9 @@ public interface AccountRepository extends JpaRepository<Account, String> {
 
 
     Page<Account> findByCreaterAndSharesAndDatastatus(String id, String id1, boolean b, Pageable pageRequest);
+
+    /**
+     * 按ID顺序返回ID大于 id 的客户，用于分批导出
+     */
+    List<Account> findByCreaterAndSharesAndDatastatusAndIdGreaterThanOrderByIdAsc(String creater, String shares, boolean datastatus, String id, Pageable pageRequest);
 }
@@ -0,0 +1,56 @@
+/*
+ * Copyright (C) 2023 Beijing Huaxia Chunsong Technology Co., Ltd.
+ * <https://www.chatopera.com>, Licensed under the Chunsong Public
+ * License, Version 1.0  (the "License"), https://docs.cskefu.com/licenses/v1.html
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cskefu.cc.persistence.repository;
+
+import com.cskefu.cc.model.AgentService;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.Repository;
+
+import java.util.Date;
+
+/**
+ * 服务记录按小时、坐席、技能组、渠道的汇总表
+ * <p>
+ * cs_agentservice_hourly 按创建时间汇总咨询数量、等待时长和会话时长，
+ * cs_agentservice_satis_hourly 按评价时间汇总各满意度的评价数量。汇总时先删除时段内的数据再重新汇总。
+ */
+public interface AgentServiceRollupRepository extends Repository<AgentService, String> {
+
+    @Modifying
+    @Query(nativeQuery = true, value = "DELETE FROM cs_agentservice_hourly WHERE stattime >= ?1 AND stattime < ?2")
+    int clearConsultRollup(final Date begin, final Date end);
+
+    @Modifying
+    @Query(nativeQuery = true, value = "INSERT INTO cs_agentservice_hourly " +
+            "(stattime, statdate, agentno, agentskill, channeltype, services, waittingtime, waittings, sessiontimes, sessions) " +
+            "SELECT DATE_FORMAT(createtime, '%Y-%m-%d %H:00:00'), DATE_FORMAT(createtime, '%Y-%m-%d'), " +
+            "IFNULL(agentno, ''), IFNULL(agentskill, ''), IFNULL(channeltype, ''), COUNT(id), " +
+            "IFNULL(SUM(waittingtime), 0), COUNT(waittingtime), IFNULL(SUM(sessiontimes), 0), COUNT(sessiontimes) " +
+            "FROM uk_agentservice WHERE createtime >= ?1 AND createtime < ?2 GROUP BY 1, 2, 3, 4, 5")
+    int rollupConsult(final Date begin, final Date end);
+
+    @Modifying
+    @Query(nativeQuery = true, value = "DELETE FROM cs_agentservice_satis_hourly WHERE stattime >= ?1 AND stattime < ?2")
+    int clearSatisRollup(final Date begin, final Date end);
+
+    @Modifying
+    @Query(nativeQuery = true, value = "INSERT INTO cs_agentservice_satis_hourly " +
+            "(stattime, statdate, agentno, agentskill, channeltype, satislevel, services) " +
+            "SELECT DATE_FORMAT(satistime, '%Y-%m-%d %H:00:00'), DATE_FORMAT(satistime, '%Y-%m-%d'), " +
+            "IFNULL(agentno, ''), IFNULL(agentskill, ''), IFNULL(channeltype, ''), IFNULL(satislevel, ''), COUNT(id) " +
+            "FROM uk_agentservice WHERE satisfaction = 1 AND satistime >= ?1 AND satistime < ?2 " +
+            "GROUP BY 1, 2, 3, 4, 5, 6")
+    int rollupSatis(final Date begin, final Date end);
+
+    @Query(nativeQuery = true, value = "SELECT MIN(createtime) FROM uk_agentservice")
+    Date findFirstCreatetime();
+}
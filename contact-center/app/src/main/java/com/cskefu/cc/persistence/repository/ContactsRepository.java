@@ -41,6 +41,12 @@ public interface ContactsRepository extends JpaRepository<Contacts, String> {
     Optional<Contacts> findOneById(final String id);
 
     Page<Contacts> findByCreaterAndSharesInOrSharesIsNullAndDatastatus(String id, Collection<String> shares, boolean datastatus, Pageable pageRequest);
+
+    /**
+     * 与 findByCreaterAndSharesInOrSharesIsNullAndDatastatus 条件相同，按ID顺序返回ID大于 id 的联系人，用于分批导出
+     */
+    @Query("select c from Contacts c where ((c.creater = :creater and c.shares in :shares) or (c.shares is null and c.datastatus = :datastatus)) and c.id > :id order by c.id")
+    List<Contacts> findByCreaterAndSharesInOrSharesIsNullAndDatastatusAndIdGreaterThan(@Param("creater") String creater, @Param("shares") Collection<String> shares, @Param("datastatus") boolean datastatus, @Param("id") String id, Pageable pageRequest);
     /**
      * 根据条件返回联系人，符合一下条件之一：
      * 1. 联系人的 organ 字段在传入的 organs 列表中，并且联系人的 shares 字段值是 all
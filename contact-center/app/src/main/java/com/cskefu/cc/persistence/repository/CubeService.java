@@ -27,44 +27,65 @@ import mondrian.rolap.RolapCubeLevel;
 import mondrian.rolap.RolapLevel;
 import org.apache.commons.io.FileUtils;
 import org.apache.commons.io.IOUtils;
+import org.apache.commons.lang3.StringUtils;
 
 import java.io.File;
 import java.io.IOException;
 import java.io.StringWriter;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 
 public class CubeService {
     private final DataSourceService dataSource;
 	
-    private final String SCHEMA_DATA_PATH = "WEB-INF/data/mdx/";
-    private File schemaFile = null;
+    private final static String SCHEMA_DATA_PATH = "WEB-INF/data/mdx/";
 
-    public CubeService(String xml, String path, DataSourceService dataSource, Map<String, Object> requestValues) throws IOException {
+    // 不带参数的 schema 生成的文件，schema -> 文件
+    private final static Map<String, File> schemaFiles = new ConcurrentHashMap<>();
+
+    // schema 文件 -> Mondrian 缓存对应的数据版本号
+    private final static Map<String, Long> schemaVersions = new ConcurrentHashMap<>();
+
+    private final File schemaFile;
+
+    // 数据的版本号
+    private final long version;
+
+    /**
+     * 使用不带参数的 schema，查询条件在 MDX 中指定。同一个 schema 只生成一次文件，
+     * Mondrian 在请求之间复用 schema 及其成员和单元格缓存，数据版本号变化后刷新缓存。
+     *
+     * @param xml
+     * @param path
+     * @param dataSource
+     * @param version    数据的版本号
+     * @throws IOException
+     */
+    public CubeService(String xml, String path, DataSourceService dataSource, long version) throws IOException {
         this.dataSource = dataSource;
-        File mdxFileDir = new File(path, "mdx");
-        if (!mdxFileDir.exists()) {
-            mdxFileDir.mkdirs();
-        }
-        schemaFile = new File(mdxFileDir, MainUtils.getUUID() + ".xml");
-        StringWriter writer = new StringWriter();
-        IOUtils.copy(CubeService.class.getClassLoader().getResourceAsStream(SCHEMA_DATA_PATH + xml), writer, "UTF-8");
-        FileUtils.write(schemaFile, MainUtils.getTemplet(writer.toString(), requestValues), "UTF-8");    //使用系统默认编码
+        this.version = version;
+        this.schemaFile = getSchemaFile(xml, path);
     }
 
-    public CubeService(String xml, String path, DataSourceService dataSource, Map<String, Object> requestValues, boolean isContentStr) throws IOException {
-        this.dataSource = dataSource;
-        File mdxFileDir = new File(path, "mdx");
-        if (!mdxFileDir.exists()) {
-            mdxFileDir.mkdirs();
-        }
-        schemaFile = new File(mdxFileDir, MainUtils.getUUID() + ".xml");
-        if (isContentStr) {
-            FileUtils.write(schemaFile, MainUtils.getTemplet(xml, requestValues), "UTF-8");    //使用系统默认编码
-        } else {
+    private static synchronized File getSchemaFile(String xml, String path) throws IOException {
+        File file = schemaFiles.get(xml);
+        if (file == null) {
+            File mdxFileDir = new File(path, "mdx");
+            if (!mdxFileDir.exists()) {
+                mdxFileDir.mkdirs();
+            }
+            file = new File(mdxFileDir, "schema-" + StringUtils.substringBefore(xml, ".") + ".xml");
             StringWriter writer = new StringWriter();
             IOUtils.copy(CubeService.class.getClassLoader().getResourceAsStream(SCHEMA_DATA_PATH + xml), writer, "UTF-8");
-            FileUtils.write(schemaFile, MainUtils.getTemplet(writer.toString(), requestValues), "UTF-8");    //使用系统默认编码
+            // 多个节点共用目录时，其它节点可能正在读取
+            File tmp = File.createTempFile("schema", ".tmp", mdxFileDir);
+            FileUtils.write(tmp, MainUtils.getTemplet(writer.toString(), new HashMap<>()), "UTF-8");
+            Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            schemaFiles.put(xml, file);
         }
+        return file;
     }
 
     public CubeReportData execute(String mdx) throws Exception {
@@ -77,6 +98,13 @@ public class CubeService {
         CubeReportData cubeReportData = new CubeReportData();
         try {
             connection = dataSource.service(schemaFile.getAbsolutePath());
+            Long loaded = schemaVersions.put(schemaFile.getAbsolutePath(), version);
+            if (loaded != null && loaded != version) {
+                // 数据已经变化，丢弃缓存的 schema 及其成员和单元格缓存
+                connection.getCacheControl(null).flushSchema(connection.getSchema());
+                connection.close();
+                connection = dataSource.service(schemaFile.getAbsolutePath());
+            }
             Query query = connection.parseQuery(mdx);
             Result result = connection.execute(query);
             Axis[] axises = result.getAxes();
@@ -110,9 +138,6 @@ public class CubeService {
             if (connection != null) {
                 connection.close();
             }
-            if (schemaFile.exists()) {
-                schemaFile.delete();
-            }
         }
         return cubeReportData;
     }
@@ -14,8 +14,10 @@
  */
 package com.cskefu.cc.persistence.repository;
 
+import jakarta.annotation.PostConstruct;
 import mondrian.olap.Connection;
 import mondrian.olap.DriverManager;
+import mondrian.olap.MondrianProperties;
 import mondrian.olap.Util;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
@@ -27,6 +29,12 @@ public class DataSourceService {
     @Autowired
     private DataSource dataSource;
 
+    @PostConstruct
+    public void setup() {
+        // 报表在 MDX 中按成员过滤，已经删除的坐席或技能组不存在时忽略，不中断查询
+        MondrianProperties.instance().IgnoreInvalidMembersDuringQuery.set(true);
+    }
+
     /**
      * @param xml
      * @throws Exception
@@ -14,7 +14,6 @@
 
 package com.cskefu.cc.plugins.chatbot;
 
-import com.chatopera.bot.exception.ChatbotException;
 import com.chatopera.bot.sdk.Response;
 import com.cskefu.cc.basic.Constants;
 import com.cskefu.cc.basic.MainContext;
@@ -23,7 +22,6 @@ import com.cskefu.cc.cache.Cache;
 import com.cskefu.cc.model.Chatbot;
 import com.cskefu.cc.persistence.repository.AgentUserRepository;
 import com.cskefu.cc.persistence.repository.ChatMessageRepository;
-import com.cskefu.cc.persistence.repository.ChatbotRepository;
 import com.cskefu.cc.socketio.message.ChatMessage;
 import com.cskefu.cc.util.SerializeUtil;
 import com.cskefu.cc.util.SystemEnvHelper;
@@ -37,10 +35,10 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.jms.annotation.JmsListener;
 import org.springframework.stereotype.Component;
 
-import java.net.MalformedURLException;
-
 /**
  * 发送消息给聊天机器人并处理返回结果
+ * <p>
+ * 消息交给 ChatbotGateway 异步发送，监听线程不等待机器人返回。
  */
 @Component
 public class ChatbotEventSubscription {
@@ -52,9 +50,6 @@ public class ChatbotEventSubscription {
     @Autowired
     private AgentUserRepository agentUserRes;
 
-    @Autowired
-    private ChatbotRepository chatbotRes;
-
     @Autowired
     private ChatMessageRepository chatMessageRes;
 
@@ -75,6 +70,9 @@ public class ChatbotEventSubscription {
     @Autowired
     private ChatbotComposer chatbotComposer;
 
+    @Autowired
+    private ChatbotGateway chatbotGateway;
+
     /**
      * 接收发送消息给聊天机器人的请求
      *
@@ -83,46 +81,23 @@ public class ChatbotEventSubscription {
     @JmsListener(destination = Constants.INSTANT_MESSAGING_MQ_QUEUE_CHATBOT, containerFactory = "jmsListenerContainerQueue")
     public void onMessage(final String payload) {
         ChatMessage message = SerializeUtil.deserialize(payload);
-        try {
-            try {
-                chat(message);
-            } catch (JSONException e) {
-                // TODO Auto-generated catch block
-                e.printStackTrace();
-            }
-        } catch (MalformedURLException e) {
-            logger.error("[onMessage] error", e);
-        } catch (ChatbotException e) {
-            logger.error("[onMessage] error", e);
-        }
+        logger.info("[onMessage] chat request aiid {}, fromUserId {}, textMessage {}", message.getAiid(),
+                message.getUserid(), message.getMessage());
+        chatbotGateway.query(message, this::reply);
     }
 
-
-    private void chat(final ChatMessage request) throws MalformedURLException, ChatbotException, JSONException {
-        Chatbot c = chatbotRes
-                .findById(request.getAiid()).orElse(null);
-
-        final String botProvider = StringUtils.isNotBlank(c.getBaseUrl()) ? c.getBaseUrl() : botProviderDefault;
-
-        logger.info(
-                "[chat] chat request baseUrl {}, clientId {}, fromUserId {}, textMessage {}", botProvider,
-                c.getClientId(),
-                request.getUserid(), request.getMessage());
-        // Get response from Conversational Engine.
-        com.chatopera.bot.sdk.Chatbot bot = new com.chatopera.bot.sdk.Chatbot(
-                c.getClientId(), c.getSecret(), botProvider);
-
-
-        JSONObject body = new JSONObject();
-        body.put("fromUserId", request.getUserid());
-        body.put("textMessage", request.getMessage());
-//        body.put("faqBestReplyThreshold", faqBestReplyThreshold);
-//        body.put("faqSuggReplyThreshold", faqSuggReplyThreshold);
-        Response result = bot.command("POST", "/conversation/query", body);
-
+    /**
+     * 处理聊天机器人返回结果
+     *
+     * @param request
+     * @param c
+     * @param result
+     * @throws JSONException
+     */
+    private void reply(final ChatMessage request, final Chatbot c, final Response result) throws JSONException {
         // parse response
         if (result != null) {
-            logger.info("[chat] chat response {}", result.toJSON().toString());
+            logger.info("[reply] chat response {}", result.toJSON().toString());
             if (result.getRc() == 0) {
                 // reply
                 JSONObject data = (JSONObject) result.getData();
@@ -312,12 +287,12 @@ public class ChatbotEventSubscription {
                     }
                 }
             } else if (result.getRc() == 999 || result.getRc() == 998) {
-                logger.error("[chat] chatbot agent response rc {}, error {}", result.getRc(), result.getError());
+                logger.error("[reply] chatbot agent response rc {}, error {}", result.getRc(), result.getError());
             } else {
-                logger.error("[chat] chatbot agent response rc {}, error {}", result.getRc(), result.getError());
+                logger.error("[reply] chatbot agent response rc {}, error {}", result.getRc(), result.getError());
             }
         } else {
-            logger.warn("[chat] can not get expected response ", result.toJSON().toString());
+            logger.warn("[reply] can not get expected response of user {}", request.getUserid());
         }
     }
 
@@ -0,0 +1,373 @@
+/*
+ * Copyright (C) 2023 Beijing Huaxia Chunsong Technology Co., Ltd.
+ * <https://www.chatopera.com>, Licensed under the Chunsong Public
+ * License, Version 1.0  (the "License"), https://docs.cskefu.com/licenses/v1.html
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cskefu.cc.plugins.chatbot;
+
+import com.chatopera.bot.sdk.Response;
+import com.cskefu.cc.model.Chatbot;
+import com.cskefu.cc.persistence.repository.ChatbotRepository;
+import com.cskefu.cc.socketio.message.ChatMessage;
+import com.cskefu.cc.util.SystemEnvHelper;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.apache.commons.lang3.StringUtils;
+import org.json.JSONObject;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Component;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * 聊天机器人对话接口的异步调用
+ * <p>
+ * 机器人配置和 SDK 客户端在本节点缓存，不再每条消息查询数据库、创建客户端。请求在单独的线程池中执行，
+ * 调用方不等待返回。每个机器人同时执行的请求不超过 max-concurrency，超过时在该机器人的队列中等待，
+ * 等待的请求超过 max-pending 时丢弃；一个机器人响应慢只占用自己的并发数，不影响其它机器人。
+ * 同一个访客的请求按顺序逐个执行，前一个请求结束后才执行下一个，回复也按顺序处理。
+ * 请求超过 timeout 未返回时放弃处理结果；连续失败达到 failure-threshold 次后熔断 open-duration，
+ * 期间该机器人的请求直接丢弃，之后放行一个请求试探。执行的请求按机器人和结果记录耗时 cskefu.chatbot.request，
+ * 熔断或队列已满而没有执行的请求按机器人和原因计数 cskefu.chatbot.skipped。
+ */
+@Component
+public class ChatbotGateway {
+    private final static Logger logger = LoggerFactory.getLogger(ChatbotGateway.class);
+
+    // 机器人服务提供地址
+    private final static String botProviderDefault = SystemEnvHelper.getenv(
+            ChatbotConstants.BOT_PROVIDER, ChatbotConstants.DEFAULT_BOT_PROVIDER);
+
+    @Value("${cskefu.chatbot.gateway.threads:32}")
+    private int threads;
+
+    @Value("${cskefu.chatbot.gateway.queue-size:1000}")
+    private int queueSize;
+
+    @Value("${cskefu.chatbot.gateway.max-concurrency:8}")
+    private int maxConcurrency;
+
+    @Value("${cskefu.chatbot.gateway.max-pending:200}")
+    private int maxPending;
+
+    @Value("${cskefu.chatbot.gateway.timeout:10000}")
+    private long timeout;
+
+    @Value("${cskefu.chatbot.gateway.failure-threshold:5}")
+    private int failureThreshold;
+
+    @Value("${cskefu.chatbot.gateway.open-duration:30000}")
+    private long openDuration;
+
+    @Value("${cskefu.chatbot.gateway.config-ttl:30000}")
+    private long configTtl;
+
+    @Autowired
+    private ChatbotRepository chatbotRes;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    private ThreadPoolExecutor executor;
+
+    // 机器人ID -> 机器人配置
+    private Cache<String, Optional<Chatbot>> chatbots;
+
+    // clientId:secret:baseUrl -> SDK 客户端
+    private Cache<String, com.chatopera.bot.sdk.Chatbot> clients;
+
+    // 机器人ID -> 请求通道
+    private final ConcurrentMap<String, Lane> lanes = new ConcurrentHashMap<>();
+
+    @PostConstruct
+    public void setup() {
+        executor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(queueSize), new CustomizableThreadFactory("cs-chatbot-"));
+        executor.allowCoreThreadTimeOut(true);
+        chatbots = CacheBuilder.newBuilder()
+                .expireAfterWrite(configTtl, TimeUnit.MILLISECONDS)
+                .build();
+        clients = CacheBuilder.newBuilder()
+                .expireAfterAccess(1, TimeUnit.HOURS)
+                .build();
+        logger.info("[setup] threads {}, queue size {}, max concurrency {}, max pending {}, timeout {}", threads,
+                queueSize, maxConcurrency, maxPending, timeout);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * 将访客消息发送给机器人，收到回复后在线程池中调用 handler
+     *
+     * @param request
+     * @param handler
+     */
+    public void query(final ChatMessage request, final ReplyHandler handler) {
+        final Lane lane = lanes.computeIfAbsent(request.getAiid(), k -> new Lane());
+        final Call call = new Call(request, handler);
+
+        if (!lane.allow(call)) {
+            skip(request.getAiid(), "open");
+            logger.warn("[query] chatbot {} circuit is open, drop message of user {}", request.getAiid(),
+                    request.getUserid());
+            return;
+        }
+
+        synchronized (lane) {
+            // 访客有请求正在执行或等待时排在其后，保证同一个访客的请求按顺序执行
+            if (lane.running >= maxConcurrency || lane.active.contains(call.userid)
+                    || lane.waiting.containsKey(call.userid)) {
+                if (lane.pending < maxPending) {
+                    lane.enqueue(call);
+                } else {
+                    lane.dropped(call);
+                    skip(request.getAiid(), "rejected");
+                    logger.warn("[query] chatbot {} has {} pending requests, drop message of user {}",
+                            request.getAiid(), lane.pending, request.getUserid());
+                }
+                return;
+            }
+            lane.running++;
+            lane.active.add(call.userid);
+        }
+        dispatch(lane, call);
+    }
+
+    private void dispatch(final Lane lane, final Call call) {
+        final long start = System.nanoTime();
+        final CompletableFuture<Response> reply = new CompletableFuture<>();
+        // 先注册回调，成功时在执行线程中处理回复，之后才执行该访客的下一个请求
+        reply.orTimeout(timeout, TimeUnit.MILLISECONDS)
+                .whenComplete((result, e) -> complete(lane, call, result, e, System.nanoTime() - start));
+        try {
+            executor.execute(() -> {
+                try {
+                    reply.complete(execute(call.request));
+                } catch (Exception e) {
+                    reply.completeExceptionally(e);
+                } finally {
+                    // 超时后请求仍在执行，请求结束时才释放并发数
+                    next(lane, call);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            reply.completeExceptionally(e);
+            next(lane, call);
+        }
+    }
+
+    private Response execute(final ChatMessage request) throws Exception {
+        final Chatbot c = findChatbot(request.getAiid())
+                .orElseThrow(() -> new IllegalStateException("chatbot " + request.getAiid() + " not found"));
+        final JSONObject body = new JSONObject();
+        body.put("fromUserId", request.getUserid());
+        body.put("textMessage", request.getMessage());
+        return getClient(c).command("POST", "/conversation/query", body);
+    }
+
+    private void complete(final Lane lane, final Call call, final Response result, final Throwable e,
+                          final long elapsed) {
+        final String aiid = call.request.getAiid();
+        try {
+            if (e instanceof RejectedExecutionException) {
+                // 线程池已满，不是机器人的问题，不计入失败
+                lane.dropped(call);
+                skip(aiid, "rejected");
+                logger.warn("[complete] executor is full, drop message of user {}", call.request.getUserid());
+            } else if (e == null) {
+                lane.success();
+                record(aiid, "success", elapsed);
+                final Optional<Chatbot> c = findChatbot(aiid);
+                if (c.isPresent()) {
+                    call.handler.handle(call.request, c.get(), result);
+                }
+            } else {
+                lane.failure();
+                record(aiid, e instanceof TimeoutException ? "timeout" : "error", elapsed);
+                logger.error("[complete] chatbot {} request of user {} failed", aiid, call.request.getUserid(), e);
+            }
+        } catch (Exception ex) {
+            logger.error("[complete] handle reply of chatbot {}", aiid, ex);
+        }
+    }
+
+    /**
+     * 请求结束，释放并发数或执行该机器人等待中的下一个请求
+     *
+     * @param lane
+     * @param finished 结束的请求
+     */
+    private void next(final Lane lane, final Call finished) {
+        final Call call;
+        synchronized (lane) {
+            lane.active.remove(finished.userid);
+            if (lane.waiting.containsKey(finished.userid)) {
+                // 该访客还有请求，排到其它访客之后
+                lane.ready.add(finished.userid);
+            }
+            call = lane.poll();
+            if (call == null) {
+                lane.running--;
+                return;
+            }
+            lane.active.add(call.userid);
+        }
+        dispatch(lane, call);
+    }
+
+    private void record(final String aiid, final String outcome, final long elapsed) {
+        Timer.builder("cskefu.chatbot.request")
+                .tag("chatbot", StringUtils.defaultString(aiid))
+                .tag("outcome", outcome)
+                .publishPercentileHistogram()
+                .register(meterRegistry)
+                .record(elapsed, TimeUnit.NANOSECONDS);
+    }
+
+    private void skip(final String aiid, final String outcome) {
+        Counter.builder("cskefu.chatbot.skipped")
+                .tag("chatbot", StringUtils.defaultString(aiid))
+                .tag("outcome", outcome)
+                .register(meterRegistry)
+                .increment();
+    }
+
+    /**
+     * 获得机器人配置
+     *
+     * @param aiid
+     * @return
+     */
+    public Optional<Chatbot> findChatbot(final String aiid) {
+        if (aiid == null) {
+            return Optional.empty();
+        }
+        try {
+            return chatbots.get(aiid, () -> chatbotRes.findById(aiid));
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("fail to load chatbot " + aiid, e.getCause());
+        }
+    }
+
+    private com.chatopera.bot.sdk.Chatbot getClient(final Chatbot c) throws ExecutionException {
+        final String baseUrl = StringUtils.isNotBlank(c.getBaseUrl()) ? c.getBaseUrl() : botProviderDefault;
+        return clients.get(c.getClientId() + ":" + c.getSecret() + ":" + baseUrl,
+                () -> new com.chatopera.bot.sdk.Chatbot(c.getClientId(), c.getSecret(), baseUrl));
+    }
+
+    /**
+     * 处理机器人的回复
+     */
+    public interface ReplyHandler {
+        void handle(ChatMessage request, Chatbot chatbot, Response result) throws Exception;
+    }
+
+    private static final class Call {
+        private final ChatMessage request;
+        private final ReplyHandler handler;
+        private final String userid;
+        // 熔断后放行的试探请求，由 Lane 保护
+        private boolean probe;
+
+        private Call(final ChatMessage request, final ReplyHandler handler) {
+            this.request = request;
+            this.handler = handler;
+            this.userid = StringUtils.defaultString(request.getUserid());
+        }
+    }
+
+    /**
+     * 一个机器人的并发数、等待队列和熔断状态
+     */
+    private final class Lane {
+        private int running;
+        // 有请求正在执行的访客
+        private final Set<String> active = new HashSet<>();
+        // 访客 -> 等待中的请求
+        private final Map<String, Deque<Call>> waiting = new HashMap<>();
+        // 有请求等待、且没有请求正在执行的访客，按到达顺序
+        private final Deque<String> ready = new ArrayDeque<>();
+        // 等待中的请求数
+        private int pending;
+        private int failures;
+        private long openedAt;
+        private boolean probing;
+
+        private void enqueue(final Call call) {
+            final Deque<Call> calls = waiting.computeIfAbsent(call.userid, k -> new ArrayDeque<>());
+            if (calls.isEmpty() && !active.contains(call.userid)) {
+                ready.add(call.userid);
+            }
+            calls.add(call);
+            pending++;
+        }
+
+        private Call poll() {
+            final String userid = ready.poll();
+            if (userid == null) {
+                return null;
+            }
+            final Deque<Call> calls = waiting.get(userid);
+            final Call call = calls.poll();
+            if (calls.isEmpty()) {
+                waiting.remove(userid);
+            }
+            pending--;
+            return call;
+        }
+
+        private synchronized boolean allow(final Call call) {
+            if (failures < failureThreshold) {
+                return true;
+            }
+            if (!probing && System.currentTimeMillis() - openedAt >= openDuration) {
+                // 熔断时间已过，放行一个请求试探
+                probing = true;
+                call.probe = true;
+                return true;
+            }
+            return false;
+        }
+
+        /**
+         * 请求没有发送给机器人就被丢弃，试探请求被丢弃时允许下一个请求试探
+         */
+        private synchronized void dropped(final Call call) {
+            if (call.probe) {
+                call.probe = false;
+                probing = false;
+            }
+        }
+
+        private synchronized void success() {
+            failures = 0;
+            probing = false;
+        }
+
+        private synchronized void failure() {
+            failures++;
+            if (failures >= failureThreshold) {
+                openedAt = System.currentTimeMillis();
+                probing = false;
+            }
+        }
+    }
+}
@@ -18,6 +18,8 @@ import com.cskefu.cc.cache.Cache;
 import com.cskefu.cc.exception.CSKefuException;
 import com.cskefu.cc.model.*;
 import com.cskefu.cc.peer.PeerSyncIM;
+import com.cskefu.cc.peer.im.ChatMessageWriter;
+import com.cskefu.cc.schedule.AgentUserTimeoutTask;
 import com.cskefu.cc.persistence.blob.JpaBlobHelper;
 import com.cskefu.cc.persistence.repository.*;
 import com.cskefu.cc.socketio.message.ChatMessage;
@@ -72,7 +74,10 @@ public class AgentProxy {
     private AgentStatusRepository agentStatusRes;
 
     @Autowired
-    private AgentUserTaskRepository agentUserTaskRes;
+    private ChatMessageWriter chatMessageWriter;
+
+    @Autowired
+    private AgentUserTimeoutTask agentUserTimeoutTask;
 
     /**
      * 设置一个坐席为就绪状态
@@ -136,15 +141,19 @@ public class AgentProxy {
         outMessage.setChannelMessage(chatMessage);
 
         // 处理超时回复
-        AgentUserTask agentUserTask = agentUserTaskRes.findById(agentUser.getId()).orElse(null);
-        agentUserTask.setWarnings("0");
-        agentUserTask.setWarningtime(null);
-
-        agentUserTask.setReptime(null);
-        agentUserTask.setReptimes("1");
-        agentUserTask.setLastmessage(new Date());
+        AgentUserTask agentUserTask = chatMessageWriter.findAgentUserTask(agentUser.getId()).orElse(null);
+        synchronized (agentUserTask) {
+            agentUserTask.setWarnings("0");
+            agentUserTask.setWarningtime(null);
+
+            agentUserTask.setReptime(null);
+            agentUserTask.setReptimes("1");
+            agentUserTask.setLastmessage(new Date());
+        }
+        chatMessageWriter.save(agentUserTask);
 
-        agentUserTaskRes.save(agentUserTask);
+        // 开始计算访客回复超时
+        agentUserTimeoutTask.agentMessage(agentUser);
 
         // 发送消息给在线访客(此处也会生成对话聊天历史和会话监控消息)
         peerSyncIM.send(
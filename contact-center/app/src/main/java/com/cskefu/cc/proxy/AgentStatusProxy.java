@@ -22,8 +22,17 @@ import com.corundumstudio.socketio.SocketIONamespace;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Component;
 
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * 坐席状态统计的广播
+ * <p>
+ * 坐席状态变化时只记录最近一次变化，每个广播间隔内合并为一次统计和一次广播，统计数字没有变化时不广播；
+ * 统计结果按采样间隔写入数据库，而不是每次变化都写入。
+ */
 @Component
 public class AgentStatusProxy {
     private final static Logger logger = LoggerFactory.getLogger(AgentStatusProxy.class);
@@ -36,24 +45,73 @@ public class AgentStatusProxy {
 
     private SocketIONamespace agentNamespace;
 
+    // 最近一次还未广播的坐席状态变化：worktype, workresult, dataid
+    private final AtomicReference<String[]> pending = new AtomicReference<>();
+
+    // 最近一次广播的统计
+    private volatile AgentReport broadcasted;
+
+    // 还未写入数据库的统计
+    private final AtomicReference<AgentReport> unsaved = new AtomicReference<>();
+
     /**
-     * 向所有坐席client通知坐席状态变化
+     * 向所有坐席client通知坐席状态变化，在下一个广播间隔内发送
      *
      * @param worktype
      * @param workresult
      * @param dataid
      */
     public void broadcastAgentsStatus(final String worktype, final String workresult, final String dataid) {
-        /**
-         * 坐席状态改变，通知监测服务
-         */
-        AgentReport agentReport = acdWorkMonitor.getAgentReport();
-        agentReport.setWorktype(worktype);
-        agentReport.setWorkresult(workresult);
-        agentReport.setDataid(dataid);
-        agentReportRes.save(agentReport);
-        getAgentNamespace().getBroadcastOperations().sendEvent(
-                "status", agentReport);
+        pending.set(new String[]{worktype, workresult, dataid});
+    }
+
+    /**
+     * 合并广播间隔内的坐席状态变化，统计一次并广播
+     */
+    @Scheduled(fixedDelayString = "${cskefu.agentstatus.broadcast.interval:1000}")
+    public void broadcast() {
+        final String[] event = pending.getAndSet(null);
+        if (event == null) {
+            return;
+        }
+
+        try {
+            AgentReport agentReport = acdWorkMonitor.getAgentReport();
+            agentReport.setWorktype(event[0]);
+            agentReport.setWorkresult(event[1]);
+            agentReport.setDataid(event[2]);
+            unsaved.set(agentReport);
+
+            final AgentReport prev = broadcasted;
+            if (prev != null && prev.getAgents() == agentReport.getAgents() &&
+                    prev.getBusy() == agentReport.getBusy() &&
+                    prev.getUsers() == agentReport.getUsers() &&
+                    prev.getInquene() == agentReport.getInquene()) {
+                return;
+            }
+            broadcasted = agentReport;
+            getAgentNamespace().getBroadcastOperations().sendEvent(
+                    "status", agentReport);
+        } catch (Exception e) {
+            logger.warn("[broadcast] error", e);
+        }
+    }
+
+    /**
+     * 按采样间隔将最近一次统计写入数据库
+     */
+    @Scheduled(fixedDelayString = "${cskefu.agentstatus.report.sample-interval:60000}")
+    public void sample() {
+        final AgentReport agentReport = unsaved.getAndSet(null);
+        if (agentReport == null) {
+            return;
+        }
+
+        try {
+            agentReportRes.save(agentReport);
+        } catch (Exception e) {
+            logger.warn("[sample] error", e);
+        }
     }
 
     private SocketIONamespace getAgentNamespace() {
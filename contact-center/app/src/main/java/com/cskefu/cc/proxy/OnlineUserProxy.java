@@ -122,10 +122,7 @@ public class OnlineUserProxy {
                                     final CousultInvite invite, boolean isJudgeShare) {
         boolean isShare = false;
         if (isJudgeShare) {
-            SystemConfig systemConfig = MainUtils.getSystemConfig();
-            if (systemConfig != null && systemConfig.isEnabletneant() && systemConfig.isTenantshare()) {
-                isShare = true;
-            }
+            isShare = MainContext.getSystemConfigCache().isTenantShare();
         }
         List<Organ> skillGroups = getCache().findOneSystemById(Constants.CACHE_SKILL);
         if (skillGroups == null) {
@@ -10,6 +10,7 @@
  */
 package com.cskefu.cc.proxy;
 
+import com.cskefu.cc.cache.OrganCache;
 import com.cskefu.cc.controller.admin.OrganController;
 import com.cskefu.cc.model.Organ;
 import com.cskefu.cc.model.User;
@@ -29,6 +30,9 @@ public class OrganProxy {
     @Autowired
     private OrganRepository organRes;
 
+    @Autowired
+    private OrganCache organCache;
+
     /**
      * 检查组织机构树
      *
@@ -94,21 +98,30 @@ public class OrganProxy {
         return organRes.findAllById(organIds);
     }
 
-    private void processChild(Map<String, Organ> organs, String organId) {
-        Organ organ = organRes.findById(organId).orElse(null);
-        if (organ != null) {
-            organs.put(organId, organ);
-            List<Organ> childOrgans = organRes.findByParent(organId);
-            childOrgans.stream().forEach(o -> processChild(organs, o.getId()));
+    /**
+     * 获得部门及其全部下级部门，从部门树的本地快照中读取
+     *
+     * @param organId
+     * @return 部门是快照中共享的对象，不能修改
+     */
+    public Map<String, Organ> findAllOrganByParentId(String organId) {
+        if (StringUtils.isNotBlank(organId)) {
+            return organCache.findSubtreeMap(organId);
         }
+        return new HashMap<>();
     }
 
-    public Map<String, Organ> findAllOrganByParentId(String organId) {
-        Map<String, Organ> result = new HashMap<>();
+    /**
+     * 获得部门及其全部下级部门的ID，只需要ID时使用
+     *
+     * @param organId
+     * @return 不可修改的集合
+     */
+    public Set<String> findAllOrganIdsByParentId(String organId) {
         if (StringUtils.isNotBlank(organId)) {
-            processChild(result, organId);
+            return organCache.findSubtree(organId);
         }
-        return result;
+        return Collections.emptySet();
     }
 
     public Map<String, Organ> findAllOrganByParent(Organ organ) {
@@ -0,0 +1,60 @@
+/*
+ * Copyright (C) 2023 Beijing Huaxia Chunsong Technology Co., Ltd.
+ * <https://www.chatopera.com>, Licensed under the Chunsong Public
+ * License, Version 1.0  (the "License"), https://docs.cskefu.com/licenses/v1.html
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cskefu.cc.proxy;
+
+import com.cskefu.cc.cache.RedisKey;
+import com.cskefu.cc.cache.SnapshotRegistry;
+import com.cskefu.cc.cache.VersionedSnapshot;
+import com.cskefu.cc.model.Organ;
+import com.cskefu.cc.model.User;
+import com.cskefu.cc.persistence.repository.*;
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * 登录用户授权信息的版本
+ * <p>
+ * 用户的部门、下级部门、角色权限保存在会话的 User 对象中，同时在会话中记录加载时的版本戳：授权版本号、用户和当前部门。
+ * 部门、部门成员、角色、用户角色、角色权限写入数据库后版本号增加，见 VersionedSnapshot；
+ * 请求的版本戳与会话中的一致时不需要重新加载，也不需要写入会话。
+ */
+@Component
+public class UserAuthCache {
+
+    @Value("${cskefu.user.auth.check-interval:5000}")
+    private long checkInterval;
+
+    @Autowired
+    private SnapshotRegistry snapshotRegistry;
+
+    // 只使用版本号，授权信息在会话中
+    private VersionedSnapshot<Void> snapshot;
+
+    @PostConstruct
+    public void setup() {
+        snapshot = snapshotRegistry.register("userauth", RedisKey.getUserAuthVersionKey(), checkInterval,
+                () -> null, OrganRepository.class, OrganUserRepository.class, RoleRepository.class,
+                UserRoleRepository.class, RoleAuthRepository.class);
+    }
+
+    /**
+     * 获得用户在当前部门下授权信息的版本戳
+     *
+     * @param user
+     * @param organ 当前部门
+     * @return
+     */
+    public String getStamp(final User user, final Organ organ) {
+        return snapshot.getVersion() + ":" + user.getId() + ":" + (organ != null ? organ.getId() : "");
+    }
+}
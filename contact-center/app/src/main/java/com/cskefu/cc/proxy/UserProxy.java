@@ -599,23 +599,10 @@ public class UserProxy {
             return;
         }
 
-        if (user.inAffiliates(organ.getId())) {
-            return;
-        }
-
         user.getAffiliates().add(organ.getId());
 
         // 获得子部门
-        List<Organ> y = organRes.findByParent(organ.getId());
-
-        for (Organ x : y) {
-            try {
-                // 递归调用
-                processAffiliates(user, x);
-            } catch (Exception e) {
-                logger.error("processAffiliates", e);
-            }
-        }
+        user.getAffiliates().addAll(organProxy.findAllOrganIdsByParentId(organ.getId()));
     }
 
     /**
@@ -655,11 +642,7 @@ public class UserProxy {
         if (currentOrgan != null) {
             user.setCurrOrganAffiliates(new HashSet<>());
             user.getCurrOrganAffiliates().add(currentOrgan.getId());
-            Map<String, Organ> subs = organProxy.findAllOrganByParent(currentOrgan);
-
-            for (Map.Entry<String, Organ> entry : subs.entrySet()) {
-                user.getCurrOrganAffiliates().add(entry.getKey());
-            }
+            user.getCurrOrganAffiliates().addAll(organProxy.findAllOrganIdsByParentId(currentOrgan.getId()));
 
         } else {
             user.setCurrOrganAffiliates(new HashSet<>());
@@ -0,0 +1,182 @@
+/*
+ * Copyright (C) 2023 Beijing Huaxia Chunsong Technology Co., Ltd.
+ * <https://www.chatopera.com>, Licensed under the Chunsong Public
+ * License, Version 1.0  (the "License"), https://docs.cskefu.com/licenses/v1.html
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cskefu.cc.schedule;
+
+import com.cskefu.cc.cache.Cache;
+import com.cskefu.cc.cache.RedisCommand;
+import com.cskefu.cc.cache.RedisKey;
+import com.cskefu.cc.model.AgentService;
+import com.cskefu.cc.persistence.repository.AgentServiceRollupRepository;
+import jakarta.annotation.PostConstruct;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.commons.lang3.math.NumberUtils;
+import org.apache.commons.lang3.time.DateUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.*;
+
+/**
+ * 服务记录的报表汇总
+ * <p>
+ * 服务记录写入数据库后，将创建时间和评价时间所在的小时记录在 Redis 的 ZSet 中，各节点定时取出，
+ * 取出时加上租约，每个时段只由一个节点在一个事务中重新汇总，提交后才删除租约；节点中途退出时，租约到期后重新汇总。
+ * 汇总表变更后增加版本号，报表据此刷新 Mondrian 缓存。
+ * Redis 中没有历史数据已加入的标记时，按天重新汇总全部历史数据，例如首次启动或 Redis 数据丢失后。
+ */
+@Component
+public class AgentServiceRollupTask {
+
+    private final static Logger logger = LoggerFactory.getLogger(AgentServiceRollupTask.class);
+
+    private final static String HOUR_PATTERN = "yyyyMMddHH";
+
+    private final static String DAY_PATTERN = "yyyyMMdd";
+
+    @Value("${cskefu.report.rollup.batch-size:100}")
+    private int batchSize;
+
+    @Value("${cskefu.report.rollup.lease:600000}")
+    private long lease;
+
+    @Autowired
+    private Cache cache;
+
+    @Autowired
+    private RedisCommand redisCommand;
+
+    @Autowired
+    private AgentServiceRollupRepository agentServiceRollupRes;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    private TransactionTemplate transactionTemplate;
+
+    @PostConstruct
+    public void setup() {
+        transactionTemplate = new TransactionTemplate(transactionManager);
+    }
+
+    /**
+     * 服务记录已经变更，在事务提交后记录需要重新汇总的时段
+     *
+     * @param agentService
+     */
+    public void changed(final AgentService agentService) {
+        final Set<String> periods = new HashSet<>();
+        if (agentService.getCreatetime() != null) {
+            periods.add(new SimpleDateFormat(HOUR_PATTERN).format(agentService.getCreatetime()));
+        }
+        if (agentService.isSatisfaction() && agentService.getSatistime() != null) {
+            periods.add(new SimpleDateFormat(HOUR_PATTERN).format(agentService.getSatistime()));
+        }
+        if (periods.isEmpty()) {
+            return;
+        }
+
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    periods.forEach(cache::putReportRollupPending);
+                }
+            });
+        } else {
+            periods.forEach(cache::putReportRollupPending);
+        }
+    }
+
+    /**
+     * 获得汇总表的版本号
+     *
+     * @return
+     */
+    public long getVersion() {
+        final String version = redisCommand.get(RedisKey.getReportRollupVersionKey());
+        return StringUtils.isBlank(version) ? 0 : NumberUtils.toLong(version);
+    }
+
+    @Scheduled(fixedDelayString = "${cskefu.report.rollup.interval:60000}", initialDelay = 30000)
+    public void rollup() {
+        backfill();
+
+        int rolled = 0;
+        List<String> periods;
+        do {
+            periods = cache.claimReportRollupPending(batchSize, lease);
+            for (final String period : periods) {
+                try {
+                    rollup(period);
+                    rolled++;
+                } catch (Exception e) {
+                    logger.warn("[rollup] period {}", period, e);
+                    // 稍后重试
+                    cache.putReportRollupPending(period);
+                }
+                cache.releaseReportRollupLease(period);
+            }
+        } while (periods.size() >= batchSize);
+
+        if (rolled > 0) {
+            redisCommand.increment(RedisKey.getReportRollupVersionKey());
+            logger.info("[rollup] periods {}", rolled);
+        }
+    }
+
+    private void rollup(final String period) throws ParseException {
+        final boolean hour = period.length() == HOUR_PATTERN.length();
+        final Date begin = new SimpleDateFormat(hour ? HOUR_PATTERN : DAY_PATTERN).parse(period);
+        final Date end = hour ? DateUtils.addHours(begin, 1) : DateUtils.addDays(begin, 1);
+        transactionTemplate.executeWithoutResult(status -> {
+            agentServiceRollupRes.clearConsultRollup(begin, end);
+            agentServiceRollupRes.rollupConsult(begin, end);
+            agentServiceRollupRes.clearSatisRollup(begin, end);
+            agentServiceRollupRes.rollupSatis(begin, end);
+        });
+    }
+
+    /**
+     * Redis 中没有标记时，将有服务记录以来的每一天加入等待汇总的时段，全部加入后再写入标记
+     */
+    private void backfill() {
+        try {
+            if (StringUtils.isNotBlank(redisCommand.get(RedisKey.getReportRollupBackfillKey()))) {
+                return;
+            }
+            final SimpleDateFormat format = new SimpleDateFormat(DAY_PATTERN);
+            final Date today = new Date();
+            final Date first = agentServiceRollupRes.findFirstCreatetime();
+            if (first != null) {
+                int days = 0;
+                for (Date day = DateUtils.truncate(first, Calendar.DATE); !day.after(today);
+                     day = DateUtils.addDays(day, 1)) {
+                    cache.putReportRollupPending(format.format(day));
+                    days++;
+                }
+                logger.info("[backfill] since {}, days {}", format.format(first), days);
+            }
+            redisCommand.put(RedisKey.getReportRollupBackfillKey(), format.format(today));
+        } catch (Exception e) {
+            logger.warn("[backfill] error", e);
+        }
+    }
+}
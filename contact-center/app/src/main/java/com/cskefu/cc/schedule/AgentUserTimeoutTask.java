@@ -0,0 +1,404 @@
+/*
+ * Copyright (C) 2023 Beijing Huaxia Chunsong Technology Co., Ltd.
+ * <https://www.chatopera.com>, Licensed under the Chunsong Public
+ * License, Version 1.0  (the "License"), https://docs.cskefu.com/licenses/v1.html
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cskefu.cc.schedule;
+
+import com.cskefu.cc.acd.ACDAgentService;
+import com.cskefu.cc.acd.ACDPolicyService;
+import com.cskefu.cc.basic.Constants;
+import com.cskefu.cc.basic.MainContext;
+import com.cskefu.cc.basic.MainUtils;
+import com.cskefu.cc.cache.Cache;
+import com.cskefu.cc.model.AgentStatus;
+import com.cskefu.cc.model.AgentUser;
+import com.cskefu.cc.model.AgentUserTask;
+import com.cskefu.cc.model.SessionConfig;
+import com.cskefu.cc.peer.PeerSyncIM;
+import com.cskefu.cc.peer.im.ChatMessageWriter;
+import com.cskefu.cc.persistence.repository.AgentUserTaskRepository;
+import com.cskefu.cc.socketio.message.ChatMessage;
+import com.cskefu.cc.socketio.message.Message;
+import org.apache.commons.lang3.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.Date;
+import java.util.List;
+
+/**
+ * 会话超时处理：排队超时、坐席回复超时、访客回复超时
+ * <p>
+ * 访客进入排队、分配坐席和访客、坐席发送消息时设置定时器，服务结束时取消该访客的全部定时器。
+ * 定时器记录在 Redis 的 ZSet 中，各节点每秒取出到期的定时器，取出时即删除，每个定时器只由一个节点处理。
+ * 到期时根据最新的访客状态和会话计数再次判断，状态已经变化的定时器直接忽略。
+ */
+@Component
+public class AgentUserTimeoutTask {
+
+    private final static Logger logger = LoggerFactory.getLogger(AgentUserTimeoutTask.class);
+
+    // 排队超时，断开
+    public final static String TYPE_QUEUE = "queue";
+    // 访客发送消息后坐席超时未回复，提醒
+    public final static String TYPE_AGENT_REPLY = "agentreply";
+    // 坐席发送消息后访客超时未回复，提醒
+    public final static String TYPE_VISITOR_IDLE = "visitoridle";
+    // 提醒后访客再次超时未回复，断开
+    public final static String TYPE_VISITOR_CLOSE = "visitorclose";
+
+    @Value("${cskefu.acd.timeout.batch-size:200}")
+    private int batchSize;
+
+    @Autowired
+    private Cache cache;
+
+    @Autowired
+    private ACDPolicyService acdPolicyService;
+
+    @Autowired
+    @Lazy
+    private ACDAgentService acdAgentService;
+
+    @Autowired
+    private ChatMessageWriter chatMessageWriter;
+
+    @Autowired
+    private AgentUserTaskRepository agentUserTaskRes;
+
+    @Autowired
+    @Lazy
+    private PeerSyncIM peerSyncIM;
+
+    /**
+     * 访客发送了消息：开始计算坐席回复超时，取消访客回复超时
+     *
+     * @param agentUser
+     */
+    public void visitorMessage(final AgentUser agentUser) {
+        cache.deleteAgentUserTimeout(agentUser.getUserid(), TYPE_VISITOR_IDLE, TYPE_VISITOR_CLOSE);
+        final SessionConfig sessionConfig = acdPolicyService.initSessionConfig(agentUser.getSkill());
+        if (sessionConfig.isAgentreplaytimeout()) {
+            cache.putAgentUserTimeout(TYPE_AGENT_REPLY, agentUser.getUserid(),
+                    deadline(System.currentTimeMillis(), sessionConfig.getAgenttimeout()));
+        }
+    }
+
+    /**
+     * 坐席发送了消息：开始计算访客回复超时，取消坐席回复超时
+     *
+     * @param agentUser
+     */
+    public void agentMessage(final AgentUser agentUser) {
+        cache.deleteAgentUserTimeout(agentUser.getUserid(), TYPE_AGENT_REPLY, TYPE_VISITOR_CLOSE);
+        armVisitorIdle(agentUser, System.currentTimeMillis(), false);
+    }
+
+    /**
+     * 访客进入排队，重新计算排队超时
+     *
+     * @param agentUser
+     */
+    public void enqueue(final AgentUser agentUser) {
+        final SessionConfig sessionConfig = acdPolicyService.initSessionConfig(agentUser.getSkill());
+        if (sessionConfig.isQuene()) {
+            cache.putAgentUserTimeout(TYPE_QUEUE, agentUser.getUserid(),
+                    deadline(System.currentTimeMillis(), sessionConfig.getQuenetimeout()));
+        }
+    }
+
+    /**
+     * 访客分配到坐席：取消排队超时，开始计算访客回复超时
+     *
+     * @param agentUser
+     */
+    public void serviceStarted(final AgentUser agentUser) {
+        cache.deleteAgentUserTimeout(agentUser.getUserid(), TYPE_QUEUE, TYPE_AGENT_REPLY, TYPE_VISITOR_CLOSE);
+        armVisitorIdle(agentUser, System.currentTimeMillis(), false);
+    }
+
+    /**
+     * 服务结束或访客离开，取消该访客的全部定时器
+     *
+     * @param agentUser
+     */
+    public void cancel(final AgentUser agentUser) {
+        cache.deleteAgentUserTimeout(agentUser.getUserid(),
+                TYPE_QUEUE, TYPE_AGENT_REPLY, TYPE_VISITOR_IDLE, TYPE_VISITOR_CLOSE);
+    }
+
+    /**
+     * 根据数据库中排队、服务中的会话补充缺少的定时器，已有的定时器不变
+     */
+    public void rebuild() {
+        final Date now = new Date();
+        int count = 0;
+        for (final AgentUserTask task : agentUserTaskRes.findByLogindateLessThanAndStatus(
+                now, MainContext.AgentUserStatusEnum.INQUENE.toString())) {
+            final SessionConfig sessionConfig = findSessionConfig(task);
+            if (sessionConfig.isQuene() && task.getLogindate() != null) {
+                cache.putAgentUserTimeoutIfAbsent(TYPE_QUEUE, task.getUserid(),
+                        deadline(task.getLogindate().getTime(), sessionConfig.getQuenetimeout()));
+                count++;
+            }
+        }
+        for (final AgentUserTask task : agentUserTaskRes.findByLastmessageLessThanAndStatus(
+                now, MainContext.AgentUserStatusEnum.INSERVICE.toString())) {
+            final SessionConfig sessionConfig = findSessionConfig(task);
+            if (sessionConfig.isAgentreplaytimeout() && task.getLastgetmessage() != null &&
+                    isBlankOrZero(task.getReptimes())) {
+                cache.putAgentUserTimeoutIfAbsent(TYPE_AGENT_REPLY, task.getUserid(),
+                        deadline(task.getLastgetmessage().getTime(), sessionConfig.getAgenttimeout()));
+                count++;
+            }
+            if (task.getLastmessage() != null && isBlankOrZero(task.getWarnings()) &&
+                    (sessionConfig.isSessiontimeout() || sessionConfig.isResessiontimeout())) {
+                cache.putAgentUserTimeoutIfAbsent(TYPE_VISITOR_IDLE, task.getUserid(),
+                        deadline(task.getLastmessage().getTime(), sessionConfig.isSessiontimeout() ?
+                                sessionConfig.getTimeout() : sessionConfig.getRetimeout()));
+                count++;
+            }
+            if (task.getWarningtime() != null && !isBlankOrZero(task.getWarnings()) &&
+                    sessionConfig.isResessiontimeout()) {
+                // 已经提醒过，再次超时时断开
+                cache.putAgentUserTimeoutIfAbsent(TYPE_VISITOR_CLOSE, task.getUserid(),
+                        deadline(task.getWarningtime().getTime(), sessionConfig.getRetimeout()));
+                count++;
+            }
+        }
+        logger.info("[rebuild] timers {}", count);
+    }
+
+    private SessionConfig findSessionConfig(final AgentUserTask task) {
+        return acdPolicyService.initSessionConfig(
+                cache.findOneAgentUserByUserId(task.getUserid()).map(AgentUser::getSkill).orElse(null));
+    }
+
+    @Scheduled(fixedDelay = 1000, initialDelay = 20000)
+    public void fire() {
+        List<String> due;
+        do {
+            due = cache.claimAgentUserTimeouts(System.currentTimeMillis(), batchSize);
+            for (final String timer : due) {
+                final int index = timer.indexOf(':');
+                try {
+                    process(timer.substring(0, index), timer.substring(index + 1));
+                } catch (Exception e) {
+                    logger.warn("[fire] timer {}", timer, e);
+                }
+            }
+        } while (due.size() >= batchSize);
+    }
+
+    private void process(final String type, final String userid) {
+        final AgentUser agentUser = cache.findOneAgentUserByUserId(userid).orElse(null);
+        if (agentUser == null) {
+            return;
+        }
+        final AgentUserTask task = chatMessageWriter.findAgentUserTask(agentUser.getId()).orElse(null);
+        if (task == null) {
+            return;
+        }
+        final SessionConfig sessionConfig = acdPolicyService.initSessionConfig(agentUser.getSkill());
+        logger.info("[process] type {}, userid {}, status {}", type, userid, agentUser.getStatus());
+
+        if (TYPE_QUEUE.equals(type)) {
+            if (sessionConfig.isQuene() && StringUtils.equals(
+                    agentUser.getStatus(), MainContext.AgentUserStatusEnum.INQUENE.toString())) {
+                // 排队超时，断开
+                processMessage(sessionConfig, sessionConfig.getQuenetimeoutmsg(), sessionConfig.getServicename(),
+                        agentUser);
+                finish(agentUser);
+            }
+            return;
+        }
+
+        if (!StringUtils.equals(agentUser.getStatus(), MainContext.AgentUserStatusEnum.INSERVICE.toString()) ||
+                StringUtils.isBlank(agentUser.getAgentno())) {
+            return;
+        }
+        final AgentStatus agentStatus = cache.findOneAgentStatusByAgentno(agentUser.getAgentno());
+        if (agentStatus == null) {
+            return;
+        }
+
+        switch (type) {
+            case TYPE_AGENT_REPLY:
+                if (!sessionConfig.isAgentreplaytimeout()) {
+                    return;
+                }
+                synchronized (task) {
+                    if (!isBlankOrZero(task.getReptimes())) {
+                        // 坐席已经回复
+                        return;
+                    }
+                    task.setReptimes("1");
+                    task.setReptime(new Date());
+                }
+                chatMessageWriter.save(task);
+                processMessage(sessionConfig, sessionConfig.getAgenttimeoutmsg(), sessionConfig.getServicename(),
+                        agentUser);
+                break;
+            case TYPE_VISITOR_IDLE:
+                if (sessionConfig.isSessiontimeout()) {
+                    synchronized (task) {
+                        if (!isBlankOrZero(task.getWarnings())) {
+                            // 访客已经回复
+                            return;
+                        }
+                        task.setAgenttimeouttimes(task.getAgenttimeouttimes() + 1);
+                        task.setWarnings("1");
+                        task.setWarningtime(new Date());
+                    }
+                    chatMessageWriter.save(task);
+                    processMessage(sessionConfig, sessionConfig.getTimeoutmsg(), agentStatus.getUsername(),
+                            agentUser);
+                    armVisitorIdle(agentUser, System.currentTimeMillis(), true);
+                } else if (sessionConfig.isResessiontimeout() && isBlankOrZero(task.getWarnings())) {
+                    // 未启用超时提醒，只设置了超时断开
+                    processMessage(sessionConfig, sessionConfig.getRetimeoutmsg(), agentStatus.getUsername(),
+                            agentUser);
+                    finish(agentUser);
+                }
+                break;
+            case TYPE_VISITOR_CLOSE:
+                // 访客回复后提醒时间会被清除
+                if (sessionConfig.isResessiontimeout() && task.getWarningtime() != null) {
+                    processMessage(sessionConfig, sessionConfig.getRetimeoutmsg(), sessionConfig.getServicename(),
+                            agentUser);
+                    finish(agentUser);
+                }
+                break;
+            default:
+                logger.warn("[process] unknown timer type {}", type);
+        }
+    }
+
+    /**
+     * 设置访客回复超时的定时器
+     *
+     * @param agentUser
+     * @param from
+     * @param warned    已经发送过提醒，再次超时时断开
+     */
+    private void armVisitorIdle(final AgentUser agentUser, final long from, final boolean warned) {
+        final SessionConfig sessionConfig = acdPolicyService.initSessionConfig(agentUser.getSkill());
+        if (warned) {
+            if (sessionConfig.isResessiontimeout()) {
+                cache.putAgentUserTimeout(TYPE_VISITOR_CLOSE, agentUser.getUserid(),
+                        deadline(from, sessionConfig.getRetimeout()));
+            }
+        } else if (sessionConfig.isSessiontimeout()) {
+            cache.putAgentUserTimeout(TYPE_VISITOR_IDLE, agentUser.getUserid(),
+                    deadline(from, sessionConfig.getTimeout()));
+        } else if (sessionConfig.isResessiontimeout()) {
+            cache.putAgentUserTimeout(TYPE_VISITOR_IDLE, agentUser.getUserid(),
+                    deadline(from, sessionConfig.getRetimeout()));
+        }
+    }
+
+    private void finish(final AgentUser agentUser) {
+        // finishAgentService 中取消该访客的全部定时器
+        try {
+            acdAgentService.finishAgentService(agentUser);
+        } catch (Exception e) {
+            logger.warn("[finish] exception: ", e);
+        }
+    }
+
+    /**
+     * @param from
+     * @param seconds 超时时间，与 MainUtils.getLastTime 一致，单位为秒
+     * @return
+     */
+    private static long deadline(final long from, final int seconds) {
+        return from + seconds * 1000L;
+    }
+
+    private static boolean isBlankOrZero(final String val) {
+        return val == null || val.equals("0");
+    }
+
+    /**
+     * 同时发送消息给坐席和访客
+     *
+     * @param sessionConfig
+     * @param message
+     * @param servicename
+     * @param agentUser
+     */
+    private void processMessage(
+            SessionConfig sessionConfig, String message, String servicename, AgentUser agentUser) {
+
+        Message outMessage = new Message();
+        if (StringUtils.isNotBlank(message)) {
+            outMessage.setMessage(message);
+            outMessage.setMessageType(MainContext.MediaType.TEXT.toString());
+            outMessage.setCalltype(MainContext.CallType.OUT.toString());
+            outMessage.setAgentUser(agentUser);
+            outMessage.setSnsAccount(null);
+
+            ChatMessage chatMessage = new ChatMessage();
+            if (agentUser != null) {
+                chatMessage.setAppid(agentUser.getAppid());
+
+                chatMessage.setUserid(agentUser.getUserid());
+                chatMessage.setUsession(agentUser.getUserid());
+                chatMessage.setTouser(agentUser.getUserid());
+                chatMessage.setUsername(agentUser.getUsername());
+                chatMessage.setMessage(message);
+
+                chatMessage.setId(MainUtils.getUUID());
+                chatMessage.setContextid(agentUser.getContextid());
+
+                chatMessage.setAgentserviceid(agentUser.getAgentserviceid());
+
+                chatMessage.setCalltype(MainContext.CallType.OUT.toString());
+                if (StringUtils.isNotBlank(agentUser.getAgentno())) {
+                    chatMessage.setTouser(agentUser.getUserid());
+                }
+                chatMessage.setChannel(agentUser.getChanneltype());
+                chatMessage.setUsession(agentUser.getUserid());
+
+                outMessage.setContextid(agentUser.getContextid());
+
+                outMessage.setChannelMessage(chatMessage);
+                if (StringUtils.isNotBlank(agentUser.getAgentname())) {
+                    // OUT类型，设置发消息人名字
+                    chatMessage.setUsername(agentUser.getAgentname());
+                } else {
+                    chatMessage.setUsername(servicename);
+                }
+                outMessage.setCreatetime(Constants.DISPLAY_DATE_FORMATTER.format(chatMessage.getCreatetime()));
+
+                // 通知坐席
+                if (StringUtils.isNotBlank(agentUser.getAgentno())) {
+                    peerSyncIM.send(MainContext.ReceiverType.AGENT, MainContext.ChannelType.WEBIM,
+                            agentUser.getAppid(),
+                            MainContext.MessageType.MESSAGE, agentUser.getAgentno(), outMessage, true);
+                }
+
+                // 通知访客
+                if (StringUtils.isNotBlank(chatMessage.getTouser())) {
+                    peerSyncIM.send(MainContext.ReceiverType.VISITOR,
+                            MainContext.ChannelType.toValue(agentUser.getChanneltype()),
+                            agentUser.getAppid(),
+                            MainContext.MessageType.MESSAGE,
+                            agentUser.getUserid(),
+                            outMessage, true);
+                }
+            }
+        }
+    }
+}
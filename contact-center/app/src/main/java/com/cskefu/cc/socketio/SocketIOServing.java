@@ -15,11 +15,13 @@
 package com.cskefu.cc.socketio;
 
 import com.cskefu.cc.basic.MainContext;
+import com.cskefu.cc.socketio.client.NettyClients;
 import com.cskefu.cc.socketio.handler.AgentEventHandler;
 import com.cskefu.cc.socketio.handler.EntIMEventHandler;
 import com.cskefu.cc.socketio.handler.IMEventHandler;
 import com.corundumstudio.socketio.SocketIONamespace;
 import com.corundumstudio.socketio.SocketIOServer;
+import io.micrometer.core.instrument.MeterRegistry;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.CommandLineRunner;
 import org.springframework.context.annotation.Bean;
@@ -31,10 +33,12 @@ public class SocketIOServing implements CommandLineRunner {
     private final SocketIONamespace imSocketNameSpace;
     private final SocketIONamespace agentSocketIONameSpace;
     private final SocketIONamespace entIMSocketIONameSpace;
+    private final MeterRegistry meterRegistry;
 
     @Autowired
-    public SocketIOServing(SocketIOServer server) {
+    public SocketIOServing(SocketIOServer server, MeterRegistry meterRegistry) {
         this.server = server;
+        this.meterRegistry = meterRegistry;
         // 访客聊天
         imSocketNameSpace = server.addNamespace(MainContext.NameSpaceEnum.IM.getNamespace());
         // 坐席聊天
@@ -68,6 +72,7 @@ public class SocketIOServing implements CommandLineRunner {
 
     @Override
     public void run(String... args) throws Exception {
+        NettyClients.getInstance().bindTo(meterRegistry);
         server.start();
         MainContext.setIMServerStatus(true);    // IMServer 启动成功
     }
@@ -15,7 +15,7 @@
 package com.cskefu.cc.socketio.client;
 
 import com.corundumstudio.socketio.SocketIOClient;
-import com.google.common.collect.ArrayListMultimap;
+import org.apache.commons.lang3.StringUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -25,7 +25,7 @@ public class NettyAgentClient implements NettyClient {
 
     private static final Logger logger = LoggerFactory.getLogger(NettyAgentClient.class);
 
-    private final ArrayListMultimap<String, SocketIOClient> agentClientsMap = ArrayListMultimap.create();
+    private final SocketIOClientRegistry agentClientsMap = new SocketIOClientRegistry();
 
     public List<SocketIOClient> getClients(String key) {
         return agentClientsMap.get(key);
@@ -44,9 +44,23 @@ public class NettyAgentClient implements NettyClient {
         return 0;
     }
 
+    /**
+     * 根据connectid删除坐席的一个连接
+     *
+     * @param key
+     * @param connectid
+     * @return 该坐席剩余的连接数量
+     */
+    public int removeClientByConnectid(final String key, final String connectid) {
+        return agentClientsMap.remove(key, client -> StringUtils.equals(client.get("connectid"), connectid));
+    }
 
     public void removeAll(final String key) {
         agentClientsMap.removeAll(key);
     }
 
+    public SocketIOClientRegistry getRegistry() {
+        return agentClientsMap;
+    }
+
 }
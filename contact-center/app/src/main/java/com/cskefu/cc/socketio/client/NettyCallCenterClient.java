@@ -16,7 +16,6 @@ package com.cskefu.cc.socketio.client;
 
 import com.cskefu.cc.basic.MainUtils;
 import com.corundumstudio.socketio.SocketIOClient;
-import com.google.common.collect.ArrayListMultimap;
 
 import java.util.List;
 
@@ -27,7 +26,7 @@ import java.util.List;
  */
 public class NettyCallCenterClient implements NettyClient{
 	
-	private final ArrayListMultimap<String, SocketIOClient> callCenterMap = ArrayListMultimap.create();
+	private final SocketIOClientRegistry callCenterMap = new SocketIOClientRegistry();
 	
 	public List<SocketIOClient> getClients(String key){
 		return callCenterMap.get(key) ;
@@ -38,16 +37,10 @@ public class NettyCallCenterClient implements NettyClient{
 	}
 	
 	public int removeClient(String key , String id){
-		List<SocketIOClient> keyClients = this.getClients(key) ;
-		for(SocketIOClient client : keyClients){
-			if(MainUtils.getContextID(client.getSessionId().toString()).equals(id)){
-				keyClients.remove(client) ;
-				break ;
-			}
-		}
-		if(keyClients.size() == 0){
-			callCenterMap.removeAll(key) ;
-		}
-		return keyClients.size();
+		return callCenterMap.remove(key, client -> MainUtils.getContextID(client.getSessionId().toString()).equals(id)) ;
+	}
+
+	public SocketIOClientRegistry getRegistry() {
+		return callCenterMap;
 	}
 }
@@ -15,7 +15,6 @@ package com.cskefu.cc.socketio.client;
 
 import com.cskefu.cc.basic.MainUtils;
 import com.corundumstudio.socketio.SocketIOClient;
-import com.google.common.collect.ArrayListMultimap;
 
 import java.util.List;
 
@@ -26,7 +25,7 @@ import java.util.List;
  */
 public class NettyCalloutClient implements NettyClient {
 
-    private final ArrayListMultimap<String, SocketIOClient> _map = ArrayListMultimap.create();
+    private final SocketIOClientRegistry _map = new SocketIOClientRegistry();
 
     public List<SocketIOClient> getClients(String key) {
         return _map.get(key);
@@ -37,16 +36,10 @@ public class NettyCalloutClient implements NettyClient {
     }
 
     public int removeClient(String key, String id) {
-        List<SocketIOClient> keyClients = this.getClients(key);
-        for (SocketIOClient client : keyClients) {
-            if (MainUtils.getContextID(client.getSessionId().toString()).equals(id)) {
-                keyClients.remove(client);
-                break;
-            }
-        }
-        if (keyClients.size() == 0) {
-            _map.removeAll(key);
-        }
-        return keyClients.size();
+        return _map.remove(key, client -> MainUtils.getContextID(client.getSessionId().toString()).equals(id));
+    }
+
+    public SocketIOClientRegistry getRegistry() {
+        return _map;
     }
 }
@@ -15,7 +15,6 @@ package com.cskefu.cc.socketio.client;
 
 import com.cskefu.cc.basic.MainUtils;
 import com.corundumstudio.socketio.SocketIOClient;
-import com.google.common.collect.ArrayListMultimap;
 
 import java.util.List;
 
@@ -27,7 +26,7 @@ import java.util.List;
  */
 public class NettyChatbotClient implements NettyClient {
 
-    private final ArrayListMultimap<String, SocketIOClient> _map = ArrayListMultimap.create();
+    private final SocketIOClientRegistry _map = new SocketIOClientRegistry();
 
     public List<SocketIOClient> getClients(String key) {
         return _map.get(key);
@@ -38,16 +37,10 @@ public class NettyChatbotClient implements NettyClient {
     }
 
     public int removeClient(String key, String id) {
-        List<SocketIOClient> keyClients = this.getClients(key);
-        for (SocketIOClient client : keyClients) {
-            if (MainUtils.getContextID(client.getSessionId().toString()).equals(id)) {
-                keyClients.remove(client);
-                break;
-            }
-        }
-        if (keyClients.size() == 0) {
-            _map.removeAll(key);
-        }
-        return keyClients.size();
+        return _map.remove(key, client -> MainUtils.getContextID(client.getSessionId().toString()).equals(id));
+    }
+
+    public SocketIOClientRegistry getRegistry() {
+        return _map;
     }
 }
@@ -25,4 +25,6 @@ public interface NettyClient {
     void putClient(String key, SocketIOClient client);
 
     int removeClient(String key, String id); // 返回该KEY剩余的连接客户端的数量
+
+    SocketIOClientRegistry getRegistry();
 }
@@ -16,11 +16,13 @@ package com.cskefu.cc.socketio.client;
 
 import com.cskefu.cc.activemq.AgentSubscription;
 import com.cskefu.cc.activemq.OnlineUserSubscription;
+import com.cskefu.cc.activemq.SocketIONodeSubscription;
 import com.cskefu.cc.basic.MainContext;
 import com.cskefu.cc.basic.MainUtils;
 import com.cskefu.cc.util.SerializeUtil;
 import com.corundumstudio.socketio.SocketIOClient;
 import com.google.gson.JsonObject;
+import io.micrometer.core.instrument.MeterRegistry;
 import org.apache.commons.lang3.StringUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -45,10 +47,28 @@ public class NettyClients {
         return imClients.size();
     }
 
+    private static SocketIONodeSubscription getSocketIONodeSubscription() {
+        return MainContext.getContext().getBean(SocketIONodeSubscription.class);
+    }
+
     public static NettyClients getInstance() {
         return clients;
     }
 
+    /**
+     * 注册各类连接的连接数指标
+     *
+     * @param registry
+     */
+    public void bindTo(MeterRegistry registry) {
+        imClients.getRegistry().bindTo(registry, "im");
+        entIMClients.getRegistry().bindTo(registry, "entim");
+        agentClients.getRegistry().bindTo(registry, "agent");
+        callCenterClients.getRegistry().bindTo(registry, "callcenter");
+        calloutClients.getRegistry().bindTo(registry, "callout");
+        chatbotClients.getRegistry().bindTo(registry, "chatbot");
+    }
+
     public NettyCallCenterClient getCallCenterClients() {
         return this.callCenterClients;
     }
@@ -66,6 +86,7 @@ public class NettyClients {
 
     public void putIMEventClient(String id, SocketIOClient userClient) {
         imClients.putClient(id, userClient);
+        getSocketIONodeSubscription().connected(SocketIONodeSubscription.TYPE_IM, id);
     }
 
     public void closeIMEventClient(String id, String sessionid) {
@@ -78,7 +99,9 @@ public class NettyClients {
     }
 
     public void removeIMEventClient(String id, String sessionid) {
-        imClients.removeClient(id, sessionid);
+        if (imClients.removeClient(id, sessionid) == 0) {
+            getSocketIONodeSubscription().disconnected(SocketIONodeSubscription.TYPE_IM, id);
+        }
     }
 
 
@@ -102,7 +125,9 @@ public class NettyClients {
      */
     public void publishIMEventMessage(final String id, final String event, Serializable data, boolean distribute) {
         // 检测client是否在这台机器上
-        if ((!sendIMEventMessage(id, event, data)) && distribute) {
+        if ((!sendIMEventMessage(id, event, data)) && distribute &&
+                !getSocketIONodeSubscription().publish(SocketIONodeSubscription.TYPE_IM, id, event, data)) {
+            // 没有找到连接所在的节点，广播到所有节点
             JsonObject payload = new JsonObject();
             payload.addProperty("event", event);
             payload.addProperty("id", id);
@@ -124,27 +149,22 @@ public class NettyClients {
      */
     public void putAgentEventClient(String id, SocketIOClient agentClient) {
         agentClients.putClient(id, agentClient);
+        getSocketIONodeSubscription().connected(SocketIONodeSubscription.TYPE_AGENT, id);
     }
 
     public int removeAgentEventClient(final String id, final String sessionid, final String connectid) {
-        List<SocketIOClient> keyClients = agentClients.getClients(id);
         logger.debug(
-                "[removeAgentEventClient] userId {}, sessionId {}, client size {}, connectid {}", id, sessionid,
-                keyClients.size(), connectid);
-
-        for (final SocketIOClient client : keyClients) {
-            if (StringUtils.equals(client.get("connectid"), connectid)) {
-                keyClients.remove(client);
-                logger.info("[removeAgentEventClient] socketClient userid {} connectid {} is removed.", id, connectid);
-                break;
-            }
-        }
+                "[removeAgentEventClient] userId {}, sessionId {}, connectid {}", id, sessionid, connectid);
 
-        if (keyClients.size() == 0) {
+        // 删除该连接，返回删除后剩余的连接数量
+        final int remaining = agentClients.removeClientByConnectid(id, connectid);
+        final List<SocketIOClient> keyClients = agentClients.getClients(id);
+
+        if (remaining == 0) {
             logger.info(
                     "[removeAgentEventClient] 0 clients for userId {} after remove, remove all keys from NettyClientMap",
                     id);
-            agentClients.removeAll(id);
+            getSocketIONodeSubscription().disconnected(SocketIONodeSubscription.TYPE_AGENT, id);
         } else {
             //  以下代码打印剩余的SocketIO的连接的信息
             StringBuffer sb = new StringBuffer();
@@ -157,7 +177,11 @@ public class NettyClients {
                     "[removeAgentEventClient] still get userId {} remaining clients[{}]: {}", id, keyClients.size(),
                     sb.toString());
         }
-        return keyClients.size();
+        return remaining;
+    }
+
+    public NettyAgentClient getAgentClients() {
+        return agentClients;
     }
 
     /**
@@ -200,7 +224,9 @@ public class NettyClients {
     public void publishAgentEventMessage(final String id, final String event, final Serializable data, boolean distribute) {
         // 检测client是否在这台机器上
         if (!sendAgentEventMessage(id, event, data)) {
-            if (distribute) {
+            if (distribute && !getSocketIONodeSubscription().publish(
+                    SocketIONodeSubscription.TYPE_AGENT, id, event, data)) {
+                // 没有找到连接所在的节点，广播到所有节点
                 JsonObject payload = new JsonObject();
                 payload.addProperty("event", event);
                 payload.addProperty("id", id);
@@ -16,7 +16,6 @@ package com.cskefu.cc.socketio.client;
 
 import com.cskefu.cc.basic.MainUtils;
 import com.corundumstudio.socketio.SocketIOClient;
-import com.google.common.collect.ArrayListMultimap;
 import org.springframework.stereotype.Component;
 
 import java.util.List;
@@ -24,7 +23,7 @@ import java.util.List;
 @Component
 public class NettyIMClient implements NettyClient {
 
-    private final ArrayListMultimap<String, SocketIOClient> imClientsMap = ArrayListMultimap.create();
+    private final SocketIOClientRegistry imClientsMap = new SocketIOClientRegistry();
 
     public int size() {
         return imClientsMap.size();
@@ -40,17 +39,8 @@ public class NettyIMClient implements NettyClient {
 
     @Override
     public int removeClient(String key, String id) {
-        List<SocketIOClient> keyClients = this.getClients(key);
-        for (SocketIOClient client : keyClients) {
-            if (MainUtils.getContextID(client.getSessionId().toString()).equals(id)) {
-                keyClients.remove(client);
-                break;
-            }
-        }
-        if (keyClients.size() == 0) {
-            imClientsMap.removeAll(key);
-        }
-        return keyClients.size();
+        return imClientsMap.remove(
+                key, client -> MainUtils.getContextID(client.getSessionId().toString()).equals(id));
     }
 
     public Boolean checkClient(String key, String id) {
@@ -64,4 +54,8 @@ public class NettyIMClient implements NettyClient {
 
         return false;
     }
+
+    public SocketIOClientRegistry getRegistry() {
+        return imClientsMap;
+    }
 }
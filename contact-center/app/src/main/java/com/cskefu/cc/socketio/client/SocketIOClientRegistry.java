@@ -0,0 +1,174 @@
+/*
+ * Copyright (C) 2023 Beijing Huaxia Chunsong Technology Co., Ltd.
+ * <https://www.chatopera.com>, Licensed under the Chunsong Public
+ * License, Version 1.0  (the "License"), https://docs.cskefu.com/licenses/v1.html
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cskefu.cc.socketio.client;
+
+import com.corundumstudio.socketio.SocketIOClient;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Predicate;
+
+/**
+ * 线程安全的 SocketIO 连接表，一个KEY对应多个连接
+ * <p>
+ * 每个KEY的连接列表是不可变的，增删时复制出新列表并原子地替换，
+ * 发送消息时读取连接列表不需要加锁，也不会在遍历时被修改。
+ */
+public class SocketIOClientRegistry {
+
+    private final ConcurrentMap<String, List<SocketIOClient>> clients = new ConcurrentHashMap<>();
+
+    // 当前连接数
+    private final AtomicInteger size = new AtomicInteger();
+    // 累计建立、断开的连接数
+    private final LongAdder connected = new LongAdder();
+    private final LongAdder disconnected = new LongAdder();
+
+    /**
+     * 获得KEY对应的连接，返回的列表不可修改
+     *
+     * @param key
+     * @return
+     */
+    public List<SocketIOClient> get(final String key) {
+        final List<SocketIOClient> result = clients.get(key);
+        return result != null ? result : Collections.emptyList();
+    }
+
+    /**
+     * 增加连接，同一个连接不会重复加入
+     *
+     * @param key
+     * @param client
+     */
+    public void put(final String key, final SocketIOClient client) {
+        clients.compute(key, (k, prev) -> {
+            if (prev == null) {
+                size.incrementAndGet();
+                connected.increment();
+                return Collections.singletonList(client);
+            }
+            if (prev.contains(client)) {
+                return prev;
+            }
+            final List<SocketIOClient> next = new ArrayList<>(prev.size() + 1);
+            next.addAll(prev);
+            next.add(client);
+            size.incrementAndGet();
+            connected.increment();
+            return Collections.unmodifiableList(next);
+        });
+    }
+
+    /**
+     * 删除第一个满足条件的连接
+     *
+     * @param key
+     * @param filter
+     * @return 该KEY剩余的连接数量
+     */
+    public int remove(final String key, final Predicate<SocketIOClient> filter) {
+        final List<SocketIOClient> result = clients.computeIfPresent(key, (k, prev) -> {
+            for (int i = 0; i < prev.size(); i++) {
+                if (filter.test(prev.get(i))) {
+                    size.decrementAndGet();
+                    disconnected.increment();
+                    if (prev.size() == 1) {
+                        return null;
+                    }
+                    final List<SocketIOClient> next = new ArrayList<>(prev);
+                    next.remove(i);
+                    return Collections.unmodifiableList(next);
+                }
+            }
+            return prev;
+        });
+        return result != null ? result.size() : 0;
+    }
+
+    /**
+     * 删除KEY对应的所有连接
+     *
+     * @param key
+     */
+    public void removeAll(final String key) {
+        final List<SocketIOClient> prev = clients.remove(key);
+        if (prev != null) {
+            size.addAndGet(-prev.size());
+            disconnected.add(prev.size());
+        }
+    }
+
+    /**
+     * 当前连接数
+     *
+     * @return
+     */
+    public int size() {
+        return size.get();
+    }
+
+    /**
+     * 当前有连接的KEY的数量
+     *
+     * @return
+     */
+    public int keySize() {
+        return clients.size();
+    }
+
+    /**
+     * 累计建立的连接数
+     *
+     * @return
+     */
+    public long getConnected() {
+        return connected.sum();
+    }
+
+    /**
+     * 累计断开的连接数
+     *
+     * @return
+     */
+    public long getDisconnected() {
+        return disconnected.sum();
+    }
+
+    /**
+     * 注册连接数指标，以 type 标签区分不同的连接表
+     *
+     * @param registry
+     * @param type
+     */
+    public void bindTo(final MeterRegistry registry, final String type) {
+        Gauge.builder("cskefu.socketio.clients", this, SocketIOClientRegistry::size)
+                .tag("type", type)
+                .register(registry);
+        Gauge.builder("cskefu.socketio.keys", this, SocketIOClientRegistry::keySize)
+                .tag("type", type)
+                .register(registry);
+        FunctionCounter.builder("cskefu.socketio.connected", this, SocketIOClientRegistry::getConnected)
+                .tag("type", type)
+                .register(registry);
+        FunctionCounter.builder("cskefu.socketio.disconnected", this, SocketIOClientRegistry::getDisconnected)
+                .tag("type", type)
+                .register(registry);
+    }
+}
@@ -23,7 +23,8 @@ import com.cskefu.cc.model.AgentService;
 import com.cskefu.cc.model.AgentUser;
 import com.cskefu.cc.model.AgentUserTask;
 import com.cskefu.cc.persistence.repository.AgentServiceRepository;
-import com.cskefu.cc.persistence.repository.AgentUserTaskRepository;
+import com.cskefu.cc.peer.im.ChatMessageWriter;
+import com.cskefu.cc.schedule.AgentUserTimeoutTask;
 import com.cskefu.cc.socketio.message.ChatMessage;
 import com.cskefu.cc.socketio.message.Message;
 import org.apache.commons.lang3.StringUtils;
@@ -35,7 +36,8 @@ import java.util.Date;
 public class HumanUtils {
     private final static Logger logger = LoggerFactory.getLogger(HumanUtils.class);
     private static AgentServiceRepository agentServiceRes;
-    private static AgentUserTaskRepository agentUserTaskRes;
+    private static ChatMessageWriter chatMessageWriter;
+    private static AgentUserTimeoutTask agentUserTimeoutTask;
 
     /**
      * 发送文本消息
@@ -116,14 +118,19 @@ public class HumanUtils {
 
             if (StringUtils.equals(chatMessage.getType(), "message")) {
                 // 处理超时回复
-                AgentUserTask agentUserTask = getAgentUserTaskRes().findById(agentUser.getId()).orElse(null);
-                agentUserTask.setLastgetmessage(new Date());
-                agentUserTask.setWarnings("1");
-                agentUserTask.setWarningtime(null);
-
-                agentUserTask.setReptime(null);
-                agentUserTask.setReptimes("0");
-                getAgentUserTaskRes().save(agentUserTask);
+                AgentUserTask agentUserTask = getChatMessageWriter().findAgentUserTask(agentUser.getId()).orElse(null);
+                synchronized (agentUserTask) {
+                    agentUserTask.setLastgetmessage(new Date());
+                    agentUserTask.setWarnings("1");
+                    agentUserTask.setWarningtime(null);
+
+                    agentUserTask.setReptime(null);
+                    agentUserTask.setReptimes("0");
+                }
+                getChatMessageWriter().save(agentUserTask);
+
+                // 开始计算坐席回复超时
+                getAgentUserTimeoutTask().visitorMessage(agentUser);
             }
         }
 
@@ -160,10 +167,17 @@ public class HumanUtils {
         return agentServiceRes;
     }
 
-    private static AgentUserTaskRepository getAgentUserTaskRes() {
-        if (agentUserTaskRes == null) {
-            agentUserTaskRes = MainContext.getContext().getBean(AgentUserTaskRepository.class);
+    private static ChatMessageWriter getChatMessageWriter() {
+        if (chatMessageWriter == null) {
+            chatMessageWriter = MainContext.getContext().getBean(ChatMessageWriter.class);
         }
-        return agentUserTaskRes;
+        return chatMessageWriter;
+    }
+
+    private static AgentUserTimeoutTask getAgentUserTimeoutTask() {
+        if (agentUserTimeoutTask == null) {
+            agentUserTimeoutTask = MainContext.getContext().getBean(AgentUserTimeoutTask.class);
+        }
+        return agentUserTimeoutTask;
     }
 }
@@ -15,67 +15,125 @@
 package com.cskefu.cc.util;
 
 import com.cskefu.cc.basic.MainContext;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 import org.apache.commons.io.FileUtils;
 import org.apache.commons.lang3.StringUtils;
 import org.lionsoul.ip2region.DataBlock;
 import org.lionsoul.ip2region.DbConfig;
-import org.lionsoul.ip2region.DbMakerConfigException;
 import org.lionsoul.ip2region.DbSearcher;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import java.io.File;
-import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
+/**
+ * IP 地址查询
+ * <p>
+ * ip2region 数据文件在启动时全部读入内存，使用 memorySearch 查询，多线程并发查询不需要加锁。
+ * 最近查询的 IP 地址和解析后的地区保存在有上限的缓存中，同一个地区只解析一次。
+ */
 public class IPTools {
+	private final static Logger logger = LoggerFactory.getLogger(IPTools.class);
+
 	private final String IP_DATA_PATH = "WEB-INF/data/ip/ip2region.db";
 	private static final IPTools iptools = new IPTools();
 	private DbSearcher _searcher = null ;
+
+	// IP 地址 -> 地区
+	private final Cache<String, Region> ips ;
+
+	// 数据文件中的地区位置 -> 地区
+	private final Map<Integer, Region> regions = new ConcurrentHashMap<>();
 	
 	public static IPTools getInstance(){
 		return iptools ;
 	}
 
 	public IPTools() {
+		ips = CacheBuilder.newBuilder().maximumSize(
+				MainContext.getContext().getEnvironment().getProperty("cskefu.ip.cache-size", Integer.class, 10000)).build();
 		try {
 			File dbFile = new File(MainContext.getContext().getEnvironment().getProperty("web.upload-path"), "ipdata/ipdata.db") ;
 			if(!dbFile.exists()){
 				FileUtils.copyInputStreamToFile(IPTools.class.getClassLoader().getResourceAsStream(IP_DATA_PATH),dbFile);
 			}
-			_searcher = new DbSearcher(new DbConfig(),dbFile.getAbsolutePath());
-		} catch (DbMakerConfigException | IOException e) {
-			e.printStackTrace();
+			_searcher = new DbSearcher(new DbConfig(), Files.readAllBytes(dbFile.toPath()));
+		} catch (Exception e) {
+			logger.error("[IPTools] fail to load ip data", e);
 		} 
 	}
+
 	public IP findGeography(String remote) {
-		IP ip = new IP();
-		try{
-			DataBlock block = _searcher.binarySearch(remote!=null ? remote : "127.0.0.1")  ;
-			if(block!=null && block.getRegion() != null){
-				String[] region = block.getRegion().split("[\\|]") ;
-				if(region.length == 5){
-					ip.setCountry(region[0]);
-					if(!StringUtils.isBlank(region[1]) && !region[1].equalsIgnoreCase("null")){
-						ip.setRegion(region[1]);
-					}else{
-						ip.setRegion("");
-					}
-					if(!StringUtils.isBlank(region[2]) && !region[2].equalsIgnoreCase("null")){
-						ip.setProvince(region[2]);
-					}else{
-						ip.setProvince("");
-					}
-					if(!StringUtils.isBlank(region[3]) && !region[3].equalsIgnoreCase("null")){
-						ip.setCity(region[3]);
-					}else{
-						ip.setCity("");
-					}
-					if(!StringUtils.isBlank(region[4]) && !region[4].equalsIgnoreCase("null")){
-						ip.setIsp(region[4]);
-					}else{
-						ip.setIsp("");
-					}
-				}
+		final String address = remote != null ? remote : "127.0.0.1";
+		Region region = ips.getIfPresent(address);
+		if (region == null) {
+			region = search(address);
+			ips.put(address, region);
+		}
+		return region.toIP();
+	}
+
+	private Region search(final String address) {
+		if (_searcher == null) {
+			return Region.EMPTY;
+		}
+		try {
+			DataBlock block = _searcher.memorySearch(address);
+			if (block != null && block.getRegion() != null) {
+				return regions.computeIfAbsent(block.getDataPtr(), ptr -> Region.parse(block.getRegion()));
+			}
+		} catch (Exception ex) {
+			logger.debug("[search] invalid address {}", address, ex);
+		}
+		return Region.EMPTY;
+	}
+
+	/**
+	 * 解析后的地区，格式为 国家|区域|省份|城市|ISP
+	 */
+	private static final class Region {
+		private static final Region EMPTY = new Region(null, null, null, null, null);
+
+		private final String country ;
+		private final String region ;
+		private final String province ;
+		private final String city ;
+		private final String isp ;
+
+		private Region(String country, String region, String province, String city, String isp) {
+			this.country = country;
+			this.region = region;
+			this.province = province;
+			this.city = city;
+			this.isp = isp;
+		}
+
+		private static Region parse(final String value) {
+			String[] region = value.split("[\\|]") ;
+			if (region.length != 5) {
+				return EMPTY;
+			}
+			return new Region(region[0], valueOf(region[1]), valueOf(region[2]), valueOf(region[3]), valueOf(region[4]));
+		}
+
+		private static String valueOf(final String value) {
+			return !StringUtils.isBlank(value) && !value.equalsIgnoreCase("null") ? value : "";
+		}
+
+		private IP toIP() {
+			IP ip = new IP();
+			if (this != EMPTY) {
+				ip.setCountry(country);
+				ip.setRegion(region);
+				ip.setProvince(province);
+				ip.setCity(city);
+				ip.setIsp(isp);
 			}
-		}catch(Exception ex){}
-		return ip;
+			return ip;
+		}
 	}
 }
@@ -13,65 +13,201 @@
  */
 package com.cskefu.cc.util;
 
+import com.cskefu.cc.model.*;
+import com.cskefu.cc.util.codec.BinaryCacheCodec;
+import com.cskefu.cc.util.codec.CacheCodec;
+import com.cskefu.cc.util.codec.JdkCacheCodec;
 import org.apache.commons.lang3.StringUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.*;
+import java.nio.charset.StandardCharsets;
 import java.util.Base64;
 import java.util.List;
 import java.util.Map;
 
+/**
+ * 缓存及消息对象的序列化
+ * <p>
+ * 数据格式：[MAGIC][codec id][codec version][payload]，
+ * 不以 MAGIC 开头的数据为旧版本写入的 Base64 编码的 Java 序列化数据，仍然可以读取。
+ * 写入时使用的编解码器由 cskefu.cache.codec 配置：
+ * binary - 紧凑二进制（默认）；jdk - Java 序列化；legacy - 旧版本格式，用于和旧版本节点混合部署期间
+ */
 public class SerializeUtil {
 
     private static final Logger logger = LoggerFactory.getLogger(SerializeUtil.class);
 
+    /**
+     * 数据头，不是 Base64 字符，也不是 Java 序列化的开头 0xACED
+     */
+    private static final byte MAGIC = (byte) 0xCC;
+    private static final int HEADER_LENGTH = 3;
+    private static final String LEGACY = "legacy";
+
+    private static final CacheCodec[] codecs = new CacheCodec[Byte.MAX_VALUE + 1];
+    private static final CacheCodec writer;
+
+    static {
+        final BinaryCacheCodec binary = new BinaryCacheCodec();
+        // 类型ID写入缓存数据，已经使用的ID不能修改
+        binary.register(1, AgentStatus.class);
+        binary.register(2, AgentUser.class);
+        binary.register(3, PassportWebIMUser.class);
+        binary.register(4, CousultInvite.class);
+        binary.register(5, SysDic.class);
+        binary.register(6, SessionConfig.class);
+        binary.register(7, BlackEntity.class);
+        binary.register(8, Organ.class);
+        binary.register(9, SystemConfig.class);
+
+        register(new JdkCacheCodec());
+        register(binary);
+
+        final String name = StringUtils.defaultIfBlank(
+                SystemEnvHelper.parseFromApplicationProps("cskefu.cache.codec"), binary.name());
+        writer = StringUtils.equalsIgnoreCase(LEGACY, name) ? null : findCodecByName(name, binary);
+        logger.info("[SerializeUtil] write with codec {}", writer == null ? LEGACY : writer.name());
+    }
+
     private SerializeUtil() {
     }
 
-    public static String serialize(final Serializable object) {
-        try (final ByteArrayOutputStream baos = new ByteArrayOutputStream();
-             ObjectOutputStream oos = new ObjectOutputStream(baos)) {
-            oos.writeObject(object);
-            return Base64.getEncoder().encodeToString(baos.toByteArray());
-        } catch (final IOException e) {
-            logger.warn("[serialize] error", e);
-            return null;
+    private static void register(final CacheCodec codec) {
+        if (codecs[codec.id()] != null) {
+            throw new IllegalStateException("Duplicated codec id " + codec.id());
         }
+        codecs[codec.id()] = codec;
     }
 
-    public static <T extends Serializable> String serialize(final List<T> object) {
-        try (final ByteArrayOutputStream baos = new ByteArrayOutputStream();
-             ObjectOutputStream oos = new ObjectOutputStream(baos)) {
-            oos.writeObject(object);
-            return Base64.getEncoder().encodeToString(baos.toByteArray());
+    /**
+     * 根据名称查找编解码器，未知的名称使用默认的编解码器
+     */
+    private static CacheCodec findCodecByName(final String name, final CacheCodec defaultCodec) {
+        for (final CacheCodec codec : codecs) {
+            if (codec != null && StringUtils.equalsIgnoreCase(codec.name(), name)) {
+                return codec;
+            }
+        }
+        logger.warn("[findCodecByName] unknown codec {}, fallback to {}", name, defaultCodec.name());
+        return defaultCodec;
+    }
+
+    /**
+     * 编码为存入 Redis 的字节
+     *
+     * @param object
+     * @return
+     */
+    public static byte[] encode(final Object object) {
+        try {
+            if (writer == null) {
+                return legacy(object).getBytes(StandardCharsets.US_ASCII);
+            }
+            final byte[] payload = writer.encode(object);
+            final byte[] data = new byte[HEADER_LENGTH + payload.length];
+            data[0] = MAGIC;
+            data[1] = writer.id();
+            data[2] = writer.version();
+            System.arraycopy(payload, 0, data, HEADER_LENGTH, payload.length);
+            return data;
         } catch (final IOException e) {
-            logger.warn("[serialize] List<T> error", e);
+            logger.warn("[encode] error", e);
             return null;
         }
     }
 
-    public static <TK, TV extends Serializable> String serialize(final Map<TK, TV> object) {
-        try (final ByteArrayOutputStream baos = new ByteArrayOutputStream();
-             ObjectOutputStream oos = new ObjectOutputStream(baos)) {
-            oos.writeObject(object);
-            return Base64.getEncoder().encodeToString(baos.toByteArray());
-        } catch (final IOException e) {
-            logger.warn("[serialize] Map<TK, TV> error", e);
+    /**
+     * 解码从 Redis 读出的字节，兼容旧版本的 Base64 字符串
+     *
+     * @param data
+     * @param <T>
+     * @return
+     */
+    @SuppressWarnings("unchecked")
+    public static <T extends Serializable> T decode(final byte[] data) {
+        if (data == null || data.length == 0) {
+            return null;
+        }
+
+        try {
+            if (data[0] != MAGIC) {
+                return (T) fromLegacy(Base64.getDecoder().decode(data));
+            }
+            if (data.length < HEADER_LENGTH || data[1] < 0 || codecs[data[1]] == null) {
+                throw new StreamCorruptedException("Unknown codec " + (data.length > 1 ? data[1] : -1));
+            }
+            final CacheCodec codec = codecs[data[1]];
+            if (data[2] > codec.version()) {
+                throw new StreamCorruptedException(
+                        "Unsupported version " + data[2] + " of codec " + codec.name());
+            }
+            return (T) codec.decode(data, HEADER_LENGTH);
+        } catch (final IOException | IllegalArgumentException e) {
+            logger.warn("[decode] error", e);
             return null;
         }
     }
 
+    public static String serialize(final Serializable object) {
+        return toBase64(object);
+    }
+
+    public static <T extends Serializable> String serialize(final List<T> object) {
+        return toBase64(object);
+    }
+
+    public static <TK, TV extends Serializable> String serialize(final Map<TK, TV> object) {
+        return toBase64(object);
+    }
+
+    /**
+     * 反序列化 Base64 字符串，兼容旧版本的 Java 序列化数据
+     *
+     * @param objectAsString
+     * @param <T>
+     * @return
+     */
     public static <T extends Serializable> T deserialize(final String objectAsString) {
         if (StringUtils.isBlank(objectAsString))
             return null;
 
         final byte[] data = Base64.getDecoder().decode(objectAsString);
-        try (final ObjectInputStream ois = new ObjectInputStream(new ByteArrayInputStream(data))) {
-            return (T) ois.readObject();
-        } catch (final IOException | ClassNotFoundException e) {
+        if (data.length > 0 && data[0] == MAGIC) {
+            return decode(data);
+        }
+
+        try {
+            return (T) fromLegacy(data);
+        } catch (final IOException e) {
             logger.warn("[serialize] error", e);
             return null;
         }
     }
+
+    /**
+     * 用于消息队列等只能传输字符串的场景
+     */
+    private static String toBase64(final Object object) {
+        if (writer == null) {
+            try {
+                return legacy(object);
+            } catch (final IOException e) {
+                logger.warn("[serialize] error", e);
+                return null;
+            }
+        }
+
+        final byte[] data = encode(object);
+        return data == null ? null : Base64.getEncoder().encodeToString(data);
+    }
+
+    private static String legacy(final Object object) throws IOException {
+        return Base64.getEncoder().encodeToString(codecs[JdkCacheCodec.ID].encode(object));
+    }
+
+    private static Object fromLegacy(final byte[] data) throws IOException {
+        return codecs[JdkCacheCodec.ID].decode(data, 0);
+    }
 }
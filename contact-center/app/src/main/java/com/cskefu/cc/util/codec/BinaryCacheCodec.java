@@ -0,0 +1,508 @@
+/*
+ * Copyright (C) 2023 Beijing Huaxia Chunsong Technology Co., Ltd.
+ * <https://www.chatopera.com>, Licensed under the Chunsong Public
+ * License, Version 1.0  (the "License"), https://docs.cskefu.com/licenses/v1.html
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cskefu.cc.util.codec;
+
+import java.io.*;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.nio.charset.StandardCharsets;
+import java.sql.Timestamp;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 基于字段模式的紧凑二进制编解码器
+ * <p>
+ * 注册过的类型按照字段顺序逐个写入带类型标记的值，不写入类名和字段名；
+ * 常见的值类型（字符串、数字、日期、ArrayList、HashMap等）使用紧凑编码，
+ * 其余可序列化的值退回到 Java 序列化，嵌套写入。
+ * <p>
+ * 每个对象写入字段模式的指纹，如果读写两端的类定义不一致，解码失败而不是读出错误的数据。
+ * 注册的类型必须有无参构造函数，且不能自定义 writeObject/readObject 等序列化方法。
+ */
+public class BinaryCacheCodec implements CacheCodec {
+
+    public static final byte ID = 2;
+
+    private static final int MAX_DEPTH = 32;
+
+    private static final byte TAG_NULL = 0;
+    private static final byte TAG_STRING = 1;
+    private static final byte TAG_INT = 2;
+    private static final byte TAG_LONG = 3;
+    private static final byte TAG_TRUE = 4;
+    private static final byte TAG_FALSE = 5;
+    private static final byte TAG_DATE = 6;
+    private static final byte TAG_TIMESTAMP = 7;
+    private static final byte TAG_DOUBLE = 8;
+    private static final byte TAG_FLOAT = 9;
+    private static final byte TAG_SHORT = 10;
+    private static final byte TAG_BYTE = 11;
+    private static final byte TAG_CHAR = 12;
+    private static final byte TAG_BYTES = 13;
+    private static final byte TAG_ARRAY_LIST = 14;
+    private static final byte TAG_HASH_MAP = 15;
+    private static final byte TAG_LINKED_HASH_MAP = 16;
+    private static final byte TAG_OBJECT = 17;
+    private static final byte TAG_JDK = 18;
+
+    private final Map<Class<?>, Schema> schemasByClass = new ConcurrentHashMap<>();
+    private final Map<Integer, Schema> schemasByTypeId = new ConcurrentHashMap<>();
+
+    private final JdkCacheCodec jdk = new JdkCacheCodec();
+
+    @Override
+    public byte id() {
+        return ID;
+    }
+
+    @Override
+    public byte version() {
+        return 1;
+    }
+
+    @Override
+    public String name() {
+        return "binary";
+    }
+
+    /**
+     * 注册一个类型，类型ID写入数据，一经使用不能再修改
+     *
+     * @param typeId
+     * @param clazz
+     */
+    public void register(final int typeId, final Class<? extends Serializable> clazz) {
+        if (typeId <= 0) {
+            throw new IllegalArgumentException("typeId should be positive, " + clazz.getName());
+        }
+        if (schemasByTypeId.containsKey(typeId) || schemasByClass.containsKey(clazz)) {
+            throw new IllegalArgumentException("Duplicated registration for " + clazz.getName() + " with id " + typeId);
+        }
+        if (Externalizable.class.isAssignableFrom(clazz) || hasCustomSerialization(clazz)) {
+            throw new IllegalArgumentException("Customized serialization is not supported, " + clazz.getName());
+        }
+
+        final Schema schema = new Schema(typeId, clazz);
+        schemasByClass.put(clazz, schema);
+        schemasByTypeId.put(typeId, schema);
+    }
+
+    public boolean isRegistered(final Class<?> clazz) {
+        return schemasByClass.containsKey(clazz);
+    }
+
+    @Override
+    public byte[] encode(final Object object) throws IOException {
+        final Output out = new Output(256);
+        writeValue(out, object, 0);
+        return out.toByteArray();
+    }
+
+    @Override
+    public Object decode(final byte[] data, final int offset) throws IOException {
+        return readValue(new Input(data, offset), 0);
+    }
+
+    private void writeValue(final Output out, final Object value, final int depth) throws IOException {
+        if (value == null) {
+            out.writeByte(TAG_NULL);
+            return;
+        }
+
+        final Class<?> clazz = value.getClass();
+        if (clazz == String.class) {
+            out.writeByte(TAG_STRING);
+            out.writeString((String) value);
+        } else if (clazz == Integer.class) {
+            out.writeByte(TAG_INT);
+            out.writeVarLong((Integer) value);
+        } else if (clazz == Long.class) {
+            out.writeByte(TAG_LONG);
+            out.writeVarLong((Long) value);
+        } else if (clazz == Boolean.class) {
+            out.writeByte((Boolean) value ? TAG_TRUE : TAG_FALSE);
+        } else if (clazz == Date.class) {
+            out.writeByte(TAG_DATE);
+            out.writeVarLong(((Date) value).getTime());
+        } else if (clazz == Timestamp.class) {
+            out.writeByte(TAG_TIMESTAMP);
+            out.writeVarLong(((Timestamp) value).getTime());
+            out.writeVarLong(((Timestamp) value).getNanos());
+        } else if (clazz == Double.class) {
+            out.writeByte(TAG_DOUBLE);
+            out.writeFixedLong(Double.doubleToRawLongBits((Double) value));
+        } else if (clazz == Float.class) {
+            out.writeByte(TAG_FLOAT);
+            out.writeVarLong(Float.floatToRawIntBits((Float) value));
+        } else if (clazz == Short.class) {
+            out.writeByte(TAG_SHORT);
+            out.writeVarLong((Short) value);
+        } else if (clazz == Byte.class) {
+            out.writeByte(TAG_BYTE);
+            out.writeByte((Byte) value);
+        } else if (clazz == Character.class) {
+            out.writeByte(TAG_CHAR);
+            out.writeVarLong((Character) value);
+        } else if (clazz == byte[].class) {
+            final byte[] bytes = (byte[]) value;
+            out.writeByte(TAG_BYTES);
+            out.writeVarLong(bytes.length);
+            out.writeBytes(bytes, 0, bytes.length);
+        } else if (depth >= MAX_DEPTH) {
+            // 嵌套过深（可能存在循环引用），交给 Java 序列化处理
+            writeJdk(out, value);
+        } else if (clazz == ArrayList.class) {
+            final List<?> list = (List<?>) value;
+            out.writeByte(TAG_ARRAY_LIST);
+            out.writeVarLong(list.size());
+            for (final Object item : list) {
+                writeValue(out, item, depth + 1);
+            }
+        } else if (clazz == HashMap.class || clazz == LinkedHashMap.class) {
+            final Map<?, ?> map = (Map<?, ?>) value;
+            out.writeByte(clazz == HashMap.class ? TAG_HASH_MAP : TAG_LINKED_HASH_MAP);
+            out.writeVarLong(map.size());
+            for (final Map.Entry<?, ?> entry : map.entrySet()) {
+                writeValue(out, entry.getKey(), depth + 1);
+                writeValue(out, entry.getValue(), depth + 1);
+            }
+        } else {
+            final Schema schema = schemasByClass.get(clazz);
+            if (schema != null) {
+                out.writeByte(TAG_OBJECT);
+                out.writeVarLong(schema.typeId);
+                out.writeFixedInt(schema.fingerprint);
+                for (final Field field : schema.fields) {
+                    try {
+                        writeValue(out, field.get(value), depth + 1);
+                    } catch (IllegalAccessException e) {
+                        throw new InvalidClassException(clazz.getName(), e.getMessage());
+                    }
+                }
+            } else if (value instanceof Serializable) {
+                writeJdk(out, value);
+            } else {
+                throw new NotSerializableException(clazz.getName());
+            }
+        }
+    }
+
+    private void writeJdk(final Output out, final Object value) throws IOException {
+        final byte[] bytes = jdk.encode(value);
+        out.writeByte(TAG_JDK);
+        out.writeVarLong(bytes.length);
+        out.writeBytes(bytes, 0, bytes.length);
+    }
+
+    private Object readValue(final Input in, final int depth) throws IOException {
+        final byte tag = in.readByte();
+        switch (tag) {
+            case TAG_NULL:
+                return null;
+            case TAG_STRING:
+                return in.readString();
+            case TAG_INT:
+                return (int) in.readVarLong();
+            case TAG_LONG:
+                return in.readVarLong();
+            case TAG_TRUE:
+                return Boolean.TRUE;
+            case TAG_FALSE:
+                return Boolean.FALSE;
+            case TAG_DATE:
+                return new Date(in.readVarLong());
+            case TAG_TIMESTAMP: {
+                final Timestamp ts = new Timestamp(in.readVarLong());
+                ts.setNanos((int) in.readVarLong());
+                return ts;
+            }
+            case TAG_DOUBLE:
+                return Double.longBitsToDouble(in.readFixedLong());
+            case TAG_FLOAT:
+                return Float.intBitsToFloat((int) in.readVarLong());
+            case TAG_SHORT:
+                return (short) in.readVarLong();
+            case TAG_BYTE:
+                return in.readByte();
+            case TAG_CHAR:
+                return (char) in.readVarLong();
+            case TAG_BYTES:
+                return in.readBytes(in.readLength());
+            case TAG_ARRAY_LIST: {
+                final int size = in.readLength();
+                final ArrayList<Object> list = new ArrayList<>(size);
+                for (int i = 0; i < size; i++) {
+                    list.add(readValue(in, depth + 1));
+                }
+                return list;
+            }
+            case TAG_HASH_MAP:
+            case TAG_LINKED_HASH_MAP: {
+                final int size = in.readLength();
+                final Map<Object, Object> map = tag == TAG_HASH_MAP ?
+                        new HashMap<>(Math.max(16, (int) (size / 0.75f) + 1)) :
+                        new LinkedHashMap<>(Math.max(16, (int) (size / 0.75f) + 1));
+                for (int i = 0; i < size; i++) {
+                    final Object key = readValue(in, depth + 1);
+                    map.put(key, readValue(in, depth + 1));
+                }
+                return map;
+            }
+            case TAG_OBJECT:
+                return readObject(in, depth);
+            case TAG_JDK: {
+                final int length = in.readLength();
+                final Object obj = jdk.decode(in.data, in.pos, length);
+                in.skip(length);
+                return obj;
+            }
+            default:
+                throw new StreamCorruptedException("Unknown tag " + tag);
+        }
+    }
+
+    private Object readObject(final Input in, final int depth) throws IOException {
+        final int typeId = (int) in.readVarLong();
+        final int fingerprint = in.readFixedInt();
+        final Schema schema = schemasByTypeId.get(typeId);
+        if (schema == null) {
+            throw new InvalidClassException("Unregistered type id " + typeId);
+        }
+        if (schema.fingerprint != fingerprint) {
+            throw new InvalidClassException(schema.clazz.getName(), "schema fingerprint mismatch");
+        }
+
+        final Object obj = schema.newInstance();
+        for (final Field field : schema.fields) {
+            final Object value = readValue(in, depth + 1);
+            if (value == null && field.getType().isPrimitive()) {
+                continue;
+            }
+            try {
+                field.set(obj, value);
+            } catch (IllegalAccessException | IllegalArgumentException e) {
+                throw new InvalidClassException(schema.clazz.getName(), field.getName() + ": " + e.getMessage());
+            }
+        }
+        return obj;
+    }
+
+    private static boolean hasCustomSerialization(final Class<?> clazz) {
+        final Set<String> methods = new HashSet<>(
+                Arrays.asList("writeObject", "readObject", "readObjectNoData", "writeReplace", "readResolve"));
+        for (Class<?> c = clazz; c != null && c != Object.class; c = c.getSuperclass()) {
+            for (final Method m : c.getDeclaredMethods()) {
+                if (methods.contains(m.getName())) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 类型的字段模式：父类字段在前，同一个类中按字段名排序
+     */
+    private static final class Schema {
+        private final int typeId;
+        private final Class<?> clazz;
+        private final Field[] fields;
+        private final int fingerprint;
+        private final Constructor<?> constructor;
+
+        private Schema(final int typeId, final Class<?> clazz) {
+            this.typeId = typeId;
+            this.clazz = clazz;
+
+            final LinkedList<Class<?>> hierarchy = new LinkedList<>();
+            for (Class<?> c = clazz; c != null && c != Object.class; c = c.getSuperclass()) {
+                hierarchy.addFirst(c);
+            }
+
+            final List<Field> result = new ArrayList<>();
+            final StringBuilder signature = new StringBuilder();
+            for (final Class<?> c : hierarchy) {
+                final List<Field> declared = new ArrayList<>();
+                for (final Field field : c.getDeclaredFields()) {
+                    final int modifiers = field.getModifiers();
+                    if (Modifier.isStatic(modifiers) || Modifier.isTransient(modifiers)) {
+                        continue;
+                    }
+                    field.setAccessible(true);
+                    declared.add(field);
+                }
+                declared.sort(Comparator.comparing(Field::getName));
+                for (final Field field : declared) {
+                    signature.append(field.getName()).append(':').append(field.getType().getName()).append(';');
+                }
+                result.addAll(declared);
+            }
+            this.fields = result.toArray(new Field[0]);
+            this.fingerprint = signature.toString().hashCode();
+
+            try {
+                this.constructor = clazz.getDeclaredConstructor();
+                this.constructor.setAccessible(true);
+            } catch (NoSuchMethodException e) {
+                throw new IllegalArgumentException("No-arg constructor is required, " + clazz.getName());
+            }
+        }
+
+        private Object newInstance() throws IOException {
+            try {
+                return constructor.newInstance();
+            } catch (ReflectiveOperationException e) {
+                throw new InvalidClassException(clazz.getName(), e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * 可增长的字节缓冲，不做同步
+     */
+    private static final class Output {
+        private byte[] buf;
+        private int count;
+
+        private Output(final int size) {
+            buf = new byte[size];
+        }
+
+        private void ensure(final int extra) {
+            if (count + extra > buf.length) {
+                buf = Arrays.copyOf(buf, Math.max(buf.length << 1, count + extra));
+            }
+        }
+
+        private void writeByte(final int b) {
+            ensure(1);
+            buf[count++] = (byte) b;
+        }
+
+        private void writeBytes(final byte[] bytes, final int offset, final int length) {
+            ensure(length);
+            System.arraycopy(bytes, offset, buf, count, length);
+            count += length;
+        }
+
+        /**
+         * ZigZag + 变长编码，小的正数和负数都只占用很少的字节
+         */
+        private void writeVarLong(final long value) {
+            long v = (value << 1) ^ (value >> 63);
+            ensure(10);
+            while ((v & ~0x7FL) != 0) {
+                buf[count++] = (byte) ((v & 0x7F) | 0x80);
+                v >>>= 7;
+            }
+            buf[count++] = (byte) v;
+        }
+
+        private void writeFixedInt(final int v) {
+            ensure(4);
+            buf[count++] = (byte) (v >>> 24);
+            buf[count++] = (byte) (v >>> 16);
+            buf[count++] = (byte) (v >>> 8);
+            buf[count++] = (byte) v;
+        }
+
+        private void writeFixedLong(final long v) {
+            writeFixedInt((int) (v >>> 32));
+            writeFixedInt((int) v);
+        }
+
+        private void writeString(final String s) {
+            final byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+            writeVarLong(bytes.length);
+            writeBytes(bytes, 0, bytes.length);
+        }
+
+        private byte[] toByteArray() {
+            return Arrays.copyOf(buf, count);
+        }
+    }
+
+    private static final class Input {
+        private final byte[] data;
+        private int pos;
+
+        private Input(final byte[] data, final int offset) {
+            this.data = data;
+            this.pos = offset;
+        }
+
+        private void require(final int n) throws EOFException {
+            if (n < 0 || pos + n > data.length) {
+                throw new EOFException();
+            }
+        }
+
+        private byte readByte() throws EOFException {
+            require(1);
+            return data[pos++];
+        }
+
+        private long readVarLong() throws IOException {
+            long raw = 0;
+            for (int shift = 0; shift < 64; shift += 7) {
+                final byte b = readByte();
+                raw |= (long) (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) {
+                    return (raw >>> 1) ^ -(raw & 1);
+                }
+            }
+            throw new StreamCorruptedException("Malformed varint");
+        }
+
+        private int readLength() throws IOException {
+            final long length = readVarLong();
+            if (length < 0 || length > data.length - pos) {
+                throw new StreamCorruptedException("Invalid length " + length);
+            }
+            return (int) length;
+        }
+
+        private int readFixedInt() throws EOFException {
+            require(4);
+            final int v = ((data[pos] & 0xFF) << 24) | ((data[pos + 1] & 0xFF) << 16) |
+                    ((data[pos + 2] & 0xFF) << 8) | (data[pos + 3] & 0xFF);
+            pos += 4;
+            return v;
+        }
+
+        private long readFixedLong() throws EOFException {
+            final long high = readFixedInt();
+            return (high << 32) | (readFixedInt() & 0xFFFFFFFFL);
+        }
+
+        private byte[] readBytes(final int length) throws EOFException {
+            require(length);
+            final byte[] bytes = Arrays.copyOfRange(data, pos, pos + length);
+            pos += length;
+            return bytes;
+        }
+
+        private String readString() throws IOException {
+            final int length = readLength();
+            final String s = new String(data, pos, length, StandardCharsets.UTF_8);
+            pos += length;
+            return s;
+        }
+
+        private void skip(final int n) throws EOFException {
+            require(n);
+            pos += n;
+        }
+    }
+}
@@ -0,0 +1,61 @@
+/*
+ * Copyright (C) 2023 Beijing Huaxia Chunsong Technology Co., Ltd.
+ * <https://www.chatopera.com>, Licensed under the Chunsong Public
+ * License, Version 1.0  (the "License"), https://docs.cskefu.com/licenses/v1.html
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cskefu.cc.util.codec;
+
+import java.io.IOException;
+
+/**
+ * 缓存对象编解码器
+ * 编码结果由 SerializeUtil 加上数据头：[MAGIC][codec id][codec version][payload]
+ * 读取时根据数据头选择解码器，因此新增编解码器时 id 不能与已有的重复
+ */
+public interface CacheCodec {
+
+    /**
+     * 编解码器标识，写入数据头
+     *
+     * @return
+     */
+    byte id();
+
+    /**
+     * 编码格式版本，写入数据头；解码时拒绝高于当前版本的数据
+     *
+     * @return
+     */
+    byte version();
+
+    /**
+     * 配置项 cskefu.cache.codec 使用的名称
+     *
+     * @return
+     */
+    String name();
+
+    /**
+     * 编码对象，不包含数据头
+     *
+     * @param object
+     * @return
+     * @throws IOException
+     */
+    byte[] encode(Object object) throws IOException;
+
+    /**
+     * 解码从 offset 开始的数据
+     *
+     * @param data
+     * @param offset 数据头之后的位置
+     * @return
+     * @throws IOException
+     */
+    Object decode(byte[] data, int offset) throws IOException;
+}
@@ -0,0 +1,59 @@
+/*
+ * Copyright (C) 2023 Beijing Huaxia Chunsong Technology Co., Ltd.
+ * <https://www.chatopera.com>, Licensed under the Chunsong Public
+ * License, Version 1.0  (the "License"), https://docs.cskefu.com/licenses/v1.html
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cskefu.cc.util.codec;
+
+import java.io.*;
+
+/**
+ * 基于 Java 序列化的编解码器，不做 Base64 编码
+ */
+public class JdkCacheCodec implements CacheCodec {
+
+    public static final byte ID = 1;
+
+    @Override
+    public byte id() {
+        return ID;
+    }
+
+    @Override
+    public byte version() {
+        return 1;
+    }
+
+    @Override
+    public String name() {
+        return "jdk";
+    }
+
+    @Override
+    public byte[] encode(final Object object) throws IOException {
+        try (final ByteArrayOutputStream baos = new ByteArrayOutputStream();
+             final ObjectOutputStream oos = new ObjectOutputStream(baos)) {
+            oos.writeObject(object);
+            oos.flush();
+            return baos.toByteArray();
+        }
+    }
+
+    @Override
+    public Object decode(final byte[] data, final int offset) throws IOException {
+        return decode(data, offset, data.length - offset);
+    }
+
+    Object decode(final byte[] data, final int offset, final int length) throws IOException {
+        try (final ObjectInputStream ois = new ObjectInputStream(new ByteArrayInputStream(data, offset, length))) {
+            return ois.readObject();
+        } catch (ClassNotFoundException e) {
+            throw new InvalidClassException(e.getMessage());
+        }
+    }
+}
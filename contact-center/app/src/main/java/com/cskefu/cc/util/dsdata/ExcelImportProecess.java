@@ -28,30 +28,75 @@ import org.apache.poi.hssf.usermodel.HSSFCell;
 import org.apache.poi.hssf.usermodel.HSSFDataFormat;
 import org.apache.poi.hssf.usermodel.HSSFDateUtil;
 import org.apache.poi.hssf.usermodel.HSSFWorkbook;
+import org.apache.poi.openxml4j.opc.OPCPackage;
+import org.apache.poi.openxml4j.opc.PackageAccess;
 import org.apache.poi.ss.usermodel.Cell;
+import org.apache.poi.ss.usermodel.DataFormatter;
+import org.apache.poi.ss.usermodel.DateUtil;
 import org.apache.poi.ss.usermodel.Row;
 import org.apache.poi.ss.usermodel.Sheet;
-import org.apache.poi.ss.usermodel.Workbook;
-import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.apache.poi.ss.util.CellReference;
+import org.apache.poi.util.SAXHelper;
+import org.apache.poi.xssf.eventusermodel.ReadOnlySharedStringsTable;
+import org.apache.poi.xssf.eventusermodel.XSSFReader;
+import org.apache.poi.xssf.eventusermodel.XSSFSheetXMLHandler;
+import org.apache.poi.xssf.usermodel.XSSFComment;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.xml.sax.InputSource;
+import org.xml.sax.XMLReader;
 
+import java.io.File;
 import java.io.FileInputStream;
-import java.io.FileNotFoundException;
-import java.io.IOException;
 import java.io.InputStream;
 import java.lang.reflect.InvocationTargetException;
 import java.text.DecimalFormat;
 import java.text.SimpleDateFormat;
+import java.util.ArrayList;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.atomic.AtomicInteger;
 
+/**
+ * Excel 导入
+ * <p>
+ * xlsx 文件按 SAX 方式逐行读取，不加载整个工作簿；每行按预先生成的字典项和外键查找表转换，
+ * 每 BATCH_SIZE 行在一个事务中写入数据库，并更新导入进度。
+ */
 public class ExcelImportProecess extends DataProcess {
+    private final static Logger logger = LoggerFactory.getLogger(ExcelImportProecess.class);
+
+    // 每批写入数据库的行数
+    private static final int BATCH_SIZE = 500;
+
     private final DecimalFormat format = new DecimalFormat("###");
     private final AtomicInteger pages = new AtomicInteger();
     private final AtomicInteger errors = new AtomicInteger();
 
+    // 标题行每一列对应的字段，没有对应字段的列为null
+    private TableProperties[] columns;
+
+    // 下拉字段：字段名 -> 字典项名称 -> 写入的值
+    private final Map<String, Map<String, String>> dicValues = new HashMap<>();
+
+    // 字典项编码 -> 字典项名称，不是字典项编码时为null
+    private final Map<String, String> dicNames = new HashMap<>();
+
+    // 外键字段：字段名 -> 名称、标签、标题或ID -> ID
+    private final Map<String, Map<String, String>> refIds = new HashMap<>();
+
+    // 等待写入数据库的数据
+    private final List<Object> batch = new ArrayList<>();
+
+    private TransactionTemplate transactionTemplate;
+
+    private ReporterRepository reporterRes;
+
     public ExcelImportProecess(DSDataEvent event) {
         super(event);
     }
@@ -61,238 +106,55 @@ public class ExcelImportProecess extends DataProcess {
         processExcel(event);
     }
 
-    @SuppressWarnings({"unchecked", "rawtypes"})
     private void processExcel(final DSDataEvent event) {
-        InputStream is = null;
+        final Reporter report = event.getDSData().getReport();
+        reporterRes = MainContext.getContext().getBean(ReporterRepository.class);
+        transactionTemplate = new TransactionTemplate(MainContext.getContext().getBean(PlatformTransactionManager.class));
         try {
-            event.getDSData().getReport().setTableid(event.getDSData().getTask().getId());
+            report.setTableid(event.getDSData().getTask().getId());
             if (event.getDSData().getUser() != null) {
-                event.getDSData().getReport().setUserid(event.getDSData().getUser().getId());
-                event.getDSData().getReport().setUsername(event.getDSData().getUser().getUsername());
+                report.setUserid(event.getDSData().getUser().getId());
+                report.setUsername(event.getDSData().getUser().getUsername());
             }
+            report.setStarttime(new Date());
+            report.setStatus(MainContext.TaskStatusType.RUNNING.getType());
+            reporterRes.save(report);
 
-            try {
-                is = new FileInputStream(event.getDSData().getFile());
-            } catch (FileNotFoundException ex) {
-                ex.printStackTrace();
-            }
-            boolean isExcel2003 = true;
-            if (isExcel2007(event.getDSData().getFile().getName())) {
-                isExcel2003 = false;
-            }
-
-            Workbook wb = null;
-            try {
-                wb = isExcel2003 ? new HSSFWorkbook(is) : new XSSFWorkbook(is);
-            } catch (IOException ex) {
-                ex.printStackTrace();
-            }
-            Sheet sheet = wb.getSheetAt(0);
-            Row titleRow = sheet.getRow(0);
-            Row valueRow = sheet.getRow(1);
-            int totalRows = sheet.getPhysicalNumberOfRows();
-            int colNum = titleRow.getPhysicalNumberOfCells();
-            for (int i = 2; i < totalRows && valueRow == null; i++) {
-                valueRow = sheet.getRow(i);
-                if (valueRow != null) {
-                    break;
-                }
-            }
             /**
              * 需要检查Mapping 是否存在
              */
             long start = System.currentTimeMillis();
-            Map<Object, List> refValues = new HashMap<>();
-            MetadataTable table = event.getDSData().getTask();
-            for (TableProperties tp : table.getTableproperty()) {
-                if (tp.isReffk() && !StringUtils.isBlank(tp.getReftbid())) {
-                    DataExchangeInterface exchange = (DataExchangeInterface) MainContext.getContext().getBean(tp.getReftbid());
-                    refValues.put(tp.getFieldname(), exchange.getListDataById(null, null));
-                }
-            }
+            prepare(event.getDSData().getTask());
 
-            for (int i = 1; i < totalRows; i++) {
-                Row row = sheet.getRow(i);
-                Object data = null;
-                if (row != null) {
-                    if (event.getDSData().getClazz() != null) {
-                        data = event.getDSData().getClazz().newInstance();
-                    }
-                    Map<Object, Object> values = new HashMap<>();
-                    ArrayListMultimap<String, Object> multiValues = ArrayListMultimap.create();
-                    boolean skipDataVal = false; //跳过数据校验
-                    StringBuffer pkStr = new StringBuffer(), allStr = new StringBuffer();
-                    for (int col = 0; col < colNum; col++) {
-                        Cell value = row.getCell(col);
-                        Cell title = titleRow.getCell(col);
-                        String titleValue = getValue(title);
-                        TableProperties tableProperties = getTableProperties(event, titleValue);
-                        if (tableProperties != null && value != null) {
-                            String valuestr = getValue(value);
-                            if (!StringUtils.isBlank(valuestr)) {
-                                if (tableProperties.isModits()) {
-                                    if (!StringUtils.isBlank(valuestr)) {
-                                        multiValues.put(tableProperties.getFieldname(), valuestr);
-                                    }
-                                } else {
-                                    if (tableProperties.isSeldata()) {
-                                        SysDic sysDic = Dict.getInstance().getDicItem(valuestr);
-                                        if (sysDic != null) {
-                                            values.put(tableProperties.getFieldname(), sysDic.getName());
-                                        } else {
-                                            List<SysDic> dicItemList = Dict.getInstance().getSysDic(tableProperties.getSeldatacode());
-                                            if (dicItemList != null && dicItemList.size() > 0) {
-                                                for (SysDic dicItem : dicItemList) {
-                                                    if (dicItem.getName().equals(valuestr)) {
-                                                        values.put(tableProperties.getFieldname(), dicItem.isDiscode() ? dicItem.getCode() : dicItem.getId());
-                                                        break;
-                                                    }
-                                                }
-                                            }
-                                        }
-                                    } else if (tableProperties.isReffk() && refValues.get(tableProperties.getFieldname()) != null) {
-                                        List keys = refValues.get(tableProperties.getFieldname());
-                                        if (keys != null) {
-                                            values.put(tableProperties.getFieldname(), getRefid(tableProperties, refValues.get(tableProperties.getFieldname()), valuestr));
-                                        }
-                                    } else {
-                                        values.put(tableProperties.getFieldname(), valuestr);
-                                    }
-                                    if (tableProperties.isPk() && !tableProperties.getFieldname().equalsIgnoreCase("id")) {
-                                        pkStr.append(valuestr);
-                                    }
-                                }
-                                allStr.append(valuestr);
-                            }
-                            event.getDSData().getReport().setBytes(event.getDSData().getReport().getBytes() + valuestr.length());
-                            event.getDSData().getReport().getAtompages().incrementAndGet();
-                        }
-                    }
-                    if (values.get("id") == null) {
-                        if (pkStr.length() > 0) {
-                            values.put("id", MainUtils.md5(pkStr.append(event.getDSData().getTask().getTablename()).toString()));
-                        } else {
-                            values.put("id", MainUtils.md5(allStr.append(event.getDSData().getTask().getTablename()).toString()));
-                        }
-                    }
-                    if (event.getValues() != null && event.getValues().size() > 0) {
-                        values.putAll(event.getValues());
-                    }
-                    values.putAll(multiValues.asMap());
-                    String validFaildMessage = null;
-                    for (TableProperties tp : table.getTableproperty()) {
-                        if (!StringUtils.isBlank(tp.getDefaultvaluetitle())) {
-                            String valuestr = (String) values.get(tp.getFieldname());
-                            if (tp.getDefaultvaluetitle().contains("required") && StringUtils.isBlank(valuestr)) {
-                                skipDataVal = true;
-                                validFaildMessage = "required";
-                                break;
-                            } else if (valuestr != null && (tp.getDefaultvaluetitle().contains("numstr") && !valuestr.matches("[\\d]{1,}"))) {
-                                skipDataVal = true;
-                                validFaildMessage = "numstr";
-                                break;
-                            } else if (valuestr != null && (tp.getDefaultvaluetitle().contains("datenum") || tp.getDefaultvaluetitle().contains("datetime"))) {
-                                if (!valuestr.matches("[\\d]{4,4}-[\\d]{2,2}-[\\d]{2,2}") && !valuestr.matches("[\\d]{4,4}-[\\d]{2,2}-[\\d]{2} [\\d]{2,2}:[\\d]{2,2}:[\\d]{2,2}")) {
-                                    skipDataVal = true;
-                                    validFaildMessage = "datenum";
-                                    break;
-                                } else {
-                                    if (valuestr.matches("[\\d]{4,4}-[\\d]{2,2}-{1,1}")) {
-                                        if ("date".equals(tp.getDefaultfieldvalue())) {
-                                            values.put(tp.getFieldname(), MainUtils.simpleDateFormat.parse(valuestr));
-                                        } else {
-                                            values.put(tp.getFieldname(), MainUtils.simpleDateFormat.format(MainUtils.simpleDateFormat.parse(valuestr)));
-                                        }
-                                    } else if (valuestr.matches("[\\d]{4,4}-[\\d]{2,2}-[\\d]{2,2} [\\d]{2,2}:[\\d]{2,2}:[\\d]{2,2}")) {
-                                        if ("date".equals(tp.getDefaultfieldvalue())) {
-                                            values.put(tp.getFieldname(), MainUtils.dateFormate.parse(valuestr));
-                                        } else {
-                                            values.put(tp.getFieldname(), MainUtils.simpleDateFormat.format(MainUtils.dateFormate.parse(valuestr)));
-                                        }
-
-                                    }
-                                }
-                            }
-                        }
-                        if (tp.isReffk() && !StringUtils.isBlank(tp.getReftbid()) && refValues.get(tp.getFieldname()) == null) {
-                            DataExchangeInterface exchange = (DataExchangeInterface) MainContext.getContext().getBean(tp.getReftbid());
-                            exchange.process(data);
-                        }
-                    }
-
-                    event.getDSData().getReport().setTotal(pages.intValue());
-                    values.put("creater", event.getValues().get("creater"));
-                    values.put("organ", event.getValues().get("organ"));
-                    if (data != null && skipDataVal == false) {
-                        MainUtils.populate(data, values);
-                        pages.incrementAndGet();
-                        event.getDSData().getProcess().process(data);
-                    } else if (data == null) {
-                        /**
-                         * 导入的数据，只写入ES
-                         */
-                        if (skipDataVal == true) {    //跳过
-                            values.put("status", "invalid");
-                            values.put("validresult", "invalid");
-                            values.put("validmessage", validFaildMessage != null ? validFaildMessage : "");
-                        } else {
-                            values.put("validresult", "valid");
-                        }
-                        values.put("status", MainContext.NamesDisStatusType.NOT.toString());
-                        values.put("batid", event.getBatid());
-
-                        values.put("createtime", System.currentTimeMillis());
-                        values.put("callstatus", MainContext.NameStatusType.NOTCALL.toString());
-                        values.put("execid", event.getDSData().getReport().getId());
-
-                        if (i % 500 == 0) {
-                            MainContext.getContext().getBean(ReporterRepository.class).save(event.getDSData().getReport());
-                        }
-
-                        if (values.get("cusid") == null) {
-                            /**
-                             *
-                             */
-                            values.put("cusid", values.get("id"));
-                        }
-                        pages.incrementAndGet();
-                        event.getDSData().getProcess().process(values);
-
-                        /**
-                         * 访客信息表
-                         */
-                    }
-                    if (skipDataVal == true) {    //跳过
-                        errors.incrementAndGet();
-                        continue;
-                    }
-                }
+            final File file = event.getDSData().getFile();
+            if (isExcel2007(file.getName())) {
+                readXlsx(file);
+            } else {
+                readXls(file);
             }
+            flush();
 
             event.setTimes(System.currentTimeMillis() - start);
-            event.getDSData().getReport().setEndtime(new Date());
-            event.getDSData().getReport().setAmount(String.valueOf((float) event.getTimes() / 1000f));
-            event.getDSData().getReport().setStatus(MainContext.TaskStatusType.END.getType());
-            event.getDSData().getReport().setTotal(pages.intValue());
-            event.getDSData().getReport().setPages(pages.intValue());
-            event.getDSData().getReport().setErrors(errors.intValue());
+            report.setEndtime(new Date());
+            report.setAmount(String.valueOf((float) event.getTimes() / 1000f));
+            report.setStatus(MainContext.TaskStatusType.END.getType());
+            report.setTotal(pages.intValue());
+            report.setPages(pages.intValue());
+            report.setErrors(errors.intValue());
         } catch (Exception e) {
-            e.printStackTrace();
+            logger.error("[processExcel] fail to import {}", event.getDSData().getFile().getName(), e);
+            report.setEndtime(new Date());
+            report.setStatus(MainContext.TaskStatusType.END.getType());
+            report.setError(true);
+            report.setErrormsg(e.getMessage());
         } finally {
-            if (is != null) {
-                try {
-                    is.close();
-                } catch (IOException e) {
-                    e.printStackTrace();
-                }
-            }
             if (event.getDSData().getFile().exists()) {
                 event.getDSData().getFile().delete();
             }
             /**
              * 更新数据
              */
-            MainContext.getContext().getBean(ReporterRepository.class).save(event.getDSData().getReport());
+            reporterRes.save(report);
             if (event.getDSData().getClazz() == null && !StringUtils.isBlank(event.getBatid())) {
                 JobDetailRepository batchRes = MainContext.getContext().getBean(JobDetailRepository.class);
                 JobDetail batch = this.event.getDSData().getJobDetail();
@@ -312,36 +174,363 @@ public class ExcelImportProecess extends DataProcess {
         }
     }
 
-    private String getRefid(TableProperties tp, List<Object> dataList, String value) throws IllegalAccessException, InvocationTargetException, NoSuchMethodException {
-        String id = "";
+    /**
+     * 生成下拉字段和外键字段的查找表
+     *
+     * @param table
+     */
+    private void prepare(final MetadataTable table) throws IllegalAccessException, InvocationTargetException, NoSuchMethodException {
+        for (TableProperties tp : table.getTableproperty()) {
+            if (tp.isReffk() && !StringUtils.isBlank(tp.getReftbid())) {
+                DataExchangeInterface exchange = (DataExchangeInterface) MainContext.getContext().getBean(tp.getReftbid());
+                List<?> dataList = exchange.getListDataById(null, null);
+                if (dataList != null) {
+                    refIds.put(tp.getFieldname(), getRefIds(dataList));
+                }
+            }
+            if (tp.isSeldata()) {
+                Map<String, String> items = new HashMap<>();
+                List<SysDic> dicItemList = Dict.getInstance().getSysDic(tp.getSeldatacode());
+                if (dicItemList != null) {
+                    for (SysDic dicItem : dicItemList) {
+                        items.putIfAbsent(dicItem.getName(), dicItem.isDiscode() ? dicItem.getCode() : dicItem.getId());
+                    }
+                }
+                dicValues.put(tp.getFieldname(), items);
+            }
+        }
+    }
+
+    /**
+     * 外键数据按名称或标签、标题、ID的优先级查找ID
+     *
+     * @param dataList
+     * @return
+     */
+    private Map<String, String> getRefIds(List<?> dataList) throws IllegalAccessException, InvocationTargetException, NoSuchMethodException {
+        Map<String, String> byName = new HashMap<>(), byTitle = new HashMap<>(), byId = new HashMap<>();
         for (Object data : dataList) {
-            Object target = null;
+            String id = BeanUtils.getProperty(data, "id");
+            if (id == null) {
+                continue;
+            }
             if (PropertyUtils.isReadable(data, "name")) {
-                target = BeanUtils.getProperty(data, "name");
-                if (target != null && target.equals(value)) {
-                    id = BeanUtils.getProperty(data, "id");
-                }
+                putRef(byName, BeanUtils.getProperty(data, "name"), id, true);
             }
             if (PropertyUtils.isReadable(data, "tag")) {
-                target = BeanUtils.getProperty(data, "tag");
-                if (target != null && target.equals(value)) {
-                    id = BeanUtils.getProperty(data, "id");
+                putRef(byName, BeanUtils.getProperty(data, "tag"), id, true);
+            }
+            if (PropertyUtils.isReadable(data, "title")) {
+                putRef(byTitle, BeanUtils.getProperty(data, "title"), id, false);
+            }
+            byId.put(id, id);
+        }
+        Map<String, String> ids = new HashMap<>(byId);
+        ids.putAll(byTitle);
+        ids.putAll(byName);
+        return ids;
+    }
+
+    private static void putRef(Map<String, String> ids, String key, String id, boolean replace) {
+        if (key != null) {
+            if (replace) {
+                ids.put(key, id);
+            } else {
+                ids.putIfAbsent(key, id);
+            }
+        }
+    }
+
+    private void readXls(final File file) throws Exception {
+        try (InputStream is = new FileInputStream(file); HSSFWorkbook wb = new HSSFWorkbook(is)) {
+            Sheet sheet = wb.getSheetAt(0);
+            Row titleRow = sheet.getRow(0);
+            if (titleRow == null) {
+                return;
+            }
+            int colNum = titleRow.getPhysicalNumberOfCells();
+            String[] titles = new String[colNum];
+            for (int col = 0; col < colNum; col++) {
+                titles[col] = getValue(titleRow.getCell(col));
+            }
+            onTitle(titles);
+
+            for (int i = 1; i <= sheet.getLastRowNum(); i++) {
+                Row row = sheet.getRow(i);
+                if (row != null) {
+                    String[] cells = new String[colNum];
+                    for (int col = 0; col < colNum; col++) {
+                        Cell value = row.getCell(col);
+                        cells[col] = value != null ? getValue(value) : null;
+                    }
+                    onRow(cells);
                 }
             }
-            if (StringUtils.isBlank(id) && PropertyUtils.isReadable(data, "title")) {
-                target = BeanUtils.getProperty(data, "title");
-                if (target != null && target.equals(value)) {
-                    id = BeanUtils.getProperty(data, "id");
+        }
+    }
+
+    private void readXlsx(final File file) throws Exception {
+        OPCPackage pkg = OPCPackage.open(file, PackageAccess.READ);
+        try {
+            XSSFReader reader = new XSSFReader(pkg);
+            Iterator<InputStream> sheets = reader.getSheetsData();
+            if (!sheets.hasNext()) {
+                return;
+            }
+            XMLReader parser = SAXHelper.newXMLReader();
+            parser.setContentHandler(new XSSFSheetXMLHandler(reader.getStylesTable(), new ReadOnlySharedStringsTable(pkg),
+                    new RowReader(), new CellFormatter(), false));
+            try (InputStream sheet = sheets.next()) {
+                parser.parse(new InputSource(sheet));
+            }
+        } finally {
+            pkg.revert();
+        }
+    }
+
+    private void onTitle(final String[] titles) {
+        columns = new TableProperties[titles.length];
+        for (int col = 0; col < titles.length; col++) {
+            columns[col] = getTableProperties(event, titles[col] != null ? titles[col] : "");
+        }
+    }
+
+    /**
+     * 处理一行数据
+     *
+     * @param cells 单元格的值，没有单元格时为null
+     */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private void onRow(final String[] cells) throws Exception {
+        if (columns == null) {
+            return;
+        }
+        MetadataTable table = event.getDSData().getTask();
+        Object data = null;
+        if (event.getDSData().getClazz() != null) {
+            data = event.getDSData().getClazz().newInstance();
+        }
+        Map<Object, Object> values = new HashMap<>();
+        ArrayListMultimap<String, Object> multiValues = ArrayListMultimap.create();
+        boolean skipDataVal = false; //跳过数据校验
+        StringBuffer pkStr = new StringBuffer(), allStr = new StringBuffer();
+        for (int col = 0; col < columns.length && col < cells.length; col++) {
+            TableProperties tableProperties = columns[col];
+            String valuestr = cells[col];
+            if (tableProperties != null && valuestr != null) {
+                if (!StringUtils.isBlank(valuestr)) {
+                    if (tableProperties.isModits()) {
+                        multiValues.put(tableProperties.getFieldname(), valuestr);
+                    } else {
+                        if (tableProperties.isSeldata()) {
+                            String dicName;
+                            if (dicNames.containsKey(valuestr)) {
+                                dicName = dicNames.get(valuestr);
+                            } else {
+                                // computeIfAbsent 不会保存 null，不是字典项编码时也要记录下来
+                                SysDic sysDic = Dict.getInstance().getDicItem(valuestr);
+                                dicName = sysDic != null ? sysDic.getName() : null;
+                                dicNames.put(valuestr, dicName);
+                            }
+                            if (dicName != null) {
+                                values.put(tableProperties.getFieldname(), dicName);
+                            } else {
+                                String dicValue = dicValues.get(tableProperties.getFieldname()).get(valuestr);
+                                if (dicValue != null) {
+                                    values.put(tableProperties.getFieldname(), dicValue);
+                                }
+                            }
+                        } else if (tableProperties.isReffk() && refIds.get(tableProperties.getFieldname()) != null) {
+                            values.put(tableProperties.getFieldname(), refIds.get(tableProperties.getFieldname()).getOrDefault(valuestr, ""));
+                        } else {
+                            values.put(tableProperties.getFieldname(), valuestr);
+                        }
+                        if (tableProperties.isPk() && !tableProperties.getFieldname().equalsIgnoreCase("id")) {
+                            pkStr.append(valuestr);
+                        }
+                    }
+                    allStr.append(valuestr);
                 }
+                event.getDSData().getReport().setBytes(event.getDSData().getReport().getBytes() + valuestr.length());
+                event.getDSData().getReport().getAtompages().incrementAndGet();
             }
-            if (StringUtils.isBlank(id)) {
-                target = BeanUtils.getProperty(data, "id");
-                if (target != null && target.equals(value)) {
-                    id = target.toString();
+        }
+        if (values.get("id") == null) {
+            if (pkStr.length() > 0) {
+                values.put("id", MainUtils.md5(pkStr.append(event.getDSData().getTask().getTablename()).toString()));
+            } else {
+                values.put("id", MainUtils.md5(allStr.append(event.getDSData().getTask().getTablename()).toString()));
+            }
+        }
+        if (event.getValues() != null && event.getValues().size() > 0) {
+            values.putAll(event.getValues());
+        }
+        values.putAll(multiValues.asMap());
+        String validFaildMessage = null;
+        for (TableProperties tp : table.getTableproperty()) {
+            if (!StringUtils.isBlank(tp.getDefaultvaluetitle())) {
+                String valuestr = (String) values.get(tp.getFieldname());
+                if (tp.getDefaultvaluetitle().contains("required") && StringUtils.isBlank(valuestr)) {
+                    skipDataVal = true;
+                    validFaildMessage = "required";
+                    break;
+                } else if (valuestr != null && (tp.getDefaultvaluetitle().contains("numstr") && !valuestr.matches("[\\d]{1,}"))) {
+                    skipDataVal = true;
+                    validFaildMessage = "numstr";
+                    break;
+                } else if (valuestr != null && (tp.getDefaultvaluetitle().contains("datenum") || tp.getDefaultvaluetitle().contains("datetime"))) {
+                    if (!valuestr.matches("[\\d]{4,4}-[\\d]{2,2}-[\\d]{2,2}") && !valuestr.matches("[\\d]{4,4}-[\\d]{2,2}-[\\d]{2} [\\d]{2,2}:[\\d]{2,2}:[\\d]{2,2}")) {
+                        skipDataVal = true;
+                        validFaildMessage = "datenum";
+                        break;
+                    } else {
+                        if (valuestr.matches("[\\d]{4,4}-[\\d]{2,2}-{1,1}")) {
+                            if ("date".equals(tp.getDefaultfieldvalue())) {
+                                values.put(tp.getFieldname(), MainUtils.simpleDateFormat.parse(valuestr));
+                            } else {
+                                values.put(tp.getFieldname(), MainUtils.simpleDateFormat.format(MainUtils.simpleDateFormat.parse(valuestr)));
+                            }
+                        } else if (valuestr.matches("[\\d]{4,4}-[\\d]{2,2}-[\\d]{2,2} [\\d]{2,2}:[\\d]{2,2}:[\\d]{2,2}")) {
+                            if ("date".equals(tp.getDefaultfieldvalue())) {
+                                values.put(tp.getFieldname(), MainUtils.dateFormate.parse(valuestr));
+                            } else {
+                                values.put(tp.getFieldname(), MainUtils.simpleDateFormat.format(MainUtils.dateFormate.parse(valuestr)));
+                            }
+
+                        }
+                    }
                 }
             }
+            if (tp.isReffk() && !StringUtils.isBlank(tp.getReftbid()) && refIds.get(tp.getFieldname()) == null) {
+                DataExchangeInterface exchange = (DataExchangeInterface) MainContext.getContext().getBean(tp.getReftbid());
+                exchange.process(data);
+            }
+        }
+
+        event.getDSData().getReport().setTotal(pages.intValue());
+        values.put("creater", event.getValues().get("creater"));
+        values.put("organ", event.getValues().get("organ"));
+        if (data != null && skipDataVal == false) {
+            MainUtils.populate(data, values);
+            pages.incrementAndGet();
+            add(data);
+        } else if (data == null) {
+            /**
+             * 导入的数据，只写入ES
+             */
+            if (skipDataVal == true) {    //跳过
+                values.put("status", "invalid");
+                values.put("validresult", "invalid");
+                values.put("validmessage", validFaildMessage != null ? validFaildMessage : "");
+            } else {
+                values.put("validresult", "valid");
+            }
+            values.put("status", MainContext.NamesDisStatusType.NOT.toString());
+            values.put("batid", event.getBatid());
+
+            values.put("createtime", System.currentTimeMillis());
+            values.put("callstatus", MainContext.NameStatusType.NOTCALL.toString());
+            values.put("execid", event.getDSData().getReport().getId());
+
+            if (values.get("cusid") == null) {
+                /**
+                 *
+                 */
+                values.put("cusid", values.get("id"));
+            }
+            pages.incrementAndGet();
+            add(values);
+
+            /**
+             * 访客信息表
+             */
+        }
+        if (skipDataVal == true) {    //跳过
+            errors.incrementAndGet();
+        }
+    }
+
+    private void add(final Object data) {
+        batch.add(data);
+        if (batch.size() >= BATCH_SIZE) {
+            flush();
+        }
+    }
+
+    /**
+     * 在一个事务中写入一批数据，并保存导入进度
+     */
+    private void flush() {
+        if (batch.isEmpty()) {
+            return;
+        }
+        final List<Object> data = new ArrayList<>(batch);
+        batch.clear();
+        transactionTemplate.executeWithoutResult(status -> event.getDSData().getProcess().process(data));
+
+        Reporter report = event.getDSData().getReport();
+        report.setTotal(pages.intValue());
+        report.setPages(pages.intValue());
+        report.setErrors(errors.intValue());
+        reporterRes.save(report);
+        logger.debug("[flush] imported {}, errors {}", pages.intValue(), errors.intValue());
+    }
+
+    /**
+     * xlsx 逐行读取，第一行为标题
+     */
+    private final class RowReader implements XSSFSheetXMLHandler.SheetContentsHandler {
+        private final List<String> cells = new ArrayList<>();
+
+        @Override
+        public void startRow(int rowNum) {
+            cells.clear();
+        }
+
+        @Override
+        public void endRow(int rowNum) {
+            String[] values = cells.toArray(new String[0]);
+            if (rowNum == 0) {
+                onTitle(values);
+            } else {
+                try {
+                    onRow(values);
+                } catch (RuntimeException e) {
+                    throw e;
+                } catch (Exception e) {
+                    throw new IllegalStateException("fail to import row " + rowNum, e);
+                }
+            }
+        }
+
+        @Override
+        public void cell(String cellReference, String formattedValue, XSSFComment comment) {
+            int col = cellReference != null ? new CellReference(cellReference).getCol() : cells.size();
+            while (cells.size() <= col) {
+                cells.add(null);
+            }
+            cells.set(col, formattedValue != null ? formattedValue : "");
+        }
+
+        @Override
+        public void headerFooter(String text, boolean isHeader, String tagName) {
+        }
+    }
+
+    /**
+     * xlsx 数值和日期单元格的格式，与 getValue 相同
+     */
+    private final class CellFormatter extends DataFormatter {
+        @Override
+        public String formatRawCellContents(double value, int formatIndex, String formatString) {
+            if ((formatIndex == 58 || DateUtil.isADateFormat(formatIndex, formatString)) && DateUtil.isValidExcelDate(value)) {
+                return new SimpleDateFormat("yyyy-MM-dd HH:mm:ss").format(DateUtil.getJavaDate(value));
+            } else if (isNumberFormat((short) formatIndex)) {
+                DecimalFormat numberFormat = getNumberFormat(formatString);
+                return numberFormat != null ? numberFormat.format(value) : String.valueOf(value);
+            }
+            return format.format(value);
         }
-        return id;
     }
 
     private TableProperties getTableProperties(DSDataEvent event, String title) {
@@ -23,47 +23,177 @@ import com.cskefu.cc.persistence.interfaces.DataExchangeInterface;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.poi.hssf.usermodel.HSSFCellStyle;
 import org.apache.poi.hssf.usermodel.HSSFFont;
-import org.apache.poi.hssf.usermodel.HSSFRichTextString;
-import org.apache.poi.hssf.usermodel.HSSFWorkbook;
 import org.apache.poi.hssf.util.HSSFColor;
 import org.apache.poi.ss.usermodel.*;
+import org.apache.poi.xssf.streaming.SXSSFWorkbook;
 
+import java.beans.IntrospectionException;
+import java.beans.Introspector;
+import java.beans.PropertyDescriptor;
 import java.io.IOException;
 import java.io.OutputStream;
-import java.util.ArrayList;
-import java.util.List;
-import java.util.Map;
+import java.lang.reflect.Method;
+import java.text.SimpleDateFormat;
+import java.util.*;
+import java.util.function.Function;
 
+/**
+ * 导出 Excel（xlsx）
+ * <p>
+ * 使用 SXSSF 流式写入，内存中只保留最近的行，其余的行写入临时文件。
+ * 可以逐行写入实体，也可以按ID顺序分批读取并写入；实体的属性通过预先解析的 getter 读取，不需要先转换为 Map。
+ */
 @SuppressWarnings("deprecation")
 public class ExcelExporterProcess {
-    private final HSSFWorkbook wb;
+    // 内存中保留的行数
+    private final static int ROW_ACCESS_WINDOW = 100;
+    // 关联数据的缓存上限
+    private final static int MAX_REF_CACHE_SIZE = 10000;
+
+    private final SXSSFWorkbook wb;
     private final Sheet sheet;
     private CellStyle firstStyle = null;
+    private final CellStyle contentStyle;
+    private final SimpleDateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss");
 
     private int rowNum;
 
-    private final List<Map<String, Object>> values;
+    private List<Map<String, Object>> values;
     private final MetadataTable table;
     private final OutputStream output;
     private Row titleRow;
 
+    // 最近一次写入的实体类及其属性的 getter
+    private Class<?> beanClass;
+    private Map<String, Method> readMethods;
+
+    // 关联表ID -> 数据，同一次导出中不重复查询
+    private final Map<String, Object> refValues = new HashMap<>();
+
     public ExcelExporterProcess(List<Map<String, Object>> values, MetadataTable table, OutputStream output) {
+        this(table, output);
         this.values = values;
+    }
+
+    public ExcelExporterProcess(MetadataTable table, OutputStream output) {
         this.table = table;
         this.output = output;
-        wb = new HSSFWorkbook();
+        // 多值字段在写入数据时增加标题列，此时标题行需要一直保留在内存中
+        final boolean modits = table != null && table.getTableproperty() != null &&
+                table.getTableproperty().stream().anyMatch(TableProperties::isModits);
+        wb = new SXSSFWorkbook(modits ? -1 : ROW_ACCESS_WINDOW);
+        wb.setCompressTempFiles(true);
         sheet = wb.createSheet();
+        sheet.setDefaultColumnWidth(20);
         firstStyle = createFirstCellStyle();
+        contentStyle = createContentStyle();
         createHead();
     }
 
     public void process() throws IOException {
-        createContent();
-        if (table != null) {
-            for (TableProperties tp : table.getTableproperty()) {
-                sheet.autoSizeColumn(table.getTableproperty().indexOf(tp));
+        if (values != null) {
+            for (Map<String, Object> value : values) {
+                write(value);
+            }
+        }
+        finish();
+    }
+
+    /**
+     * 写入一行
+     *
+     * @param value 字段名 -> 值
+     */
+    public void write(final Map<String, Object> value) {
+        createRow(value::get);
+    }
+
+    /**
+     * 写入一个实体
+     *
+     * @param bean
+     */
+    public void write(final Object bean) {
+        final Map<String, Method> methods = getReadMethods(bean.getClass());
+        createRow(name -> read(bean, methods.get(name)));
+    }
+
+    /**
+     * 按ID顺序分批读取并写入，直到没有更多数据或者达到最大行数
+     *
+     * @param chunk      读取ID大于参数的一批数据，第一批的参数为空字符串
+     * @param idOf       获得数据的ID
+     * @param afterChunk 每批写入后调用，用于释放已经写入的数据
+     * @param maxRows    最大行数，0 表示不限制
+     * @return 写入的行数
+     */
+    public <T> int writeAll(final Function<String, List<T>> chunk, final Function<T, String> idOf,
+                            final Runnable afterChunk, final int maxRows) {
+        int count = 0;
+        String lastId = "";
+        while (maxRows <= 0 || count < maxRows) {
+            final List<T> list = chunk.apply(lastId);
+            if (list.isEmpty()) {
+                break;
+            }
+            for (final T item : list) {
+                if (maxRows > 0 && count >= maxRows) {
+                    break;
+                }
+                write(item);
+                count++;
+            }
+            lastId = idOf.apply(list.get(list.size() - 1));
+            afterChunk.run();
+        }
+        return count;
+    }
+
+    /**
+     * 输出 Excel 并删除临时文件
+     *
+     * @throws IOException
+     */
+    public void finish() throws IOException {
+        try {
+            if (table != null) {
+                wb.write(this.output);
+            }
+        } finally {
+            wb.dispose();
+        }
+    }
+
+    private Map<String, Method> getReadMethods(final Class<?> clazz) {
+        if (clazz != beanClass) {
+            final Map<String, Method> methods = new HashMap<>();
+            try {
+                for (PropertyDescriptor property : Introspector.getBeanInfo(clazz).getPropertyDescriptors()) {
+                    if (property.getReadMethod() != null && !property.getName().equals("class")) {
+                        methods.put(property.getName(), property.getReadMethod());
+                    }
+                }
+            } catch (IntrospectionException e) {
+                throw new IllegalArgumentException("Invalid bean class " + clazz, e);
             }
-            wb.write(this.output);
+            beanClass = clazz;
+            readMethods = methods;
+        }
+        return readMethods;
+    }
+
+    private Object read(final Object bean, final Method method) {
+        if (method == null) {
+            return null;
+        }
+        try {
+            final Object value = method.invoke(bean);
+            if (value instanceof Date) {
+                return dateFormat.format((Date) value);
+            }
+            return value;
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("Fail to read " + method.getName(), e);
         }
     }
 
@@ -76,7 +206,7 @@ public class ExcelExporterProcess {
             for (TableProperties tp : table.getTableproperty()) {
                 Cell cell2 = titleRow.createCell(table.getTableproperty().indexOf(tp));
                 cell2.setCellStyle(firstStyle);
-                cell2.setCellValue(new HSSFRichTextString(tp.getName()));
+                cell2.setCellValue(tp.getName());
             }
         }
         rowNum++;
@@ -123,85 +253,95 @@ public class ExcelExporterProcess {
     }
 
 
-    private synchronized void createContent() {
-        CellStyle cellStyle = createContentStyle();
+    private void createRow(final Function<String, Object> value) {
         if (table != null && table.getTableproperty() != null) {
-            for (Map<String, Object> value : values) {
-                Row row2 = sheet.createRow(rowNum);
-                List<ExportData> tempExportDatas = new ArrayList<>();
-                int cols = 0;
-                for (TableProperties tp : table.getTableproperty()) {
-                    Cell cell2 = row2.createCell(cols++);
-                    cell2.setCellStyle(cellStyle);
-                    if (value.get(tp.getFieldname()) != null) {
-                        if (tp.isModits()) {
-                            @SuppressWarnings("unchecked")
-                            List<String> list = (List<String>) value.get(tp.getFieldname());
-                            if (list.size() > 0) {
-                                cell2.setCellValue(new HSSFRichTextString(list.remove(0)));
-                            }
-                            ExportData expData = new ExportData(tp, list);
-                            if (list.size() > 0) {
-                                tempExportDatas.add(expData);
-                                if (list.size() > expData.getMaxcols()) {
-                                    expData.setMaxcols(list.size());
-                                }
+            Row row2 = sheet.createRow(rowNum);
+            List<ExportData> tempExportDatas = new ArrayList<>();
+            int cols = 0;
+            for (TableProperties tp : table.getTableproperty()) {
+                Cell cell2 = row2.createCell(cols++);
+                cell2.setCellStyle(contentStyle);
+                final Object fieldValue = value.apply(tp.getFieldname());
+                if (fieldValue != null) {
+                    if (tp.isModits()) {
+                        @SuppressWarnings("unchecked")
+                        List<String> list = new ArrayList<>((List<String>) fieldValue);
+                        if (list.size() > 0) {
+                            cell2.setCellValue(list.remove(0));
+                        }
+                        ExportData expData = new ExportData(tp, list);
+                        if (list.size() > 0) {
+                            tempExportDatas.add(expData);
+                            if (list.size() > expData.getMaxcols()) {
+                                expData.setMaxcols(list.size());
                             }
-                        } else if (tp.isSeldata()) {
-                            SysDic sysDic = Dict.getInstance().getDicItem(String.valueOf(value.get(tp.getFieldname())));
-                            if (sysDic != null) {
-                                cell2.setCellValue(new HSSFRichTextString(sysDic.getName()));
-                            } else {
-                                List<SysDic> dicItemList = Dict.getInstance().getSysDic(tp.getSeldatacode());
-                                if (dicItemList != null && dicItemList.size() > 0) {
-                                    for (SysDic dicItem : dicItemList) {
-                                        String s = "";
-                                        Object obj = value.get(tp.getFieldname());
-                                        if (obj instanceof Boolean) {
-                                            s = (Boolean) obj ? "1" : "0";
-                                        } else {
-                                            s = String.valueOf(value.get(tp.getFieldname()));
-                                        }
-                                        if (dicItem.getCode().equals(s)) {
-                                            cell2.setCellValue(new HSSFRichTextString(dicItem.getName()));
-                                            break;
-                                        }
+                        }
+                    } else if (tp.isSeldata()) {
+                        SysDic sysDic = Dict.getInstance().getDicItem(String.valueOf(fieldValue));
+                        if (sysDic != null) {
+                            cell2.setCellValue(sysDic.getName());
+                        } else {
+                            List<SysDic> dicItemList = Dict.getInstance().getSysDic(tp.getSeldatacode());
+                            if (dicItemList != null && dicItemList.size() > 0) {
+                                for (SysDic dicItem : dicItemList) {
+                                    String s = "";
+                                    if (fieldValue instanceof Boolean) {
+                                        s = (Boolean) fieldValue ? "1" : "0";
+                                    } else {
+                                        s = String.valueOf(fieldValue);
+                                    }
+                                    if (dicItem.getCode().equals(s)) {
+                                        cell2.setCellValue(dicItem.getName());
+                                        break;
                                     }
                                 }
                             }
-                        } else if (tp.isReffk() && !StringUtils.isBlank(tp.getReftbid())) {
-                            String key = (String) value.get(tp.getFieldname());
-                            if (!StringUtils.isBlank(key)) {
-                                DataExchangeInterface exchange = (DataExchangeInterface) MainContext.getContext().getBean(tp.getReftbid());
-                                Object refvalue = exchange.getDataById(key);
-                                if (refvalue != null) {
-                                    cell2.setCellValue(new HSSFRichTextString(refvalue.toString()));
-                                }
+                        }
+                    } else if (tp.isReffk() && !StringUtils.isBlank(tp.getReftbid())) {
+                        String key = (String) fieldValue;
+                        if (!StringUtils.isBlank(key)) {
+                            Object refvalue = getRefValue(tp.getReftbid(), key);
+                            if (refvalue != null) {
+                                cell2.setCellValue(refvalue.toString());
                             }
-                        } else {
-                            cell2.setCellValue(new HSSFRichTextString(String.valueOf(value.get(tp.getFieldname()))));
                         }
+                    } else {
+                        cell2.setCellValue(String.valueOf(fieldValue));
                     }
                 }
-                if (tempExportDatas.size() > 0) {
-                    for (ExportData expData : tempExportDatas) {
-                        for (int i = 0; i < expData.getMaxcols(); i++) {
-                            if (titleRow.getCell(cols + i) == null) {
-                                Cell title = titleRow.createCell(cols + i);
-                                title.setCellStyle(firstStyle);
-                                title.setCellValue(new HSSFRichTextString(expData.getTp().getName()));
-                            }
+            }
+            if (tempExportDatas.size() > 0) {
+                for (ExportData expData : tempExportDatas) {
+                    for (int i = 0; i < expData.getMaxcols(); i++) {
+                        if (titleRow.getCell(cols + i) == null) {
+                            Cell title = titleRow.createCell(cols + i);
+                            title.setCellStyle(firstStyle);
+                            title.setCellValue(expData.getTp().getName());
                         }
+                    }
 
-                        for (String itemValue : expData.getValues()) {
-                            Cell cell2 = row2.createCell(cols++);
-                            cell2.setCellValue(new HSSFRichTextString(itemValue));
-                        }
+                    for (String itemValue : expData.getValues()) {
+                        Cell cell2 = row2.createCell(cols++);
+                        cell2.setCellValue(itemValue);
                     }
                 }
-                rowNum++;
             }
+            rowNum++;
+        }
+    }
+
+    private Object getRefValue(final String reftbid, final String key) {
+        final String cacheKey = reftbid + ":" + key;
+        if (refValues.containsKey(cacheKey)) {
+            return refValues.get(cacheKey);
+        }
+        DataExchangeInterface exchange = (DataExchangeInterface) MainContext.getContext().getBean(reftbid);
+        Object refvalue = exchange.getDataById(key);
+        if (refValues.size() >= MAX_REF_CACHE_SIZE) {
+            refValues.clear();
         }
+        refValues.put(cacheKey, refvalue);
+        return refvalue;
     }
 
 
@@ -17,12 +17,21 @@ package com.cskefu.cc.util.dsdata.process;
 import com.cskefu.cc.model.Account;
 import com.cskefu.cc.persistence.repository.AccountRepository;
 
+import jakarta.persistence.EntityManager;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
 public class AccountProcess implements JPAProcess {
 
     private final AccountRepository accountRes;
 
-    public AccountProcess(AccountRepository accountRes) {
+    private final EntityManager entityManager;
+
+    public AccountProcess(AccountRepository accountRes, EntityManager entityManager) {
         this.accountRes = accountRes;
+        this.entityManager = entityManager;
     }
 
     @Override
@@ -30,6 +39,28 @@ public class AccountProcess implements JPAProcess {
         accountRes.save((Account) data);
     }
 
+    /**
+     * 一次查询已存在的客户，已存在的更新，其余的新增，新增的数据由 Hibernate 批量插入
+     */
+    @Override
+    public void process(List<Object> data) {
+        List<String> ids = new ArrayList<>(data.size());
+        for (Object item : data) {
+            ids.add(((Account) item).getId());
+        }
+        Set<String> saved = new HashSet<>();
+        for (Account account : accountRes.findAllById(ids)) {
+            saved.add(account.getId());
+        }
+        for (Object item : data) {
+            if (saved.add(((Account) item).getId())) {
+                entityManager.persist(item);
+            } else {
+                entityManager.merge(item);
+            }
+        }
+    }
+
     @Override
     public void end() {
 
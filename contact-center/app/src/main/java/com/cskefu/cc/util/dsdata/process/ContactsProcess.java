@@ -17,12 +17,21 @@ package com.cskefu.cc.util.dsdata.process;
 import com.cskefu.cc.model.Contacts;
 import com.cskefu.cc.persistence.repository.ContactsRepository;
 
+import jakarta.persistence.EntityManager;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
 public class ContactsProcess implements JPAProcess{
 	
 	private final ContactsRepository contactsRes ;
+
+	private final EntityManager entityManager ;
 	
-	public ContactsProcess(ContactsRepository contactsRes){
+	public ContactsProcess(ContactsRepository contactsRes , EntityManager entityManager){
 		this.contactsRes = contactsRes ;
+		this.entityManager = entityManager ;
 	}
 
 	@Override
@@ -30,6 +39,28 @@ public class ContactsProcess implements JPAProcess{
 		contactsRes.save((Contacts)data) ;
 	}
 
+	/**
+	 * 一次查询已存在的联系人，已存在的更新，其余的新增，新增的数据由 Hibernate 批量插入
+	 */
+	@Override
+	public void process(List<Object> data) {
+		List<String> ids = new ArrayList<>(data.size()) ;
+		for (Object item : data) {
+			ids.add(((Contacts) item).getId()) ;
+		}
+		Set<String> saved = new HashSet<>() ;
+		for (Contacts contacts : contactsRes.findAllById(ids)) {
+			saved.add(contacts.getId()) ;
+		}
+		for (Object item : data) {
+			if (saved.add(((Contacts) item).getId())) {
+				entityManager.persist(item) ;
+			} else {
+				entityManager.merge(item) ;
+			}
+		}
+	}
+
 	@Override
 	public void end() {
 		
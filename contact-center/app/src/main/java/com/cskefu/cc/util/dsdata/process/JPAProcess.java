@@ -14,7 +14,19 @@
  */
 package com.cskefu.cc.util.dsdata.process;
 
+import java.util.List;
+
 public interface JPAProcess {
 	public void process(Object data) ;
+
+	/**
+	 * 写入一批数据，调用方负责开启事务
+	 */
+	public default void process(List<Object> data) {
+		for (Object item : data) {
+			process(item);
+		}
+	}
+
 	public void end();
 }
@@ -0,0 +1,20 @@
+-- 更新坐席状态，从就绪、未就绪的 Hash 中移除旧记录，写入新状态的 Hash，有变化时版本号加一
+-- KEYS[1] 就绪 Hash; KEYS[2] 未就绪 Hash; KEYS[3] 新状态的 Hash; KEYS[4] 版本号
+-- ARGV[1] agentno; ARGV[2] 是否写入新状态的 Hash，"1" 写入，离线时不写入; ARGV[3] 编码后的 AgentStatus
+-- 返回新的版本号，没有变化时返回 0
+local changed = 0
+for i = 1, 2 do
+    if KEYS[i] ~= KEYS[3] or ARGV[2] ~= '1' then
+        changed = changed + redis.call('HDEL', KEYS[i], ARGV[1])
+    end
+end
+
+if ARGV[2] == '1' then
+    redis.call('HSET', KEYS[3], ARGV[1], ARGV[3])
+    changed = 1
+end
+
+if changed == 0 then
+    return 0
+end
+return redis.call('INCR', KEYS[4])
@@ -0,0 +1,33 @@
+-- 删除访客坐席关联关系，依次检查排队中、服务中、已结束的 Hash，并从排队位置索引和坐席负载中移除
+-- KEYS[1] 排队中 Hash; KEYS[2] 服务中 Hash; KEYS[3] 已结束 Hash; KEYS[4] 全部排队 ZSet; KEYS[5] 排队索引 Hash
+-- KEYS[6] 负载索引 Hash
+-- 之后依次为排队索引中记录的技能组、坐席排队 ZSet，负载索引中记录的技能组负载 Hash，索引中没有记录时不传
+-- ARGV[1] userid; ARGV[2] 调用方读取到的排队索引记录; ARGV[3] 调用方读取到的负载索引记录，没有记录时为空
+-- 索引记录已被修改时不做任何修改并返回 -1，由调用方重新读取索引后再次执行；否则返回删除的数量
+local queued = redis.call('HGET', KEYS[5], ARGV[1]) or ''
+local loaded = redis.call('HGET', KEYS[6], ARGV[1]) or ''
+if queued ~= ARGV[2] or loaded ~= ARGV[3] then
+    return -1
+end
+local n = 6
+
+if queued ~= '' then
+    redis.call('ZREM', KEYS[n + 1], ARGV[1])
+    redis.call('ZREM', KEYS[n + 2], ARGV[1])
+    n = n + 2
+    redis.call('ZREM', KEYS[4], ARGV[1])
+    redis.call('HDEL', KEYS[5], ARGV[1])
+end
+
+if loaded ~= '' then
+    redis.call('HINCRBY', KEYS[n + 1], string.match(loaded, '\n([^\n]+)$'), -1)
+    redis.call('HDEL', KEYS[6], ARGV[1])
+end
+
+if redis.call('HDEL', KEYS[1], ARGV[1]) == 1 then
+    return 1
+end
+if redis.call('HDEL', KEYS[2], ARGV[1]) == 1 then
+    return 1
+end
+return redis.call('HDEL', KEYS[3], ARGV[1])
@@ -0,0 +1,17 @@
+-- 将访客从排队中移除，同时移除排队位置索引
+-- KEYS[1] 排队中 Hash; KEYS[2] 全部排队 ZSet; KEYS[3] 排队索引 Hash
+-- KEYS[4]、KEYS[5] 排队索引中记录的技能组、坐席排队 ZSet，没有记录时不传
+-- ARGV[1] userid; ARGV[2] 调用方读取到的排队索引记录，没有记录时为空
+-- 索引记录已被修改时不做任何修改并返回 -1，由调用方重新读取索引后再次执行；否则返回删除的数量
+local queued = redis.call('HGET', KEYS[3], ARGV[1]) or ''
+if queued ~= ARGV[2] then
+    return -1
+end
+
+if queued ~= '' then
+    redis.call('ZREM', KEYS[4], ARGV[1])
+    redis.call('ZREM', KEYS[5], ARGV[1])
+    redis.call('ZREM', KEYS[2], ARGV[1])
+    redis.call('HDEL', KEYS[3], ARGV[1])
+end
+return redis.call('HDEL', KEYS[1], ARGV[1])
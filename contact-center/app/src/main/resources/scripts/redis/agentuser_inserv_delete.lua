@@ -0,0 +1,15 @@
+-- 将访客从服务中 Hash 删除，并从坐席负载中移除
+-- KEYS[1] 服务中 Hash; KEYS[2] 负载索引 Hash; KEYS[3] 负载索引中记录的技能组负载 Hash，没有记录时不传
+-- ARGV[1] userid; ARGV[2] 调用方读取到的负载索引记录，没有记录时为空
+-- 索引记录已被修改时不做任何修改并返回 -1，由调用方重新读取索引后再次执行；
+-- 否则返回删除的数量，并发删除时只有一个调用方删除成功
+local loaded = redis.call('HGET', KEYS[2], ARGV[1]) or ''
+if loaded ~= ARGV[2] then
+    return -1
+end
+
+if loaded ~= '' then
+    redis.call('HINCRBY', KEYS[3], string.match(loaded, '\n([^\n]+)$'), -1)
+    redis.call('HDEL', KEYS[2], ARGV[1])
+end
+return redis.call('HDEL', KEYS[1], ARGV[1])
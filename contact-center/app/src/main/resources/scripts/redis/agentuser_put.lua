@@ -0,0 +1,74 @@
+-- 更新访客坐席关联关系，在排队、服务中、已结束的 Hash 之间移动，并维护排队位置索引和坐席负载
+-- KEYS[1] 排队中 Hash; KEYS[2] 服务中 Hash; KEYS[3] 新状态的 Hash
+-- KEYS[4] 全部排队 ZSet; KEYS[5] 排队索引 Hash; KEYS[6] 技能组排队 ZSet; KEYS[7] 坐席排队 ZSet
+-- KEYS[8] 负载索引 Hash; KEYS[9] 技能组负载 Hash; KEYS[10] 负载技能组 Set
+-- 之后依次为排队索引中记录的技能组、坐席排队 ZSet，负载索引中记录的技能组负载 Hash，索引中没有记录时不传
+-- ARGV[1] userid; ARGV[2] 是否写入新状态的 Hash，"1" 写入; ARGV[3] 编码后的 AgentUser; ARGV[4] 入队时间
+-- ARGV[5] 服务中时为坐席ID，否则为空; ARGV[6] 技能组
+-- ARGV[7] 调用方读取到的排队索引记录; ARGV[8] 调用方读取到的负载索引记录，没有记录时为空
+-- 索引记录已被修改时不做任何修改并返回 -1，由调用方重新读取索引后再次执行；否则返回 1
+local queued = redis.call('HGET', KEYS[5], ARGV[1]) or ''
+local loaded = redis.call('HGET', KEYS[8], ARGV[1]) or ''
+if queued ~= ARGV[7] or loaded ~= ARGV[8] then
+    return -1
+end
+local n = 10
+local queuedKeys = {}
+if queued ~= '' then
+    queuedKeys = { KEYS[n + 1], KEYS[n + 2] }
+    n = n + 2
+end
+local loadedKey = KEYS[n + 1]
+
+if redis.call('HEXISTS', KEYS[2], ARGV[1]) == 1 then
+    if KEYS[3] ~= KEYS[2] then
+        redis.call('HDEL', KEYS[2], ARGV[1])
+    end
+elseif KEYS[3] ~= KEYS[1] then
+    redis.call('HDEL', KEYS[1], ARGV[1])
+end
+
+if ARGV[2] == '1' then
+    redis.call('HSET', KEYS[3], ARGV[1], ARGV[3])
+end
+
+-- 排队索引中记录访客所在的技能组、坐席 ZSet，用换行分隔
+if KEYS[3] == KEYS[1] and ARGV[2] == '1' then
+    local target = KEYS[6] .. '\n' .. KEYS[7]
+    if queued ~= target then
+        -- 已在排队的访客保留原来的入队时间
+        local score = redis.call('ZSCORE', KEYS[4], ARGV[1]) or ARGV[4]
+        for _, key in ipairs(queuedKeys) do
+            redis.call('ZREM', key, ARGV[1])
+        end
+        redis.call('ZADD', KEYS[4], score, ARGV[1])
+        redis.call('ZADD', KEYS[6], score, ARGV[1])
+        redis.call('ZADD', KEYS[7], score, ARGV[1])
+        redis.call('HSET', KEYS[5], ARGV[1], target)
+    end
+elseif queued ~= '' then
+    for _, key in ipairs(queuedKeys) do
+        redis.call('ZREM', key, ARGV[1])
+    end
+    redis.call('ZREM', KEYS[4], ARGV[1])
+    redis.call('HDEL', KEYS[5], ARGV[1])
+end
+
+-- 负载索引中记录访客计入的技能组负载 Hash 和坐席，用换行分隔
+local target = ''
+if ARGV[5] ~= '' then
+    target = KEYS[9] .. '\n' .. ARGV[5]
+end
+if loaded ~= target then
+    if loaded ~= '' then
+        redis.call('HINCRBY', loadedKey, string.match(loaded, '\n([^\n]+)$'), -1)
+    end
+    if target ~= '' then
+        redis.call('HINCRBY', KEYS[9], ARGV[5], 1)
+        redis.call('SADD', KEYS[10], ARGV[6])
+        redis.call('HSET', KEYS[8], ARGV[1], target)
+    else
+        redis.call('HDEL', KEYS[8], ARGV[1])
+    end
+end
+return 1
@@ -0,0 +1,9 @@
+-- 按顺序在多个 Hash 中查找，返回第一个找到的值
+-- KEYS 待查找的 Hash; ARGV[1] 子键
+for i = 1, #KEYS do
+    local val = redis.call('HGET', KEYS[i], ARGV[1])
+    if val then
+        return val
+    end
+end
+return false
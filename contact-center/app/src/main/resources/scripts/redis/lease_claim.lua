@@ -0,0 +1,20 @@
+-- 取出等待处理的成员并加上租约，处理完成后由调用方删除租约；持有租约的节点退出时，租约到期后重新等待处理
+-- KEYS[1] 等待处理的 ZSet: 成员 -> 加入时间; KEYS[2] 租约 ZSet: 成员 -> 租约到期时间
+-- ARGV[1] 当前时间; ARGV[2] 最多取出的数量; ARGV[3] 租约到期时间
+-- 返回取出的成员，正在被其它节点处理的成员留在等待中
+local expired = redis.call('ZRANGEBYSCORE', KEYS[2], '-inf', ARGV[1])
+for _, member in ipairs(expired) do
+    redis.call('ZREM', KEYS[2], member)
+    redis.call('ZADD', KEYS[1], 'NX', ARGV[1], member)
+end
+
+local due = redis.call('ZRANGEBYSCORE', KEYS[1], '-inf', ARGV[1], 'LIMIT', 0, tonumber(ARGV[2]))
+local claimed = {}
+for _, member in ipairs(due) do
+    if not redis.call('ZSCORE', KEYS[2], member) then
+        redis.call('ZREM', KEYS[1], member)
+        redis.call('ZADD', KEYS[2], ARGV[3], member)
+        claimed[#claimed + 1] = member
+    end
+end
+return claimed
@@ -0,0 +1,32 @@
+-- 按入队时间获得坐席可以接待的排队访客
+-- KEYS[1] 排队中 Hash; KEYS[2] 未指定坐席的排队 ZSet; KEYS[3] 指定该坐席的排队 ZSet; KEYS[4...] 技能组排队 ZSet
+-- ARGV[i - 2] KEYS[i] 中最多返回的数量，i >= 3
+-- 返回 {userid, 入队时间, 编码后的 AgentUser, ...}，技能组中只返回未指定坐席的访客
+local result = {}
+local seen = {}
+for i = 3, #KEYS do
+    local limit = tonumber(ARGV[i - 2])
+    local count = 0
+    local start = 0
+    while count < limit do
+        local page = redis.call('ZRANGE', KEYS[i], start, start + 99, 'WITHSCORES')
+        if #page == 0 then
+            break
+        end
+        for j = 1, #page, 2 do
+            local userid = page[j]
+            if count < limit and not seen[userid] and (i == 3 or redis.call('ZSCORE', KEYS[2], userid)) then
+                local val = redis.call('HGET', KEYS[1], userid)
+                if val then
+                    seen[userid] = true
+                    count = count + 1
+                    result[#result + 1] = userid
+                    result[#result + 1] = page[j + 1]
+                    result[#result + 1] = val
+                end
+            end
+        end
+        start = start + 100
+    end
+end
+return result
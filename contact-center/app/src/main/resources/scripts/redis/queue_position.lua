@@ -0,0 +1,10 @@
+-- 获得访客在排队 ZSet 中的位置和队列长度
+-- KEYS[1] 排队 ZSet
+-- ARGV[1] userid
+-- 返回 {位置, 长度}，位置从 1 开始，不在队列中时为 0
+local rank = redis.call('ZRANK', KEYS[1], ARGV[1])
+local size = redis.call('ZCARD', KEYS[1])
+if rank then
+    return {rank + 1, size}
+end
+return {0, size}
@@ -0,0 +1,11 @@
+-- 查找连接所在的存活节点
+-- KEYS[1] 连接所在节点的 Set; KEYS[2] 节点心跳 Hash
+-- ARGV[1] 心跳的最早时间，早于该时间的节点视为离线
+local nodes = {}
+for _, node in ipairs(redis.call('SMEMBERS', KEYS[1])) do
+    local beat = redis.call('HGET', KEYS[2], node)
+    if beat and tonumber(beat) >= tonumber(ARGV[1]) then
+        table.insert(nodes, node)
+    end
+end
+return nodes
@@ -0,0 +1,9 @@
+-- 取出已经到期的定时器，取出的同时删除，多个节点同时执行时每个定时器只会被一个节点取出
+-- KEYS[1] 定时器 ZSet
+-- ARGV[1] 当前时间; ARGV[2] 最多取出的数量
+-- 返回到期的定时器
+local due = redis.call('ZRANGEBYSCORE', KEYS[1], '-inf', ARGV[1], 'LIMIT', 0, tonumber(ARGV[2]))
+if #due > 0 then
+    redis.call('ZREM', KEYS[1], unpack(due))
+end
+return due
@@ -0,0 +1,172 @@
+/*
+ * Copyright (C) 2023 Beijing Huaxia Chunsong Technology Co., Ltd.
+ * <https://www.chatopera.com>, Licensed under the Chunsong Public
+ * License, Version 1.0  (the "License"), https://docs.cskefu.com/licenses/v1.html
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.chatopera.cc.util;
+
+import com.cskefu.cc.model.AgentStatus;
+import com.cskefu.cc.model.AgentUser;
+import com.cskefu.cc.model.Organ;
+import com.cskefu.cc.model.SysDic;
+import com.cskefu.cc.model.SystemConfig;
+import com.cskefu.cc.util.SerializeUtil;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+public class SerializeUtilTest {
+
+    private static AgentStatus agentStatus() {
+        AgentStatus agentStatus = new AgentStatus();
+        agentStatus.setId("4028811b6e9b0d6a016e9b1cef6a0001");
+        agentStatus.setAgentno("4028811b6e9b0d6a016e9b1cef6a0001");
+        agentStatus.setUsername("agent1");
+        agentStatus.setName("坐席一");
+        agentStatus.setStatus("READY");
+        agentStatus.setLogindate(new Date());
+        agentStatus.setUsers(3);
+        agentStatus.setMaxusers(10);
+        agentStatus.setBusy(false);
+        HashMap<String, String> skills = new HashMap<>();
+        skills.put("4028811b6e9b0d6a016e9b1cef6a0002", "售前");
+        skills.put("4028811b6e9b0d6a016e9b1cef6a0003", "售后");
+        agentStatus.setSkills(skills);
+        return agentStatus;
+    }
+
+    private static String legacy(final Serializable obj) throws Exception {
+        try (ByteArrayOutputStream baos = new ByteArrayOutputStream();
+             ObjectOutputStream oos = new ObjectOutputStream(baos)) {
+            oos.writeObject(obj);
+            oos.flush();
+            return Base64.getEncoder().encodeToString(baos.toByteArray());
+        }
+    }
+
+    @Test
+    public void testRoundTrip() {
+        AgentStatus expected = agentStatus();
+        AgentStatus actual = SerializeUtil.decode(SerializeUtil.encode(expected));
+
+        assertNotNull(actual);
+        assertEquals(expected.getAgentno(), actual.getAgentno());
+        assertEquals(expected.getName(), actual.getName());
+        assertEquals(expected.getLogindate(), actual.getLogindate());
+        assertEquals(expected.getUsers(), actual.getUsers());
+        assertEquals(expected.getSkills(), actual.getSkills());
+        assertNull(actual.getUpdatetime());
+    }
+
+    @Test
+    public void testRoundTripList() {
+        ArrayList<SysDic> dics = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            SysDic dic = new SysDic();
+            dic.setId("id" + i);
+            dic.setName("名称" + i);
+            dic.setSortindex(i);
+            dics.add(dic);
+        }
+
+        List<SysDic> actual = SerializeUtil.decode(SerializeUtil.encode(dics));
+        assertEquals(3, actual.size());
+        assertEquals("名称2", actual.get(2).getName());
+        assertEquals(2, actual.get(2).getSortindex());
+        assertEquals("pub", actual.get(2).getTitle());
+    }
+
+    @Test
+    public void testReadLegacy() throws Exception {
+        AgentUser expected = new AgentUser();
+        expected.setUserid("visitor");
+        expected.setStatus("INQUENE");
+        String serialized = legacy(expected);
+
+        // 旧版本通过 StringRedisTemplate 存入的值
+        AgentUser fromBytes = SerializeUtil.decode(serialized.getBytes(StandardCharsets.US_ASCII));
+        assertEquals("visitor", fromBytes.getUserid());
+
+        // 旧版本节点通过消息队列发送的值
+        AgentUser fromString = SerializeUtil.deserialize(serialized);
+        assertEquals("INQUENE", fromString.getStatus());
+    }
+
+    @Test
+    public void testStringRoundTrip() {
+        AgentStatus actual = SerializeUtil.deserialize(SerializeUtil.serialize(agentStatus()));
+        assertEquals("agent1", actual.getUsername());
+    }
+
+    @Test
+    public void testCorruptedData() {
+        byte[] data = SerializeUtil.encode(agentStatus());
+        assertNull(SerializeUtil.decode(Arrays.copyOf(data, data.length / 2)));
+    }
+
+    @Test
+    public void testRoundTripOrgan() {
+        Organ expected = new Organ();
+        expected.setId("4028811b6e9b0d6a016e9b1cef6a0002");
+        expected.setName("售前");
+        expected.setParent("0");
+        expected.setSkill(true);
+        expected.setCreatetime(new Date());
+
+        byte[] data = SerializeUtil.encode(expected);
+        Organ actual = SerializeUtil.decode(data);
+        assertEquals(expected.getName(), actual.getName());
+        assertEquals(expected.getParent(), actual.getParent());
+        assertTrue(actual.isSkill());
+        assertEquals(expected.getCreatetime(), actual.getCreatetime());
+        assertFalse(isLegacy(data));
+    }
+
+    @Test
+    public void testRoundTripSystemConfig() {
+        SystemConfig expected = new SystemConfig();
+        expected.setId("systemconfig");
+        expected.setTheme("03");
+        expected.setEnabletneant(true);
+        expected.setTenantshare(true);
+
+        byte[] data = SerializeUtil.encode(expected);
+        SystemConfig actual = SerializeUtil.decode(data);
+        assertEquals("03", actual.getTheme());
+        assertTrue(actual.isEnabletneant());
+        assertTrue(actual.isTenantshare());
+        assertFalse(actual.isTenantconsole());
+        assertFalse(isLegacy(data));
+    }
+
+    /**
+     * 编码后的数据小于原有的 Java 序列化 + Base64
+     */
+    @Test
+    public void testEncodedSizeSmallerThanLegacy() throws Exception {
+        AgentStatus agentStatus = agentStatus();
+        byte[] binary = SerializeUtil.encode(agentStatus);
+
+        assertFalse(isLegacy(binary));
+        assertTrue(binary.length < legacy(agentStatus).length());
+        assertArrayEquals(binary, SerializeUtil.encode(SerializeUtil.<AgentStatus>decode(binary)));
+    }
+
+    /**
+     * 注册过的类型不会退回 Java 序列化，数据中不含类名
+     */
+    private static boolean isLegacy(final byte[] data) {
+        return new String(data, StandardCharsets.ISO_8859_1).contains("com.cskefu.cc.model");
+    }
+}
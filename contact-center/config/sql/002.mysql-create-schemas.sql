@@ -17,6 +17,49 @@
 
 SET FOREIGN_KEY_CHECKS=0;
 
+-- ----------------------------
+-- Table structure for cs_agentservice_hourly
+-- ----------------------------
+DROP TABLE IF EXISTS `cs_agentservice_hourly`;
+CREATE TABLE `cs_agentservice_hourly` (
+  `stattime` datetime NOT NULL COMMENT '统计时段，整点',
+  `statdate` varchar(10) NOT NULL COMMENT '统计日期，yyyy-MM-dd',
+  `agentno` varchar(100) NOT NULL DEFAULT '' COMMENT '坐席ID',
+  `agentskill` varchar(100) NOT NULL DEFAULT '' COMMENT '技能组',
+  `channeltype` varchar(100) NOT NULL DEFAULT '' COMMENT '渠道',
+  `services` int(11) NOT NULL DEFAULT '0' COMMENT '咨询数量',
+  `waittingtime` bigint(20) NOT NULL DEFAULT '0' COMMENT '等待时长合计',
+  `waittings` int(11) NOT NULL DEFAULT '0' COMMENT '有等待时长的咨询数量',
+  `sessiontimes` bigint(20) NOT NULL DEFAULT '0' COMMENT '会话时长合计',
+  `sessions` int(11) NOT NULL DEFAULT '0' COMMENT '有会话时长的咨询数量',
+  PRIMARY KEY (`stattime`,`agentno`,`agentskill`,`channeltype`),
+  KEY `statdate` (`statdate`)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COMMENT='在线客服服务记录按小时汇总';
+
+-- ----------------------------
+-- Records of cs_agentservice_hourly
+-- ----------------------------
+
+-- ----------------------------
+-- Table structure for cs_agentservice_satis_hourly
+-- ----------------------------
+DROP TABLE IF EXISTS `cs_agentservice_satis_hourly`;
+CREATE TABLE `cs_agentservice_satis_hourly` (
+  `stattime` datetime NOT NULL COMMENT '统计时段，整点',
+  `statdate` varchar(10) NOT NULL COMMENT '统计日期，yyyy-MM-dd',
+  `agentno` varchar(100) NOT NULL DEFAULT '' COMMENT '坐席ID',
+  `agentskill` varchar(100) NOT NULL DEFAULT '' COMMENT '技能组',
+  `channeltype` varchar(100) NOT NULL DEFAULT '' COMMENT '渠道',
+  `satislevel` varchar(50) NOT NULL DEFAULT '' COMMENT '满意度评分',
+  `services` int(11) NOT NULL DEFAULT '0' COMMENT '评价数量',
+  PRIMARY KEY (`stattime`,`agentno`,`agentskill`,`channeltype`,`satislevel`),
+  KEY `statdate` (`statdate`)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COMMENT='满意度评价按小时汇总';
+
+-- ----------------------------
+-- Records of cs_agentservice_satis_hourly
+-- ----------------------------
+
 -- ----------------------------
 -- Table structure for cs_chatbot
 -- ----------------------------
@@ -569,7 +612,9 @@ CREATE TABLE `uk_agentservice` (
   `aiid` varchar(32) DEFAULT NULL COMMENT 'AIID',
   `aiservice` tinyint(4) DEFAULT '0' COMMENT '是否AI服务',
   `foragent` tinyint(4) DEFAULT '0' COMMENT '直接转人工',
-  PRIMARY KEY (`id`) USING BTREE
+  PRIMARY KEY (`id`) USING BTREE,
+  KEY `agentservice_createtime` (`createtime`) USING BTREE,
+  KEY `agentservice_satistime` (`satistime`) USING BTREE
 ) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 ROW_FORMAT=COMPACT COMMENT='在线客服服务记录表';
 
 -- ----------------------------
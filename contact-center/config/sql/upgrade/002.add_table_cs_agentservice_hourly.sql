@@ -0,0 +1,35 @@
+USE `cosinee`;
+-- -----------------
+-- 在线客服服务记录按小时汇总，供报表查询
+-- -----------------
+
+CREATE TABLE IF NOT EXISTS `cs_agentservice_hourly` (
+  `stattime` datetime NOT NULL COMMENT '统计时段，整点',
+  `statdate` varchar(10) NOT NULL COMMENT '统计日期，yyyy-MM-dd',
+  `agentno` varchar(100) NOT NULL DEFAULT '' COMMENT '坐席ID',
+  `agentskill` varchar(100) NOT NULL DEFAULT '' COMMENT '技能组',
+  `channeltype` varchar(100) NOT NULL DEFAULT '' COMMENT '渠道',
+  `services` int(11) NOT NULL DEFAULT '0' COMMENT '咨询数量',
+  `waittingtime` bigint(20) NOT NULL DEFAULT '0' COMMENT '等待时长合计',
+  `waittings` int(11) NOT NULL DEFAULT '0' COMMENT '有等待时长的咨询数量',
+  `sessiontimes` bigint(20) NOT NULL DEFAULT '0' COMMENT '会话时长合计',
+  `sessions` int(11) NOT NULL DEFAULT '0' COMMENT '有会话时长的咨询数量',
+  PRIMARY KEY (`stattime`,`agentno`,`agentskill`,`channeltype`),
+  KEY `statdate` (`statdate`)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COMMENT='在线客服服务记录按小时汇总';
+
+CREATE TABLE IF NOT EXISTS `cs_agentservice_satis_hourly` (
+  `stattime` datetime NOT NULL COMMENT '统计时段，整点',
+  `statdate` varchar(10) NOT NULL COMMENT '统计日期，yyyy-MM-dd',
+  `agentno` varchar(100) NOT NULL DEFAULT '' COMMENT '坐席ID',
+  `agentskill` varchar(100) NOT NULL DEFAULT '' COMMENT '技能组',
+  `channeltype` varchar(100) NOT NULL DEFAULT '' COMMENT '渠道',
+  `satislevel` varchar(50) NOT NULL DEFAULT '' COMMENT '满意度评分',
+  `services` int(11) NOT NULL DEFAULT '0' COMMENT '评价数量',
+  PRIMARY KEY (`stattime`,`agentno`,`agentskill`,`channeltype`,`satislevel`),
+  KEY `statdate` (`statdate`)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COMMENT='满意度评价按小时汇总';
+
+-- 按时段汇总服务记录
+ALTER TABLE `uk_agentservice` ADD INDEX `agentservice_createtime` (`createtime`) USING BTREE;
+ALTER TABLE `uk_agentservice` ADD INDEX `agentservice_satistime` (`satistime`) USING BTREE;